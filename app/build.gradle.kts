@@ -32,6 +32,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation("androidx.camera:camera-core:1.3.1")
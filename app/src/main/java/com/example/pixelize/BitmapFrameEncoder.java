@@ -0,0 +1,40 @@
+package com.example.pixelize;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// FrameEncoder backed by Bitmap.compress. Reuses one Bitmap per frame size, which is
+// safe because the capture pipeline encodes on a single worker thread.
+public class BitmapFrameEncoder implements FrameEncoder {
+    private final Bitmap.CompressFormat format;
+    private final int quality;
+    private Bitmap bitmap;
+
+    public BitmapFrameEncoder(Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return format == Bitmap.CompressFormat.PNG ? "png" : format == Bitmap.CompressFormat.JPEG ? "jpg" : "webp";
+    }
+
+    @Override
+    public void encode(Frame frame, OutputStream out) throws IOException {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        bitmap.setPixels(frame.getPixels(), 0, width, 0, 0, width, height);
+        if (!bitmap.compress(format, quality, out)) {
+            throw new IOException("Bitmap.compress failed");
+        }
+    }
+}
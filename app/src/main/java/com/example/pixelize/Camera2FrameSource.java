@@ -0,0 +1,192 @@
+package com.example.pixelize;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Camera2 preview as a FrameSource: a YUV_420_888 ImageReader at the negotiated size,
+// read on a dedicated background thread. The caller must hold the CAMERA permission.
+public class Camera2FrameSource implements FrameSource {
+    private static final String TAG = "Camera2FrameSource";
+
+    private final CameraManager cameraManager;
+    private final PipelineMetrics metrics;
+    private final RawFrame rawFrame = new RawFrame();
+    private String cameraId;
+    private HandlerThread backgroundThread;
+    private Handler backgroundHandler;
+    private ImageReader imageReader;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private FrameFormat format;
+    private Sink sink;
+
+    public Camera2FrameSource(Context context, PipelineMetrics metrics) {
+        this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<FrameFormat> getSupportedFormats() {
+        try {
+            String[] ids = cameraManager.getCameraIdList();
+            if (ids.length == 0) {
+                return Collections.emptyList();
+            }
+            cameraId = ids[0];
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map == null) {
+                return Collections.emptyList();
+            }
+            List<FrameFormat> formats = new ArrayList<>();
+            for (Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+                formats.add(new FrameFormat(size.getWidth(), size.getHeight(), FrameFormat.Encoding.YUV_420));
+            }
+            return formats;
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot query camera: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void start(FrameFormat format, Sink sink) {
+        if (format.getEncoding() != FrameFormat.Encoding.YUV_420) {
+            throw new IllegalArgumentException("Camera delivers YUV_420, not " + format);
+        }
+        if (cameraId == null) {
+            getSupportedFormats();
+        }
+        this.format = format;
+        this.sink = sink;
+        backgroundThread = new HandlerThread("CameraBackground");
+        backgroundThread.start();
+        backgroundHandler = new Handler(backgroundThread.getLooper());
+
+        imageReader = ImageReader.newInstance(format.getWidth(), format.getHeight(), ImageFormat.YUV_420_888, 2);
+        imageReader.setOnImageAvailableListener(this::onImageAvailable, backgroundHandler);
+        try {
+            Log.d(TAG, "Opening camera " + cameraId + " at " + format);
+            cameraManager.openCamera(cameraId, stateCallback, backgroundHandler);
+        } catch (CameraAccessException | SecurityException e) {
+            Log.e(TAG, "Cannot open camera: " + e.getMessage());
+        }
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        Image image = null;
+        try {
+            long start = System.nanoTime();
+            image = reader.acquireLatestImage();
+            if (image != null) {
+                metrics.record(PipelineMetrics.Stage.ACQUIRE, System.nanoTime() - start);
+                Image.Plane[] planes = image.getPlanes();
+                sink.onFrame(rawFrame.setYuv(format, image.getTimestamp(),
+                    planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride()));
+            }
+        } finally {
+            if (image != null) {
+                image.close();
+            }
+        }
+    }
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            cameraDevice = camera;
+            createPreviewSession();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            camera.close();
+            cameraDevice = null;
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "Camera error " + error);
+            camera.close();
+            cameraDevice = null;
+        }
+    };
+
+    private void createPreviewSession() {
+        try {
+            CaptureRequest.Builder requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            requestBuilder.addTarget(imageReader.getSurface());
+            cameraDevice.createCaptureSession(
+                Collections.singletonList(imageReader.getSurface()),
+                new CameraCaptureSession.StateCallback() {
+                    @Override
+                    public void onConfigured(@NonNull CameraCaptureSession session) {
+                        if (cameraDevice == null) return;
+                        captureSession = session;
+                        try {
+                            session.setRepeatingRequest(requestBuilder.build(), null, backgroundHandler);
+                        } catch (CameraAccessException e) {
+                            Log.e(TAG, "Cannot start preview: " + e.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                        Log.e(TAG, "Capture session configuration failed");
+                    }
+                },
+                backgroundHandler
+            );
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot create preview session: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (backgroundThread == null) {
+            return;
+        }
+        // Close on the camera thread so no image callback is running concurrently
+        backgroundHandler.post(() -> {
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            if (cameraDevice != null) {
+                cameraDevice.close();
+                cameraDevice = null;
+            }
+            imageReader.close();
+        });
+        backgroundThread.quitSafely();
+        try {
+            backgroundThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        backgroundThread = null;
+        backgroundHandler = null;
+        imageReader = null;
+    }
+}
@@ -1,13 +1,10 @@
 package com.example.pixelize;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.opengl.GLSurfaceView;
 import android.util.AttributeSet;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
+
+import java.util.List;
 
 public class CustomGLSurfaceView extends GLSurfaceView {
     private final CustomRenderer renderer;
@@ -30,6 +27,7 @@ public class CustomGLSurfaceView extends GLSurfaceView {
     }
 
     public void setPixelationEnabled(boolean enabled) {
+        isPixelationEnabled = enabled;
         if (renderer != null) {
             renderer.setPixelationEnabled(enabled);
             requestRender();
@@ -43,40 +41,51 @@ public class CustomGLSurfaceView extends GLSurfaceView {
         }
     }
 
-    // Method to update the camera feed
-    public void updateCameraFeed(Bitmap bitmap) {
-        // Convert Bitmap to a texture
-        int[] textureIds = new int[1];
-        GLES20.glGenTextures(1, textureIds, 0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureIds[0]);
-
-        // Set texture parameters
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-
-        // Load the bitmap into the texture
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-        
-        // Now draw the texture in your onDrawFrame method
-        // Make sure to use the correct shader program and draw calls
+    // Selects the pixelation effect by EffectRegistry id
+    public void setEffect(String id) {
+        renderer.setEffect(id);
+        requestRender();
     }
 
-    // Method to check if the surface is available for rendering
-    public boolean isAvailable() {
-        return getHolder().getSurface() != null && getHolder().getSurface().isValid();
+    // Retro palette: off, ega16, rgb64, rgb332 or adaptive<N>
+    public void setPalette(String name) {
+        renderer.setPalette(name);
+        requestRender();
     }
 
-    // Method to capture the current frame as a Bitmap
-    public Bitmap getBitmap() {
-        // Create a bitmap with the same dimensions as the view
-        Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        draw(canvas); // Draw the current view onto the canvas
-        return bitmap;
+    // Pixelate only these regions of the frame, or all of it when null
+    public void setRegions(List<PixelRegion> regions) {
+        renderer.setRegions(regions);
+        requestRender();
     }
 
-    public void loadStaticBitmap() {
-        Bitmap staticBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sample_image);
-        updateCameraFeed(staticBitmap);
+    // Upload only the blocks that changed since the last frame (default) or whole frames
+    public void setIncremental(boolean enabled) {
+        renderer.setIncremental(enabled);
+    }
+
+    // Draw pixelation by uploading only the block grid (default) or by shading full frames
+    public void setDownsampleFirst(boolean enabled) {
+        renderer.setDownsampleFirst(enabled);
+        requestRender();
+    }
+
+    // Cache pixelated results of a still image, so revisited slider positions are free
+    public void setResultCache(PixelationCache cache) {
+        renderer.setResultCache(cache);
+    }
+
+    // Method to update the camera feed; takes ownership of the frame
+    public void updateCameraFeed(Frame frame) {
+        renderer.updateCameraFeed(frame);
+    }
+
+    public PipelineMetrics getMetrics() {
+        return renderer.getMetrics();
+    }
+
+    // Method to check if the surface is available for rendering
+    public boolean isAvailable() {
+        return getHolder().getSurface() != null && getHolder().getSurface().isValid();
     }
 } 
\ No newline at end of file
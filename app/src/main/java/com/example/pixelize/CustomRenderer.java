@@ -1,43 +1,102 @@
 package com.example.pixelize;
 
-import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.egl.EGLConfig;
-import android.opengl.GLUtils;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class CustomRenderer implements GLSurfaceView.Renderer {
-    private float pixelSize = 10.0f; // Default pixel size
-    private int shaderProgram;
-    private int pixelSizeLocation;
-    private Bitmap cameraBitmap; // To hold the camera feed
-    private boolean isPixelationEnabled = false;
-    private int[] textureId = new int[1]; // To hold the texture ID
+    private volatile float pixelSize = 10.0f; // Default pixel size
+    private final EffectRegistry effectRegistry = EffectRegistry.createDefault();
+    private volatile ShaderEffect effect = effectRegistry.get(EffectRegistry.PIXELATE);
+    private ShaderProgramCache programCache; // Every effect variant, compiled once per EGL context
+    // Hands camera frames from the camera thread to the GL thread
+    private final LatestFrameMailbox<Frame> frameMailbox = new LatestFrameMailbox<>();
+    private volatile boolean isPixelationEnabled = false;
+    private final GlApi glApi = new Gles20Api();
+    private TextureStreamer textureStreamer; // Persistent textures, recreated per EGL context
+    private final SummedAreaTable frameTable = new SummedAreaTable(); // Built once per camera frame
+    private Frame pixelatedFrame; // CPU pixelation output, reused across frames
+    private int pixelatedBlockSize;
+    // Downsample-first path: the frame is reduced to one pixel per block on the CPU and
+    // only that grid is uploaded and magnified with nearest filtering, so upload and
+    // fragment work scale with the number of blocks instead of the frame size
+    private volatile boolean downsampleFirst = true;
+    private final PixelationEngine pixelationEngine = new PixelationEngine();
+    private TextureStreamer gridStreamer;
+    private Frame gridFrame; // Grid pixels, reused while the grid size is unchanged
+    private int gridBlockSize; // Block size of the grid on screen, 0 when drawing full frames
+    private int gridFrameWidth; // Size of the frame the grid was built from
+    private int gridFrameHeight;
+    // Retro mode: the grid is mapped to a fixed or adaptive palette before upload.
+    // At most one of the two is set.
+    private volatile Palette retroPalette;
+    private volatile AdaptivePalette adaptivePalette;
+    private final PaletteQuantizer paletteQuantizer = new PaletteQuantizer();
+    private Object gridRetro; // The palette or adaptive palette the current grid used
+    // Incremental uploads of full frames: only blocks whose average moved by more than
+    // DIRTY_TOLERANCE per channel since they were last uploaded are sent again
+    private static final int DIRTY_TOLERANCE = 2;
+    private volatile boolean incremental = true;
+    private final DirtyBlockTracker dirtyTracker = new DirtyBlockTracker(DIRTY_TOLERANCE);
+    private int[] dirtyGrid = new int[0]; // Block averages of the frame being uploaded
+    private int trackedBlockSize; // Block size of the frame texture's last incremental upload, 0 after a full one
+    // Region mode: only the blocks covered by these regions are pixelated, on the CPU;
+    // null pixelates the whole frame
+    private volatile List<PixelRegion> regions;
+    private final RegionPixelator regionPixelator = new RegionPixelator();
+    private List<PixelRegion> pixelatedRegions; // The regions pixelatedFrame was made with
+    // Still images: block grids and CPU-pixelated frames are cached by the frame's
+    // content, so going back to a slider position is a copy. Unset for the camera,
+    // whose frames never repeat.
+    private static final String GRID_RESULT = "grid"; // Block averages, before any palette
+    private volatile PixelationCache resultCache;
+    private long frameHash; // Content hash of latestFrame, once frameHashed
+    private boolean frameHashed;
+    private boolean tableBuilt; // Whether frameTable holds latestFrame
+    private Frame latestFrame; // Last polled frame, owned by the mailbox until the next poll
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private long lastFrameEndNanos; // For the SWAP stage: end of one onDrawFrame to the next
+
+    // Full-screen quad as a triangle strip: x, y, u, v per vertex
+    private static final int VERTEX_STRIDE = 4 * 4;
+    private final FloatBuffer quadVertices = ByteBuffer.allocateDirect(4 * VERTEX_STRIDE)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer()
+        .put(new float[] {
+            -1f, -1f, 0f, 1f,
+             1f, -1f, 1f, 1f,
+            -1f,  1f, 0f, 0f,
+             1f,  1f, 1f, 0f,
+        });
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        // Initialize shaders and OpenGL settings
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-        
-        shaderProgram = GLES20.glCreateProgram();             // Create empty OpenGL Program
-        GLES20.glAttachShader(shaderProgram, vertexShader);   // Add the vertex shader to program
-        GLES20.glAttachShader(shaderProgram, fragmentShader); // Add the fragment shader to program
-        GLES20.glLinkProgram(shaderProgram);                   // Create OpenGL program executables
-
-        // Check for linking errors
-        int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(shaderProgram, GLES20.GL_LINK_STATUS, linkStatus, 0);
-        if (linkStatus[0] == 0) {
-            Log.e("Shader", "Error linking program: " + GLES20.glGetProgramInfoLog(shaderProgram));
-            GLES20.glDeleteProgram(shaderProgram);
-            shaderProgram = 0; // Set shader program to 0 to indicate failure
+        // A new EGL context means any textures and programs from the old one are gone
+        if (textureStreamer != null) {
+            textureStreamer.invalidate();
+            gridStreamer.invalidate();
+            programCache.invalidate();
         }
-
-        // Get the location of the pixelSize uniform variable
-        pixelSizeLocation = GLES20.glGetUniformLocation(shaderProgram, "u_PixelSize");
+        // Build every effect now so switching effects never compiles mid-stream
+        programCache = new ShaderProgramCache(glApi);
+        int failed = programCache.precompile(effectRegistry);
+        if (failed > 0) {
+            // Effects without a working program fall back to CPU pixelation
+            Log.w("CustomRenderer", failed + " effect programs unavailable");
+        }
+        textureStreamer = new TextureStreamer(glApi);
+        gridStreamer = new TextureStreamer(glApi);
+        gridStreamer.setFilter(GlApi.GL_NEAREST);
+        gridBlockSize = 0;
     }
 
     @Override
@@ -48,118 +107,359 @@ public class CustomRenderer implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        long frameStart = System.nanoTime();
+        if (lastFrameEndNanos != 0) {
+            // Time spent in eglSwapBuffers and waiting for the next vsync
+            metrics.record(PipelineMetrics.Stage.SWAP, frameStart - lastFrameEndNanos);
+        }
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        
-        if (cameraBitmap != null) {
-            // Generate and bind the texture
-            GLES20.glGenTextures(1, textureId, 0);
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId[0]);
-
-            // Set texture parameters
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-
-            // Load the bitmap into the texture
-            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, cameraBitmap, 0);
-
-            // Use the shader program
-            GLES20.glUseProgram(shaderProgram);
-            
-            // Draw the texture here (ensure you have the correct vertex data and attributes set up)
-            // ...
-        } else {
-            Log.d("CustomRenderer", "Camera bitmap is null");
+
+        Frame frame = frameMailbox.poll();
+        boolean newFrame = frame != null;
+        if (newFrame) {
+            latestFrame = frame;
+            frameHashed = false;
+        }
+        ShaderEffect activeEffect = isPixelationEnabled ? effect : effectRegistry.get(EffectRegistry.NONE);
+        // Shaders pixelate whole frames, so region mode always pixelates on the CPU
+        List<PixelRegion> activeRegions = isPixelationEnabled ? regions : null;
+        ShaderProgram gridProgram = activeRegions == null ? gridProgram(activeEffect) : null;
+        ShaderProgram frameProgram = activeRegions == null ? program(activeEffect, ShaderEffect.Variant.FRAME) : null;
+        // No program for the effect: pixelate on the CPU and just draw the result
+        boolean cpuPixelation = isPixelationEnabled && gridProgram == null && frameProgram == null;
+        if (cpuPixelation) {
+            frameProgram = program(effectRegistry.get(EffectRegistry.NONE), ShaderEffect.Variant.FRAME);
+        }
+        int targetGridBlockSize = gridProgram != null ? blockSize(pixelSize) : 0;
+        if (targetGridBlockSize != 0) {
+            // Rebuild the grid for a new frame, block size or palette
+            if (latestFrame != null && (newFrame || targetGridBlockSize != gridBlockSize
+                    || currentRetro() != gridRetro)) {
+                long uploadStart = System.nanoTime();
+                uploadGrid(latestFrame, targetGridBlockSize, newFrame);
+                metrics.record(PipelineMetrics.Stage.UPLOAD, System.nanoTime() - uploadStart);
+            }
+            frame = null;
+        } else if (gridBlockSize != 0) {
+            // Back to full frames: the full-size texture is older than the grid
+            gridBlockSize = 0;
+            frame = latestFrame;
+        }
+
+        if (frame == null && cpuPixelation && pixelatedFrame != null
+                && (blockSize(pixelSize) != pixelatedBlockSize || activeRegions != pixelatedRegions)) {
+            // Slider or regions changed since the last camera frame: re-average from the
+            // same table, or from the frame itself when regions are or were involved
+            frame = activeRegions == null && pixelatedRegions == null
+                ? pixelateFromTable(pixelSize) : applyPixelation(latestFrame, pixelSize, activeRegions);
+        } else if (frame != null && cpuPixelation) {
+            frame = applyPixelation(frame, pixelSize, activeRegions);
+        }
+        if (frame != null) {
+            // Only upload when a new frame has arrived, into the next persistent texture.
+            // Frames are ARGB ints, swizzled back to RGBA in the shader.
+            long uploadStart = System.nanoTime();
+            // Only output that is one colour per tracker block can skip unchanged blocks: CPU
+            // pixelation, or an effect on a square grid. Uncovered areas of region mode show
+            // full detail, which block averages can't track.
+            boolean squareGrid = cpuPixelation || activeEffect.isSquareGrid();
+            int trackBlockSize = incremental && isPixelationEnabled && activeRegions == null && squareGrid
+                ? blockSize(pixelSize) : 1;
+            if (trackBlockSize > 1) {
+                uploadChangedBlocks(frame, trackBlockSize);
+            } else {
+                textureStreamer.upload(frame.getBuffer(), frame.getWidth(), frame.getHeight());
+                trackedBlockSize = 0; // The tracker no longer knows what the texture holds
+            }
+            metrics.record(PipelineMetrics.Stage.UPLOAD, System.nanoTime() - uploadStart);
+        }
+
+        int texture = gridBlockSize != 0 ? gridStreamer.getCurrentTexture() : textureStreamer.getCurrentTexture();
+        ShaderProgram program = gridBlockSize != 0 ? gridProgram : frameProgram;
+        if (texture != 0 && program != null) {
+            // CPU-side submission time; the GPU work overlaps with SWAP
+            long drawStart = System.nanoTime();
+            if (gridBlockSize != 0) {
+                drawGrid(program, texture);
+            } else {
+                drawTexture(program, texture);
+            }
+            metrics.record(PipelineMetrics.Stage.DRAW, System.nanoTime() - drawStart);
+            if (newFrame) {
+                metrics.frameRendered();
+                if (latestFrame.getArrivalNanos() != 0) {
+                    metrics.record(PipelineMetrics.Stage.END_TO_END, System.nanoTime() - latestFrame.getArrivalNanos());
+                }
+            }
+        }
+        lastFrameEndNanos = System.nanoTime();
+    }
+
+    // An incrementally uploaded texture is drawn with the tracker's whole-pixel blocks:
+    // a fractional pixel size would straddle blocks the tracker skipped
+    private void drawTexture(ShaderProgram program, int texture) {
+        float blockPixels = trackedBlockSize != 0 ? trackedBlockSize : Math.max(1.0f, pixelSize);
+        bindEffect(program, texture, textureStreamer.getWidth(), textureStreamer.getHeight(), blockPixels);
+        drawQuad(program.getPositionLocation(), program.getTexCoordLocation());
+    }
+
+    private void drawGrid(ShaderProgram program, int texture) {
+        bindEffect(program, texture, gridFrameWidth, gridFrameHeight, Math.max(1.0f, pixelSize));
+        // Edge blocks may be partial: the grid spans a little more than the frame, so
+        // scale the lookup to keep every block exactly gridBlockSize frame pixels wide
+        GLES20.glUniform2f(program.getUniformLocation(ShaderEffect.U_TEX_SCALE),
+            (float) gridFrameWidth / (gridFrame.getWidth() * gridBlockSize),
+            (float) gridFrameHeight / (gridFrame.getHeight() * gridBlockSize));
+        drawQuad(program.getPositionLocation(), program.getTexCoordLocation());
+    }
+
+    // Uniforms shared by every effect: u_PixelSize is in frame pixels, so blocks stay
+    // square whatever the frame's aspect ratio
+    private void bindEffect(ShaderProgram program, int texture, int frameWidth, int frameHeight, float blockPixels) {
+        GLES20.glUseProgram(program.getId());
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glUniform1i(program.getUniformLocation(ShaderEffect.U_TEXTURE), 0);
+        GLES20.glUniform2f(program.getUniformLocation(ShaderEffect.U_TEX_SIZE), frameWidth, frameHeight);
+        GLES20.glUniform1f(program.getUniformLocation(ShaderEffect.U_PIXEL_SIZE), blockPixels);
+        for (ShaderEffect.Parameter parameter : program.getEffect().getParameters()) {
+            GLES20.glUniform1f(program.getUniformLocation(parameter.getName()), parameter.getDefaultValue());
         }
     }
 
-    private Bitmap applyPixelation(Bitmap bitmap, float pixelSize) {
+    private void drawQuad(int position, int texCoord) {
+        quadVertices.position(0);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE, quadVertices);
+        GLES20.glEnableVertexAttribArray(position);
+        quadVertices.position(2);
+        GLES20.glVertexAttribPointer(texCoord, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE, quadVertices);
+        GLES20.glEnableVertexAttribArray(texCoord);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(position);
+        GLES20.glDisableVertexAttribArray(texCoord);
+    }
+
+    // The program for the downsample-first path, or null when full frames are drawn.
+    // Retro mode always goes through the grid, since that is where the palette applies.
+    private ShaderProgram gridProgram(ShaderEffect activeEffect) {
         if (!isPixelationEnabled) {
-            return bitmap; // Return the original bitmap if pixelation is disabled
+            return null;
         }
+        if (currentRetro() == null && (!downsampleFirst || blockSize(pixelSize) == 1)) {
+            return null;
+        }
+        return program(activeEffect, ShaderEffect.Variant.GRID);
+    }
 
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        
-        // Create a scaled down version of the bitmap
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(
-            bitmap,
-            Math.max(1, (int)(width / pixelSize)),
-            Math.max(1, (int)(height / pixelSize)),
-            false
-        );
-        
-        // Scale it back up to the original size
-        return Bitmap.createScaledBitmap(scaledBitmap, width, height, false);
+    private Object currentRetro() {
+        Object adaptive = adaptivePalette;
+        return adaptive != null ? adaptive : retroPalette;
     }
 
-    private void renderBitmap(Bitmap bitmap) {
-        // Create a texture and bind it
-        int[] textures = new int[1];
-        GLES20.glGenTextures(1, textures, 0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    private ShaderProgram program(ShaderEffect activeEffect, ShaderEffect.Variant variant) {
+        return activeEffect.supports(variant) ? programCache.get(activeEffect, variant) : null;
+    }
 
-        // Set texture parameters
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    private void uploadGrid(Frame frame, int blockSize, boolean newFrame) {
+        int width = PixelationEngine.gridSize(frame.getWidth(), blockSize);
+        int height = PixelationEngine.gridSize(frame.getHeight(), blockSize);
+        if (gridFrame == null || gridFrame.getWidth() != width || gridFrame.getHeight() != height) {
+            gridFrame = new Frame(width, height);
+        }
+        PixelationCache.Key key = cacheKey(GRID_RESULT, blockSize);
+        if (key == null || !resultCache.get(key, gridFrame.getPixels())) {
+            pixelationEngine.downsample(frame.getPixels(), frame.getWidth(), frame.getHeight(), blockSize,
+                gridFrame.getPixels());
+            if (key != null) {
+                resultCache.put(key, gridFrame.getPixels(), width * height);
+            }
+        }
+        quantizeGrid(width, height, newFrame);
+        gridStreamer.upload(gridFrame.getBuffer(), width, height);
+        gridFrameWidth = frame.getWidth();
+        gridFrameHeight = frame.getHeight();
+        gridBlockSize = blockSize;
+    }
 
-        // Load the bitmap into the texture
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+    // Uploads only the blocks of frame that changed. Changes are judged on the block
+    // averages of the camera frame, which for CPU pixelation is also what frame shows.
+    private void uploadChangedBlocks(Frame frame, int blockSize) {
+        if (blockSize != trackedBlockSize) {
+            dirtyTracker.reset(); // Averages over different blocks can't be compared
+            trackedBlockSize = blockSize;
+        }
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int gridWidth = PixelationEngine.gridSize(width, blockSize);
+        int gridHeight = PixelationEngine.gridSize(height, blockSize);
+        if (dirtyGrid.length < gridWidth * gridHeight) {
+            dirtyGrid = new int[gridWidth * gridHeight];
+        }
+        pixelationEngine.downsample(latestFrame.getPixels(), 0, width, width, height, blockSize,
+            dirtyGrid, 0, gridWidth);
+        int blocks = gridWidth * gridHeight;
+        int dirty = dirtyTracker.update(dirtyGrid, 0, gridWidth, gridWidth, gridHeight);
+        metrics.blocksChecked(blocks, blocks - dirty);
+        textureStreamer.uploadDirty(frame.getBuffer(), width, height, blockSize, dirtyTracker);
+    }
 
-        // Draw the texture using your shader program
-        GLES20.glUseProgram(shaderProgram);
-        // Set up vertex data and draw
-        // Ensure you bind the vertex buffer and set attributes
-        // ...
+    // Maps the grid to the retro palette, if any. An adaptive palette learns from new
+    // frames only, so re-gridding the same frame doesn't skew its histogram.
+    private void quantizeGrid(int width, int height, boolean newFrame) {
+        AdaptivePalette adaptive = adaptivePalette;
+        Palette palette = retroPalette;
+        Object previous = gridRetro;
+        gridRetro = palette;
+        if (adaptive != null) {
+            if (newFrame || previous != adaptive) {
+                adaptive.update(gridFrame.getPixels(), width, height);
+            }
+            palette = adaptive.getPalette();
+            gridRetro = adaptive;
+        }
+        if (palette != null) {
+            paletteQuantizer.quantize(gridFrame.getPixels(), width, height, paletteQuantizer.lutFor(palette));
+        }
+    }
+
+    // CPU pixelation of frame, which is latestFrame, into a reused frame; the source
+    // frame is left untouched.
+    // The summed-area table makes the cost independent of the pixel size. With regions,
+    // only the covered blocks are averaged and the rest of the frame is copied.
+    private Frame applyPixelation(Frame frame, float pixelSize, List<PixelRegion> activeRegions) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (pixelatedFrame == null || pixelatedFrame.getWidth() != width || pixelatedFrame.getHeight() != height) {
+            pixelatedFrame = new Frame(width, height);
+        }
+        if (activeRegions != null && activeRegions != pixelatedRegions) {
+            regionPixelator.setRegions(activeRegions); // Re-indexed on the next pixelate()
+        }
+        pixelatedRegions = activeRegions;
+        if (activeRegions != null) {
+            pixelatedBlockSize = blockSize(pixelSize);
+            regionPixelator.pixelate(frame.getPixels(), pixelatedFrame.getPixels(), width, height, pixelatedBlockSize);
+            return pixelatedFrame;
+        }
+        tableBuilt = false; // Built on the first cache miss
+        return pixelateFromTable(pixelSize);
+    }
+
+    // Full-frame CPU pixelation of latestFrame, from the result cache when it has it
+    private Frame pixelateFromTable(float pixelSize) {
+        pixelatedBlockSize = blockSize(pixelSize);
+        int[] pixels = pixelatedFrame.getPixels();
+        // The CPU path draws plain blocks whatever the effect, so that is what is cached
+        PixelationCache.Key key = cacheKey(EffectRegistry.PIXELATE, pixelatedBlockSize);
+        if (key != null && resultCache.get(key, pixels)) {
+            return pixelatedFrame;
+        }
+        if (!tableBuilt) {
+            frameTable.build(latestFrame.getPixels(), latestFrame.getWidth(), latestFrame.getHeight());
+            tableBuilt = true;
+        }
+        frameTable.pixelate(pixels, pixelatedBlockSize);
+        if (key != null) {
+            resultCache.put(key, pixels, pixels.length);
+        }
+        return pixelatedFrame;
+    }
+
+    // Key for a result computed from latestFrame, hashing the frame on first use; null
+    // without a cache. A newly hashed frame has its results from earlier runs loaded
+    // into memory in the background.
+    private PixelationCache.Key cacheKey(String result, int blockSize) {
+        if (resultCache == null) {
+            return null;
+        }
+        int width = latestFrame.getWidth();
+        int height = latestFrame.getHeight();
+        if (!frameHashed) {
+            frameHash = PixelationCache.contentHash(latestFrame.getPixels(), width, height);
+            frameHashed = true;
+            resultCache.warm(frameHash);
+        }
+        return new PixelationCache.Key(frameHash, width, height, blockSize, result);
+    }
+
+    private static int blockSize(float pixelSize) {
+        return PixelationEngine.blockSize(pixelSize);
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
     }
 
     public void setPixelSize(float size) {
         pixelSize = size;
     }
 
-    // Method to update the camera feed
-    public void updateCameraFeed(Bitmap bitmap) {
-        this.cameraBitmap = bitmap; // Store the bitmap for rendering
-        Log.d("CustomRenderer", "Camera bitmap updated: " + (bitmap != null ? "Valid" : "Null"));
-    }
-
-    // Method to load shaders
-    private int loadShader(int type, String shaderCode) {
-        int shader = GLES20.glCreateShader(type); // Create a vertex shader type
-        GLES20.glShaderSource(shader, shaderCode); // Add the source code to the shader and compile it
-        GLES20.glCompileShader(shader); // Compile the shader
-
-        // Check for compilation errors
-        int[] compiled = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-        if (compiled[0] == 0) {
-            Log.e("Shader", "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-            GLES20.glDeleteShader(shader); // Delete the shader if it failed
-            shader = 0; // Set shader to 0 to indicate failure
-        }
-        return shader; // Return the shader
-    }
-
-    // Vertex shader code
-    private final String vertexShaderCode =
-        "attribute vec4 a_Position;" +
-        "attribute vec2 a_TexCoord;" +
-        "varying vec2 v_TexCoord;" +
-        "void main() {" +
-        "    gl_Position = a_Position;" +
-        "    v_TexCoord = a_TexCoord;" +
-        "}";
-
-    // Fragment shader code
-    private final String fragmentShaderCode =
-        "precision mediump float;" +
-        "uniform sampler2D u_Texture;" +
-        "uniform float u_PixelSize;" +
-        "varying vec2 v_TexCoord;" +
-        "void main() {" +
-        "    vec2 coord = v_TexCoord;" +
-        "    coord = floor(coord / u_PixelSize) * u_PixelSize;" + // Pixelate effect
-        "    gl_FragColor = texture2D(u_Texture, coord);" +
-        "}";
+    // Switches to a registered effect; programs are already built, so this is free
+    public void setEffect(String id) {
+        effect = effectRegistry.get(id);
+    }
+
+    public EffectRegistry getEffectRegistry() {
+        return effectRegistry;
+    }
+
+    // Retro mode: "off" (or null), a fixed Palette.named() palette, or "adaptive<N>"
+    // for an N-colour palette built from the scene
+    public void setPalette(String name) {
+        if (name == null || name.equals("off")) {
+            adaptivePalette = null;
+            retroPalette = null;
+        } else if (name.startsWith("adaptive")) {
+            int colors;
+            try {
+                colors = Integer.parseInt(name.substring("adaptive".length()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unknown palette: " + name);
+            }
+            retroPalette = null;
+            adaptivePalette = new AdaptivePalette(colors);
+        } else {
+            retroPalette = Palette.named(name);
+            adaptivePalette = null;
+        }
+    }
+
+    // Pixelates only the given regions of each frame (faces, plates, ...), or the whole
+    // frame when null. Takes a copy, so the caller may reuse its list.
+    public void setRegions(List<PixelRegion> regions) {
+        this.regions = regions != null ? Collections.unmodifiableList(new ArrayList<>(regions)) : null;
+    }
+
+    // Re-upload only changed blocks of full frames (default) or every frame in full
+    public void setIncremental(boolean enabled) {
+        incremental = enabled;
+    }
+
+    // Chooses between drawing the block grid (default) and shading full frames
+    public void setDownsampleFirst(boolean enabled) {
+        downsampleFirst = enabled;
+    }
+
+    // Method to update the camera feed; takes ownership of the frame.
+    // Must only be called from one producer thread at a time.
+    public void updateCameraFeed(Frame frame) {
+        long droppedBefore = frameMailbox.getDropped();
+        Frame recycled = frameMailbox.publish(frame);
+        if (frameMailbox.getDropped() != droppedBefore) {
+            metrics.frameDropped(); // Replaced before the GL thread got to it
+        }
+        if (recycled != null) {
+            recycled.release(); // Hand the old or skipped frame back to its pool
+        }
+    }
+
+    // Caches pixelation results by frame content, for still images; null turns it off
+    public void setResultCache(PixelationCache cache) {
+        resultCache = cache;
+    }
 
     public void setPixelationEnabled(boolean enabled) {
         isPixelationEnabled = enabled;
@@ -0,0 +1,95 @@
+package com.example.pixelize;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.Buffer;
+
+// GlApi backed by the real GLES20 bindings; only valid on the GL thread
+public class Gles20Api implements GlApi {
+    private final int[] ids = new int[1];
+    private final int[] status = new int[1];
+
+    @Override
+    public int genTexture() {
+        GLES20.glGenTextures(1, ids, 0);
+        return ids[0];
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+        ids[0] = texture;
+        GLES20.glDeleteTextures(1, ids, 0);
+    }
+
+    @Override
+    public void bindTexture(int texture) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    }
+
+    @Override
+    public void texParameteri(int name, int value) {
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, name, value);
+    }
+
+    @Override
+    public void texImage2D(int width, int height, Buffer pixels) {
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+    }
+
+    @Override
+    public void texSubImage2D(int x, int y, int width, int height, Buffer pixels) {
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, width, height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+    }
+
+    @Override
+    public int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e("Shader", "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    @Override
+    public int linkProgram(int vertexShader, int fragmentShader) {
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e("Shader", "Error linking program: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+}
@@ -1,58 +1,102 @@
 package com.example.pixelize;
 
 import android.Manifest;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.SurfaceTexture;
-import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraDevice;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CaptureRequest;
-import android.media.Image;
-import android.media.ImageReader;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.view.Surface;
-import android.view.TextureView;
-import android.widget.FrameLayout;
+import android.os.Looper;
+import android.view.View;
+import android.widget.RelativeLayout;
 import android.widget.SeekBar;
+import android.widget.TextView;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
-import com.google.android.material.button.MaterialButtonToggleGroup;
 
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
-
-import android.hardware.camera2.CameraCharacteristics;
-import android.util.Size;
-import android.hardware.camera2.params.StreamConfigurationMap;
-import android.graphics.ImageFormat;
-import android.graphics.YuvImage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import android.util.Log;
 
 public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_CAMERA_PERMISSION = 200;
+    // Frame being converted, renderer frames, a spare, and for each of the video encoder
+    // and the capture pipeline the frames queued plus the one in progress
+    private static final int FRAME_POOL_SIZE = 4 + VideoRecorder.DEFAULT_QUEUE_CAPACITY + 1
+        + CapturePipeline.DEFAULT_QUEUE_CAPACITY + 1;
+    private static final long OVERLAY_INTERVAL_MS = 1000;
+    private static final int DEFAULT_PROGRESS = 10; // Matches the SeekBar's initial progress
+    private static final int BURST_FRAMES = 10;
+    private static final long BURST_BUDGET_BYTES = 48L << 20; // Ring of ~12 frames at 720p
+    private static final int BURST_MIN_FRAMES = 3; // Two slots and the writer's scratch
+    private static final int BURST_BATCH_FRAMES = 4;
+    private static final String DEFAULT_SIZE = "1280x720"; // Target for format negotiation
+    private static final int DEFAULT_SYNTHETIC_FPS = 30;
+    private static final int STILL_IMAGE_FPS = 10;
+    private static final long RESULT_CACHE_BYTES = 32L << 20; // Still image results in memory
+    private static final long RESULT_DISK_BYTES = 128L << 20; // ... and in the cache dir
+    private static final long GOVERNOR_INTERVAL_MS = 1000;
+    private static final int MAX_FPS = 30;
+    private static final int MIN_FPS = 15;
+    // Arrival to draw: a frame of work at 30 fps plus up to one 60 Hz vsync wait
+    private static final long LATENCY_BUDGET_NANOS = 50_000_000L;
+    private static final float VIDEO_BITS_PER_PIXEL = 0.25f; // ~7 Mbit/s at 720p30
+
+    // Launch extras selecting the frame source, e.g.
+    // adb shell am start -n com.example.pixelize/.MainActivity --es source synthetic --es size 1920x1080 --ei fps 60
+    public static final String EXTRA_SOURCE = "source"; // camera (default), image, synthetic or replay
+    public static final String EXTRA_SIZE = "size";     // Preferred size, WIDTHxHEIGHT
+    public static final String EXTRA_FPS = "fps";       // Synthetic source rate, 0 = unthrottled
+    public static final String EXTRA_FILE = "file";     // Recording name in the external files dir
+    public static final String EXTRA_PACED = "paced";   // Replay at the recorded rate (default true)
+    public static final String EXTRA_DOWNSAMPLE = "downsample"; // Upload only the block grid (default true)
+    public static final String EXTRA_EFFECT = "effect"; // EffectRegistry id (default pixelate)
+    public static final String EXTRA_PALETTE = "palette"; // Retro palette, e.g. ega16 or adaptive64
+    public static final String EXTRA_INCREMENTAL = "incremental"; // Upload only changed blocks (default true)
+    public static final String EXTRA_REGIONS = "regions"; // Pixelate only these, e.g. 0,0,320,240;400,100,600,300
+    public static final String EXTRA_TRACK = "track";     // Follow the regions as they move (default false)
+
     private CustomGLSurfaceView customGLSurfaceView;
     private SeekBar pixelationSeekBar;
-    private boolean isPixelationEnabled = false;
-    private ImageReader imageReader;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession cameraCaptureSession;
-    private CaptureRequest.Builder captureRequestBuilder;
-    private Handler backgroundHandler;
-    private HandlerThread backgroundThread;
+    private volatile boolean isPixelationEnabled = false;
+    private volatile float pixelSize = (DEFAULT_PROGRESS + 1) / 2.0f;
+    private FrameSource frameSource;
+    private FrameProcessor frameProcessor;
+    private boolean sourceStarted;
+    private volatile FrameFormat activeFormat;
+    private ResolutionGovernor governor;
+    private boolean governorLevelPending; // Held back while a burst or video records
+    private final MetricsSnapshot governorSnapshot = new MetricsSnapshot();
+    private int preferredWidth;
+    private int preferredHeight;
+    private PipelineMetrics metrics;
+    private TextView metricsOverlay;
+    private final Handler overlayHandler = new Handler(Looper.getMainLooper());
+    private final MetricsSnapshot overlaySnapshot = new MetricsSnapshot();
+    private final StringBuilder overlayText = new StringBuilder();
+    private CapturePipeline capturePipeline;
+    private final AtomicInteger pendingCaptures = new AtomicInteger();
+    private volatile BurstRecorder burstRecorder;
+    private volatile boolean recordingRequested;
+    private FrameRecordingWriter frameRecorder; // Only touched on the source thread
+    private volatile VideoRecorder videoRecorder;
+    private RegionTracker regionTracker; // Source thread only; null unless tracking
+    private PixelationCache resultCache; // Only for the still image source
+    private MaterialButton btnRecordVideo;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,26 +107,58 @@ public class MainActivity extends AppCompatActivity {
         pixelationSeekBar = findViewById(R.id.pixelationSeekBar);
         MaterialButton btnTakePicture = findViewById(R.id.btn_take_picture);
         MaterialButton toggleButton = findViewById(R.id.togglePixelation);
+        btnRecordVideo = findViewById(R.id.btn_record_video);
+        metricsOverlay = findViewById(R.id.metricsOverlay);
+        metrics = customGLSurfaceView.getMetrics();
+        customGLSurfaceView.setDownsampleFirst(getIntent().getBooleanExtra(EXTRA_DOWNSAMPLE, true));
+        customGLSurfaceView.setIncremental(getIntent().getBooleanExtra(EXTRA_INCREMENTAL, true));
+        try {
+            String effect = getIntent().getStringExtra(EXTRA_EFFECT);
+            if (effect != null) {
+                customGLSurfaceView.setEffect(effect);
+            }
+            customGLSurfaceView.setPalette(getIntent().getStringExtra(EXTRA_PALETTE));
+            String regions = getIntent().getStringExtra(EXTRA_REGIONS);
+            if (regions != null) {
+                List<PixelRegion> parsed = PixelRegion.parseRects(regions);
+                customGLSurfaceView.setRegions(parsed);
+                if (getIntent().getBooleanExtra(EXTRA_TRACK, false)) {
+                    // Regions given at launch act as a detection in the first frame
+                    regionTracker = new RegionTracker();
+                    regionTracker.setRegions(parsed);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w("MainActivity", e.getMessage());
+        }
 
-        btnTakePicture.setOnClickListener(v -> takePicture());
+        // Pipeline timings are only shown on debuggable builds
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        metricsOverlay.setVisibility(debuggable ? View.VISIBLE : View.GONE);
+        // Long-press the overlay to record the raw frame stream for replay on the JVM
+        metricsOverlay.setOnLongClickListener(v -> {
+            recordingRequested = !recordingRequested;
+            return true;
+        });
 
-        // Setup the image reader
-        setupImageReader();
+        btnTakePicture.setOnClickListener(v -> takePicture());
+        btnTakePicture.setOnLongClickListener(v -> {
+            startBurst();
+            return true;
+        });
+        btnRecordVideo.setOnClickListener(v -> toggleVideo());
+        capturePipeline = new CapturePipeline(getExternalFilesDir(null), "pixelize",
+            new BitmapFrameEncoder(Bitmap.CompressFormat.PNG, 100), new PixelationEngine(),
+            CapturePipeline.DEFAULT_QUEUE_CAPACITY, captureListener);
 
-        // Start the camera
-        if (checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
-            openCamera();
-        } else {
-            requestPermissions(new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
-        }
+        frameProcessor = new FrameProcessor(FRAME_POOL_SIZE, metrics, this::onFrame);
+        frameSource = createFrameSource(getIntent());
 
         pixelationSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                float pixelSize = (progress + 1) / 2.0f;
-                if (customGLSurfaceView != null) {
-                    customGLSurfaceView.setPixelSize(pixelSize);
-                }
+                pixelSize = (progress + 1) / 2.0f;
+                onPixelationChanged();
             }
 
             @Override
@@ -99,289 +175,487 @@ public class MainActivity extends AppCompatActivity {
                 customGLSurfaceView.setPixelationEnabled(isChecked);
             }
             pixelationSeekBar.setEnabled(isChecked);
+            onPixelationChanged();
         });
 
         pixelationSeekBar.setEnabled(false);
     }
 
-    private void setupImageReader() {
-        imageReader = ImageReader.newInstance(1280, 720, ImageFormat.YUV_420_888, 2);
-        imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-            @Override
-            public void onImageAvailable(ImageReader reader) {
-                Image image = null;
-                try {
-                    image = reader.acquireLatestImage();
-                    if (image != null) {
-                        Log.d("MainActivity", "Image received from camera");
-                        Bitmap bitmap = imageToBitmap(image);
-                        customGLSurfaceView.updateCameraFeed(bitmap);
-                    } else {
-                        Log.d("MainActivity", "No image available");
-                    }
-                } finally {
-                    if (image != null) {
-                        image.close();
-                    }
-                }
+    // Picks the frame source from the launch extras; the camera unless told otherwise
+    private FrameSource createFrameSource(Intent intent) {
+        String size = intent.getStringExtra(EXTRA_SIZE);
+        String[] parts = (size != null ? size : DEFAULT_SIZE).split("x");
+        try {
+            preferredWidth = Integer.parseInt(parts[0]);
+            preferredHeight = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            Log.w("MainActivity", "Ignoring bad size " + size);
+            preferredWidth = 1280;
+            preferredHeight = 720;
+        }
+
+        String source = intent.getStringExtra(EXTRA_SOURCE);
+        if ("synthetic".equals(source)) {
+            return new SyntheticFrameSource(intent.getIntExtra(EXTRA_FPS, DEFAULT_SYNTHETIC_FPS),
+                new FrameFormat(preferredWidth, preferredHeight, FrameFormat.Encoding.YUV_420));
+        }
+        if ("image".equals(source)) {
+            Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.sample_image);
+            int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+            bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+            FrameSource still = SyntheticFrameSource.ofImage(pixels, bitmap.getWidth(), bitmap.getHeight(), STILL_IMAGE_FPS);
+            bitmap.recycle();
+            resultCache = createResultCache();
+            customGLSurfaceView.setResultCache(resultCache);
+            return still;
+        }
+        if ("replay".equals(source)) {
+            File file = new File(getExternalFilesDir(null), String.valueOf(intent.getStringExtra(EXTRA_FILE)));
+            try {
+                return new ReplayFrameSource(file, intent.getBooleanExtra(EXTRA_PACED, true), true);
+            } catch (IOException e) {
+                Log.e("MainActivity", "Cannot replay " + file + ", using the camera", e);
             }
-        }, backgroundHandler);
+        }
+        return new Camera2FrameSource(this, metrics);
     }
 
-    private void createCameraPreview() {
+    // Results on disk too when the cache dir is usable, so they outlive the activity
+    private PixelationCache createResultCache() {
         try {
-            captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            captureRequestBuilder.addTarget(imageReader.getSurface());
-
-            cameraDevice.createCaptureSession(
-                Arrays.asList(imageReader.getSurface()),
-                new CameraCaptureSession.StateCallback() {
-                    @Override
-                    public void onConfigured(@NonNull CameraCaptureSession session) {
-                        if (cameraDevice == null) return;
-                        cameraCaptureSession = session;
-                        updatePreview();
-                    }
-
-                    @Override
-                    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
-                        // Handle error
-                    }
-
-                    @Override
-                    public void onClosed(@NonNull CameraCaptureSession session) {
-                        super.onClosed(session);
-                        Log.d("Camera", "Camera capture session closed");
-                    }
-                },
-                backgroundHandler
-            );
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-            // Attempt to reopen the camera if disconnected
-            if (e.getReason() == CameraAccessException.CAMERA_DISCONNECTED) {
-                Log.e("Camera", "Camera disconnected, attempting to reopen");
-                openCamera();
-            }
+            File directory = new File(getCacheDir(), "pixelation");
+            return new PixelationCache(RESULT_CACHE_BYTES, new MappedResultStore(directory, RESULT_DISK_BYTES));
+        } catch (IOException e) {
+            Log.w("MainActivity", "Result cache in memory only", e);
+            return new PixelationCache(RESULT_CACHE_BYTES);
         }
     }
 
-    // You can find the logs in the Logcat window of Android Studio. 
-    // Make sure to filter by the tag "MainActivity" to see the relevant log messages.
-    private void openCamera() {
-        Log.d("MainActivity", "Attempting to open camera");
-        CameraManager manager = (CameraManager) getSystemService(CAMERA_SERVICE);
-        try {
-            String cameraId = manager.getCameraIdList()[0];
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
-                ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+    // Negotiates a format with the source and starts it. The camera runs under the
+    // resolution governor; the other sources are test inputs and run as configured.
+    private void startFrameSource() {
+        if (sourceStarted) {
+            return;
+        }
+        boolean camera = frameSource instanceof Camera2FrameSource;
+        if (camera && checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+            return;
+        }
+        FrameFormat format;
+        if (governor != null) {
+            format = governor.getLevel().getFormat();
+        } else {
+            List<FrameFormat> formats = frameSource.getSupportedFormats();
+            if (formats.isEmpty()) {
+                Log.e("MainActivity", "Frame source offers no formats");
                 return;
             }
-            manager.openCamera(cameraId, stateCallback, null);
-            Log.d("MainActivity", "Camera opened successfully"); // Moved inside try block for clarity
-        } catch (CameraAccessException e) {
-            Log.e("MainActivity", "Camera access exception: " + e.getMessage()); // Changed to error log for exceptions
-            e.printStackTrace();
+            format = FrameFormat.negotiate(formats, preferredWidth, preferredHeight);
+            if (camera) {
+                governor = new ResolutionGovernor(governorFormats(formats, format), MAX_FPS, MIN_FPS, LATENCY_BUDGET_NANOS);
+                governor.setPixelSize(isPixelationEnabled ? pixelSize : 1);
+                format = governor.getLevel().getFormat();
+                Log.i("MainActivity", "Resolution ladder " + governor.getLadder());
+            }
+        }
+        Log.i("MainActivity", "Starting " + frameSource.getClass().getSimpleName() + " at "
+            + (governor != null ? governor.getLevel() : format));
+        ensureBurstRecorder(governor != null ? governor.getLadder().get(0).getFormat() : format);
+        activeFormat = format;
+        governorLevelPending = false; // Starting at the current level
+        adjustAspectRatio(format);
+        frameProcessor.setMaxFrameRate(governor != null ? governor.getLevel().getFps() : 0);
+        frameSource.start(format, this::onRawFrame);
+        sourceStarted = true;
+        customGLSurfaceView.setPixelSize(renderPixelSize());
+        if (governor != null) {
+            metrics.snapshot(governorSnapshot, System.nanoTime()); // Start a fresh window
+            overlayHandler.postDelayed(updateGovernor, GOVERNOR_INTERVAL_MS);
         }
     }
 
-    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
-        @Override
-        public void onOpened(@NonNull CameraDevice camera) {
-            cameraDevice = camera;
-            createCameraPreview();
+    // One ring for every level of the ladder, sized for its largest format. The budget
+    // grows past BURST_BUDGET_BYTES when that cannot hold even the minimum ring, so
+    // 4K frames still get a (short) burst instead of failing to start.
+    private void ensureBurstRecorder(FrameFormat largest) {
+        BurstRecorder burst = burstRecorder;
+        if (burst != null && burst.fits(largest.getWidth(), largest.getHeight())) {
+            return;
         }
+        if (burst != null) {
+            burst.close();
+        }
+        long frameBytes = (long) largest.getWidth() * largest.getHeight() * 4;
+        burstRecorder = new BurstRecorder(largest.getWidth(), largest.getHeight(),
+            Math.max(BURST_BUDGET_BYTES, BURST_MIN_FRAMES * frameBytes), BURST_BATCH_FRAMES,
+            new PixelationEngine());
+    }
 
-        @Override
-        public void onDisconnected(@NonNull CameraDevice camera) {
-            cameraDevice.close();
+    // The negotiated format and the smaller sizes with the same aspect ratio, so
+    // stepping down never changes the field of view
+    private static List<FrameFormat> governorFormats(List<FrameFormat> formats, FrameFormat negotiated) {
+        List<FrameFormat> candidates = new ArrayList<>();
+        for (FrameFormat format : formats) {
+            boolean sameAspect = Math.abs((long) format.getWidth() * negotiated.getHeight()
+                - (long) format.getHeight() * negotiated.getWidth()) <= (long) negotiated.getWidth() * negotiated.getHeight() / 100;
+            if (format.getEncoding() == negotiated.getEncoding() && sameAspect
+                    && format.getWidth() <= negotiated.getWidth() && format.getHeight() <= negotiated.getHeight()
+                    && !candidates.contains(format)) {
+                candidates.add(format);
+            }
         }
+        return candidates;
+    }
 
+    private final Runnable updateGovernor = new Runnable() {
         @Override
-        public void onError(@NonNull CameraDevice camera, int error) {
-            cameraDevice.close();
-            cameraDevice = null;
+        public void run() {
+            metrics.snapshot(governorSnapshot, System.nanoTime());
+            if (!isRecording() && governor.update(governorSnapshot)) {
+                governorLevelPending = true;
+            }
+            applyPendingGovernorLevel(); // Also picks up a level held back while recording
+            overlayHandler.postDelayed(this, GOVERNOR_INTERVAL_MS);
         }
     };
 
-    private void updatePreview() {
-        if (cameraDevice == null) return;
-        try {
-            cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
-        }
+    // A burst or video in flight must not lose its frame size to a restart
+    private boolean isRecording() {
+        return burstRecorder.isBusy() || videoRecorder != null;
     }
 
-    private void takePicture() {
-        if (customGLSurfaceView.getBitmap() != null) {
-            try {
-                File file = new File(getExternalFilesDir(null), "captured_image.png");
-                FileOutputStream fos = new FileOutputStream(file);
-                customGLSurfaceView.getBitmap().compress(Bitmap.CompressFormat.PNG, 100, fos);
-                fos.flush();
-                fos.close();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    private void applyPendingGovernorLevel() {
+        if (governorLevelPending && sourceStarted && !isRecording()) {
+            governorLevelPending = false;
+            applyGovernorLevel();
         }
     }
 
-    @Override
-    protected void onResume() {
-        super.onResume();
-        startBackgroundThread();
-        if (customGLSurfaceView.isAvailable()) {
-            openCamera();
-        } else {
-            Log.d("MainActivity", "Surface is not available yet.");
+    // Frame rate changes apply in place; a new resolution restarts the source
+    private void applyGovernorLevel() {
+        ResolutionGovernor.Level level = governor.getLevel();
+        Log.i("MainActivity", "Governor level " + level);
+        if (level.getFormat().equals(activeFormat)) {
+            frameProcessor.setMaxFrameRate(level.getFps());
+            return;
         }
+        stopFrameSource();
+        startFrameSource();
     }
 
-    @Override
-    protected void onPause() {
-        super.onPause();
-        closeCamera();
-        stopBackgroundThread();
+    private void onPixelationChanged() {
+        if (governor != null && governor.setPixelSize(isPixelationEnabled ? pixelSize : 1)) {
+            governorLevelPending = true;
+            applyPendingGovernorLevel();
+        }
+        if (customGLSurfaceView != null) {
+            customGLSurfaceView.setPixelSize(renderPixelSize());
+        }
+        VideoRecorder video = videoRecorder;
+        if (video != null) {
+            video.setBlockSize(captureBlockSize());
+        }
     }
 
-    private void closeCamera() {
-        if (cameraCaptureSession != null) {
-            cameraCaptureSession.close();
-            cameraCaptureSession = null;
-        }
-        if (cameraDevice != null) {
-            cameraDevice.close();
-            cameraDevice = null;
+    // pixelSize is in pixels of the largest resolution; scaling it with the active
+    // resolution keeps the block grid the same when the governor steps down
+    private float renderPixelSize() {
+        FrameFormat format = activeFormat;
+        if (governor == null || format == null) {
+            return pixelSize;
         }
+        int referenceWidth = governor.getLadder().get(0).getFormat().getWidth();
+        return Math.max(1, pixelSize * format.getWidth() / referenceWidth);
     }
 
-    private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+    private int captureBlockSize() {
+        return isPixelationEnabled ? Math.max(1, Math.round(renderPixelSize())) : 1;
     }
 
-    private void stopBackgroundThread() {
-        backgroundThread.quitSafely();
-        try {
-            backgroundThread.join();
-            backgroundThread = null;
-            backgroundHandler = null;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    private void stopFrameSource() {
+        if (!sourceStarted) {
+            return;
         }
+        overlayHandler.removeCallbacks(updateGovernor);
+        frameSource.stop();
+        sourceStarted = false;
+        recordingRequested = false;
+        stopRecording(); // Safe here: the source thread has finished
+        stopVideo();
     }
 
-    @Override
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
-        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
-        if (requestCode == REQUEST_CAMERA_PERMISSION) {
-            if (grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                openCamera();
+    // Source thread
+    private void onRawFrame(RawFrame raw) {
+        updateRecording(raw);
+        frameProcessor.onFrame(raw);
+    }
+
+    // Source thread, with a pooled frame we own
+    private void onFrame(Frame frame) {
+        submitPendingCapture(frame);
+        burstRecorder.offer(frame);
+        VideoRecorder video = videoRecorder;
+        if (video != null) {
+            video.offer(frame); // Drops the frame if the encoder is behind
+        }
+        RegionTracker tracker = regionTracker;
+        if (tracker != null) {
+            // The same list back means nothing moved; skip re-indexing the regions
+            List<PixelRegion> before = tracker.getRegions();
+            List<PixelRegion> tracked = tracker.track(frame.getPixels(), frame.getWidth(), frame.getHeight());
+            if (tracked != before) {
+                customGLSurfaceView.setRegions(tracked);
             }
         }
+        customGLSurfaceView.updateCameraFeed(frame);
     }
 
-    private void adjustAspectRatio(int viewWidth, int viewHeight) {
-        if (customGLSurfaceView == null || cameraDevice == null) return;
+    // Captures the next camera frame; the save itself happens in the background
+    private void takePicture() {
+        pendingCaptures.incrementAndGet();
+    }
+
+    // Called on the source thread while it still owns the frame. Sharing the pooled
+    // frame is a reference count bump, so this never stalls the preview.
+    private void submitPendingCapture(Frame frame) {
+        if (pendingCaptures.get() > 0) {
+            pendingCaptures.decrementAndGet();
+            capturePipeline.submit(frame.retain(), captureBlockSize());
+        }
+    }
 
-        // Get the camera's aspect ratio
-        int cameraWidth = 1280; // Replace with actual camera width
-        int cameraHeight = 720;  // Replace with actual camera height
+    // Records the next BURST_FRAMES camera frames as raw RGBA into a single file
+    private void startBurst() {
+        BurstRecorder burst = burstRecorder;
+        FrameFormat format = activeFormat;
+        if (burst == null || format == null) {
+            return;
+        }
+        if (burst.isBusy()) {
+            Toast.makeText(this, "Burst still saving", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String name = "burst_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date())
+            + "_" + format.getWidth() + "x" + format.getHeight() + ".rgba";
+        File file = new File(getExternalFilesDir(null), name);
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            burst.start(channel, format.getWidth(), format.getHeight(), BURST_FRAMES, captureBlockSize(), (written, dropped, error) -> {
+                if (error != null) {
+                    Log.e("MainActivity", "Burst failed", error);
+                    file.delete();
+                    return;
+                }
+                Log.i("MainActivity", "Burst of " + written + " frames saved to " + file + ", " + dropped + " dropped");
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Saved burst " + file.getName(), Toast.LENGTH_SHORT).show());
+            });
+        } catch (IOException e) {
+            Log.e("MainActivity", "Cannot create " + file, e);
+        }
+    }
 
-        float ratio = (float) cameraWidth / cameraHeight;
-        if (viewWidth > viewHeight * ratio) {
-            viewWidth = (int) (viewHeight * ratio);
+    private void toggleVideo() {
+        if (videoRecorder != null) {
+            stopVideo();
         } else {
-            viewHeight = (int) (viewWidth / ratio);
+            startVideo();
         }
+    }
 
-        customGLSurfaceView.setLayoutParams(new FrameLayout.LayoutParams(viewWidth, viewHeight));
+    // Records the pixelated stream at preview rate to an MP4 until stopped
+    private void startVideo() {
+        FrameFormat format = activeFormat;
+        if (format == null || !sourceStarted) {
+            return;
+        }
+        int fps = governor != null ? governor.getLevel().getFps() : MAX_FPS;
+        String name = "video_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".mp4";
+        File file = new File(getExternalFilesDir(null), name);
+        int bitRate = (int) (format.getWidth() * format.getHeight() * fps * VIDEO_BITS_PER_PIXEL);
+        VideoRecorder video = new VideoRecorder(new MediaCodecVideoSink(file, fps, bitRate),
+            format.getWidth(), format.getHeight(), VideoRecorder.DEFAULT_QUEUE_CAPACITY, new PixelationEngine(),
+            (written, dropped, error) -> {
+                if (error != null) {
+                    Log.e("MainActivity", "Video failed", error);
+                    file.delete();
+                    runOnUiThread(this::stopVideo);
+                    return;
+                }
+                Log.i("MainActivity", "Video of " + written + " frames saved to " + file + ", " + dropped + " dropped");
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Saved " + file.getName(), Toast.LENGTH_SHORT).show());
+            });
+        video.setBlockSize(captureBlockSize());
+        videoRecorder = video;
+        btnRecordVideo.setText("Stop Video");
     }
 
-    private void startCamera() {
-        CameraManager manager = (CameraManager) getSystemService(CAMERA_SERVICE);
-        try {
-            String cameraId = manager.getCameraIdList()[0];
-            
-            // Get the camera characteristics to determine the optimal preview size
-            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (map == null) {
-                return;
-            }
+    // The encoder finishes what is queued and writes the file in the background
+    private void stopVideo() {
+        VideoRecorder video = videoRecorder;
+        if (video == null) {
+            return;
+        }
+        videoRecorder = null;
+        video.close();
+        btnRecordVideo.setText("Record Video");
+        applyPendingGovernorLevel();
+    }
 
-            // Choose an appropriate preview size
-            Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
-            int width = sizes[0].getWidth();   // Get the width from camera capabilities
-            int height = sizes[0].getHeight(); // Get the height from camera capabilities
-
-            // Now create the ImageReader with these dimensions
-            ImageReader imageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, 2);
-            imageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
-                @Override
-                public void onImageAvailable(ImageReader reader) {
-                    Image image = null;
-                    try {
-                        image = reader.acquireLatestImage();
-                        if (image != null) {
-                            // Convert image to Bitmap
-                            Bitmap bitmap = imageToBitmap(image);
-                            // Pass the bitmap to the renderer
-                            customGLSurfaceView.updateCameraFeed(bitmap);
-                        }
-                    } finally {
-                        if (image != null) {
-                            image.close();
-                        }
-                    }
-                }
-            }, backgroundHandler);
-        } catch (CameraAccessException e) {
-            e.printStackTrace();
+    // Source thread: opens or closes the recording as requested, then appends
+    private void updateRecording(RawFrame raw) {
+        if (recordingRequested && frameRecorder == null) {
+            String name = "recording_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date())
+                + "." + FrameRecording.FILE_EXTENSION;
+            File file = new File(getExternalFilesDir(null), name);
+            FrameRecording.PixelFormat format = raw.getFormat().getEncoding() == FrameFormat.Encoding.YUV_420
+                ? FrameRecording.PixelFormat.I420 : FrameRecording.PixelFormat.RGBA;
+            try {
+                frameRecorder = new FrameRecordingWriter(file, format, raw.getWidth(), raw.getHeight());
+                Log.i("MainActivity", "Recording to " + file);
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Recording " + name, Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e("MainActivity", "Cannot record to " + file, e);
+                recordingRequested = false;
+            }
+        } else if (!recordingRequested && frameRecorder != null) {
+            stopRecording();
+        }
+        if (frameRecorder != null) {
+            try {
+                frameRecorder.append(raw);
+            } catch (IOException e) {
+                Log.e("MainActivity", "Recording failed", e);
+                recordingRequested = false;
+                stopRecording();
+            }
         }
     }
 
-    private Bitmap imageToBitmap(Image image) {
-        Image.Plane[] planes = image.getPlanes();
-        ByteBuffer buffer = planes[0].getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        
-        // Create a YUV to RGB conversion
-        YuvImage yuvImage = new YuvImage(bytes, ImageFormat.NV21, image.getWidth(), image.getHeight(), null);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new Rect(0, 0, yuvImage.getWidth(), yuvImage.getHeight()), 100, out);
-        byte[] imageBytes = out.toByteArray();
-        
-        Bitmap bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
-        Log.d("MainActivity", "Bitmap created with dimensions: " + bitmap.getWidth() + "x" + bitmap.getHeight());
-        return bitmap;
+    private void stopRecording() {
+        if (frameRecorder == null) {
+            return;
+        }
+        long frames = frameRecorder.getFrameCount();
+        try {
+            frameRecorder.close();
+            Log.i("MainActivity", "Recorded " + frames + " frames");
+        } catch (IOException e) {
+            Log.e("MainActivity", "Cannot finish recording", e);
+        }
+        frameRecorder = null;
     }
 
-    private TextureView.SurfaceTextureListener surfaceTextureListener = new TextureView.SurfaceTextureListener() {
+    private final CapturePipeline.Listener captureListener = new CapturePipeline.Listener() {
         @Override
-        public void onSurfaceTextureAvailable(@NonNull SurfaceTexture surface, int width, int height) {
-            Log.d("MainActivity", "Surface texture available, opening camera");
-            openCamera(); // Call openCamera() here
-            adjustAspectRatio(width, height);
+        public void onCaptureSaved(File file) {
+            Log.i("MainActivity", "Capture saved to " + file);
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, "Saved " + file.getName(), Toast.LENGTH_SHORT).show());
         }
 
         @Override
-        public void onSurfaceTextureSizeChanged(@NonNull SurfaceTexture surface, int width, int height) {
-            adjustAspectRatio(width, height);
+        public void onCaptureFailed(Throwable error) {
+            Log.e("MainActivity", "Capture failed", error);
         }
 
         @Override
-        public boolean onSurfaceTextureDestroyed(@NonNull SurfaceTexture surface) {
-            closeCamera();
-            return true;
+        public void onCaptureRejected() {
+            Log.w("MainActivity", "Capture rejected, encoder queue full");
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, "Still saving, capture skipped", Toast.LENGTH_SHORT).show());
         }
+    };
 
+    private final Runnable updateMetricsOverlay = new Runnable() {
         @Override
-        public void onSurfaceTextureUpdated(@NonNull SurfaceTexture surface) {
-            // No need to update anything here
+        public void run() {
+            metrics.snapshot(overlaySnapshot, System.nanoTime());
+            overlayText.setLength(0);
+            overlaySnapshot.appendTo(overlayText);
+            PixelationCache cache = resultCache;
+            if (cache != null) {
+                overlayText.append("\ncache ").append(cache.getHits()).append(" hits, ")
+                    .append(cache.getDiskHits()).append(" disk, ").append(cache.getMisses()).append(" misses, ")
+                    .append(cache.getEvictions()).append(" evicted");
+            }
+            metricsOverlay.setText(overlayText);
+            overlayHandler.postDelayed(this, OVERLAY_INTERVAL_MS);
         }
     };
-} 
\ No newline at end of file
+
+    // Logs the cumulative pipeline timings
+    private void dumpMetrics() {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.snapshot(snapshot, System.nanoTime());
+        Log.i("MainActivity", "Pipeline metrics (cumulative):\n" + snapshot.appendTo(new StringBuilder()));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (metricsOverlay.getVisibility() == View.VISIBLE) {
+            overlayHandler.post(updateMetricsOverlay);
+        }
+        startFrameSource();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        overlayHandler.removeCallbacks(updateMetricsOverlay);
+        dumpMetrics();
+        stopFrameSource();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        capturePipeline.close(); // Queued captures still finish
+        if (burstRecorder != null) {
+            burstRecorder.close();
+        }
+        stopVideo();
+        if (resultCache != null) {
+            resultCache.close(); // Queued disk writes still finish
+        }
+        if (frameSource instanceof Closeable) {
+            try {
+                ((Closeable) frameSource).close();
+            } catch (IOException e) {
+                Log.w("MainActivity", "Cannot close frame source", e);
+            }
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_CAMERA_PERMISSION) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startFrameSource();
+            }
+        }
+    }
+
+    // Letterboxes the preview to the negotiated frame aspect ratio
+    private void adjustAspectRatio(FrameFormat format) {
+        View parent = (View) customGLSurfaceView.getParent();
+        int viewWidth = parent.getWidth();
+        int viewHeight = parent.getHeight();
+        if (viewWidth == 0 || viewHeight == 0) {
+            parent.post(() -> adjustAspectRatio(format)); // Not laid out yet
+            return;
+        }
+
+        float ratio = (float) format.getWidth() / format.getHeight();
+        if (viewWidth > viewHeight * ratio) {
+            viewWidth = (int) (viewHeight * ratio);
+        } else {
+            viewHeight = (int) (viewWidth / ratio);
+        }
+
+        RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(viewWidth, viewHeight);
+        params.addRule(RelativeLayout.CENTER_IN_PARENT);
+        customGLSurfaceView.setLayoutParams(params);
+    }
+}
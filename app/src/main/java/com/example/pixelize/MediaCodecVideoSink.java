@@ -0,0 +1,145 @@
+package com.example.pixelize;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Encodes to H.264 in an MP4 with the device's (usually hardware) encoder. Each frame
+// is converted straight into the codec's own input image, whatever its plane layout,
+// so the only pass over the pixels is the colour conversion itself. Encoded output is
+// drained into the muxer after every frame, which keeps the codec's queues moving.
+public final class MediaCodecVideoSink implements VideoSink {
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final long TIMEOUT_US = 10_000;
+    private static final int MAX_WAITS = 100; // A second of timeouts
+    private static final int KEY_FRAME_INTERVAL_SECONDS = 1;
+
+    private final File file;
+    private final int frameRate;
+    private final int bitRate;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private MediaCodec codec;
+    private MediaMuxer muxer;
+    private int track = -1;
+    private int width;
+    private int height;
+    private long lastPresentationUs;
+
+    public MediaCodecVideoSink(File file, int frameRate, int bitRate) {
+        this.file = file;
+        this.frameRate = frameRate;
+        this.bitRate = bitRate;
+    }
+
+    @Override
+    public void start(int width, int height) throws IOException {
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IOException("Encoder needs an even frame size, not " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+            MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, KEY_FRAME_INTERVAL_SECONDS);
+        codec = MediaCodec.createEncoderByType(MIME_TYPE);
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        codec.start();
+        muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    @Override
+    public void writeFrame(Frame frame, long presentationTimeUs) throws IOException {
+        int index = dequeueInput();
+        Image image = codec.getInputImage(index);
+        if (image == null) {
+            throw new IOException("Encoder has no input image");
+        }
+        Image.Plane[] planes = image.getPlanes();
+        ArgbToYuv.convert(frame.getPixels(), width, height,
+            planes[0].getBuffer(), planes[0].getRowStride(),
+            planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+        int size = FrameRecording.PixelFormat.I420.frameBytes(width, height);
+        codec.queueInputBuffer(index, 0, size, presentationTimeUs, 0);
+        lastPresentationUs = presentationTimeUs;
+        drain(false);
+    }
+
+    // Waits for an input buffer, draining output meanwhile so the codec can free one
+    private int dequeueInput() throws IOException {
+        for (int attempt = 0; attempt < MAX_WAITS; attempt++) {
+            int index = codec.dequeueInputBuffer(TIMEOUT_US);
+            if (index >= 0) {
+                return index;
+            }
+            drain(false);
+        }
+        throw new IOException("Encoder stopped taking input");
+    }
+
+    // Moves encoded output into the muxer; at the end of the stream, waits for the last of it
+    private void drain(boolean endOfStream) throws IOException {
+        int waits = 0;
+        while (true) {
+            int index = codec.dequeueOutputBuffer(info, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+                if (++waits == MAX_WAITS) {
+                    throw new IOException("Encoder never finished the stream");
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                if (track >= 0) {
+                    throw new IOException("Encoder format changed twice");
+                }
+                track = muxer.addTrack(codec.getOutputFormat());
+                muxer.start();
+            } else if (index >= 0) {
+                ByteBuffer data = codec.getOutputBuffer(index);
+                boolean config = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                if (data != null && info.size > 0 && !config && track >= 0) {
+                    data.position(info.offset);
+                    data.limit(info.offset + info.size);
+                    muxer.writeSampleData(track, data, info);
+                }
+                codec.releaseOutputBuffer(index, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (codec != null) {
+                int index = dequeueInput();
+                codec.queueInputBuffer(index, 0, 0, lastPresentationUs + 1, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                drain(true);
+            }
+        } finally {
+            if (codec != null) {
+                codec.stop();
+                codec.release();
+                codec = null;
+            }
+            if (muxer != null) {
+                if (track >= 0) {
+                    muxer.stop();
+                }
+                muxer.release();
+                muxer = null;
+            }
+        }
+    }
+}
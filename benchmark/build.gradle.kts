@@ -0,0 +1,22 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+// JMH benchmarks for the frame pipeline. Run with ./gradlew :benchmark:jmh
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    profilers.add("gc") // Reports allocation rate per benchmark
+    resultFormat.set("JSON")
+    // Vector kernels come from the Java 17 part of the core jar, so run on JDK 17+
+    jvmArgs.addAll("--add-modules", "jdk.incubator.vector")
+}
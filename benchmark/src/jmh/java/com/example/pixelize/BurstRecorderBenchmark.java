@@ -0,0 +1,90 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Sustained 720p bursts to a file through BurstRecorder with the app's 48 MB budget,
+// fed by a producer paced like a camera. The score is bursts/s; the written and
+// dropped counters give frames/s reaching the disk and frames/s lost to a full ring.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BurstRecorderBenchmark {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final long BUDGET_BYTES = 48L << 20;
+    private static final int BATCH_FRAMES = 4;
+    private static final int BURST_FRAMES = 30;
+
+    @Param({"30", "60", "120"})
+    public int fps;
+
+    @Param({"1", "16"})
+    public int blockSize;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long written;
+        public long dropped;
+    }
+
+    private BurstRecorder recorder;
+    private Frame frame;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        recorder = new BurstRecorder(WIDTH, HEIGHT, BUDGET_BYTES, BATCH_FRAMES, new PixelationEngine());
+        frame = new Frame(WIDTH, HEIGHT);
+        System.arraycopy(SyntheticFrames.argb(WIDTH, HEIGHT), 0, frame.getPixels(), 0, WIDTH * HEIGHT);
+        file = File.createTempFile("burst", ".rgba");
+    }
+
+    @TearDown
+    public void tearDown() {
+        recorder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void burst(Frames frames) throws Exception {
+        long written = recorder.getFramesWritten();
+        long dropped = recorder.getFramesDropped();
+        recorder.start(FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), BURST_FRAMES, blockSize, null);
+        long interval = TimeUnit.SECONDS.toNanos(1) / fps;
+        long next = System.nanoTime();
+        while (recorder.isCapturing()) {
+            recorder.offer(frame);
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        if (!recorder.awaitCompletion(60_000)) {
+            throw new IllegalStateException("Burst did not finish");
+        }
+        frames.written += recorder.getFramesWritten() - written;
+        frames.dropped += recorder.getFramesDropped() - dropped;
+    }
+}
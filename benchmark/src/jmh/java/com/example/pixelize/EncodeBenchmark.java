@@ -0,0 +1,59 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Still-capture encode cost of a pixelated frame, PNG against JPEG.
+// ImageIO stands in for Bitmap.compress, which needs a device.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"png", "jpg"})
+    public String format;
+
+    @Param({"1", "16"})
+    public int pixelSize;
+
+    private BufferedImage image;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        int[] src = SyntheticFrames.argb(size[0], size[1]);
+        image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        new PixelationEngine().pixelate(src, pixels, size[0], size[1], pixelSize);
+        out = new ByteArrayOutputStream(size[0] * size[1] * 4);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        out.reset();
+        ImageIO.write(image, format, out);
+        return out.size();
+    }
+}
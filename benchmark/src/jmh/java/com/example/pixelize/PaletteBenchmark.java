@@ -0,0 +1,76 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Retro palette cost on a 1080p frame: mapping through the LUT against the
+// per-pixel nearest-colour search it replaces, building the LUT, and one adaptive
+// median-cut rebuild. The block grid the renderer quantises is pixels / blockSize^2
+// of this work.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaletteBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"ega16", "rgb64", "rgb332"})
+    public String palette;
+
+    private Palette colors;
+    private int[] src;
+    private int[] dst;
+    private PaletteQuantizer quantizer;
+    private ColorLut lut;
+
+    @Setup
+    public void setUp() {
+        colors = Palette.named(palette);
+        src = SyntheticFrames.argb(WIDTH, HEIGHT);
+        dst = new int[src.length];
+        quantizer = new PaletteQuantizer();
+        lut = quantizer.lutFor(colors);
+    }
+
+    @Benchmark
+    public int[] lutParallel() {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        quantizer.quantize(dst, WIDTH, HEIGHT, lut);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] bruteForceSearch() {
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = colors.getColor(colors.nearest(src[i])) | (src[i] & 0xFF000000);
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public ColorLut buildLut() {
+        return ColorLut.build(colors, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public Palette adaptiveRebuild() {
+        AdaptivePalette adaptive = new AdaptivePalette(colors.size(), 8192, 1);
+        adaptive.update(src, WIDTH, HEIGHT);
+        return adaptive.getPalette();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Block pixelation cost per frame across pixel sizes: the block-average engine on
+// 1, 2, 4 and 8 workers and on the common pool, the summed-area table (build + fill),
+// and reducing to the block grid only (the downsample-first render path)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelationBenchmark {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"2", "4", "8", "16", "32", "64"})
+    public int pixelSize;
+
+    private int width;
+    private int height;
+    private int[] src;
+    private int[] dst;
+    private int[] grid;
+    private PixelationEngine parallelEngine;
+    private SummedAreaTable table;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        width = size[0];
+        height = size[1];
+        src = SyntheticFrames.argb(width, height);
+        dst = new int[src.length];
+        grid = new int[PixelationEngine.gridSize(width, pixelSize) * PixelationEngine.gridSize(height, pixelSize)];
+        parallelEngine = new PixelationEngine();
+        table = new SummedAreaTable();
+    }
+
+    // A pool of its own per worker count; only blockAverage() is run across them
+    @State(Scope.Benchmark)
+    public static class Workers {
+        @Param({"1", "2", "4", "8"})
+        public int workers;
+
+        private ForkJoinPool pool;
+        private PixelationEngine engine;
+
+        @Setup
+        public void setUp() {
+            pool = new ForkJoinPool(workers);
+            engine = new PixelationEngine(pool);
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int[] blockAverage(Workers workers) {
+        workers.engine.pixelate(src, dst, width, height, pixelSize);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] blockAverageParallel() {
+        parallelEngine.pixelate(src, dst, width, height, pixelSize);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] downsampleParallel() {
+        parallelEngine.downsample(src, width, height, pixelSize, grid);
+        return grid;
+    }
+
+    @Benchmark
+    public int[] summedAreaTable() {
+        table.build(src, width, height);
+        table.pixelate(dst, pixelSize);
+        return dst;
+    }
+}
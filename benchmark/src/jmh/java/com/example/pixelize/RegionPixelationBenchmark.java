@@ -0,0 +1,114 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Region-masked pixelation per frame for 1, 10 and 100 regions of face-like size
+// (a mix of rectangles and hexagons), against the floors and ceilings it sits
+// between: copying the frame, and pixelating all of it
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionPixelationBenchmark {
+    @Param({"1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"1", "10", "100"})
+    public int regions;
+
+    @Param({"8", "32"})
+    public int pixelSize;
+
+    private int width;
+    private int height;
+    private int[] src;
+    private int[] dst;
+    private ForkJoinPool singleWorker;
+    private RegionPixelator singleCorePixelator;
+    private RegionPixelator parallelPixelator;
+    private PixelationEngine parallelEngine;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        width = size[0];
+        height = size[1];
+        src = SyntheticFrames.argb(width, height);
+        dst = new int[src.length];
+        List<PixelRegion> list = regions(width, height, regions);
+        singleWorker = new ForkJoinPool(1);
+        singleCorePixelator = new RegionPixelator(singleWorker);
+        singleCorePixelator.setRegions(list);
+        parallelPixelator = new RegionPixelator();
+        parallelPixelator.setRegions(list);
+        parallelEngine = new PixelationEngine();
+    }
+
+    @TearDown
+    public void tearDown() {
+        singleWorker.shutdown();
+    }
+
+    // Each region is about 1/10 of the frame's height across, placed at random
+    private static List<PixelRegion> regions(int width, int height, int count) {
+        Random random = new Random(count);
+        int size = height / 10;
+        List<PixelRegion> regions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(width - size);
+            int y = random.nextInt(height - size);
+            if (i % 2 == 0) {
+                regions.add(PixelRegion.rect(x, y, x + size, y + size));
+            } else {
+                int q = size / 4;
+                regions.add(PixelRegion.polygon(
+                        new int[] {x + q, x + size - q, x + size, x + size - q, x + q, x},
+                        new int[] {y, y, y + size / 2, y + size, y + size, y + size / 2}));
+            }
+        }
+        return regions;
+    }
+
+    @Benchmark
+    public int[] regionsSingleCore() {
+        singleCorePixelator.pixelate(src, dst, width, height, pixelSize);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] regionsParallel() {
+        parallelPixelator.pixelate(src, dst, width, height, pixelSize);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] copyFrame() {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    @Benchmark
+    public int[] fullFrameParallel() {
+        parallelEngine.pixelate(src, dst, width, height, pixelSize);
+        return dst;
+    }
+}
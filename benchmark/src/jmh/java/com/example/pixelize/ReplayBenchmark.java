@@ -0,0 +1,78 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Frames per second when a recorded I420 stream is replayed unthrottled from its
+// memory mapping through the camera-side conversion, optionally followed by CPU
+// pixelation: a repeatable stand-in for the live camera feed
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+    private static final int RECORDED_FRAMES = 30;
+
+    @Param({"1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"1", "16"})
+    public int pixelSize;
+
+    private File file;
+    private FrameReplay replay;
+    private YuvConverter converter;
+    private PixelationEngine engine;
+    private Frame frame;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        SyntheticFrames.YuvPlanes planes = new SyntheticFrames.YuvPlanes(size[0], size[1], true);
+        file = File.createTempFile("replay", "." + FrameRecording.FILE_EXTENSION);
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.I420, size[0], size[1])) {
+            for (int i = 0; i < RECORDED_FRAMES; i++) {
+                writer.appendYuv(i * 33_333_333L, planes.y, planes.yRowStride, planes.u, planes.v,
+                        planes.uvRowStride, planes.uvPixelStride);
+            }
+        }
+        replay = new FrameReplay(file);
+        converter = new YuvConverter(size[0], size[1]);
+        engine = new PixelationEngine();
+        frame = new Frame(size[0], size[1]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        replay.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public Frame replayFrame() {
+        replay.readInto(next, frame, converter);
+        if (pixelSize > 1) {
+            engine.pixelate(frame.getPixels(), frame.getPixels(), frame.getWidth(), frame.getHeight(), pixelSize);
+        }
+        next = next + 1 == RECORDED_FRAMES ? 0 : next + 1;
+        return frame;
+    }
+}
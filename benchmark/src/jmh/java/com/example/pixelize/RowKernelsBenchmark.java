@@ -0,0 +1,80 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Scalar against Vector API row kernels, on one core so the kernels themselves are
+// compared: block averaging to the grid and YUV -> ARGB conversion per frame. The
+// vector runs need JDK 17+ (the jmh task adds --add-modules jdk.incubator.vector).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowKernelsBenchmark {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    @Param({"4", "16"})
+    public int pixelSize;
+
+    private int width;
+    private int height;
+    private int[] src;
+    private int[] grid;
+    private int[] out;
+    private SyntheticFrames.YuvPlanes planes;
+    private ForkJoinPool singleWorker;
+    private PixelationEngine engine;
+    private YuvConverter converter;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        width = size[0];
+        height = size[1];
+        RowKernels rowKernels = RowKernels.named(kernels);
+        src = SyntheticFrames.argb(width, height);
+        grid = new int[PixelationEngine.gridSize(width, pixelSize) * PixelationEngine.gridSize(height, pixelSize)];
+        out = new int[width * height];
+        planes = new SyntheticFrames.YuvPlanes(width, height, true);
+        singleWorker = new ForkJoinPool(1);
+        engine = new PixelationEngine(singleWorker, rowKernels);
+        converter = new YuvConverter(width, height, YuvConverter.ColorMatrix.BT601_FULL, rowKernels);
+    }
+
+    @TearDown
+    public void tearDown() {
+        singleWorker.shutdown();
+    }
+
+    @Benchmark
+    public int[] downsample() {
+        engine.downsample(src, width, height, pixelSize, grid);
+        return grid;
+    }
+
+    @Benchmark
+    public int[] yuvToArgb() {
+        converter.convert(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, out);
+        return out;
+    }
+}
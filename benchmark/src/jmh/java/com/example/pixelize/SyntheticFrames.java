@@ -0,0 +1,71 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Deterministic synthetic inputs for the benchmarks: smooth gradients with noise,
+// so block averages and encoders see realistic rather than constant data
+final class SyntheticFrames {
+    private SyntheticFrames() {
+    }
+
+    // "1280x720" -> {1280, 720}
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        return new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    static int[] argb(int width, int height) {
+        Random random = new Random(width * 31L + height);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 255 / width + noise) & 0xFF;
+                int g = (y * 255 / height + noise) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + noise) & 0xFF;
+                pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return pixels;
+    }
+
+    // YUV_420_888 planes as a camera HAL would hand them out, with padded rows
+    static final class YuvPlanes {
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        YuvPlanes(int width, int height, boolean interleaved) {
+            Random random = new Random(width * 17L + height);
+            yRowStride = (width + 63) & ~63;
+            uvPixelStride = interleaved ? 2 : 1;
+            uvRowStride = interleaved ? yRowStride : yRowStride / 2;
+            int chromaRows = (height + 1) / 2;
+
+            y = ByteBuffer.allocateDirect(yRowStride * height);
+            for (int i = 0; i < y.capacity(); i++) {
+                y.put(i, (byte) random.nextInt(256));
+            }
+            if (interleaved) {
+                ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * chromaRows);
+                for (int i = 0; i < chroma.capacity(); i++) {
+                    chroma.put(i, (byte) random.nextInt(256));
+                }
+                u = chroma.duplicate();
+                chroma.position(1);
+                v = chroma.slice();
+            } else {
+                u = ByteBuffer.allocateDirect(uvRowStride * chromaRows);
+                v = ByteBuffer.allocateDirect(uvRowStride * chromaRows);
+                for (int i = 0; i < u.capacity(); i++) {
+                    u.put(i, (byte) random.nextInt(256));
+                    v.put(i, (byte) random.nextInt(256));
+                }
+            }
+        }
+    }
+}
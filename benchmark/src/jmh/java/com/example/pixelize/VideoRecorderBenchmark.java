@@ -0,0 +1,110 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Camera-paced clips recorded through VideoRecorder into a Y4mVideoSink file, with the
+// app's queue capacity and a preview-sized frame pool. The score is clips/s; the written
+// and dropped counters give frames/s reaching the file and frames/s lost to a full
+// queue, and encodeMillis is the encoder's busy time per second.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class VideoRecorderBenchmark {
+    private static final int CLIP_FRAMES = 30;
+    private static final int POOL_FRAMES = 4 + VideoRecorder.DEFAULT_QUEUE_CAPACITY + 1;
+
+    @Param({"1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"30", "60"})
+    public int fps;
+
+    @Param({"1", "16"})
+    public int blockSize;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long written;
+        public long dropped;
+        public long encodeMillis;
+    }
+
+    private FramePool pool;
+    private PixelationEngine engine;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        int[] pixels = SyntheticFrames.argb(size[0], size[1]);
+        pool = new FramePool(size[0], size[1], POOL_FRAMES);
+        // Fill every pooled frame once; acquire() hands them back with their pixels intact
+        Frame[] frames = new Frame[POOL_FRAMES];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = pool.acquire();
+            System.arraycopy(pixels, 0, frames[i].getPixels(), 0, pixels.length);
+        }
+        for (Frame frame : frames) {
+            frame.release();
+        }
+        engine = new PixelationEngine();
+        file = File.createTempFile("video", "." + Y4mVideoSink.FILE_EXTENSION);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void record(Frames frames) throws Exception {
+        Y4mVideoSink sink = new Y4mVideoSink(new BufferedOutputStream(new FileOutputStream(file), 1 << 20), fps);
+        VideoRecorder recorder = new VideoRecorder(sink, pool.getWidth(), pool.getHeight(),
+                VideoRecorder.DEFAULT_QUEUE_CAPACITY, engine, null);
+        recorder.setBlockSize(blockSize);
+        long interval = TimeUnit.SECONDS.toNanos(1) / fps;
+        long next = System.nanoTime();
+        for (int i = 0; i < CLIP_FRAMES; i++) {
+            Frame frame = pool.acquire();
+            if (frame == null) {
+                frames.dropped++; // Preview pool drained; the camera would drop it too
+            } else {
+                frame.setTimestampNs(next);
+                recorder.offer(frame);
+                frame.release();
+            }
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        recorder.close();
+        if (!recorder.awaitCompletion(60_000)) {
+            throw new IllegalStateException("Recording did not finish");
+        }
+        frames.written += recorder.getFramesWritten();
+        frames.dropped += recorder.getFramesDropped();
+        frames.encodeMillis += TimeUnit.NANOSECONDS.toMillis(recorder.getEncodeNanos());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.pixelize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+// YUV_420_888 -> ARGB conversion cost per frame, the work behind MainActivity.imageToFrame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvConversionBenchmark {
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"true", "false"})
+    public boolean interleavedChroma;
+
+    private SyntheticFrames.YuvPlanes planes;
+    private YuvConverter converter;
+    private int[] out;
+    private IntBuffer directOut;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseSize(resolution);
+        planes = new SyntheticFrames.YuvPlanes(size[0], size[1], interleavedChroma);
+        converter = new YuvConverter(size[0], size[1]);
+        out = new int[size[0] * size[1]];
+        directOut = ByteBuffer.allocateDirect(out.length * 4).asIntBuffer();
+    }
+
+    @Benchmark
+    public int[] toIntArray() {
+        converter.convert(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, out);
+        return out;
+    }
+
+    @Benchmark
+    public IntBuffer toDirectBuffer() {
+        converter.convert(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, directOut);
+        return directOut;
+    }
+}
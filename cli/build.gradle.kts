@@ -0,0 +1,22 @@
+plugins {
+    application
+}
+
+// Headless batch pixelation for desktop JVMs, on the same kernel as the app. Run with
+// ./gradlew :cli:run --args="--pixel-size 16 /path/to/photos /path/to/output"
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+application {
+    mainClass.set("com.example.pixelize.BatchCli")
+    applicationName = "pixelize-batch"
+    // Vector kernels come from the Java 17 part of the core jar
+    applicationDefaultJvmArgs = listOf("--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,109 @@
+package com.example.pixelize;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless entry point: pixelates every image under a directory with the same
+// kernel and parameters as the app and writes the results to another directory.
+//
+//   pixelize-batch [--pixel-size N] [--palette NAME] [--format png|jpg] [--quality Q]
+//                  [--memory MB] [--threads N] <input dir> <output dir>
+//
+// Exits with 1 if any image failed and 2 on bad arguments.
+public final class BatchCli {
+    private static final int PROGRESS_INTERVAL = 1000; // Images between progress lines
+
+    private BatchCli() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        float pixelSize = 10.0f; // The app's default
+        String palette = null;
+        String format = "png"; // Lossless, so block edges stay sharp
+        float quality = 0.9f;
+        long memoryBytes = Runtime.getRuntime().maxMemory() / 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File input = null;
+        File output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (input == null) {
+                        input = new File(arg);
+                    } else if (output == null) {
+                        output = new File(arg);
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument " + arg);
+                    }
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--pixel-size":
+                        pixelSize = Float.parseFloat(value);
+                        break;
+                    case "--palette":
+                        palette = value;
+                        break;
+                    case "--format":
+                        format = value;
+                        break;
+                    case "--quality":
+                        quality = Float.parseFloat(value);
+                        break;
+                    case "--memory":
+                        memoryBytes = Long.parseLong(value) << 20;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (output == null) {
+                throw new IllegalArgumentException("Input and output directories are required");
+            }
+            String encoderFormat = format;
+            float encoderQuality = quality;
+            new ImageIoFrameEncoder(encoderFormat, encoderQuality); // Validates the options up front
+            BatchPixelator batch = new BatchPixelator(new ImageIoFrameDecoder(),
+                    () -> new ImageIoFrameEncoder(encoderFormat, encoderQuality), memoryBytes, threads);
+            batch.setBlockSize(PixelationEngine.blockSize(pixelSize));
+            batch.setPalette(palette != null ? Palette.named(palette) : null);
+            run(batch, input, output);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: pixelize-batch [--pixel-size N] [--palette ega16|rgb64|rgb332]"
+                    + " [--format png|jpg] [--quality 0-1] [--memory MB] [--threads N] <input dir> <output dir>");
+            System.exit(2);
+        }
+    }
+
+    private static void run(BatchPixelator batch, File input, File output) throws InterruptedException {
+        AtomicLong finished = new AtomicLong();
+        BatchPixelator.Report report;
+        try {
+            report = batch.run(input, output, (image, result, error) -> {
+                if (error != null) {
+                    System.err.println(image + ": " + error.getMessage());
+                }
+                long count = finished.incrementAndGet();
+                if (count % PROGRESS_INTERVAL == 0) {
+                    System.out.println(count + " images");
+                }
+            });
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(report);
+        System.exit(report.getFailed() > 0 ? 1 : 0);
+    }
+}
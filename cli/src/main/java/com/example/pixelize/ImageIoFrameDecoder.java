@@ -0,0 +1,121 @@
+package com.example.pixelize;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+// Decodes whatever formats javax.imageio has readers for (JPEG, PNG, BMP and GIF
+// out of the box). A reader is created per call, so this is thread-safe.
+//
+// Row reading for large images decodes one source region per strip. The standard
+// readers can't resume mid-image, so each region decodes the rows above it again:
+// memory stays at a strip, at the cost of decode time growing with the strip count.
+final class ImageIoFrameDecoder implements FrameDecoder {
+    private final Set<String> suffixes =
+            new HashSet<>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+
+    @Override
+    public boolean accepts(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.US));
+    }
+
+    @Override
+    public int[] readSize(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = readerFor(in, file);
+            try {
+                reader.setInput(in, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @Override
+    public void decode(File file, Frame frame) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = readerFor(in, file);
+            try {
+                reader.setInput(in, true, true);
+                image = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+        if (image.getWidth() != frame.getWidth() || image.getHeight() != frame.getHeight()) {
+            throw new IOException("Image size changed while reading " + file);
+        }
+        // Converts any colour model to packed ARGB, straight into the frame
+        image.getRGB(0, 0, frame.getWidth(), frame.getHeight(), frame.getPixels(), 0, frame.getWidth());
+    }
+
+    @Override
+    public TiledPixelator.Source openRows(File file) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        try {
+            ImageReader reader = readerFor(in, file);
+            reader.setInput(in, false, true);
+            return new RegionSource(in, reader);
+        } catch (IOException | RuntimeException e) {
+            if (in != null) {
+                in.close();
+            }
+            throw e;
+        }
+    }
+
+    private static final class RegionSource implements TiledPixelator.Source {
+        private final ImageInputStream in;
+        private final ImageReader reader;
+        private final int width;
+
+        RegionSource(ImageInputStream in, ImageReader reader) throws IOException {
+            this.in = in;
+            this.reader = reader;
+            this.width = reader.getWidth(0);
+        }
+
+        @Override
+        public void readRows(int firstRow, int rowCount, int[] pixels) throws IOException {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, firstRow, width, rowCount));
+            BufferedImage strip = reader.read(0, param);
+            if (strip.getWidth() != width || strip.getHeight() != rowCount) {
+                throw new IOException("Short read at row " + firstRow);
+            }
+            strip.getRGB(0, 0, width, rowCount, pixels, 0, width);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            in.close();
+        }
+    }
+
+    private static ImageReader readerFor(ImageInputStream in, File file) throws IOException {
+        if (in == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Not a supported image: " + file);
+        }
+        return readers.next();
+    }
+}
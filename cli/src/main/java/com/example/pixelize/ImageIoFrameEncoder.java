@@ -0,0 +1,94 @@
+package com.example.pixelize;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+// Encodes frames with javax.imageio. The frame's pixels are wrapped in a
+// BufferedImage rather than copied; JPEG drops alpha, PNG keeps it.
+// One instance per thread, like every FrameEncoder.
+//
+// Only PNG can be written from rows (the PNG writer pulls its source a row at a
+// time); the JPEG writer wants the whole raster, so large JPEGs are encoded whole.
+final class ImageIoFrameEncoder implements FrameEncoder {
+    private static final int[] ARGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+    private static final int[] RGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF};
+
+    private final String format;
+    private final float quality;
+
+    // format is an ImageIO format name such as "png" or "jpg"; quality (0-1) only
+    // applies to JPEG
+    ImageIoFrameEncoder(String format, float quality) {
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+            throw new IllegalArgumentException("No image writer for " + format);
+        }
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("Quality out of range: " + quality);
+        }
+        this.format = format.toLowerCase(Locale.US);
+        this.quality = quality;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return format;
+    }
+
+    @Override
+    public void encode(Frame frame, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (isJpeg()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(wrap(frame), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    @Override
+    public TiledPixelator.Sink openRows(int width, int height, OutputStream out) throws IOException {
+        if (!"png".equals(format)) {
+            return null;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        // Interlacing would read the rows several times over
+        param.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+        return new RowStreamSink(writer, stream, param, width, height);
+    }
+
+    private boolean isJpeg() {
+        return "jpg".equals(format) || "jpeg".equals(format);
+    }
+
+    private BufferedImage wrap(Frame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        boolean alpha = !isJpeg();
+        int[] masks = alpha ? ARGB_MASKS : RGB_MASKS;
+        DataBufferInt buffer = new DataBufferInt(frame.getPixels(), width * height);
+        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width, masks, null);
+        DirectColorModel model = alpha
+                ? new DirectColorModel(32, masks[0], masks[1], masks[2], masks[3])
+                : new DirectColorModel(24, masks[0], masks[1], masks[2]);
+        return new BufferedImage(model, raster, false, null);
+    }
+}
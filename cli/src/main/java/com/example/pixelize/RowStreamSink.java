@@ -0,0 +1,266 @@
+package com.example.pixelize;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+// Streams strips into an ImageIO writer that pulls its source one row at a time,
+// as the PNG writer does. The writer runs on its own thread against a RenderedImage
+// whose rows come from the strips handed to writeRows(), so only a strip or two of
+// the image is ever in memory.
+final class RowStreamSink implements TiledPixelator.Sink {
+    private static final int[] ARGB_MASKS = {0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+    private static final int[] END = new int[0];
+
+    private final ImageWriter writer;
+    private final ImageOutputStream stream;
+    private final int width;
+    private final int height;
+    // Strips on their way to the writer thread, copied since callers reuse theirs
+    private final BlockingQueue<int[]> strips = new ArrayBlockingQueue<>(1);
+    private final Thread thread;
+    private volatile Throwable failure;
+    private int rowsWritten;
+
+    RowStreamSink(ImageWriter writer, ImageOutputStream stream, ImageWriteParam param, int width, int height) {
+        this.writer = writer;
+        this.stream = stream;
+        this.width = width;
+        this.height = height;
+        RenderedImage image = new RowImage();
+        thread = new Thread(() -> {
+            try {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }, "RowStreamWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void writeRows(int firstRow, int rowCount, int[] pixels) throws IOException {
+        if (firstRow != rowsWritten) {
+            throw new IllegalStateException("Rows out of order: " + firstRow + " after " + rowsWritten);
+        }
+        int[] strip = new int[width * rowCount];
+        System.arraycopy(pixels, 0, strip, 0, strip.length);
+        offer(strip);
+        rowsWritten += rowCount;
+    }
+
+    private void offer(int[] strip) throws IOException {
+        try {
+            while (!strips.offer(strip, 100, TimeUnit.MILLISECONDS)) {
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private void checkWriter() throws IOException {
+        Throwable error = failure;
+        if (error != null) {
+            throw new IOException("Encoding failed", error);
+        }
+        if (!thread.isAlive()) {
+            throw new IOException("Encoder stopped early");
+        }
+    }
+
+    // Waits for the writer to finish the image; an unfinished image is abandoned
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten == height && thread.isAlive()) {
+                offer(END);
+                thread.join();
+            } else {
+                thread.interrupt();
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } finally {
+            writer.dispose();
+            stream.close();
+        }
+        if (rowsWritten == height) {
+            checkWriterResult();
+        }
+    }
+
+    private void checkWriterResult() throws IOException {
+        Throwable error = failure;
+        if (error != null) {
+            throw new IOException("Encoding failed", error);
+        }
+    }
+
+    // The image as the writer sees it: one tile, whose rows are served from the
+    // current strip, taking the next strip from the queue when the writer moves on
+    private final class RowImage implements RenderedImage {
+        private final ColorModel colorModel =
+                new DirectColorModel(32, ARGB_MASKS[0], ARGB_MASKS[1], ARGB_MASKS[2], ARGB_MASKS[3]);
+        private final SampleModel sampleModel = new SinglePixelPackedSampleModel(
+                DataBufferInt.TYPE_INT, width, height, ARGB_MASKS);
+        private int[] strip; // Writer thread only
+        private int stripFirstRow;
+        private int stripRows;
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            if (rect.height != 1 || rect.x != 0 || rect.width != width) {
+                throw new UnsupportedOperationException("Rows only: " + rect);
+            }
+            int row = rect.y;
+            while (strip == null || row >= stripFirstRow + stripRows) {
+                if (row < stripFirstRow) {
+                    throw new UnsupportedOperationException("Rows must be read in order");
+                }
+                nextStrip();
+            }
+            DataBufferInt buffer = new DataBufferInt(strip, width, (row - stripFirstRow) * width);
+            SampleModel rowModel = new SinglePixelPackedSampleModel(DataBufferInt.TYPE_INT, width, 1, ARGB_MASKS);
+            return Raster.createRaster(rowModel, buffer, new Point(0, row));
+        }
+
+        private void nextStrip() {
+            int[] next;
+            try {
+                next = strips.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Image abandoned", e);
+            }
+            if (next == END) {
+                throw new IllegalStateException("Ran out of rows");
+            }
+            stripFirstRow = strip == null ? 0 : stripFirstRow + stripRows;
+            stripRows = next.length / width;
+            strip = next;
+        }
+
+        @Override
+        public Raster getData() {
+            throw new UnsupportedOperationException("Whole image not available");
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            throw new UnsupportedOperationException("Whole image not available");
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            throw new UnsupportedOperationException("Whole image not available");
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return java.awt.Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return height;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+plugins {
+    `java-library`
+}
+
+// Plain-Java frame pipeline shared by the app, benchmarks and desktop tooling.
+// No Android dependencies, so everything here runs and is tested on a desktop JVM.
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Vector API row kernels (jdk.incubator.vector) for desktop JVMs. They are built
+// for Java 17 into the multi-release part of the jar, so Java 11 and Android only
+// see the scalar kernels; RowKernels loads the vector ones when the JVM can run them.
+val vector by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>("compileVectorJava") {
+    javaCompiler.set(javaToolchains.compilerFor { languageVersion.set(JavaLanguageVersion.of(17)) })
+    options.release.set(17)
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+tasks.jar {
+    into("META-INF/versions/17") {
+        from(vector.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+}
+
+dependencies {
+    testImplementation(libs.junit)
+    testRuntimeOnly(vector.output)
+}
+
+// Tests run on 17 so RowKernelsTest compares the vector kernels with the scalar ones
+tasks.test {
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(17)) })
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,238 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Builds a palette from the frames themselves. Each update() samples a spread of
+// pixels (normally block-grid pixels, one per block) into a colour histogram over
+// ColorLut cells; a different subset is sampled every frame, so coverage builds up
+// across frames at a fixed per-frame cost. Every rebuildInterval frames the palette
+// is recomputed by median cut over the histogram and older samples are decayed, so
+// the palette follows the scene without flickering frame to frame.
+//
+// Not thread-safe; feed it from the thread that quantises.
+public final class AdaptivePalette {
+    public static final int DEFAULT_SAMPLES_PER_FRAME = 1024;
+    public static final int DEFAULT_REBUILD_INTERVAL = 15;
+    // Share of the histogram kept at each rebuild
+    static final float DECAY = 0.5f;
+    // Cells whose decayed weight falls below this many samples are forgotten
+    static final float MIN_WEIGHT = 0.25f;
+
+    private static final int CELLS = ColorLut.SIZE * ColorLut.SIZE * ColorLut.SIZE;
+
+    private final int colors;
+    private final int samplesPerFrame;
+    private final int rebuildInterval;
+    // Per cell: total sample weight and weighted channel sums, so box colours are
+    // means of the real samples rather than cell centres
+    private final float[] weights = new float[CELLS];
+    private final float[] redSums = new float[CELLS];
+    private final float[] greenSums = new float[CELLS];
+    private final float[] blueSums = new float[CELLS];
+    private int frames;
+    private Palette palette;
+
+    public AdaptivePalette(int colors) {
+        this(colors, DEFAULT_SAMPLES_PER_FRAME, DEFAULT_REBUILD_INTERVAL);
+    }
+
+    public AdaptivePalette(int colors, int samplesPerFrame, int rebuildInterval) {
+        if (colors < 2 || colors > Palette.MAX_COLORS) {
+            throw new IllegalArgumentException("Colour count out of range: " + colors);
+        }
+        if (samplesPerFrame < 1 || rebuildInterval < 1) {
+            throw new IllegalArgumentException("Invalid sampling " + samplesPerFrame + "/" + rebuildInterval);
+        }
+        this.colors = colors;
+        this.samplesPerFrame = samplesPerFrame;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    public int getColorCount() {
+        return colors;
+    }
+
+    // The current palette, or null before the first update
+    public Palette getPalette() {
+        return palette;
+    }
+
+    public boolean update(int[] pixels, int width, int height) {
+        return update(pixels, 0, width, width, height);
+    }
+
+    // Samples one frame; returns true if the palette changed. The first frame builds
+    // a palette straight away.
+    public boolean update(int[] pixels, int offset, int stride, int width, int height) {
+        int count = width * height;
+        int step = Math.max(1, count / samplesPerFrame);
+        // Rotating the start visits every pixel position over step frames
+        for (int i = frames % step; i < count; i += step) {
+            int rgb = pixels[offset + (i / width) * stride + i % width];
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            int cell = (r >> 3) << 10 | (g >> 3) << 5 | (b >> 3);
+            weights[cell]++;
+            redSums[cell] += r;
+            greenSums[cell] += g;
+            blueSums[cell] += b;
+        }
+        frames++;
+        if (palette != null && frames % rebuildInterval != 0) {
+            return false;
+        }
+        Palette rebuilt = medianCut();
+        for (int i = 0; i < CELLS; i++) {
+            if (weights[i] * DECAY < MIN_WEIGHT) {
+                // Colours not seen for a while drop out instead of lingering as tiny cells
+                weights[i] = 0;
+                redSums[i] = 0;
+                greenSums[i] = 0;
+                blueSums[i] = 0;
+            } else {
+                weights[i] *= DECAY;
+                redSums[i] *= DECAY;
+                greenSums[i] *= DECAY;
+                blueSums[i] *= DECAY;
+            }
+        }
+        if (rebuilt == null || rebuilt.equals(palette)) {
+            return false;
+        }
+        palette = rebuilt;
+        return true;
+    }
+
+    // Splits the occupied cells into up to `colors` boxes, always cutting the box
+    // with the largest weighted channel range at the weighted median of that channel
+    private Palette medianCut() {
+        int occupied = 0;
+        int[] cells = new int[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            if (weights[i] > 0) {
+                cells[occupied++] = i;
+            }
+        }
+        if (occupied == 0) {
+            return null;
+        }
+        long[] keys = new long[occupied];
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(measure(cells, 0, occupied));
+        while (boxes.size() < colors) {
+            Box best = null;
+            for (Box box : boxes) {
+                if (box.score > 0 && (best == null || box.score > best.score)) {
+                    best = box;
+                }
+            }
+            if (best == null) {
+                break; // Every box is a single colour cell
+            }
+            int split = splitAtMedian(cells, keys, best.from, best.to, best.channel);
+            boxes.set(boxes.indexOf(best), measure(cells, best.from, split));
+            boxes.add(measure(cells, split, best.to));
+        }
+
+        int[] result = new int[boxes.size()];
+        for (int i = 0; i < result.length; i++) {
+            Box box = boxes.get(i);
+            double weight = 0;
+            double r = 0;
+            double g = 0;
+            double b = 0;
+            for (int j = box.from; j < box.to; j++) {
+                int cell = cells[j];
+                weight += weights[cell];
+                r += redSums[cell];
+                g += greenSums[cell];
+                b += blueSums[cell];
+            }
+            result[i] = (int) Math.round(r / weight) << 16 | (int) Math.round(g / weight) << 8
+                    | (int) Math.round(b / weight);
+        }
+        Arrays.sort(result); // Same colours, same palette, whatever the split order
+        return new Palette(result);
+    }
+
+    private static final class Box {
+        final int from;
+        final int to;
+        final int channel; // Channel with the largest range
+        final double score; // That range times the box weight; 0 if it can't be split
+
+        Box(int from, int to, int channel, double score) {
+            this.from = from;
+            this.to = to;
+            this.channel = channel;
+            this.score = score;
+        }
+    }
+
+    private Box measure(int[] cells, int from, int to) {
+        int[] min = {ColorLut.SIZE, ColorLut.SIZE, ColorLut.SIZE};
+        int[] max = {-1, -1, -1};
+        double weight = 0;
+        for (int j = from; j < to; j++) {
+            for (int c = 0; c < 3; c++) {
+                int value = channel(cells[j], c);
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+            weight += weights[cells[j]];
+        }
+        int channel = 0;
+        for (int c = 1; c < 3; c++) {
+            if (max[c] - min[c] > max[channel] - min[channel]) {
+                channel = c;
+            }
+        }
+        return new Box(from, to, channel, (max[channel] - min[channel]) * weight);
+    }
+
+    private static int channel(int cell, int channel) {
+        return (cell >> (10 - 5 * channel)) & 0x1F;
+    }
+
+    // Sorts cells[from, to) by the channel and returns the first index of the upper
+    // half; both halves are non-empty
+    private int splitAtMedian(int[] cells, long[] keys, int from, int to, int channel) {
+        for (int j = from; j < to; j++) {
+            keys[j] = (long) channel(cells[j], channel) << 32 | cells[j];
+        }
+        Arrays.sort(keys, from, to);
+        double total = 0;
+        for (int j = from; j < to; j++) {
+            cells[j] = (int) keys[j];
+            total += weights[cells[j]];
+        }
+        double half = total / 2;
+        double running = 0;
+        int split = from + 1;
+        for (int j = from; j < to - 1; j++) {
+            running += weights[cells[j]];
+            split = j + 1;
+            if (running >= half) {
+                break;
+            }
+        }
+        // Cut between different channel values: past the run the median falls in, or
+        // before it when the run reaches the end of the box
+        int value = channel(cells[split - 1], channel);
+        int up = split;
+        while (up < to && channel(cells[up], channel) == value) {
+            up++;
+        }
+        if (up < to) {
+            return up;
+        }
+        int down = split - 1;
+        while (down > from && channel(cells[down - 1], channel) == value) {
+            down--;
+        }
+        return down;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+
+// Converts packed ARGB frames to 4:2:0 YUV for video encoders: BT.601 limited
+// range, which is what encoders and players assume when a stream says nothing
+// else. Writes straight into the destination planes with any row and pixel
+// strides, so one pass fills an encoder's input image (I420 or NV12) in place.
+// Each chroma sample is the average of its 2x2 block, centred like JPEG.
+public final class ArgbToYuv {
+
+    private ArgbToYuv() {
+    }
+
+    // Writes the frame into the planes, starting at each plane's position. Positions
+    // are left untouched.
+    public static void convert(int[] argb, int width, int height,
+                               ByteBuffer yPlane, int yRowStride,
+                               ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        int yBase = yPlane.position();
+        for (int row = 0; row < height; row++) {
+            int in = row * width;
+            int out = yBase + row * yRowStride;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[in + x];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                yPlane.put(out + x, (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16));
+            }
+        }
+        int uBase = uPlane.position();
+        int vBase = vPlane.position();
+        int chromaWidth = FrameRecording.chromaWidth(width);
+        int chromaHeight = FrameRecording.chromaHeight(height);
+        for (int row = 0; row < chromaHeight; row++) {
+            int top = 2 * row * width;
+            // The last row and column of odd-sized frames average what there is
+            int bottom = 2 * row + 1 < height ? top + width : top;
+            int out = row * uvRowStride;
+            for (int x = 0; x < chromaWidth; x++) {
+                int left = 2 * x;
+                int right = left + 1 < width ? left + 1 : left;
+                int p0 = argb[top + left];
+                int p1 = argb[top + right];
+                int p2 = argb[bottom + left];
+                int p3 = argb[bottom + right];
+                int r = ((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF);
+                int g = ((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF);
+                int b = (p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF);
+                // Sums of four, so the shift is 10 rather than 8
+                int index = out + x * uvPixelStride;
+                uPlane.put(uBase + index, (byte) (((-38 * r - 74 * g + 112 * b + 512) >> 10) + 128));
+                vPlane.put(vBase + index, (byte) (((112 * r - 94 * g - 18 * b + 512) >> 10) + 128));
+            }
+        }
+    }
+}
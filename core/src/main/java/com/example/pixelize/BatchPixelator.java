@@ -0,0 +1,469 @@
+package com.example.pixelize;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Pixelates every image under a directory with the app's block-average kernel and
+// writes the results to the same relative paths under an output directory.
+//
+// Images flow through three stages. Decode and encode have their own worker
+// threads; processing runs on a ForkJoinPool that PixelationEngine also splits its
+// bands on, so a process worker with no image of its own steals bands of the ones
+// the others are pixelating. Each image is charged to a byte budget before it is
+// decoded and credited back once it is written. Decoders wait while the budget is
+// spent, so memory stays bounded however many images there are.
+//
+// An image larger than the whole budget is pixelated in strips by TiledPixelator
+// when the decoder and encoder can stream rows, and is charged for its strips only;
+// otherwise it waits until it has the budget to itself.
+public final class BatchPixelator {
+    // Budget charged per pixel: the ARGB frame plus about as much again for the
+    // decoder's or encoder's own copy of the image
+    static final int BYTES_PER_PIXEL = 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public enum Stage {
+        DECODE,
+        PROCESS,
+        ENCODE
+    }
+
+    public interface Listener {
+        // Called on a worker thread once an image is written (error == null) or has failed
+        void onImageFinished(File input, File output, IOException error);
+    }
+
+    private final FrameDecoder decoder;
+    private final Supplier<FrameEncoder> encoders;
+    private final long memoryBudgetBytes;
+    private final int[] workers = new int[Stage.values().length];
+    private int blockSize = 1;
+    private Palette palette;
+
+    public BatchPixelator(FrameDecoder decoder, Supplier<FrameEncoder> encoders, long memoryBudgetBytes) {
+        this(decoder, encoders, memoryBudgetBytes, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Sized for the given core count: every core processes, and half as many threads
+    // each decode and encode, as they spend part of their time in file IO
+    public BatchPixelator(FrameDecoder decoder, Supplier<FrameEncoder> encoders, long memoryBudgetBytes,
+                          int cores) {
+        this(decoder, encoders, memoryBudgetBytes, Math.max(1, cores / 2), cores, Math.max(1, cores / 2));
+    }
+
+    // encoders is called once per encode worker; each encoder is used by one thread only
+    public BatchPixelator(FrameDecoder decoder, Supplier<FrameEncoder> encoders, long memoryBudgetBytes,
+                          int decodeWorkers, int processWorkers, int encodeWorkers) {
+        if (memoryBudgetBytes < BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Memory budget too small: " + memoryBudgetBytes);
+        }
+        if (decodeWorkers < 1 || processWorkers < 1 || encodeWorkers < 1) {
+            throw new IllegalArgumentException("Every stage needs a worker: "
+                    + decodeWorkers + "/" + processWorkers + "/" + encodeWorkers);
+        }
+        this.decoder = decoder;
+        this.encoders = encoders;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        workers[Stage.DECODE.ordinal()] = decodeWorkers;
+        workers[Stage.PROCESS.ordinal()] = processWorkers;
+        workers[Stage.ENCODE.ordinal()] = encodeWorkers;
+    }
+
+    public int getWorkers(Stage stage) {
+        return workers[stage.ordinal()];
+    }
+
+    // Block size in pixels (1 = as is); PixelationEngine.blockSize() maps the app's pixel size
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1 || blockSize > PixelationEngine.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    // Retro palette applied after pixelation, or null for none
+    public void setPalette(Palette palette) {
+        this.palette = palette;
+    }
+
+    // Processes every image the decoder accepts under inputDirectory, skipping the
+    // output directory if it lies inside. Returns once every image is written or has
+    // failed; per-image failures go to the listener and don't stop the batch.
+    public Report run(File inputDirectory, File outputDirectory, Listener listener)
+            throws IOException, InterruptedException {
+        if (!inputDirectory.isDirectory()) {
+            throw new IOException("Not a directory: " + inputDirectory);
+        }
+        Batch batch = new Batch(inputDirectory.toPath(), outputDirectory.toPath(), listener);
+        try {
+            return batch.run();
+        } finally {
+            batch.shutdown();
+        }
+    }
+
+    // State of one run(); its pools live as long as the run
+    private final class Batch {
+        private final Path input;
+        private final Path output;
+        private final Listener listener;
+        private final String extension;
+        private final MemoryBudget budget = new MemoryBudget(memoryBudgetBytes);
+        // Caps the images between the directory walk and the end of the encode stage,
+        // so the stage queues stay short whatever the size of the directory
+        private final int maxInFlight;
+        private final Semaphore inFlight;
+        private final ExecutorService decodePool;
+        private final ForkJoinPool processPool;
+        private final ExecutorService encodePool;
+        private final PixelationEngine engine;
+        private final PaletteQuantizer quantizer;
+        private final TiledPixelator tiler;
+        private final int blockSize;
+        private final ColorLut lut;
+        private final ThreadLocal<FrameEncoder> encoder;
+        private final AtomicLong[] busyNanos = new AtomicLong[Stage.values().length];
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        Batch(Path input, Path output, Listener listener) {
+            this.input = input.toAbsolutePath().normalize();
+            this.output = output.toAbsolutePath().normalize();
+            this.listener = listener;
+            this.extension = encoders.get().getFileExtension();
+            this.maxInFlight = 2 * (getWorkers(Stage.DECODE) + getWorkers(Stage.PROCESS) + getWorkers(Stage.ENCODE));
+            this.inFlight = new Semaphore(maxInFlight);
+            this.decodePool = Executors.newFixedThreadPool(getWorkers(Stage.DECODE), namedThreads("BatchDecode"));
+            this.processPool = new ForkJoinPool(getWorkers(Stage.PROCESS));
+            this.encodePool = Executors.newFixedThreadPool(getWorkers(Stage.ENCODE), namedThreads("BatchEncode"));
+            this.engine = new PixelationEngine(processPool);
+            this.quantizer = new PaletteQuantizer(processPool);
+            this.tiler = new TiledPixelator(processPool);
+            this.blockSize = BatchPixelator.this.blockSize;
+            this.lut = palette != null ? quantizer.lutFor(palette) : null;
+            this.encoder = ThreadLocal.withInitial(encoders);
+            for (int i = 0; i < busyNanos.length; i++) {
+                busyNanos[i] = new AtomicLong();
+            }
+        }
+
+        Report run() throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            long submitted = 0;
+            try (Stream<Path> files = Files.walk(input)) {
+                Iterator<Path> it = files
+                        .filter(path -> !path.startsWith(output) && Files.isRegularFile(path))
+                        .filter(path -> decoder.accepts(path.toFile()))
+                        .iterator();
+                while (it.hasNext()) {
+                    Path file = it.next();
+                    inFlight.acquire();
+                    submitted++;
+                    decodePool.execute(() -> decode(new Image(file, outputFor(file))));
+                }
+            }
+            inFlight.acquire(maxInFlight); // Every image has finished
+            return new Report(submitted, written.get(), failed.get(), System.nanoTime() - start,
+                    busyNanos, workers, budget.getPeak());
+        }
+
+        private File outputFor(Path file) {
+            String relative = input.relativize(file).toString();
+            int dot = relative.lastIndexOf('.');
+            if (dot > relative.lastIndexOf(File.separatorChar)) {
+                relative = relative.substring(0, dot);
+            }
+            return output.resolve(relative + "." + extension).toFile();
+        }
+
+        private void decode(Image image) {
+            try {
+                int[] size = decoder.readSize(image.input);
+                if (size[0] <= 0 || size[1] <= 0) {
+                    throw new IOException("Unsupported image size " + size[0] + "x" + size[1]);
+                }
+                long pixels = (long) size[0] * size[1];
+                if (pixels * BYTES_PER_PIXEL > memoryBudgetBytes && tile(image, size[0], size[1])) {
+                    return;
+                }
+                if (pixels > Integer.MAX_VALUE - 8) {
+                    throw new IOException("Image too large to decode whole: " + size[0] + "x" + size[1]);
+                }
+                image.charged = budget.acquire(pixels * BYTES_PER_PIXEL);
+                long start = System.nanoTime();
+                image.frame = new Frame(size[0], size[1]);
+                decoder.decode(image.input, image.frame);
+                busyNanos[Stage.DECODE.ordinal()].addAndGet(System.nanoTime() - start);
+                processPool.execute(() -> process(image));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finish(image, new IOException("Interrupted", e));
+            } catch (IOException | RuntimeException e) {
+                finish(image, e);
+            }
+        }
+
+        private void process(Image image) {
+            try {
+                long start = System.nanoTime();
+                Frame frame = image.frame;
+                int[] pixels = frame.getPixels();
+                int width = frame.getWidth();
+                int height = frame.getHeight();
+                if (blockSize > 1) {
+                    engine.pixelate(pixels, pixels, width, height, blockSize);
+                }
+                if (lut != null) {
+                    quantizer.quantize(pixels, width, height, lut);
+                }
+                busyNanos[Stage.PROCESS.ordinal()].addAndGet(System.nanoTime() - start);
+                encodePool.execute(() -> encode(image));
+            } catch (RuntimeException e) {
+                finish(image, e);
+            }
+        }
+
+        // Reads, pixelates and writes the image strip by strip, all from this decode
+        // worker. Returns false if the decoder or encoder can't stream rows.
+        private boolean tile(Image image, int width, int height) throws IOException, InterruptedException {
+            TiledPixelator.Source source = decoder.openRows(image.input);
+            if (source == null) {
+                return false;
+            }
+            try (TiledPixelator.Source rows = source) {
+                image.charged = budget.acquire(
+                        tiler.getBufferBytes(width, height, blockSize) / 4 * BYTES_PER_PIXEL);
+                long start = System.nanoTime();
+                boolean streamed = writeOutput(image.output, out -> {
+                    TiledPixelator.Sink sink = encoder.get().openRows(width, height, out);
+                    if (sink == null) {
+                        return false;
+                    }
+                    try (TiledPixelator.Sink strips = sink) {
+                        tiler.run(rows, strips, width, height, blockSize, lut);
+                    }
+                    return true;
+                });
+                if (!streamed) {
+                    budget.release(image.charged);
+                    image.charged = 0;
+                    return false;
+                }
+                // The whole image occupied this decode worker
+                busyNanos[Stage.DECODE.ordinal()].addAndGet(System.nanoTime() - start);
+            }
+            finish(image, null);
+            return true;
+        }
+
+        private void encode(Image image) {
+            try {
+                long start = System.nanoTime();
+                writeOutput(image.output, out -> {
+                    encoder.get().encode(image.frame, out);
+                    return true;
+                });
+                busyNanos[Stage.ENCODE.ordinal()].addAndGet(System.nanoTime() - start);
+                finish(image, null);
+            } catch (IOException | RuntimeException e) {
+                finish(image, e);
+            }
+        }
+
+        // Streams to a temporary file and renames it, so readers never see a partial
+        // image. Returns false, leaving nothing behind, if the writer declines.
+        private boolean writeOutput(File output, OutputWriter writer) throws IOException {
+            File partial = new File(output.getPath() + ".part");
+            boolean written;
+            try {
+                Files.createDirectories(output.getParentFile().toPath());
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial.toPath()),
+                        WRITE_BUFFER_SIZE)) {
+                    written = writer.write(out);
+                }
+                if (written) {
+                    Files.move(partial.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException | RuntimeException e) {
+                partial.delete();
+                throw e;
+            }
+            if (!written) {
+                partial.delete();
+            }
+            return written;
+        }
+
+        private void finish(Image image, Exception error) {
+            image.frame = null;
+            budget.release(image.charged);
+            IOException failure = error == null || error instanceof IOException
+                    ? (IOException) error : new IOException(error.toString(), error);
+            (failure == null ? written : failed).incrementAndGet();
+            try {
+                if (listener != null) {
+                    listener.onImageFinished(image.input, image.output, failure);
+                }
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            decodePool.shutdownNow();
+            processPool.shutdownNow();
+            encodePool.shutdownNow();
+            decodePool.awaitTermination(1, TimeUnit.MINUTES);
+            processPool.awaitTermination(1, TimeUnit.MINUTES);
+            encodePool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private interface OutputWriter {
+        // Returns false if it wrote nothing and the output should be dropped
+        boolean write(OutputStream out) throws IOException;
+    }
+
+    // One image on its way through the stages; handed from stage to stage, never shared
+    private static final class Image {
+        final File input;
+        final File output;
+        Frame frame;
+        long charged; // Bytes taken from the budget
+
+        Image(Path input, File output) {
+            this.input = input.toFile();
+            this.output = output;
+        }
+    }
+
+    // Bytes of decoded images in flight. A request larger than the whole budget is
+    // cut down to it, so that image runs alone rather than never.
+    private static final class MemoryBudget {
+        private final long capacity;
+        private long used;
+        private long peak;
+
+        MemoryBudget(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized long acquire(long bytes) throws InterruptedException {
+            long amount = Math.min(bytes, capacity);
+            while (used + amount > capacity) {
+                wait();
+            }
+            used += amount;
+            peak = Math.max(peak, used);
+            return amount;
+        }
+
+        synchronized void release(long bytes) {
+            if (bytes > 0) {
+                used -= bytes;
+                notifyAll();
+            }
+        }
+
+        synchronized long getPeak() {
+            return peak;
+        }
+    }
+
+    // Throughput and per-stage utilisation of one run()
+    public static final class Report {
+        private final long images;
+        private final long written;
+        private final long failed;
+        private final long elapsedNanos;
+        private final long[] busyNanos;
+        private final int[] workers;
+        private final long peakMemoryBytes;
+
+        Report(long images, long written, long failed, long elapsedNanos,
+               AtomicLong[] busyNanos, int[] workers, long peakMemoryBytes) {
+            this.images = images;
+            this.written = written;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.busyNanos = new long[busyNanos.length];
+            for (int i = 0; i < busyNanos.length; i++) {
+                this.busyNanos[i] = busyNanos[i].get();
+            }
+            this.workers = workers.clone();
+            this.peakMemoryBytes = peakMemoryBytes;
+        }
+
+        public long getImages() {
+            return images;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getImagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : images * 1e9 / elapsedNanos;
+        }
+
+        // Share of the stage's worker time spent working, 0-1. Decode time excludes
+        // waiting for the memory budget.
+        public double getUtilisation(Stage stage) {
+            double available = (double) elapsedNanos * workers[stage.ordinal()];
+            return available == 0 ? 0 : Math.min(1, busyNanos[stage.ordinal()] / available);
+        }
+
+        // Most of the memory budget held at once
+        public long getPeakMemoryBytes() {
+            return peakMemoryBytes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.US, "%d images (%d failed) in %.1f s, %.1f images/s;",
+                    images, failed, elapsedNanos / 1e9, getImagesPerSecond()));
+            for (Stage stage : Stage.values()) {
+                out.append(String.format(Locale.US, " %s %d%% of %d",
+                        stage.name().toLowerCase(Locale.US), Math.round(getUtilisation(stage) * 100),
+                        workers[stage.ordinal()]));
+            }
+            out.append(String.format(Locale.US, "; peak memory %.1f MB", peakMemoryBytes / (1024.0 * 1024)));
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Captures bursts of consecutive frames into a preallocated ring of raw frame slots
+// whose total size is capped by a byte budget. The producer (camera thread) only
+// copies each frame into a free slot; a single writer thread pixelates the queued
+// frames in place, converts them to RGBA bytes and flushes them to the output channel
+// in batches with one gathering write. Nothing is allocated per frame, and when the
+// writer falls behind the ring fills up and frames are dropped rather than queued.
+// Slots are sized for the largest frame the recorder was built for, so one ring
+// serves bursts at any smaller capture size.
+public final class BurstRecorder implements Closeable {
+
+    public interface Listener {
+        // Called on the writer thread once the burst is on disk (error == null) or has
+        // failed, or on the closing thread when close() cuts the burst short
+        void onBurstFinished(int framesWritten, long framesDropped, IOException error);
+    }
+
+    private final int width;
+    private final int height;
+    private final int frameBytes;         // Slot size, for the largest frame
+    private final int batchSize;
+    private final PixelationEngine pixelationEngine;
+    private final ByteBuffer[] slots;
+    private final IntBuffer[] slotPixels; // Big-endian int views of the slots
+    private final ByteBuffer[] batch;     // Gathering-write scratch, reused
+    private final int[] scratch;          // Writer-side pixelation buffer
+    private final AtomicLong head = new AtomicLong(); // Next sequence to fill (producer)
+    private final AtomicLong tail = new AtomicLong(); // Next sequence to write (writer)
+    private final Thread writer;
+
+    // Burst state: set by start(), then owned by the producer until the burst is queued
+    private volatile boolean capturing;
+    private volatile long burstEnd = Long.MAX_VALUE; // Sequence after the last queued frame
+    private int remaining;
+    private volatile GatheringByteChannel channel;
+    private volatile int burstWidth;
+    private volatile int burstHeight;
+    private volatile int blockSize;
+    private volatile Listener listener;
+    private volatile CountDownLatch finished = new CountDownLatch(0);
+    private volatile boolean closed;
+    private int burstWritten;        // Writer thread only
+    private volatile long burstDropped;
+
+    private final AtomicLong framesQueued = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    // width x height is the largest frame a burst may capture. memoryBudgetBytes caps
+    // the ring plus the writer's one-frame scratch buffer.
+    public BurstRecorder(int width, int height, long memoryBudgetBytes, int batchSize,
+                         PixelationEngine pixelationEngine) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.frameBytes = width * height * 4;
+        long slotCount = memoryBudgetBytes / frameBytes - 1;
+        if (slotCount < 1) {
+            throw new IllegalArgumentException("Budget of " + memoryBudgetBytes
+                    + " bytes cannot hold two " + width + "x" + height + " frames");
+        }
+        int capacity = (int) Math.min(slotCount, 1024);
+        this.batchSize = Math.min(batchSize, capacity);
+        this.pixelationEngine = pixelationEngine;
+        this.slots = new ByteBuffer[capacity];
+        this.slotPixels = new IntBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocateDirect(frameBytes).order(ByteOrder.BIG_ENDIAN);
+            slotPixels[i] = slots[i].asIntBuffer();
+        }
+        this.batch = new ByteBuffer[this.batchSize];
+        this.scratch = new int[width * height];
+        this.writer = new Thread(this::writeLoop, "BurstWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public int getCapacityFrames() {
+        return slots.length;
+    }
+
+    // True if bursts of width x height frames fit in the ring's slots
+    public boolean fits(int width, int height) {
+        return width > 0 && height > 0 && (long) width * height <= (long) this.width * this.height;
+    }
+
+    // Fixed memory held by the recorder, independent of burst length
+    public long getMemoryFootprintBytes() {
+        return (long) frameBytes * (slots.length + 1);
+    }
+
+    // Starts a burst of frameCount frames written to out, which is closed when the burst
+    // finishes. Frames are pixelated at blockSize (1 = as is). Must not be called while a
+    // burst is still in progress.
+    public void start(GatheringByteChannel out, int frameCount, int blockSize, Listener listener) {
+        start(out, width, height, frameCount, blockSize, listener);
+    }
+
+    // As above for frames of burstWidth x burstHeight, which must fit in a slot
+    public void start(GatheringByteChannel out, int burstWidth, int burstHeight, int frameCount,
+                      int blockSize, Listener listener) {
+        if (closed) {
+            throw new IllegalStateException("Recorder closed");
+        }
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("Burst needs at least one frame: " + frameCount);
+        }
+        if (!fits(burstWidth, burstHeight)) {
+            throw new IllegalArgumentException("Burst frames of " + burstWidth + "x" + burstHeight
+                    + " do not fit slots for " + width + "x" + height);
+        }
+        if (isBusy()) {
+            throw new IllegalStateException("Burst already in progress");
+        }
+        this.channel = out;
+        this.burstWidth = burstWidth;
+        this.burstHeight = burstHeight;
+        this.blockSize = Math.max(1, Math.min(blockSize, PixelationEngine.MAX_BLOCK_SIZE));
+        this.listener = listener;
+        this.remaining = frameCount;
+        this.burstDropped = 0;
+        this.finished = new CountDownLatch(1);
+        this.burstEnd = Long.MAX_VALUE;
+        this.capturing = true; // Publishes the fields above to the producer
+    }
+
+    // True while frames are still being captured or written
+    public boolean isBusy() {
+        return finished.getCount() > 0;
+    }
+
+    // True while the burst still wants frames from offer()
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    // Producer side: copies the frame into the ring if a burst wants it. Returns false if
+    // no burst is capturing or the ring is full (the frame is then counted as dropped).
+    // The caller keeps ownership of the frame.
+    public boolean offer(Frame frame) {
+        if (!capturing) {
+            return false;
+        }
+        if (frame.getWidth() != burstWidth || frame.getHeight() != burstHeight) {
+            throw new IllegalArgumentException("Frame is " + frame.getWidth() + "x" + frame.getHeight()
+                    + ", burst expects " + burstWidth + "x" + burstHeight);
+        }
+        long sequence = head.get();
+        if (sequence - tail.get() >= slots.length) {
+            framesDropped.incrementAndGet();
+            burstDropped++;
+            return false;
+        }
+        int slot = (int) (sequence % slots.length);
+        IntBuffer pixels = slotPixels[slot];
+        pixels.clear();
+        pixels.put(frame.getPixels());
+        framesQueued.incrementAndGet();
+        if (--remaining == 0) {
+            capturing = false;
+            burstEnd = sequence + 1;
+        }
+        head.set(sequence + 1);
+        LockSupport.unpark(writer);
+        return true;
+    }
+
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeLoop() {
+        while (!closed) {
+            long next = tail.get();
+            long available = head.get() - next;
+            if (available == 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50));
+                continue;
+            }
+            int count = (int) Math.min(available, batchSize);
+            if (channel == null) {
+                // Leftovers from a burst that already failed
+                tail.set(next + count);
+                continue;
+            }
+            IOException error = null;
+            try {
+                writeBatch(next, count);
+            } catch (IOException e) {
+                error = e;
+            }
+            tail.set(next + count); // Frees the slots for the producer
+            if (error != null) {
+                abortBurst(error);
+            } else if (next + count == burstEnd) {
+                finishBurst(null);
+            }
+        }
+    }
+
+    private void writeBatch(long first, int count) throws IOException {
+        int w = burstWidth;
+        int h = burstHeight;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((first + i) % slots.length);
+            prepareSlot(slotPixels[slot], w, h);
+            ByteBuffer bytes = slots[slot];
+            bytes.clear();
+            bytes.limit(w * h * 4);
+            batch[i] = bytes;
+        }
+        GatheringByteChannel out = channel;
+        long expected = (long) count * w * h * 4;
+        long written = 0;
+        while (written < expected) {
+            written += out.write(batch, 0, count);
+        }
+        for (int i = 0; i < count; i++) {
+            batch[i] = null;
+        }
+        burstWritten += count;
+        framesWritten.addAndGet(count);
+        bytesWritten.addAndGet(written);
+        batches.incrementAndGet();
+    }
+
+    // Pixelates the slot in place and leaves it as R, G, B, A bytes
+    private void prepareSlot(IntBuffer pixels, int w, int h) {
+        int count = w * h;
+        pixels.clear();
+        pixels.get(scratch, 0, count);
+        if (blockSize > 1) {
+            pixelationEngine.pixelate(scratch, scratch, w, h, blockSize);
+        }
+        for (int i = 0; i < count; i++) {
+            int argb = scratch[i];
+            pixels.put(i, (argb << 8) | (argb >>> 24));
+        }
+    }
+
+    // Stops capturing and discards whatever is still queued for the failed burst
+    private void abortBurst(IOException error) {
+        capturing = false;
+        burstEnd = Long.MAX_VALUE;
+        finishBurst(error);
+    }
+
+    private void finishBurst(IOException error) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        } finally {
+            channel = null;
+        }
+        int written = burstWritten;
+        burstWritten = 0;
+        Listener callback = listener;
+        finished.countDown();
+        if (callback != null) {
+            callback.onBurstFinished(written, burstDropped, error);
+        }
+    }
+
+    public long getFramesQueued() {
+        return framesQueued.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    // Stops the writer thread; frames still in the ring are discarded. A burst in
+    // progress fails: its channel is closed and its listener told, so the owner can
+    // delete the partial file.
+    @Override
+    public void close() {
+        closed = true;
+        capturing = false;
+        LockSupport.unpark(writer);
+        join();
+        if (writer.isAlive()) {
+            // Stuck in a write: closing the channel, and interrupting the thread for
+            // channels that only notice that, makes it fail and abort the burst
+            writer.interrupt();
+            GatheringByteChannel out = channel;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // The write fails either way
+                }
+            }
+            join();
+        }
+        if (!writer.isAlive() && channel != null) {
+            finishBurst(new IOException("Recorder closed during the burst"));
+        }
+    }
+
+    private void join() {
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.pixelize;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Saves captured frames off the caller's thread. submit() only queues a reference to
+// an already-pooled frame, so it is constant time; a single background worker
+// pixelates and encodes it, streaming to a uniquely named file. The queue is bounded:
+// when it is full the capture is rejected instead of blocking the preview. Frames stay
+// out of their pool until saved, so a pool shared with the preview needs room for the
+// queue capacity plus the frame being saved.
+public final class CapturePipeline implements Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public interface Listener {
+        // Called on the capture worker thread
+        void onCaptureSaved(File file);
+
+        void onCaptureFailed(Throwable error);
+
+        // Called on the submitting thread when the queue is full
+        void onCaptureRejected();
+    }
+
+    private final File directory;
+    private final String prefix;
+    private final FrameEncoder encoder;
+    private final PixelationEngine pixelationEngine;
+    private final Listener listener;
+    private final ThreadPoolExecutor executor;
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US);
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private FramePool outputPool; // Worker thread only
+
+    public CapturePipeline(File directory, String prefix, FrameEncoder encoder,
+                           PixelationEngine pixelationEngine, int queueCapacity, Listener listener) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.encoder = encoder;
+        this.pixelationEngine = pixelationEngine;
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "CaptureEncoder");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1); // Stay out of the preview's way
+                    return thread;
+                });
+    }
+
+    // Queues a capture of the frame pixelated at blockSize (1 = as is). Takes ownership of
+    // one reference, so callers sharing a frame should retain() it first. Returns false,
+    // releasing the frame, if the queue is full or the pipeline is closed.
+    public boolean submit(Frame frame, int blockSize) {
+        try {
+            executor.execute(() -> save(frame, blockSize));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            frame.release();
+            rejected.incrementAndGet();
+            if (listener != null) {
+                listener.onCaptureRejected();
+            }
+            return false;
+        }
+    }
+
+    private void save(Frame frame, int blockSize) {
+        Frame output = frame;
+        try {
+            if (blockSize > 1) {
+                output = pixelate(frame, blockSize);
+            }
+            File file = write(output);
+            saved.incrementAndGet();
+            if (listener != null) {
+                listener.onCaptureSaved(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            if (listener != null) {
+                listener.onCaptureFailed(e);
+            }
+        } finally {
+            if (output != frame) {
+                output.release();
+            }
+            frame.release();
+        }
+    }
+
+    private Frame pixelate(Frame frame, int blockSize) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (outputPool == null || outputPool.getWidth() != width || outputPool.getHeight() != height) {
+            outputPool = new FramePool(width, height, 0, 1);
+        }
+        Frame output = outputPool.acquire();
+        pixelationEngine.pixelate(frame.getPixels(), output.getPixels(), width, height,
+                Math.min(blockSize, PixelationEngine.MAX_BLOCK_SIZE));
+        output.setTimestampNs(frame.getTimestampNs());
+        return output;
+    }
+
+    // Streams to a temporary file and renames it, so readers never see a partial image
+    private File write(Frame frame) throws IOException {
+        String name = prefix + "_" + timestampFormat.format(new Date())
+                + "_" + sequence.incrementAndGet() + "." + encoder.getFileExtension();
+        File file = new File(directory, name);
+        File partial = new File(directory, name + ".part");
+        try (FileChannel channel = FileChannel.open(partial.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE)) {
+            encoder.encode(frame, out);
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getSaved() {
+        return saved.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    // Finishes queued captures, waiting up to timeoutMillis
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (executor.getCompletedTaskCount() < executor.getTaskCount()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    // Stops accepting captures; queued ones still complete in the background
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
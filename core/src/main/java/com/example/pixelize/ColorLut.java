@@ -0,0 +1,93 @@
+package com.example.pixelize;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Nearest-palette-colour lookup over RGB quantised to 5 bits per channel: 32x32x32
+// cells, each holding the palette colour nearest to the cell centre. Building costs
+// one palette search per cell; after that mapping a pixel is a single table read.
+// Colours within a cell share an entry, so a pixel can map to a palette colour
+// marginally farther than the true nearest when two are almost equally close.
+public final class ColorLut {
+    public static final int BITS = 5;
+    public static final int SIZE = 1 << BITS; // Cells per channel
+    private static final int HALF_CELL = 1 << (8 - BITS - 1);
+
+    private final Palette palette;
+    private final int[] table = new int[SIZE * SIZE * SIZE]; // Index (r << 10) | (g << 5) | b
+
+    private ColorLut(Palette palette) {
+        this.palette = palette;
+    }
+
+    // One red slice per task keeps the build off a single core
+    public static ColorLut build(Palette palette, ForkJoinPool pool) {
+        ColorLut lut = new ColorLut(palette);
+        if (pool.getParallelism() == 1) {
+            lut.fill(0, SIZE);
+        } else {
+            pool.invoke(lut.new Slices(0, SIZE));
+        }
+        return lut;
+    }
+
+    private void fill(int firstRed, int endRed) {
+        for (int r = firstRed; r < endRed; r++) {
+            for (int g = 0; g < SIZE; g++) {
+                int rg = (r << (2 * BITS)) | (g << BITS);
+                for (int b = 0; b < SIZE; b++) {
+                    int centre = centre(r) << 16 | centre(g) << 8 | centre(b);
+                    table[rg | b] = palette.getColor(palette.nearest(centre));
+                }
+            }
+        }
+    }
+
+    private static int centre(int cell) {
+        return (cell << (8 - BITS)) | HALF_CELL;
+    }
+
+    public Palette getPalette() {
+        return palette;
+    }
+
+    // The palette colour for an ARGB pixel, keeping its alpha
+    public int map(int argb) {
+        return table[((argb >> 9) & 0x7C00) | ((argb >> 6) & 0x3E0) | ((argb >> 3) & 0x1F)]
+                | (argb & 0xFF000000);
+    }
+
+    // Maps rows [firstRow, endRow) of a strided region in place
+    void mapRows(int[] pixels, int offset, int stride, int width, int firstRow, int endRow) {
+        int[] table = this.table;
+        for (int y = firstRow; y < endRow; y++) {
+            for (int i = offset + y * stride, end = i + width; i < end; i++) {
+                int argb = pixels[i];
+                pixels[i] = table[((argb >> 9) & 0x7C00) | ((argb >> 6) & 0x3E0) | ((argb >> 3) & 0x1F)]
+                        | (argb & 0xFF000000);
+            }
+        }
+    }
+
+    private final class Slices extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstRed;
+        private final int endRed;
+
+        Slices(int firstRed, int endRed) {
+            this.firstRed = firstRed;
+            this.endRed = endRed;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRed - firstRed == 1) {
+                fill(firstRed, endRed);
+                return;
+            }
+            int middle = (firstRed + endRed) >>> 1;
+            invokeAll(new Slices(firstRed, middle), new Slices(middle, endRed));
+        }
+    }
+}
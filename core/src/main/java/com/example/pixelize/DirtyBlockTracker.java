@@ -0,0 +1,132 @@
+package com.example.pixelize;
+
+import java.util.Arrays;
+
+// Temporal coherence for the block grid: compares each frame's block averages with
+// the colours last accepted for those blocks and marks a block dirty only when some
+// channel moved by more than the tolerance. The result is a dirty bitmap, one bit
+// per block in row-major order, which TextureStreamer.uploadDirty() turns into
+// sub-rectangle uploads.
+//
+// A block's reference colour only changes when it is marked dirty, so slow drift
+// still accumulates until it crosses the tolerance instead of creeping past it a
+// little every frame. A change of grid size starts over with every block dirty.
+//
+// Not thread-safe.
+public final class DirtyBlockTracker {
+    private final int tolerance;
+    private int gridWidth;
+    private int gridHeight;
+    private int[] reference = new int[0];
+    private long[] dirty = new long[0];
+    private int dirtyCount;
+    private long blocksCompared;
+    private long blocksSkipped;
+
+    // tolerance is the largest per-channel difference (0-255) still treated as unchanged
+    public DirtyBlockTracker(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Tolerance out of range: " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    public int update(int[] grid, int gridWidth, int gridHeight) {
+        return update(grid, 0, gridWidth, gridWidth, gridHeight);
+    }
+
+    // Compares a block grid (one ARGB pixel per block) against the previous one and
+    // rebuilds the dirty bitmap. Returns the number of dirty blocks.
+    public int update(int[] grid, int offset, int stride, int gridWidth, int gridHeight) {
+        if (gridWidth <= 0 || gridHeight <= 0) {
+            throw new IllegalArgumentException("Invalid grid size " + gridWidth + "x" + gridHeight);
+        }
+        int blocks = gridWidth * gridHeight;
+        if (gridWidth != this.gridWidth || gridHeight != this.gridHeight) {
+            this.gridWidth = gridWidth;
+            this.gridHeight = gridHeight;
+            reference = new int[blocks];
+            dirty = new long[(blocks + 63) >>> 6];
+            for (int y = 0; y < gridHeight; y++) {
+                System.arraycopy(grid, offset + y * stride, reference, y * gridWidth, gridWidth);
+            }
+            Arrays.fill(dirty, -1L);
+            dirty[dirty.length - 1] = -1L >>> (dirty.length * 64 - blocks);
+            dirtyCount = blocks;
+            blocksCompared += blocks;
+            return blocks;
+        }
+
+        Arrays.fill(dirty, 0);
+        int count = 0;
+        for (int y = 0; y < gridHeight; y++) {
+            int in = offset + y * stride;
+            int block = y * gridWidth;
+            for (int x = 0; x < gridWidth; x++, in++, block++) {
+                int color = grid[in];
+                if (changed(reference[block], color)) {
+                    reference[block] = color;
+                    dirty[block >>> 6] |= 1L << block;
+                    count++;
+                }
+            }
+        }
+        dirtyCount = count;
+        blocksCompared += blocks;
+        blocksSkipped += blocks - count;
+        return count;
+    }
+
+    private boolean changed(int a, int b) {
+        if (a == b) {
+            return false;
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+            if (Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF)) > tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Forgets the reference, so the next update marks every block dirty
+    public void reset() {
+        gridWidth = 0;
+        gridHeight = 0;
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    public boolean isDirty(int blockX, int blockY) {
+        int block = blockY * gridWidth + blockX;
+        return (dirty[block >>> 6] & (1L << block)) != 0;
+    }
+
+    // Dirty bitmap of the last update: bit (y * gridWidth + x). Shared, not a copy.
+    public long[] getDirtyBits() {
+        return dirty;
+    }
+
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    public long getBlocksCompared() {
+        return blocksCompared;
+    }
+
+    // Blocks found unchanged; a new grid size counts every block as changed
+    public long getBlocksSkipped() {
+        return blocksSkipped;
+    }
+
+    public double getSkippedFraction() {
+        return blocksCompared == 0 ? 0 : (double) blocksSkipped / blocksCompared;
+    }
+}
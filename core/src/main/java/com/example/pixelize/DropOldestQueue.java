@@ -0,0 +1,117 @@
+package com.example.pixelize;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded lock-free multi-producer/multi-consumer queue for handing frames between
+// pipeline stages (Vyukov's array queue: each slot carries a sequence number, and
+// producers and consumers claim slots with a CAS on their own counter). put() never
+// blocks: when the queue is full it evicts the oldest item to make room, since for a
+// live stream the newest frame is the one worth keeping. Nothing is allocated per item.
+public final class DropOldestQueue<T> {
+    public interface Evictor<T> {
+        // Takes back an item that was evicted before any consumer got it
+        void evicted(T item);
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // Next slot to write
+    private final AtomicLong head = new AtomicLong(); // Next slot to read
+    private final AtomicLong evicted = new AtomicLong();
+
+    // The capacity is rounded up to a power of two
+    public DropOldestQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // Adds item if there is room; false if the queue is full
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.set(index, item);
+                    sequences.set(index, position + 1); // Publishes the item to consumers
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // The slot still holds an item from a lap ago
+            } else {
+                position = tail.get(); // Another producer took the slot
+            }
+        }
+    }
+
+    // Adds item, evicting the oldest items to evictor for as long as the queue is full
+    public void put(T item, Evictor<? super T> evictor) {
+        while (!offer(item)) {
+            T oldest = poll();
+            if (oldest != null) {
+                evicted.incrementAndGet();
+                evictor.evicted(oldest);
+            }
+        }
+    }
+
+    // Removes the oldest item, or returns null if there is none
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T item = items.get(index);
+                    items.set(index, null);
+                    sequences.set(index, position + mask + 1); // Frees the slot for the next lap
+                    return item;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; // Not written yet
+            } else {
+                position = head.get(); // Another consumer took the slot
+            }
+        }
+    }
+
+    // Items queued, approximate while other threads are using the queue
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Items evicted by put() so far
+    public long getEvicted() {
+        return evicted.get();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The shader effects the renderer can switch between, by id, in registration order.
+// createDefault() holds the built-in effects; more can be registered before the
+// registry is handed to a ShaderProgramCache.
+public final class EffectRegistry {
+    public static final String NONE = "none";
+    public static final String PIXELATE = "pixelate";
+    public static final String HEXAGON = "hexagon";
+    public static final String POSTERIZE = "posterize";
+    public static final String MOSAIC = "mosaic";
+
+    private final Map<String, ShaderEffect> effects = new LinkedHashMap<>();
+
+    public static EffectRegistry createDefault() {
+        EffectRegistry registry = new EffectRegistry();
+        // Pixelation off: the frame as it is
+        registry.register(new ShaderEffect(NONE,
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(u_Texture, v_TexCoord).bgra;\n" +
+            "}\n",
+            EnumSet.of(ShaderEffect.Variant.FRAME)));
+        registry.register(new ShaderEffect(PIXELATE,
+            "void main() {\n" +
+            "    gl_FragColor = blockColor(v_TexCoord);\n" +
+            "}\n",
+            EnumSet.allOf(ShaderEffect.Variant.class), true));
+        // Pointy-top hexagons u_PixelSize wide: the nearer of two offset rectangular
+        // lattices gives the cell centre, which is sampled from the full frame
+        registry.register(new ShaderEffect(HEXAGON,
+            "void main() {\n" +
+            "    vec2 p = v_TexCoord * u_TexSize / u_PixelSize;\n" +
+            "    vec2 r = vec2(1.0, 1.7320508);\n" +
+            "    vec2 a = mod(p, r) - r * 0.5;\n" +
+            "    vec2 b = mod(p - r * 0.5, r) - r * 0.5;\n" +
+            "    vec2 offset = mix(b, a, step(dot(a, a), dot(b, b)));\n" +
+            "    gl_FragColor = frameColor((p - offset) * u_PixelSize);\n" +
+            "}\n",
+            EnumSet.of(ShaderEffect.Variant.FRAME)));
+        // Block colours rounded to u_Levels steps per channel
+        registry.register(new ShaderEffect(POSTERIZE,
+            "uniform float u_Levels;\n" +
+            "void main() {\n" +
+            "    vec4 color = blockColor(v_TexCoord);\n" +
+            "    float steps = max(u_Levels - 1.0, 1.0);\n" +
+            "    gl_FragColor = vec4(floor(color.rgb * steps + 0.5) / steps, color.a);\n" +
+            "}\n",
+            EnumSet.allOf(ShaderEffect.Variant.class), true,
+            new ShaderEffect.Parameter("u_Levels", 6f)));
+        // Blocks separated by dark grout u_LineWidth frame pixels wide
+        registry.register(new ShaderEffect(MOSAIC,
+            "uniform float u_LineWidth;\n" +
+            "void main() {\n" +
+            "    vec2 inBlock = mod(v_TexCoord * u_TexSize, u_PixelSize);\n" +
+            "    float line = 1.0 - step(u_LineWidth, min(inBlock.x, inBlock.y));\n" +
+            "    vec4 color = blockColor(v_TexCoord);\n" +
+            "    gl_FragColor = vec4(color.rgb * (1.0 - 0.8 * line), color.a);\n" +
+            "}\n",
+            EnumSet.allOf(ShaderEffect.Variant.class), true,
+            new ShaderEffect.Parameter("u_LineWidth", 1f)));
+        return registry;
+    }
+
+    public void register(ShaderEffect effect) {
+        if (effects.containsKey(effect.getId())) {
+            throw new IllegalArgumentException("Effect already registered: " + effect.getId());
+        }
+        effects.put(effect.getId(), effect);
+    }
+
+    public ShaderEffect get(String id) {
+        ShaderEffect effect = effects.get(id);
+        if (effect == null) {
+            throw new IllegalArgumentException("Unknown effect: " + id);
+        }
+        return effect;
+    }
+
+    public boolean contains(String id) {
+        return effects.containsKey(id);
+    }
+
+    public List<ShaderEffect> getEffects() {
+        return Collections.unmodifiableList(new ArrayList<>(effects.values()));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.pixelize;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A reference-counted ARGB frame. Frames handed out by a FramePool go back to it
+// once the last holder calls release(), so preview and capture can share one
+// buffer without copying.
+public final class Frame {
+    private final FramePool pool;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final IntBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private volatile long timestampNs;
+    private volatile long arrivalNanos;
+
+    // Standalone frame, not backed by a pool
+    public Frame(int width, int height) {
+        this(null, width, height);
+        refCount.set(1);
+    }
+
+    Frame(FramePool pool, int width, int height) {
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.buffer = IntBuffer.wrap(pixels);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Row-major ARGB pixels, stride == width
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    // IntBuffer view over getPixels(), for GL uploads
+    public IntBuffer getBuffer() {
+        return buffer;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public void setTimestampNs(long timestampNs) {
+        this.timestampNs = timestampNs;
+    }
+
+    // System.nanoTime() when the frame's source data arrived, 0 if unknown
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    public void setArrivalNanos(long arrivalNanos) {
+        this.arrivalNanos = arrivalNanos;
+    }
+
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    // Adds a holder; only valid while the frame is still held by someone
+    public Frame retain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Frame retained after release");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    // Drops a holder; the last release returns the frame to its pool
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Frame released more times than retained");
+        }
+    }
+
+    // Called by the pool when handing the frame out
+    void reset() {
+        timestampNs = 0;
+        arrivalNanos = 0;
+        refCount.set(1);
+    }
+}
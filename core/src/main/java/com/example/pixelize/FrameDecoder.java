@@ -0,0 +1,23 @@
+package com.example.pixelize;
+
+import java.io.File;
+import java.io.IOException;
+
+// Decodes image files into frames for batch processing. Called from several decode
+// workers at once, so implementations must be thread-safe.
+public interface FrameDecoder {
+    // True if the file looks like something decode() reads, judged by its name
+    boolean accepts(File file);
+
+    // Reads {width, height} from the header without decoding the pixels
+    int[] readSize(File file) throws IOException;
+
+    // Decodes the image into frame, which has the size readSize() reported
+    void decode(File file, Frame frame) throws IOException;
+
+    // Opens the image for reading in row order, for images too large to decode
+    // whole; null if this decoder can only decode whole images
+    default TiledPixelator.Source openRows(File file) throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.pixelize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Encodes a frame into an image file format. Called on the capture worker thread only,
+// so implementations may keep reusable scratch state.
+public interface FrameEncoder {
+    // Extension without the dot, e.g. "png"
+    String getFileExtension();
+
+    void encode(Frame frame, OutputStream out) throws IOException;
+
+    // Starts encoding a width x height image that arrives in row order, strip by
+    // strip, for images too large to hold whole; null if this encoder needs the whole
+    // frame. Closing the sink finishes the image but leaves out open.
+    default TiledPixelator.Sink openRows(int width, int height, OutputStream out) throws IOException {
+        return null;
+    }
+}
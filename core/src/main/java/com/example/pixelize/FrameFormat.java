@@ -0,0 +1,85 @@
+package com.example.pixelize;
+
+import java.util.List;
+
+// Size and pixel layout a FrameSource delivers. Sources list what they can produce
+// and the pipeline picks one with negotiate() instead of assuming a resolution.
+public final class FrameFormat {
+
+    public enum Encoding {
+        // Y plane plus subsampled U and V planes with row and pixel strides (YUV_420_888)
+        YUV_420,
+        // Packed ARGB ints, the Frame layout
+        ARGB,
+        // R, G, B, A bytes
+        RGBA
+    }
+
+    private final int width;
+    private final int height;
+    private final Encoding encoding;
+
+    public FrameFormat(int width, int height, Encoding encoding) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.encoding = encoding;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    // Picks the smallest supported format that covers width x height, or the largest
+    // one if none does. Ties go to the format listed first.
+    public static FrameFormat negotiate(List<FrameFormat> supported, int width, int height) {
+        if (supported.isEmpty()) {
+            throw new IllegalArgumentException("Source supports no formats");
+        }
+        FrameFormat smallestCovering = null;
+        FrameFormat largest = null;
+        for (FrameFormat format : supported) {
+            long area = (long) format.width * format.height;
+            if (format.width >= width && format.height >= height
+                    && (smallestCovering == null || area < (long) smallestCovering.width * smallestCovering.height)) {
+                smallestCovering = format;
+            }
+            if (largest == null || area > (long) largest.width * largest.height) {
+                largest = format;
+            }
+        }
+        return smallestCovering != null ? smallestCovering : largest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrameFormat)) {
+            return false;
+        }
+        FrameFormat other = (FrameFormat) o;
+        return width == other.width && height == other.height && encoding == other.encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + encoding.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + encoding;
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs frames through a chain of stages (convert, pixelate, upload, encode, ...), each
+// on its own worker threads, linked by bounded DropOldestQueues. Stages work on
+// different frames at the same time, so a frame leaves every slowest-stage time rather
+// than every sum-of-all-stages time, and one slow frame only holds up its own stage.
+// When a stage falls behind its input queue fills and the oldest frame waiting is
+// dropped, never the newest, and nothing upstream ever waits.
+//
+// Items are owned by the pipeline from submit() until they are handed to the recycler:
+// after the last stage, when evicted from a queue, when a stage fails on them, or on
+// close(). A stage may also keep an item by returning null. A stage with several
+// workers can finish items out of order, so a consumer that cares checks timestamps.
+//
+// Workers yield briefly, then park, when their queue is empty; enqueueing wakes one.
+public final class FramePipeline<T> implements Closeable {
+    private static final int SPINS = 64;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public interface Stage<T> {
+        // Processes item and returns what the next stage gets (usually item itself), or
+        // null if this stage has taken the item over. Exceptions drop the item.
+        T process(T item) throws Exception;
+    }
+
+    public interface Recycler<T> {
+        // Called, on any thread, with every item the pipeline is done with
+        void recycle(T item);
+    }
+
+    private final Recycler<T> recycler;
+    private final DropOldestQueue.Evictor<T> evictor;
+    private final List<StageRunner> stages = new ArrayList<>();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean running;
+
+    public FramePipeline(Recycler<T> recycler) {
+        this.recycler = recycler;
+        this.evictor = recycler::recycle;
+    }
+
+    // Appends a stage fed by a queue of queueCapacity items (rounded up to a power of
+    // two); only before start()
+    public FramePipeline<T> addStage(String name, int workers, int queueCapacity, Stage<T> stage) {
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("Stage " + name + " needs a worker");
+        }
+        stages.add(new StageRunner(name, workers, new DropOldestQueue<>(queueCapacity), stage, stages.size()));
+        return this;
+    }
+
+    public void start() {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("No stages");
+        }
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        started = true;
+        running = true;
+        for (StageRunner stage : stages) {
+            stage.start();
+        }
+    }
+
+    // Acquire side: hands item to the first stage without waiting. Returns false, and
+    // recycles the item, if the pipeline isn't running.
+    public boolean submit(T item) {
+        if (!running) {
+            recycler.recycle(item);
+            return false;
+        }
+        submitted.incrementAndGet();
+        stages.get(0).enqueue(item);
+        if (!running) {
+            stages.get(0).drain(); // Raced with close()
+        }
+        return true;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public String getStageName(int stage) {
+        return stages.get(stage).name;
+    }
+
+    // Items waiting in front of the stage
+    public int getQueueDepth(int stage) {
+        return stages.get(stage).queue.size();
+    }
+
+    public int getQueueCapacity(int stage) {
+        return stages.get(stage).queue.getCapacity();
+    }
+
+    // Time the stage spent on each item it processed
+    public LatencyHistogram getServiceTime(int stage) {
+        return stages.get(stage).serviceTime;
+    }
+
+    public long getProcessed(int stage) {
+        return stages.get(stage).processed.get();
+    }
+
+    // Items dropped from the stage's queue to make room for newer ones
+    public long getDropped(int stage) {
+        return stages.get(stage).queue.getEvicted();
+    }
+
+    // Items the stage threw on
+    public long getFailed(int stage) {
+        return stages.get(stage).failed.get();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    // Items that made it through every stage
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    // Stops the workers after the items they are on and recycles everything queued
+    @Override
+    public void close() {
+        running = false;
+        for (StageRunner stage : stages) {
+            stage.stop();
+        }
+        for (StageRunner stage : stages) {
+            stage.join();
+        }
+        for (StageRunner stage : stages) {
+            stage.drain();
+        }
+    }
+
+    private final class StageRunner {
+        private final String name;
+        private final DropOldestQueue<T> queue;
+        private final Stage<T> stage;
+        private final int index;
+        private final Thread[] threads;
+        private final AtomicIntegerArray parked; // 1 while the worker is parked or about to
+        private final AtomicInteger parkedWorkers = new AtomicInteger(); // So producers know to look
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        StageRunner(String name, int workers, DropOldestQueue<T> queue, Stage<T> stage, int index) {
+            this.name = name;
+            this.queue = queue;
+            this.stage = stage;
+            this.index = index;
+            this.threads = new Thread[workers];
+            this.parked = new AtomicIntegerArray(workers);
+            for (int i = 0; i < workers; i++) {
+                int worker = i;
+                threads[i] = new Thread(() -> work(worker), "Pipeline-" + name + "-" + (i + 1));
+            }
+        }
+
+        void start() {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+        }
+
+        void enqueue(T item) {
+            queue.put(item, evictor);
+            if (parkedWorkers.get() > 0) {
+                for (int i = 0; i < threads.length; i++) {
+                    if (parked.get(i) != 0) {
+                        LockSupport.unpark(threads[i]);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void work(int worker) {
+            int idle = 0;
+            while (running) {
+                T item = queue.poll();
+                if (item == null) {
+                    if (++idle < SPINS) {
+                        Thread.yield();
+                        continue;
+                    }
+                    // Announce the park before the last look, so a producer that
+                    // enqueues after that look is sure to see it and unpark us
+                    parked.set(worker, 1);
+                    parkedWorkers.incrementAndGet();
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    }
+                    parkedWorkers.decrementAndGet();
+                    parked.set(worker, 0);
+                    idle = 0;
+                    continue;
+                }
+                idle = 0;
+                run(item);
+            }
+        }
+
+        private void run(T item) {
+            long start = System.nanoTime();
+            T output;
+            try {
+                output = stage.process(item);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                recycler.recycle(item);
+                return;
+            } finally {
+                serviceTime.record(System.nanoTime() - start);
+            }
+            processed.incrementAndGet();
+            if (output == null) {
+                return;
+            }
+            if (index + 1 < stages.size()) {
+                stages.get(index + 1).enqueue(output);
+            } else {
+                completed.incrementAndGet();
+                recycler.recycle(output);
+            }
+        }
+
+        void stop() {
+            for (Thread thread : threads) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        void join() {
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void drain() {
+            T item;
+            while ((item = queue.poll()) != null) {
+                recycler.recycle(item);
+            }
+        }
+    }
+}
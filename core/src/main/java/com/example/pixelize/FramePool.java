@@ -0,0 +1,110 @@
+package com.example.pixelize;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of preallocated frames of one size. Once warm, acquire/release
+// allocate nothing; when every frame is in use acquire() returns null so the
+// caller can drop the frame instead of growing the heap.
+public final class FramePool {
+    private final int width;
+    private final int height;
+    private final int capacity;
+    private final ArrayBlockingQueue<Frame> freeFrames;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    public FramePool(int width, int height, int capacity) {
+        this(width, height, capacity, capacity);
+    }
+
+    // Preallocates `preallocated` frames and grows on demand up to `capacity`
+    public FramePool(int width, int height, int preallocated, int capacity) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (capacity <= 0 || preallocated < 0 || preallocated > capacity) {
+            throw new IllegalArgumentException("Invalid pool capacity " + preallocated + "/" + capacity);
+        }
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+        this.freeFrames = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < preallocated; i++) {
+            freeFrames.offer(new Frame(this, width, height));
+        }
+        created.set(preallocated);
+    }
+
+    // Returns a frame with a reference count of one, or null if the pool is exhausted
+    public Frame acquire() {
+        Frame frame = freeFrames.poll();
+        if (frame != null) {
+            hits.incrementAndGet();
+        } else {
+            frame = allocate();
+            if (frame == null) {
+                exhausted.incrementAndGet();
+                return null;
+            }
+            misses.incrementAndGet();
+        }
+        frame.reset();
+        return frame;
+    }
+
+    private Frame allocate() {
+        while (true) {
+            int count = created.get();
+            if (count >= capacity) {
+                return null;
+            }
+            if (created.compareAndSet(count, count + 1)) {
+                return new Frame(this, width, height);
+            }
+        }
+    }
+
+    void recycle(Frame frame) {
+        if (!freeFrames.offer(frame)) {
+            throw new IllegalStateException("Frame returned to a full pool");
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Frames currently sitting in the pool
+    public int getAvailable() {
+        return freeFrames.size();
+    }
+
+    // Frames allocated so far, in use or not
+    public int getAllocated() {
+        return created.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getExhausted() {
+        return exhausted.get();
+    }
+}
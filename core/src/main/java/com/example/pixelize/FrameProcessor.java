@@ -0,0 +1,120 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Turns raw frames from any FrameSource into pooled ARGB Frames for the renderer.
+// The pool and converter follow the incoming format, so a source can switch
+// resolution without the pipeline being rebuilt. Called on the source's thread.
+public final class FrameProcessor implements FrameSource.Sink {
+
+    public interface Listener {
+        // Receives a pooled frame and takes ownership of it
+        void onFrame(Frame frame);
+    }
+
+    private final int poolSize;
+    private final PipelineMetrics metrics;
+    private final Listener listener;
+    private volatile FramePool framePool;
+    private YuvConverter yuvConverter;
+    private volatile long minIntervalNanos; // 0 = take every frame
+    private long lastAcceptedNs = Long.MIN_VALUE;
+    private final AtomicLong skipped = new AtomicLong();
+
+    public FrameProcessor(int poolSize, PipelineMetrics metrics, Listener listener) {
+        this.poolSize = poolSize;
+        this.metrics = metrics;
+        this.listener = listener;
+    }
+
+    // Pool for the current format, or null before the first frame
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    // Caps the rate at which frames are converted, whatever the source delivers;
+    // fps <= 0 removes the cap. Skipped frames cost nothing and are not drops.
+    public void setMaxFrameRate(int fps) {
+        // Slightly under the nominal interval, so source jitter doesn't halve the rate
+        minIntervalNanos = fps > 0 ? TimeUnit.SECONDS.toNanos(1) * 9 / (10L * fps) : 0;
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    @Override
+    public void onFrame(RawFrame raw) {
+        long interval = minIntervalNanos;
+        if (interval > 0 && lastAcceptedNs != Long.MIN_VALUE
+                && raw.getTimestampNs() - lastAcceptedNs < interval
+                && raw.getTimestampNs() >= lastAcceptedNs) {
+            skipped.incrementAndGet();
+            return;
+        }
+        lastAcceptedNs = raw.getTimestampNs();
+        long start = System.nanoTime();
+        int width = raw.getWidth();
+        int height = raw.getHeight();
+        FramePool pool = framePool;
+        if (pool == null || pool.getWidth() != width || pool.getHeight() != height) {
+            pool = new FramePool(width, height, poolSize);
+            framePool = pool;
+        }
+
+        Frame frame = pool.acquire();
+        if (frame == null) {
+            metrics.frameDropped(); // Renderer still holds every frame
+            return;
+        }
+        convert(raw, frame);
+        frame.setTimestampNs(raw.getTimestampNs());
+        frame.setArrivalNanos(start);
+        metrics.record(PipelineMetrics.Stage.CONVERT, System.nanoTime() - start);
+        metrics.frameProduced();
+        listener.onFrame(frame);
+    }
+
+    private void convert(RawFrame raw, Frame frame) {
+        int width = raw.getWidth();
+        int height = raw.getHeight();
+        int[] pixels = frame.getPixels();
+        switch (raw.getFormat().getEncoding()) {
+            case YUV_420:
+                if (yuvConverter == null || yuvConverter.getWidth() != width || yuvConverter.getHeight() != height) {
+                    yuvConverter = new YuvConverter(width, height);
+                }
+                // Convert all three planes directly, honouring row and pixel strides
+                yuvConverter.convert(raw.getYPlane(), raw.getYRowStride(),
+                        raw.getUPlane(), raw.getVPlane(), raw.getUvRowStride(), raw.getUvPixelStride(),
+                        pixels);
+                break;
+            case ARGB:
+                for (int row = 0; row < height; row++) {
+                    System.arraycopy(raw.getArgb(), raw.getArgbOffset() + row * raw.getArgbStride(),
+                            pixels, row * width, width);
+                }
+                break;
+            case RGBA:
+                ByteBuffer rgba = raw.getRgba();
+                boolean bigEndian = rgba.order() == ByteOrder.BIG_ENDIAN;
+                for (int row = 0; row < height; row++) {
+                    int in = rgba.position() + row * raw.getRgbaRowStride();
+                    int out = row * width;
+                    for (int x = 0; x < width; x++) {
+                        int value = rgba.getInt(in + x * 4);
+                        if (!bigEndian) {
+                            value = Integer.reverseBytes(value);
+                        }
+                        pixels[out + x] = (value >>> 8) | (value << 24);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported encoding " + raw.getFormat());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.pixelize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Layout of raw frame recordings (".pxrf"): a fixed header followed by fixed-size
+// records, so any frame can be located without an index and replayed straight out
+// of a memory mapping. All header fields are little-endian.
+//
+//   header  0  magic "PXRF"
+//           4  version
+//           8  pixel format id
+//          12  width
+//          16  height
+//          20  frame bytes
+//          24  record size
+//          32  frame count (long, written on close)
+//   record  0  timestamp in ns (long)
+//           8  frame bytes, padded to a multiple of 8
+public final class FrameRecording {
+
+    public enum PixelFormat {
+        // Packed planes: Y (width x height), then U, then V (each half size, rounded up)
+        I420(1),
+        // R, G, B, A bytes per pixel
+        RGBA(2);
+
+        final int id;
+
+        PixelFormat(int id) {
+            this.id = id;
+        }
+
+        public int frameBytes(int width, int height) {
+            if (this == RGBA) {
+                return width * height * 4;
+            }
+            return width * height + 2 * chromaWidth(width) * chromaHeight(height);
+        }
+
+        static PixelFormat fromId(int id) throws IOException {
+            for (PixelFormat format : values()) {
+                if (format.id == id) {
+                    return format;
+                }
+            }
+            throw new IOException("Unknown pixel format " + id);
+        }
+    }
+
+    public static final String FILE_EXTENSION = "pxrf";
+    static final int MAGIC = 0x46525850; // "PXRF" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int FRAME_COUNT_OFFSET = 32;
+
+    private FrameRecording() {
+    }
+
+    static int chromaWidth(int width) {
+        return (width + 1) / 2;
+    }
+
+    static int chromaHeight(int height) {
+        return (height + 1) / 2;
+    }
+
+    static int recordSize(PixelFormat format, int width, int height) {
+        long size = RECORD_HEADER_SIZE + (long) format.frameBytes(width, height);
+        size = (size + 7) & ~7L;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame too large: " + width + "x" + height);
+        }
+        return (int) size;
+    }
+
+    static void writeHeader(ByteBuffer header, PixelFormat format, int width, int height, long frameCount) {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, format.id);
+        header.putInt(12, width);
+        header.putInt(16, height);
+        header.putInt(20, format.frameBytes(width, height));
+        header.putInt(24, recordSize(format, width, height));
+        header.putLong(FRAME_COUNT_OFFSET, frameCount);
+    }
+}
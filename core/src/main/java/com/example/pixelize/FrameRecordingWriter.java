@@ -0,0 +1,192 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Appends frames to a FrameRecording file through a sliding memory-mapped window,
+// so each frame is written once straight into the page cache. Not thread-safe; call
+// from the thread that produces the frames.
+public final class FrameRecordingWriter implements Closeable {
+    private static final long WINDOW_BYTES = 32L << 20;
+
+    private final FrameRecording.PixelFormat format;
+    private final int width;
+    private final int height;
+    private final int recordSize;
+    private final int windowRecords;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer window;
+    private long windowStart; // Index of the window's first record
+    private long frameCount;
+    private boolean closed;
+
+    public FrameRecordingWriter(File file, FrameRecording.PixelFormat format, int width, int height)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.recordSize = FrameRecording.recordSize(format, width, height);
+        this.windowRecords = (int) Math.max(1, WINDOW_BYTES / recordSize);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, FrameRecording.HEADER_SIZE);
+            FrameRecording.writeHeader(header, format, width, height, 0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public FrameRecording.PixelFormat getPixelFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    // Appends an ARGB frame as RGBA bytes; needs an RGBA recording
+    public void append(Frame frame) throws IOException {
+        requireFormat(FrameRecording.PixelFormat.RGBA);
+        checkSize(frame.getWidth(), frame.getHeight());
+        ByteBuffer record = nextRecord(frame.getTimestampNs());
+        int[] pixels = frame.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            record.putInt(i * 4, (argb << 8) | (argb >>> 24));
+        }
+    }
+
+    // Appends a frame from any FrameSource: YUV into an I420 recording, ARGB or RGBA
+    // into an RGBA recording
+    public void append(RawFrame frame) throws IOException {
+        checkSize(frame.getWidth(), frame.getHeight());
+        switch (frame.getFormat().getEncoding()) {
+            case YUV_420:
+                appendYuv(frame.getTimestampNs(), frame.getYPlane(), frame.getYRowStride(),
+                        frame.getUPlane(), frame.getVPlane(), frame.getUvRowStride(), frame.getUvPixelStride());
+                break;
+            case ARGB: {
+                requireFormat(FrameRecording.PixelFormat.RGBA);
+                ByteBuffer record = nextRecord(frame.getTimestampNs());
+                int[] argb = frame.getArgb();
+                for (int row = 0; row < height; row++) {
+                    int in = frame.getArgbOffset() + row * frame.getArgbStride();
+                    int out = row * width * 4;
+                    for (int x = 0; x < width; x++) {
+                        int value = argb[in + x];
+                        record.putInt(out + x * 4, (value << 8) | (value >>> 24));
+                    }
+                }
+                break;
+            }
+            default: {
+                requireFormat(FrameRecording.PixelFormat.RGBA);
+                ByteBuffer record = nextRecord(frame.getTimestampNs());
+                int rowBytes = width * 4;
+                copyPlane(frame.getRgba(), frame.getRgbaRowStride(), 1, rowBytes, height, record, 0);
+                break;
+            }
+        }
+    }
+
+    // Appends YUV_420_888 planes (any row and pixel strides, as delivered by an
+    // ImageReader) packed as I420; needs an I420 recording
+    public void appendYuv(long timestampNs, ByteBuffer yPlane, int yRowStride,
+                          ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride)
+            throws IOException {
+        requireFormat(FrameRecording.PixelFormat.I420);
+        ByteBuffer record = nextRecord(timestampNs);
+        int out = copyPlane(yPlane, yRowStride, 1, width, height, record, 0);
+        int chromaWidth = FrameRecording.chromaWidth(width);
+        int chromaHeight = FrameRecording.chromaHeight(height);
+        out = copyPlane(uPlane, uvRowStride, uvPixelStride, chromaWidth, chromaHeight, record, out);
+        copyPlane(vPlane, uvRowStride, uvPixelStride, chromaWidth, chromaHeight, record, out);
+    }
+
+    // Absolute reads and writes, so the source planes' positions are never touched
+    private static int copyPlane(ByteBuffer plane, int rowStride, int pixelStride,
+                                 int planeWidth, int planeHeight, ByteBuffer record, int out) {
+        int base = plane.position();
+        for (int row = 0; row < planeHeight; row++) {
+            int index = base + row * rowStride;
+            for (int x = 0; x < planeWidth; x++) {
+                record.put(out++, plane.get(index));
+                index += pixelStride;
+            }
+        }
+        return out;
+    }
+
+    private void requireFormat(FrameRecording.PixelFormat expected) {
+        if (format != expected) {
+            throw new IllegalStateException("Recording is " + format + ", not " + expected);
+        }
+    }
+
+    private void checkSize(int frameWidth, int frameHeight) {
+        if (frameWidth != width || frameHeight != height) {
+            throw new IllegalArgumentException("Frame is " + frameWidth + "x" + frameHeight
+                    + ", recording is " + width + "x" + height);
+        }
+    }
+
+    // Stamps the next record and returns its frame bytes as a big-endian slice
+    private ByteBuffer nextRecord(long timestampNs) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Writer closed");
+        }
+        if (window == null || frameCount - windowStart == windowRecords) {
+            windowStart = frameCount;
+            window = channel.map(FileChannel.MapMode.READ_WRITE,
+                    FrameRecording.HEADER_SIZE + windowStart * recordSize, (long) windowRecords * recordSize);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int offset = (int) (frameCount - windowStart) * recordSize;
+        window.putLong(offset, timestampNs);
+        window.position(offset + FrameRecording.RECORD_HEADER_SIZE);
+        ByteBuffer record = window.slice().order(ByteOrder.BIG_ENDIAN);
+        record.limit(format.frameBytes(width, height));
+        frameCount++;
+        return record;
+    }
+
+    // Writes the frame count and trims the unused tail of the last window
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            header.putLong(FrameRecording.FRAME_COUNT_OFFSET, frameCount);
+            header.force();
+            if (window != null) {
+                window.force();
+            }
+            window = null;
+            channel.truncate(FrameRecording.HEADER_SIZE + frameCount * recordSize);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays a FrameRecording straight out of a read-only memory mapping. Frame data
+// (and for I420 the individual planes) are sliced once when the file is opened, so
+// handing a frame to the pipeline never copies or allocates; the YUV planes go into
+// YuvConverter exactly like camera planes do.
+public final class FrameReplay implements Closeable {
+
+    public interface Sink {
+        // Called for each frame in order; return false to stop the replay
+        boolean onFrame(FrameReplay replay, int index);
+    }
+
+    private final FrameRecording.PixelFormat format;
+    private final int width;
+    private final int height;
+    private final int frameCount;
+    private final FileChannel channel;
+    private final long[] timestamps;
+    private final ByteBuffer[] frames;
+    private final ByteBuffer[] yPlanes;
+    private final ByteBuffer[] uPlanes;
+    private final ByteBuffer[] vPlanes;
+
+    public FrameReplay(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FrameRecording.HEADER_SIZE) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FrameRecording.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != FrameRecording.MAGIC) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            if (header.getInt(4) != FrameRecording.VERSION) {
+                throw new IOException("Unsupported recording version " + header.getInt(4));
+            }
+            format = FrameRecording.PixelFormat.fromId(header.getInt(8));
+            width = header.getInt(12);
+            height = header.getInt(16);
+            int frameBytes = format.frameBytes(width, height);
+            int recordSize = FrameRecording.recordSize(format, width, height);
+            if (header.getInt(20) != frameBytes || header.getInt(24) != recordSize) {
+                throw new IOException("Corrupt recording header in " + file);
+            }
+            long count = header.getLong(FrameRecording.FRAME_COUNT_OFFSET);
+            if (count < 0 || FrameRecording.HEADER_SIZE + count * recordSize > size || count > Integer.MAX_VALUE) {
+                throw new IOException("Recording truncated: " + file);
+            }
+            frameCount = (int) count;
+            timestamps = new long[frameCount];
+            frames = new ByteBuffer[frameCount];
+            boolean planar = format == FrameRecording.PixelFormat.I420;
+            yPlanes = planar ? new ByteBuffer[frameCount] : null;
+            uPlanes = planar ? new ByteBuffer[frameCount] : null;
+            vPlanes = planar ? new ByteBuffer[frameCount] : null;
+            mapRecords(recordSize, frameBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // A single mapping is limited to 2GB, so long recordings map in segments of whole records
+    private void mapRecords(int recordSize, int frameBytes) throws IOException {
+        int segmentRecords = Integer.MAX_VALUE / recordSize;
+        int lumaBytes = width * height;
+        int chromaBytes = FrameRecording.chromaWidth(width) * FrameRecording.chromaHeight(height);
+        for (int first = 0; first < frameCount; first += segmentRecords) {
+            int records = Math.min(segmentRecords, frameCount - first);
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                    FrameRecording.HEADER_SIZE + (long) first * recordSize, (long) records * recordSize);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < records; i++) {
+                int offset = i * recordSize;
+                timestamps[first + i] = segment.getLong(offset);
+                ByteBuffer frame = slice(segment, offset + FrameRecording.RECORD_HEADER_SIZE, frameBytes);
+                frames[first + i] = frame;
+                if (yPlanes != null) {
+                    yPlanes[first + i] = slice(frame, 0, lumaBytes);
+                    uPlanes[first + i] = slice(frame, lumaBytes, chromaBytes);
+                    vPlanes[first + i] = slice(frame, lumaBytes + chromaBytes, chromaBytes);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    public FrameRecording.PixelFormat getPixelFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getTimestampNs(int index) {
+        return timestamps[index];
+    }
+
+    // The recorded frame bytes, read-only and shared: use absolute gets or duplicate()
+    public ByteBuffer getFrameData(int index) {
+        return frames[index];
+    }
+
+    // Planes of an I420 recording, shared like getFrameData()
+    public ByteBuffer getYPlane(int index) {
+        return planes(yPlanes)[index];
+    }
+
+    public ByteBuffer getUPlane(int index) {
+        return planes(uPlanes)[index];
+    }
+
+    public ByteBuffer getVPlane(int index) {
+        return planes(vPlanes)[index];
+    }
+
+    private ByteBuffer[] planes(ByteBuffer[] planes) {
+        if (planes == null) {
+            throw new IllegalStateException("Recording is " + format + ", not I420");
+        }
+        return planes;
+    }
+
+    // Decodes a frame into ARGB the same way the camera path does; converter must
+    // match the recording size and is only used for I420 recordings
+    public void readInto(int index, Frame frame, YuvConverter converter) {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("Frame is " + frame.getWidth() + "x" + frame.getHeight()
+                    + ", recording is " + width + "x" + height);
+        }
+        int[] pixels = frame.getPixels();
+        if (yPlanes != null) {
+            converter.convert(yPlanes[index], width, uPlanes[index], vPlanes[index],
+                    FrameRecording.chromaWidth(width), 1, pixels);
+        } else {
+            ByteBuffer rgba = frames[index];
+            for (int i = 0; i < pixels.length; i++) {
+                int value = rgba.getInt(i * 4);
+                pixels[i] = (value >>> 8) | (value << 24);
+            }
+        }
+        frame.setTimestampNs(timestamps[index]);
+    }
+
+    // Feeds every frame to the sink on the calling thread. Paced replay keeps the
+    // recorded spacing between frames; unpaced replay runs as fast as the sink allows.
+    // Returns the number of frames delivered.
+    public int play(Sink sink, boolean paced) {
+        long start = System.nanoTime();
+        for (int i = 0; i < frameCount; i++) {
+            if (paced) {
+                long due = start + (timestamps[i] - timestamps[0]);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.currentThread().isInterrupted()) {
+                        return i;
+                    }
+                }
+            }
+            if (!sink.onFrame(this, i)) {
+                return i + 1;
+            }
+        }
+        return frameCount;
+    }
+
+    // The mapping stays valid until it is garbage collected; only the file is closed here
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
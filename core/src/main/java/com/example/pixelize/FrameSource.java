@@ -0,0 +1,24 @@
+package com.example.pixelize;
+
+import java.util.List;
+
+// Anything that produces frames: the camera, a still image, a recording or a
+// generator. Sources push frames on their own thread; the receiving pipeline does
+// not care which kind of source it is attached to.
+public interface FrameSource {
+
+    interface Sink {
+        // Called on the source's thread. The frame and the buffers it points at are
+        // only valid until this returns.
+        void onFrame(RawFrame frame);
+    }
+
+    // Formats this source can deliver, for FrameFormat.negotiate()
+    List<FrameFormat> getSupportedFormats();
+
+    // Starts delivering frames in the given (supported) format
+    void start(FrameFormat format, Sink sink);
+
+    // Stops delivery; no sink calls are made once this returns
+    void stop();
+}
@@ -0,0 +1,49 @@
+package com.example.pixelize;
+
+import java.nio.Buffer;
+
+// The handful of GL calls the texture and shader management code needs, so that
+// policy can be exercised on the JVM against a fake. Values match GLES20.
+public interface GlApi {
+    int GL_TEXTURE_MAG_FILTER = 0x2800;
+    int GL_TEXTURE_MIN_FILTER = 0x2801;
+    int GL_TEXTURE_WRAP_S = 0x2802;
+    int GL_TEXTURE_WRAP_T = 0x2803;
+    int GL_NEAREST = 0x2600;
+    int GL_LINEAR = 0x2601;
+    int GL_CLAMP_TO_EDGE = 0x812F;
+    int GL_FRAGMENT_SHADER = 0x8B30;
+    int GL_VERTEX_SHADER = 0x8B31;
+
+    int genTexture();
+
+    void deleteTexture(int texture);
+
+    // Binds to GL_TEXTURE_2D on the active texture unit
+    void bindTexture(int texture);
+
+    void texParameteri(int name, int value);
+
+    // Allocates RGBA/UNSIGNED_BYTE storage for the bound texture; pixels may be null
+    void texImage2D(int width, int height, Buffer pixels);
+
+    // Updates a region of the bound texture from RGBA/UNSIGNED_BYTE pixels
+    void texSubImage2D(int x, int y, int width, int height, Buffer pixels);
+
+    // Compiles a shader of the given type; returns 0 (after logging why) on failure
+    int compileShader(int type, String source);
+
+    // Links a program from two compiled shaders; returns 0 (after logging why) on failure.
+    // The shaders stay attached and can be deleted once this returns.
+    int linkProgram(int vertexShader, int fragmentShader);
+
+    void deleteShader(int shader);
+
+    void deleteProgram(int program);
+
+    // -1 when the program has no active uniform of that name
+    int getUniformLocation(int program, String name);
+
+    // -1 when the program has no active attribute of that name
+    int getAttribLocation(int program, String name);
+}
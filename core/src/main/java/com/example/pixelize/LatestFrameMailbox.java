@@ -0,0 +1,79 @@
+package com.example.pixelize;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Triple-buffered single-producer/single-consumer handoff of the newest item.
+// The producer and consumer each own one slot; the third ("middle") slot is
+// swapped atomically, so neither side ever blocks and the consumer always sees
+// the newest complete item.
+public final class LatestFrameMailbox<T> {
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4; // Middle slot holds an item not yet consumed
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // Producer-owned slot
+    private int front = 2; // Consumer-owned slot
+
+    // Each counter has a single writer, volatile only so other threads can read it
+    private volatile long published;
+    private volatile long dropped;
+    private volatile long consumed;
+    private volatile long stale;
+
+    // Producer side. Publishes the item and returns one the producer now owns again:
+    // either an item the consumer has moved past or a published item that was never
+    // consumed (dropped). Returns null while the slots are still filling up.
+    @SuppressWarnings("unchecked")
+    public T publish(T item) {
+        slots[back] = item;
+        int previous = middle.getAndSet(back | FRESH);
+        published++;
+        if ((previous & FRESH) != 0) {
+            dropped++;
+        }
+        back = previous & INDEX_MASK;
+        T recycled = (T) slots[back];
+        slots[back] = null;
+        return recycled;
+    }
+
+    // Consumer side. Returns the newest item published since the last call, or null
+    // if nothing new arrived. The returned item stays valid until a later poll()
+    // returns a newer one.
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if ((middle.get() & FRESH) == 0) {
+            stale++;
+            return null;
+        }
+        // Only the consumer clears FRESH, so the middle slot is still fresh here
+        front = middle.getAndSet(front) & INDEX_MASK;
+        consumed++;
+        return (T) slots[front];
+    }
+
+    // Consumer side. The item returned by the last successful poll(), if any
+    @SuppressWarnings("unchecked")
+    public T current() {
+        return (T) slots[front];
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    // Items overwritten before the consumer saw them
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getConsumed() {
+        return consumed;
+    }
+
+    // Polls that found nothing newer than the current item
+    public long getStale() {
+        return stale;
+    }
+}
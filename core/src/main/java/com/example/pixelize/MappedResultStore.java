@@ -0,0 +1,233 @@
+package com.example.pixelize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Disk tier behind a PixelationCache: one file per result in a directory, written and
+// read through memory maps, so results outlive the process and a hit is one copy out
+// of the page cache. Files are written under a temporary name and renamed, so a crash
+// never leaves a torn result behind, and a file that fails its header check is deleted.
+// Least recently used files go once the directory holds more than maxBytes; use order
+// is kept in the files' modification times, so it survives restarts too.
+//
+// Not thread-safe; PixelationCache calls it from its one disk thread.
+public final class MappedResultStore {
+    static final int MAGIC = 0x43585850; // "PXXC" read as a little-endian int
+    static final int HEADER_SIZE = 8; // Magic, pixel count
+    private static final String SUFFIX = ".pxc";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, Long> files = new LinkedHashMap<>(16, 0.75f, true); // Name to size, LRU first
+    private long bytes;
+    private long evictions;
+
+    // Opens, or creates, the store in directory, picking up the results already there
+    public MappedResultStore(File directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid byte budget " + maxBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        File[] existing = directory.listFiles();
+        if (existing == null) {
+            throw new IOException("Cannot list " + directory);
+        }
+        Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+        for (File file : existing) {
+            if (file.getName().endsWith(SUFFIX)) {
+                files.put(file.getName(), file.length());
+                bytes += file.length();
+            } else if (file.getName().endsWith(PARTIAL_SUFFIX)) {
+                file.delete(); // Left by a crash mid-write
+            }
+        }
+        trim();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Bytes of results on disk, headers included
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    // Files removed to stay within the budget
+    public long getEvictions() {
+        return evictions;
+    }
+
+    // Copies the result for key into dst and returns its pixel count, or -1 if there
+    // is none
+    public int read(PixelationCache.Key key, int[] dst) throws IOException {
+        IntBuffer pixels = open(fileName(key));
+        if (pixels == null) {
+            return -1;
+        }
+        int count = pixels.remaining();
+        if (count > dst.length) {
+            throw new IllegalArgumentException("Result of " + count + " pixels doesn't fit in " + dst.length);
+        }
+        pixels.get(dst, 0, count);
+        return count;
+    }
+
+    // The result for key in a new array, or null if there is none
+    public int[] read(PixelationCache.Key key) throws IOException {
+        IntBuffer pixels = open(fileName(key));
+        if (pixels == null) {
+            return null;
+        }
+        int[] result = new int[pixels.remaining()];
+        pixels.get(result);
+        return result;
+    }
+
+    // Keys of the results made from the content with this hash, most recently used first
+    public List<PixelationCache.Key> keys(long contentHash) {
+        String prefix = String.format(Locale.ROOT, "%016x_", contentHash);
+        List<PixelationCache.Key> keys = new ArrayList<>();
+        for (String name : files.keySet()) {
+            if (name.startsWith(prefix)) {
+                PixelationCache.Key key = parseKey(name);
+                if (key != null) {
+                    keys.add(key);
+                }
+            }
+        }
+        Collections.reverse(keys);
+        return keys;
+    }
+
+    // Stores the first count pixels as the result for key, replacing any already there.
+    // A result larger than the whole budget is not stored.
+    public void write(PixelationCache.Key key, int[] pixels, int count) throws IOException {
+        long size = HEADER_SIZE + 4L * count;
+        if (size > maxBytes) {
+            return;
+        }
+        String name = fileName(key);
+        File file = new File(directory, name);
+        File partial = new File(directory, name + PARTIAL_SUFFIX);
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            map.putInt(MAGIC).putInt(count);
+            map.asIntBuffer().put(pixels, 0, count);
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        Long previous = files.put(name, size);
+        bytes += size - (previous != null ? previous : 0);
+        trim();
+    }
+
+    // Removes every result
+    public void clear() {
+        for (String name : files.keySet()) {
+            new File(directory, name).delete();
+        }
+        files.clear();
+        bytes = 0;
+    }
+
+    // Maps the file and returns its pixels, or null if it is missing or fails the header
+    // check, in which case it is dropped
+    private IntBuffer open(String name) throws IOException {
+        if (files.get(name) == null) { // Also marks it recently used
+            return null;
+        }
+        File file = new File(directory, name);
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            remove(name); // Deleted behind our back
+            return null;
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        long size = map.capacity();
+        int count = size >= HEADER_SIZE && map.getInt(0) == MAGIC ? map.getInt(4) : -1;
+        if (count < 0 || HEADER_SIZE + 4L * count != size) {
+            remove(name); // Not one of ours, or damaged
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        map.position(HEADER_SIZE);
+        return map.asIntBuffer();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> oldest = files.entrySet().iterator();
+        while (bytes > maxBytes && oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            new File(directory, entry.getKey()).delete();
+            bytes -= entry.getValue();
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(String name) {
+        new File(directory, name).delete();
+        Long size = files.remove(name);
+        if (size != null) {
+            bytes -= size;
+        }
+    }
+
+    // The key a file was written under, or null for a name fileName() didn't make
+    private static PixelationCache.Key parseKey(String name) {
+        String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("_", 4);
+        String[] size = parts.length == 4 ? parts[1].split("x") : null;
+        if (size == null || size.length != 2) {
+            return null;
+        }
+        try {
+            return new PixelationCache.Key(Long.parseUnsignedLong(parts[0], 16), Integer.parseInt(size[0]),
+                    Integer.parseInt(size[1]), Integer.parseInt(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            return null; // Includes NumberFormatException
+        }
+    }
+
+    private static String fileName(PixelationCache.Key key) {
+        return String.format(Locale.ROOT, "%016x_%dx%d_%d_%s%s", key.getContentHash(), key.getWidth(),
+                key.getHeight(), key.getPixelSize(), key.getEffect(), SUFFIX);
+    }
+}
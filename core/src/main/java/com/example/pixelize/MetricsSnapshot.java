@@ -0,0 +1,146 @@
+package com.example.pixelize;
+
+// Interval view of PipelineMetrics: latency percentiles and frame rates over the time
+// since the previous snapshot. Holds its own scratch state, so take one per consumer
+// (e.g. the overlay) and reuse it.
+public final class MetricsSnapshot {
+    private static final int STAGES = PipelineMetrics.Stage.values().length;
+
+    private final long[][] previousCounts = new long[STAGES][LatencyHistogram.BUCKET_COUNT];
+    private final long[] scratch = new long[LatencyHistogram.BUCKET_COUNT];
+    private final long[] stageCount = new long[STAGES];
+    private final long[] p50 = new long[STAGES];
+    private final long[] p95 = new long[STAGES];
+    private final long[] p99 = new long[STAGES];
+    private long previousNanos = -1;
+    private long previousProduced;
+    private long previousDropped;
+    private long previousRendered;
+    private long previousBlocksCompared;
+    private long previousBlocksSkipped;
+    private long intervalNanos;
+    private long produced;
+    private long dropped;
+    private long rendered;
+    private long blocksCompared;
+    private long blocksSkipped;
+
+    void update(PipelineMetrics metrics, long nowNanos) {
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            int s = stage.ordinal();
+            long[] previous = previousCounts[s];
+            metrics.histogram(stage).copyCounts(scratch);
+            long total = 0;
+            for (int i = 0; i < scratch.length; i++) {
+                long current = scratch[i];
+                scratch[i] = current - previous[i];
+                previous[i] = current;
+                total += scratch[i];
+            }
+            stageCount[s] = total;
+            p50[s] = LatencyHistogram.valueAtPercentile(scratch, total, 50);
+            p95[s] = LatencyHistogram.valueAtPercentile(scratch, total, 95);
+            p99[s] = LatencyHistogram.valueAtPercentile(scratch, total, 99);
+        }
+
+        long totalProduced = metrics.getProduced();
+        long totalDropped = metrics.getDropped();
+        long totalRendered = metrics.getRendered();
+        produced = totalProduced - previousProduced;
+        dropped = totalDropped - previousDropped;
+        rendered = totalRendered - previousRendered;
+        previousProduced = totalProduced;
+        previousDropped = totalDropped;
+        previousRendered = totalRendered;
+        long totalCompared = metrics.getBlocksCompared();
+        long totalSkipped = metrics.getBlocksSkipped();
+        blocksCompared = totalCompared - previousBlocksCompared;
+        blocksSkipped = totalSkipped - previousBlocksSkipped;
+        previousBlocksCompared = totalCompared;
+        previousBlocksSkipped = totalSkipped;
+        intervalNanos = previousNanos < 0 ? 0 : nowNanos - previousNanos;
+        previousNanos = nowNanos;
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    public long getCount(PipelineMetrics.Stage stage) {
+        return stageCount[stage.ordinal()];
+    }
+
+    public long getP50Nanos(PipelineMetrics.Stage stage) {
+        return p50[stage.ordinal()];
+    }
+
+    public long getP95Nanos(PipelineMetrics.Stage stage) {
+        return p95[stage.ordinal()];
+    }
+
+    public long getP99Nanos(PipelineMetrics.Stage stage) {
+        return p99[stage.ordinal()];
+    }
+
+    public long getProduced() {
+        return produced;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getRendered() {
+        return rendered;
+    }
+
+    // Share of blocks an incremental upload skipped as unchanged, 0 if none were checked
+    public double getSkippedBlockFraction() {
+        return blocksCompared == 0 ? 0 : (double) blocksSkipped / blocksCompared;
+    }
+
+    public double getProducedFps() {
+        return perSecond(produced);
+    }
+
+    public double getRenderedFps() {
+        return perSecond(rendered);
+    }
+
+    private double perSecond(long count) {
+        return intervalNanos <= 0 ? 0 : count * 1e9 / intervalNanos;
+    }
+
+    // Multi-line text for an on-screen overlay or a log dump, e.g.
+    // "fps in 30.0 out 29.8 drop 1 skip 85%" then "CONVERT p50 4.1 p95 5.0 p99 6.3 ms"
+    public StringBuilder appendTo(StringBuilder out) {
+        out.append("fps in ");
+        appendTenths(out, Math.round(getProducedFps() * 10));
+        out.append(" out ");
+        appendTenths(out, Math.round(getRenderedFps() * 10));
+        out.append(" drop ").append(dropped);
+        if (blocksCompared > 0) {
+            out.append(" skip ").append(blocksSkipped * 100 / blocksCompared).append('%');
+        }
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            int s = stage.ordinal();
+            out.append('\n').append(stage.name()).append(" p50 ");
+            appendMillis(out, p50[s]);
+            out.append(" p95 ");
+            appendMillis(out, p95[s]);
+            out.append(" p99 ");
+            appendMillis(out, p99[s]);
+            out.append(" ms");
+        }
+        return out;
+    }
+
+    // Formats without String.format so repeated dumps don't allocate
+    private static void appendMillis(StringBuilder out, long nanos) {
+        appendTenths(out, (nanos + 50_000) / 100_000);
+    }
+
+    private static void appendTenths(StringBuilder out, long tenths) {
+        out.append(tenths / 10).append('.').append(tenths % 10);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.pixelize;
+
+import java.util.Arrays;
+
+// An ordered set of opaque RGB colours (0xRRGGBB) for retro quantisation. Equal
+// colour lists are equal palettes, so LUTs can be cached by palette.
+public final class Palette {
+    public static final int MAX_COLORS = 256;
+
+    private final int[] colors;
+
+    public Palette(int... colors) {
+        if (colors.length == 0 || colors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("Palette needs 1 to " + MAX_COLORS + " colours, not " + colors.length);
+        }
+        this.colors = colors.clone();
+        for (int i = 0; i < this.colors.length; i++) {
+            this.colors[i] &= 0xFFFFFF;
+        }
+    }
+
+    // The 16 colours of the EGA/CGA text palette
+    public static Palette ega16() {
+        return new Palette(
+            0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xAA5500, 0xAAAAAA,
+            0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF);
+    }
+
+    // Evenly spaced levels per channel: 4x4x4 gives 64 colours, 8x8x4 the 256 of RGB332
+    public static Palette uniform(int redLevels, int greenLevels, int blueLevels) {
+        if (redLevels < 2 || greenLevels < 2 || blueLevels < 2
+                || redLevels * greenLevels * blueLevels > MAX_COLORS) {
+            throw new IllegalArgumentException("Invalid levels " + redLevels + "x" + greenLevels + "x" + blueLevels);
+        }
+        int[] colors = new int[redLevels * greenLevels * blueLevels];
+        int i = 0;
+        for (int r = 0; r < redLevels; r++) {
+            for (int g = 0; g < greenLevels; g++) {
+                for (int b = 0; b < blueLevels; b++) {
+                    colors[i++] = level(r, redLevels) << 16 | level(g, greenLevels) << 8 | level(b, blueLevels);
+                }
+            }
+        }
+        return new Palette(colors);
+    }
+
+    private static int level(int index, int levels) {
+        return (index * 255 + (levels - 1) / 2) / (levels - 1);
+    }
+
+    // ega16, rgb64 or rgb332
+    public static Palette named(String name) {
+        switch (name) {
+            case "ega16":
+                return ega16();
+            case "rgb64":
+                return uniform(4, 4, 4);
+            case "rgb332":
+                return uniform(8, 8, 4);
+            default:
+                throw new IllegalArgumentException("Unknown palette: " + name);
+        }
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    // Index of the nearest colour by weighted squared RGB distance; the brute-force
+    // search the LUT precomputes
+    public int nearest(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < colors.length; i++) {
+            int distance = distance(colors[i], r, g, b);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // Weights approximate the eye's sensitivity to green over red over blue
+    static int distance(int color, int r, int g, int b) {
+        int dr = ((color >> 16) & 0xFF) - r;
+        int dg = ((color >> 8) & 0xFF) - g;
+        int db = (color & 0xFF) - b;
+        return 2 * dr * dr + 4 * dg * dg + 3 * db * db;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Palette && Arrays.equals(colors, ((Palette) o).colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(colors);
+    }
+
+    @Override
+    public String toString() {
+        return colors.length + " colours";
+    }
+}
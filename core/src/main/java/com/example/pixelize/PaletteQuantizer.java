@@ -0,0 +1,111 @@
+package com.example.pixelize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Retro quantisation: maps pixels (normally the block grid, one pixel per block) to
+// the nearest colour of a palette through a ColorLut. LUTs are built once per
+// palette and kept in a small LRU, so switching between a few palettes, or an
+// adaptive palette settling, doesn't rebuild them. Large regions are mapped in
+// parallel bands of rows on a ForkJoinPool.
+//
+// lutFor() is not thread-safe; quantize() is, for distinct regions.
+public final class PaletteQuantizer {
+    static final int MAX_CACHED_LUTS = 4;
+
+    // Bands smaller than this are not split further
+    private static final int MIN_BAND_PIXELS = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final Map<Palette, ColorLut> luts = new LinkedHashMap<Palette, ColorLut>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Palette, ColorLut> eldest) {
+            return size() > MAX_CACHED_LUTS;
+        }
+    };
+    private long lutBuilds;
+
+    public PaletteQuantizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PaletteQuantizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ColorLut lutFor(Palette palette) {
+        ColorLut lut = luts.get(palette);
+        if (lut == null) {
+            lut = ColorLut.build(palette, pool);
+            luts.put(palette, lut);
+            lutBuilds++;
+        }
+        return lut;
+    }
+
+    // Number of LUTs built, i.e. cache misses
+    public long getLutBuilds() {
+        return lutBuilds;
+    }
+
+    public void quantize(int[] pixels, int width, int height, ColorLut lut) {
+        quantize(pixels, 0, width, width, height, lut);
+    }
+
+    // Replaces every pixel of the region with its palette colour, in place
+    public void quantize(int[] pixels, int offset, int stride, int width, int height, ColorLut lut) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        if (stride < width || pixels.length < offset + (height - 1) * stride + width) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height);
+        }
+        int minRows = Math.max(1, MIN_BAND_PIXELS / width);
+        if (height <= minRows || pool.getParallelism() == 1) {
+            lut.mapRows(pixels, offset, stride, width, 0, height); // Not worth a hop onto the pool
+            return;
+        }
+        int targetBands = pool.getParallelism() * 4;
+        int bandRows = Math.max(minRows, (height + targetBands - 1) / targetBands);
+        pool.invoke(new Band(pixels, offset, stride, width, lut, 0, height, bandRows));
+    }
+
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int offset;
+        private final int stride;
+        private final int width;
+        private final ColorLut lut;
+        private final int firstRow;
+        private final int endRow;
+        private final int bandRows;
+
+        Band(int[] pixels, int offset, int stride, int width, ColorLut lut,
+             int firstRow, int endRow, int bandRows) {
+            this.pixels = pixels;
+            this.offset = offset;
+            this.stride = stride;
+            this.width = width;
+            this.lut = lut;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.bandRows = bandRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = endRow - firstRow;
+            if (rows <= bandRows) {
+                lut.mapRows(pixels, offset, stride, width, firstRow, endRow);
+                return;
+            }
+            int middle = firstRow + rows / 2;
+            invokeAll(new Band(pixels, offset, stride, width, lut, firstRow, middle, bandRows),
+                    new Band(pixels, offset, stride, width, lut, middle, endRow, bandRows));
+        }
+    }
+}
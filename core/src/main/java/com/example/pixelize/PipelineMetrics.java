@@ -0,0 +1,83 @@
+package com.example.pixelize;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-stage latency histograms and frame counters for the camera -> screen pipeline.
+// Recording is lock-free and allocation-free, so it can stay on in release builds.
+public final class PipelineMetrics {
+    public enum Stage {
+        ACQUIRE,
+        CONVERT,
+        UPLOAD,
+        DRAW,
+        SWAP,
+        // From a frame's arrival in the processor to its first draw. The other stages run
+        // on different threads and overlap, so this is not their sum.
+        END_TO_END
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong blocksCompared = new AtomicLong();
+    private final AtomicLong blocksSkipped = new AtomicLong();
+
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void frameProduced() {
+        produced.incrementAndGet();
+    }
+
+    public void frameDropped() {
+        dropped.incrementAndGet();
+    }
+
+    public void frameRendered() {
+        rendered.incrementAndGet();
+    }
+
+    // Incremental uploads: blocks checked for changes and those left unchanged
+    public void blocksChecked(long compared, long skipped) {
+        blocksCompared.addAndGet(compared);
+        blocksSkipped.addAndGet(skipped);
+    }
+
+    public long getProduced() {
+        return produced.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    public long getBlocksCompared() {
+        return blocksCompared.get();
+    }
+
+    public long getBlocksSkipped() {
+        return blocksSkipped.get();
+    }
+
+    // Fills the snapshot with everything recorded since the previous snapshot taken into
+    // the same object. Reusing one snapshot keeps this allocation-free.
+    public void snapshot(MetricsSnapshot into, long nowNanos) {
+        into.update(this, nowNanos);
+    }
+}
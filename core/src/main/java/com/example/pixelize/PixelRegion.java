@@ -0,0 +1,242 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// An area of the frame to pixelate: an axis-aligned rectangle or a simple polygon, in
+// pixel coordinates. A pixel is covered when its centre is inside the shape (even-odd
+// rule for polygons), so a rectangle covers exactly [left, right) x [top, bottom) and a
+// polygon with the same corners covers the same pixels. Immutable.
+public final class PixelRegion {
+    private final int[] xs; // Polygon vertices, or null for a rectangle
+    private final int[] ys;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+
+    private PixelRegion(int[] xs, int[] ys, int left, int top, int right, int bottom) {
+        this.xs = xs;
+        this.ys = ys;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    // Right and bottom are exclusive; an empty rectangle covers nothing
+    public static PixelRegion rect(int left, int top, int right, int bottom) {
+        if (right < left || bottom < top) {
+            throw new IllegalArgumentException("Invalid rectangle " + left + "," + top + " " + right + "," + bottom);
+        }
+        return new PixelRegion(null, null, left, top, right, bottom);
+    }
+
+    // Vertices in order, either winding; the last connects back to the first
+    public static PixelRegion polygon(int[] xs, int[] ys) {
+        if (xs.length != ys.length || xs.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices, not " + xs.length + "/" + ys.length);
+        }
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            left = Math.min(left, xs[i]);
+            right = Math.max(right, xs[i]);
+            top = Math.min(top, ys[i]);
+            bottom = Math.max(bottom, ys[i]);
+        }
+        return new PixelRegion(xs.clone(), ys.clone(), left, top, right, bottom);
+    }
+
+    // Rectangles written as "left,top,right,bottom", separated by ';'
+    public static List<PixelRegion> parseRects(String text) {
+        List<PixelRegion> regions = new ArrayList<>();
+        for (String rect : text.split(";")) {
+            if (rect.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = rect.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Expected left,top,right,bottom: " + rect);
+            }
+            try {
+                regions.add(rect(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                        Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected left,top,right,bottom: " + rect);
+            }
+        }
+        return regions;
+    }
+
+    public boolean isPolygon() {
+        return xs != null;
+    }
+
+    // Bounding box; every covered pixel is inside [left, right) x [top, bottom)
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    // This region moved by (dx, dy)
+    public PixelRegion translate(int dx, int dy) {
+        if (xs == null) {
+            return new PixelRegion(null, null, left + dx, top + dy, right + dx, bottom + dy);
+        }
+        int[] movedXs = new int[xs.length];
+        int[] movedYs = new int[ys.length];
+        for (int i = 0; i < xs.length; i++) {
+            movedXs[i] = xs[i] + dx;
+            movedYs[i] = ys[i] + dy;
+        }
+        return new PixelRegion(movedXs, movedYs, left + dx, top + dy, right + dx, bottom + dy);
+    }
+
+    // A region covering at least every pixel within dx columns and dy rows of this one.
+    // A rectangle just grows; a polygon becomes the convex hull of its vertices moved to
+    // each corner of the padding, which contains the exact padded shape.
+    public PixelRegion pad(int dx, int dy) {
+        if (dx < 0 || dy < 0) {
+            throw new IllegalArgumentException("Negative padding " + dx + "," + dy);
+        }
+        if (xs == null) {
+            return new PixelRegion(null, null, left - dx, top - dy, right + dx, bottom + dy);
+        }
+        long[] points = new long[4 * xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            points[4 * i] = point(xs[i] - dx, ys[i] - dy);
+            points[4 * i + 1] = point(xs[i] + dx, ys[i] - dy);
+            points[4 * i + 2] = point(xs[i] + dx, ys[i] + dy);
+            points[4 * i + 3] = point(xs[i] - dx, ys[i] + dy);
+        }
+        PixelRegion hull = convexHull(points);
+        // A polygon with no area has a hull too thin to be one
+        return hull != null ? hull : new PixelRegion(null, null, left - dx, top - dy, right + dx, bottom + dy);
+    }
+
+    // x in the high half so sorting orders by x, then y
+    private static long point(int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    private static int pointX(long point) {
+        return (int) (point >> 32);
+    }
+
+    private static int pointY(long point) {
+        return (int) point;
+    }
+
+    // Andrew's monotone chain, or null if the points are collinear
+    private static PixelRegion convexHull(long[] points) {
+        Arrays.sort(points);
+        long[] hull = new long[points.length + 1];
+        int size = 0;
+        for (long p : points) { // Lower chain
+            while (size >= 2 && cross(hull[size - 2], hull[size - 1], p) <= 0) {
+                size--;
+            }
+            hull[size++] = p;
+        }
+        int lower = size + 1;
+        for (int k = points.length - 2; k >= 0; k--) { // Upper chain
+            long p = points[k];
+            while (size >= lower && cross(hull[size - 2], hull[size - 1], p) <= 0) {
+                size--;
+            }
+            hull[size++] = p;
+        }
+        size--; // The last point is the first again
+        if (size < 3) {
+            return null;
+        }
+        int[] hullXs = new int[size];
+        int[] hullYs = new int[size];
+        for (int i = 0; i < size; i++) {
+            hullXs[i] = pointX(hull[i]);
+            hullYs[i] = pointY(hull[i]);
+        }
+        return polygon(hullXs, hullYs);
+    }
+
+    private static long cross(long o, long a, long b) {
+        return (long) (pointX(a) - pointX(o)) * (pointY(b) - pointY(o))
+                - (long) (pointY(a) - pointY(o)) * (pointX(b) - pointX(o));
+    }
+
+    // Upper bound on the spans appendSpans() adds for one row
+    int maxSpansPerRow() {
+        return xs == null ? 1 : xs.length / 2;
+    }
+
+    // Appends the covered column ranges of row y, clipped to [0, width), to spans as
+    // start/end pairs from index 2 * count, and returns the new count. spans must have
+    // room for maxSpansPerRow() more; crossings is scratch of at least the vertex count.
+    int appendSpans(int y, int width, int[] spans, int count, double[] crossings) {
+        if (y < top || y >= bottom) {
+            return count;
+        }
+        if (xs == null) {
+            return addSpan(Math.max(0, left), Math.min(width, right), spans, count);
+        }
+        // Where the polygon's edges cross the row through the pixel centres
+        double centre = y + 0.5;
+        int found = 0;
+        for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+            if ((ys[i] <= centre) != (ys[j] <= centre)) {
+                double t = (centre - ys[j]) / (ys[i] - ys[j]);
+                crossings[found++] = xs[j] + t * (xs[i] - xs[j]);
+            }
+        }
+        Arrays.sort(crossings, 0, found);
+        for (int i = 0; i + 1 < found; i += 2) {
+            // Pixels whose centre x + 0.5 lies in [crossing, next crossing)
+            int start = (int) Math.ceil(crossings[i] - 0.5);
+            int end = (int) Math.ceil(crossings[i + 1] - 0.5);
+            count = addSpan(Math.max(0, start), Math.min(width, end), spans, count);
+        }
+        return count;
+    }
+
+    private static int addSpan(int start, int end, int[] spans, int count) {
+        if (start >= end) {
+            return count;
+        }
+        spans[2 * count] = start;
+        spans[2 * count + 1] = end;
+        return count + 1;
+    }
+
+    int vertexCount() {
+        return xs == null ? 4 : xs.length;
+    }
+
+    // Corners in order; a rectangle's run clockwise from its top left
+    public int[] getVertexXs() {
+        return xs == null ? new int[] {left, right, right, left} : xs.clone();
+    }
+
+    public int[] getVertexYs() {
+        return ys == null ? new int[] {top, top, bottom, bottom} : ys.clone();
+    }
+
+    @Override
+    public String toString() {
+        return (xs == null ? "rect " : "polygon(" + xs.length + ") ") + left + "," + top + " " + right + "," + bottom;
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Pixelated results for sources that come back again and again: a still image while
+// the slider is dragged back and forth over sizes it has already shown, or the same
+// photo opened twice. Results are keyed by a content hash of the source plus what
+// shapes the output (frame size, pixel size, effect) and kept in memory in least
+// recently used order up to a byte budget, so a handful of full 4K frames and
+// hundreds of small block grids are held on the same terms. An optional
+// MappedResultStore behind it keeps results across restarts.
+//
+// get() and put() only ever touch memory, so they are safe on the GL thread. The disk
+// tier has a thread of its own: put() queues a copy for writing, and warm() loads the
+// earlier results for an image into free memory ahead of the slider reaching them.
+// Queued copies have a byte budget of their own, so the memory they hold is bounded
+// too; a write that finds the queue or that budget full is skipped before anything
+// is copied.
+//
+// Thread-safe. Disk failures are counted and otherwise ignored: the caller computes
+// the result again, as on any miss. So are skipped writes.
+public final class PixelationCache implements Closeable {
+    // Rough per-entry cost of the map node, key and array header, on top of the pixels
+    static final int ENTRY_OVERHEAD = 96;
+    static final int DISK_QUEUE_CAPACITY = 16;
+    private static final Pattern EFFECT_ID = Pattern.compile("[A-Za-z0-9_-]+");
+    // xxHash64 primes
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+
+    // What a result was made from and with. The effect names what was computed, e.g.
+    // an EffectRegistry id, so results of different effects are never mixed up.
+    public static final class Key {
+        private final long contentHash;
+        private final int width;
+        private final int height;
+        private final int pixelSize;
+        private final String effect;
+
+        public Key(long contentHash, int width, int height, int pixelSize, String effect) {
+            if (!EFFECT_ID.matcher(effect).matches()) {
+                throw new IllegalArgumentException("Invalid effect id: " + effect);
+            }
+            this.contentHash = contentHash;
+            this.width = width;
+            this.height = height;
+            this.pixelSize = pixelSize;
+            this.effect = effect;
+        }
+
+        public long getContentHash() {
+            return contentHash;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getPixelSize() {
+            return pixelSize;
+        }
+
+        public String getEffect() {
+            return effect;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return contentHash == other.contentHash && width == other.width && height == other.height
+                    && pixelSize == other.pixelSize && effect.equals(other.effect);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(contentHash);
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + pixelSize;
+            return 31 * result + effect.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x %dx%d %d %s", contentHash, width, height, pixelSize, effect);
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxPendingDiskBytes;
+    private final MappedResultStore disk;
+    private final ThreadPoolExecutor diskExecutor; // Null without a disk tier
+    private final Map<Key, int[]> entries = new LinkedHashMap<>(16, 0.75f, true); // LRU first
+    private final Set<Long> warmed = new HashSet<>(); // Content hashes warm() has queued
+    private long bytes;
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+    private long diskErrors;
+    private long pendingDiskBytes; // Pixels copied for queued writes
+    private long diskWritesSkipped;
+
+    public PixelationCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    // disk may be null for a memory-only cache; otherwise the cache owns it from now on.
+    // Copies queued for the disk may hold up to maxBytes more.
+    public PixelationCache(long maxBytes, MappedResultStore disk) {
+        this(maxBytes, disk, maxBytes);
+    }
+
+    public PixelationCache(long maxBytes, MappedResultStore disk, long maxPendingDiskBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid byte budget " + maxBytes);
+        }
+        if (maxPendingDiskBytes < 0) {
+            throw new IllegalArgumentException("Invalid pending write budget " + maxPendingDiskBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.maxPendingDiskBytes = maxPendingDiskBytes;
+        this.disk = disk;
+        if (disk != null) {
+            diskExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(DISK_QUEUE_CAPACITY), runnable -> {
+                        Thread thread = new Thread(runnable, "PixelationCacheDisk");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        thread.setDaemon(true); // Unwritten results are only a cache
+                        return thread;
+                    });
+        } else {
+            diskExecutor = null;
+        }
+    }
+
+    // 64-bit hash of the first width * height ARGB pixels, in one pass: xxHash64's
+    // rounds over pairs of pixels in four independent lanes, so it runs at memory speed
+    // rather than at the latency of one multiply chain. The size is hashed in too.
+    public static long contentHash(int[] argb, int width, int height) {
+        int count = width * height;
+        if (width <= 0 || height <= 0 || argb.length < count) {
+            throw new IllegalArgumentException("Invalid image " + width + "x" + height);
+        }
+        long seed = (long) width << 32 | height;
+        long h;
+        int i = 0;
+        if (count >= 8) {
+            long a = seed + P1 + P2;
+            long b = seed + P2;
+            long c = seed;
+            long d = seed - P1;
+            for (; i + 8 <= count; i += 8) {
+                a = round(a, pair(argb, i));
+                b = round(b, pair(argb, i + 2));
+                c = round(c, pair(argb, i + 4));
+                d = round(d, pair(argb, i + 6));
+            }
+            h = Long.rotateLeft(a, 1) + Long.rotateLeft(b, 7) + Long.rotateLeft(c, 12) + Long.rotateLeft(d, 18);
+            h = merge(h, a);
+            h = merge(h, b);
+            h = merge(h, c);
+            h = merge(h, d);
+        } else {
+            h = seed + P4;
+        }
+        h += 4L * count;
+        for (; i < count; i++) {
+            h ^= (argb[i] & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        return h ^ (h >>> 32);
+    }
+
+    private static long pair(int[] argb, int i) {
+        return (argb[i] & 0xFFFFFFFFL) | (long) argb[i + 1] << 32;
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * P2, 31) * P1;
+    }
+
+    private static long merge(long h, long acc) {
+        return (h ^ round(0, acc)) * P1 + P4;
+    }
+
+    // Copies the result for key into dst and returns true, or returns false if memory
+    // doesn't have it. Never waits on the disk.
+    public synchronized boolean get(Key key, int[] dst) {
+        int[] pixels = entries.get(key);
+        if (pixels == null) {
+            misses++;
+            return false;
+        }
+        if (pixels.length > dst.length) {
+            throw new IllegalArgumentException("Result of " + pixels.length + " pixels doesn't fit in " + dst.length);
+        }
+        System.arraycopy(pixels, 0, dst, 0, pixels.length);
+        hits++;
+        return true;
+    }
+
+    // Stores the first count pixels of pixels as the result for key in memory, and
+    // queues it for the disk if there is room. The pixels are copied, so the caller may
+    // go on using the array.
+    public void put(Key key, int[] pixels, int count) {
+        if (count < 0 || count > pixels.length) {
+            throw new IllegalArgumentException("Invalid pixel count " + count);
+        }
+        synchronized (this) {
+            keep(key, pixels, count);
+        }
+        if (diskExecutor != null && reserveDiskWrite(count)) {
+            int[] copy = Arrays.copyOf(pixels, count);
+            try {
+                diskExecutor.execute(() -> write(key, copy));
+            } catch (RejectedExecutionException e) {
+                // Closed, or another thread took the last place: memory only
+                synchronized (this) {
+                    pendingDiskBytes -= 4L * count;
+                    diskWritesSkipped++;
+                }
+            }
+        }
+    }
+
+    // Charges a write of count pixels to the pending budget, or counts it as skipped if
+    // the queue or the budget is full
+    private synchronized boolean reserveDiskWrite(int count) {
+        long size = 4L * count;
+        if (diskExecutor.isShutdown() || diskExecutor.getQueue().remainingCapacity() == 0
+                || pendingDiskBytes + size > maxPendingDiskBytes) {
+            diskWritesSkipped++;
+            return false;
+        }
+        pendingDiskBytes += size;
+        return true;
+    }
+
+    // Loads results for the content with this hash from disk into memory in the
+    // background, most recently used first, as far as free room allows. Only the first
+    // call for a hash does anything.
+    public void warm(long contentHash) {
+        if (diskExecutor == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!warmed.add(contentHash)) {
+                return;
+            }
+        }
+        try {
+            diskExecutor.execute(() -> load(contentHash));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                warmed.remove(contentHash); // Try again next time
+            }
+        }
+    }
+
+    // Waits for the disk work queued so far. Returns false on timeout, or if the cache
+    // is closed.
+    public boolean awaitDisk(long timeoutMillis) throws InterruptedException {
+        if (diskExecutor == null) {
+            return true;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            try {
+                diskExecutor.execute(done::countDown);
+                break;
+            } catch (RejectedExecutionException e) {
+                if (diskExecutor.isShutdown() || System.nanoTime() >= deadline) {
+                    return false;
+                }
+                Thread.sleep(1); // Queue full
+            }
+        }
+        return done.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    // Lets queued disk writes finish in the background; later ones are dropped
+    @Override
+    public void close() {
+        if (diskExecutor != null) {
+            diskExecutor.shutdown();
+        }
+    }
+
+    // Drops every result from memory; results on disk stay
+    public synchronized void clear() {
+        entries.clear();
+        warmed.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Bytes held in memory, overhead included
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    // Lookups answered from memory
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    // Results warm() brought back from disk
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Results dropped from memory to stay within the budget
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getDiskErrors() {
+        return diskErrors;
+    }
+
+    // Bytes of results copied and waiting for the disk thread
+    public synchronized long getPendingDiskBytes() {
+        return pendingDiskBytes;
+    }
+
+    // Results that never went to disk because the queue or the pending budget was full
+    public synchronized long getDiskWritesSkipped() {
+        return diskWritesSkipped;
+    }
+
+    public MappedResultStore getDisk() {
+        return disk;
+    }
+
+    // Disk thread
+    private void write(Key key, int[] pixels) {
+        try {
+            disk.write(key, pixels, pixels.length);
+        } catch (IOException e) {
+            synchronized (this) {
+                diskErrors++;
+            }
+        } finally {
+            synchronized (this) {
+                pendingDiskBytes -= 4L * pixels.length;
+            }
+        }
+    }
+
+    // Disk thread. Results already in memory are skipped. Loading stops when memory is
+    // full rather than evict anything, since what is there was used more recently.
+    private void load(long contentHash) {
+        for (Key key : disk.keys(contentHash)) {
+            synchronized (this) {
+                if (entries.containsKey(key)) {
+                    continue;
+                }
+            }
+            int[] pixels;
+            try {
+                pixels = disk.read(key);
+            } catch (IOException e) {
+                synchronized (this) {
+                    diskErrors++;
+                }
+                continue;
+            }
+            if (pixels == null) {
+                continue;
+            }
+            synchronized (this) {
+                long size = entrySize(pixels.length);
+                if (bytes + size > maxBytes) {
+                    return;
+                }
+                if (entries.putIfAbsent(key, pixels) == null) {
+                    bytes += size;
+                    diskHits++;
+                }
+            }
+        }
+    }
+
+    // Copies pixels into memory, evicting least recently used results to make room. A
+    // result larger than the whole budget isn't kept. An evicted array of the same size
+    // is reused, since scrubbing over one image produces results of one size.
+    private void keep(Key key, int[] pixels, int count) {
+        long size = entrySize(count);
+        int[] previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= entrySize(previous.length);
+        }
+        if (size > maxBytes) {
+            return;
+        }
+        int[] copy = previous != null && previous.length == count ? previous : null;
+        Iterator<int[]> oldest = entries.values().iterator();
+        while (bytes + size > maxBytes && oldest.hasNext()) {
+            int[] evicted = oldest.next();
+            oldest.remove();
+            bytes -= entrySize(evicted.length);
+            evictions++;
+            if (copy == null && evicted.length == count) {
+                copy = evicted;
+            }
+        }
+        if (copy == null) {
+            copy = new int[count];
+        }
+        System.arraycopy(pixels, 0, copy, 0, count);
+        entries.put(key, copy);
+        bytes += size;
+    }
+
+    private static long entrySize(int count) {
+        return 4L * count + ENTRY_OVERHEAD;
+    }
+}
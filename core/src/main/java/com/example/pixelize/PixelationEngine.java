@@ -0,0 +1,255 @@
+package com.example.pixelize;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// CPU block-average pixelation over packed ARGB ints. The image is split into
+// bands of whole block rows that run in parallel on a ForkJoinPool; every block
+// is replaced by the rounded mean of its pixels using integer maths only.
+//
+// downsample() runs the same averaging but writes one pixel per block, giving the
+// block grid itself: a frame that can be uploaded and magnified with nearest
+// filtering instead of writing every block out at full resolution.
+//
+// Rows are summed per column by RowKernels, which is vectorised where the JVM
+// supports it, and the column sums are folded into blocks once per block row.
+public final class PixelationEngine {
+    public static final int MAX_BLOCK_SIZE = 2048; // Keeps per-channel block sums inside an int
+
+    // Bands smaller than this are not split further
+    private static final int MIN_BAND_PIXELS = 64 * 1024;
+    // Column sums, one set per thread, so pixelating a frame doesn't allocate
+    private static final ThreadLocal<ColumnSums> COLUMN_SUMS = ThreadLocal.withInitial(ColumnSums::new);
+
+    private final ForkJoinPool pool;
+    private final RowKernels kernels;
+
+    public PixelationEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PixelationEngine(ForkJoinPool pool) {
+        this(pool, RowKernels.getDefault());
+    }
+
+    public PixelationEngine(ForkJoinPool pool, RowKernels kernels) {
+        this.pool = pool;
+        this.kernels = kernels;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public RowKernels getKernels() {
+        return kernels;
+    }
+
+    public void pixelate(int[] src, int[] dst, int width, int height, int blockSize) {
+        pixelate(src, 0, width, dst, 0, width, width, height, blockSize);
+    }
+
+    // src and dst may be the same array: each block row is fully read before it is written
+    public void pixelate(int[] src, int srcOffset, int srcStride,
+                         int[] dst, int dstOffset, int dstStride,
+                         int width, int height, int blockSize) {
+        checkArguments(src, srcOffset, srcStride, dst, dstOffset, dstStride, width, height, blockSize);
+        run(src, srcOffset, srcStride, dst, dstOffset, dstStride, width, height, blockSize, true);
+    }
+
+    // Block size for the app's pixel size setting, so every front end pixelates alike
+    public static int blockSize(float pixelSize) {
+        return Math.min(MAX_BLOCK_SIZE, Math.max(1, Math.round(pixelSize)));
+    }
+
+    // Number of blocks across a dimension, the size of the downsample() grid
+    public static int gridSize(int size, int blockSize) {
+        return (size + blockSize - 1) / blockSize;
+    }
+
+    public void downsample(int[] src, int width, int height, int blockSize, int[] grid) {
+        downsample(src, 0, width, width, height, blockSize, grid, 0, gridSize(width, blockSize));
+    }
+
+    // Writes the mean of each block to grid, one pixel per block; the grid is
+    // gridSize(width) x gridSize(height). Partial blocks at the right and bottom edges
+    // average only the pixels they cover.
+    public void downsample(int[] src, int srcOffset, int srcStride, int width, int height, int blockSize,
+                           int[] grid, int gridOffset, int gridStride) {
+        checkArguments(src, srcOffset, srcStride, src, srcOffset, srcStride, width, height, blockSize);
+        int gridWidth = gridSize(width, blockSize);
+        int gridHeight = gridSize(height, blockSize);
+        if (gridStride < gridWidth || grid.length < gridOffset + (gridHeight - 1) * gridStride + gridWidth) {
+            throw new IllegalArgumentException("Grid too small for " + gridWidth + "x" + gridHeight);
+        }
+        run(src, srcOffset, srcStride, grid, gridOffset, gridStride, width, height, blockSize, false);
+    }
+
+    private void run(int[] src, int srcOffset, int srcStride, int[] dst, int dstOffset, int dstStride,
+                     int width, int height, int blockSize, boolean expand) {
+        int blockRows = (height + blockSize - 1) / blockSize;
+        int minBlockRows = Math.max(1, MIN_BAND_PIXELS / (width * blockSize));
+        // Aim for a few bands per worker so uneven bands still balance out
+        int targetBands = Math.max(1, pool.getParallelism() * 4);
+        int bandBlockRows = Math.max(minBlockRows, (blockRows + targetBands - 1) / targetBands);
+
+        Band band = new Band(kernels, src, srcOffset, srcStride, dst, dstOffset, dstStride,
+                width, height, blockSize, expand, 0, blockRows, bandBlockRows);
+        if (blockRows <= bandBlockRows || pool.getParallelism() == 1) {
+            band.compute(); // Not worth a hop onto the pool
+        } else {
+            pool.invoke(band);
+        }
+    }
+
+    // With expand set every block is filled with its mean; otherwise the mean goes to
+    // a single grid pixel per block
+    private static void averageBlockRows(RowKernels kernels, int[] src, int srcOffset, int srcStride,
+                                         int[] dst, int dstOffset, int dstStride,
+                                         int width, int height, int blockSize, boolean expand,
+                                         int firstBlockRow, int endBlockRow) {
+        int blocksX = (width + blockSize - 1) / blockSize;
+        // Per-column channel sums over the rows of one block row
+        ColumnSums sums = COLUMN_SUMS.get().ensure(width);
+        int[] alpha = sums.alpha;
+        int[] red = sums.red;
+        int[] green = sums.green;
+        int[] blue = sums.blue;
+
+        for (int blockRow = firstBlockRow; blockRow < endBlockRow; blockRow++) {
+            int y0 = blockRow * blockSize;
+            int y1 = Math.min(y0 + blockSize, height);
+            Arrays.fill(alpha, 0, width, 0);
+            Arrays.fill(red, 0, width, 0);
+            Arrays.fill(green, 0, width, 0);
+            Arrays.fill(blue, 0, width, 0);
+
+            // Stream the rows in order, accumulating whole rows at once
+            for (int y = y0; y < y1; y++) {
+                kernels.accumulateColumns(src, srcOffset + y * srcStride, width, alpha, red, green, blue);
+            }
+
+            // Replace each block with its rounded mean
+            int rows = y1 - y0;
+            int gridRow = dstOffset + blockRow * dstStride;
+            for (int bx = 0, x0 = 0; bx < blocksX; bx++, x0 += blockSize) {
+                int x1 = Math.min(x0 + blockSize, width);
+                int a = 0;
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int x = x0; x < x1; x++) {
+                    a += alpha[x];
+                    r += red[x];
+                    g += green[x];
+                    b += blue[x];
+                }
+                int count = rows * (x1 - x0);
+                int half = count >> 1;
+                int color = ((a + half) / count) << 24
+                        | ((r + half) / count) << 16
+                        | ((g + half) / count) << 8
+                        | ((b + half) / count);
+                if (!expand) {
+                    dst[gridRow + bx] = color;
+                    continue;
+                }
+                for (int y = y0; y < y1; y++) {
+                    int rowStart = dstOffset + y * dstStride;
+                    Arrays.fill(dst, rowStart + x0, rowStart + x1, color);
+                }
+            }
+        }
+    }
+
+    static void checkArguments(int[] src, int srcOffset, int srcStride,
+                               int[] dst, int dstOffset, int dstStride,
+                               int width, int height, int blockSize) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+        if (srcStride < width || dstStride < width
+                || src.length < srcOffset + (height - 1) * srcStride + width
+                || dst.length < dstOffset + (height - 1) * dstStride + width) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height);
+        }
+    }
+
+    // Scratch for averageBlockRows(), grown to the widest image the thread has seen
+    private static final class ColumnSums {
+        int[] alpha = new int[0];
+        int[] red = new int[0];
+        int[] green = new int[0];
+        int[] blue = new int[0];
+
+        ColumnSums ensure(int width) {
+            if (alpha.length < width) {
+                alpha = new int[width];
+                red = new int[width];
+                green = new int[width];
+                blue = new int[width];
+            }
+            return this;
+        }
+    }
+
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowKernels kernels;
+        private final int[] src;
+        private final int srcOffset;
+        private final int srcStride;
+        private final int[] dst;
+        private final int dstOffset;
+        private final int dstStride;
+        private final int width;
+        private final int height;
+        private final int blockSize;
+        private final boolean expand;
+        private final int firstBlockRow;
+        private final int endBlockRow;
+        private final int bandBlockRows;
+
+        Band(RowKernels kernels, int[] src, int srcOffset, int srcStride,
+             int[] dst, int dstOffset, int dstStride,
+             int width, int height, int blockSize, boolean expand,
+             int firstBlockRow, int endBlockRow, int bandBlockRows) {
+            this.kernels = kernels;
+            this.src = src;
+            this.srcOffset = srcOffset;
+            this.srcStride = srcStride;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.dstStride = dstStride;
+            this.width = width;
+            this.height = height;
+            this.blockSize = blockSize;
+            this.expand = expand;
+            this.firstBlockRow = firstBlockRow;
+            this.endBlockRow = endBlockRow;
+            this.bandBlockRows = bandBlockRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = endBlockRow - firstBlockRow;
+            if (rows <= bandBlockRows) {
+                averageBlockRows(kernels, src, srcOffset, srcStride, dst, dstOffset, dstStride,
+                        width, height, blockSize, expand, firstBlockRow, endBlockRow);
+                return;
+            }
+            int middle = firstBlockRow + rows / 2;
+            invokeAll(split(firstBlockRow, middle), split(middle, endBlockRow));
+        }
+
+        private Band split(int first, int end) {
+            return new Band(kernels, src, srcOffset, srcStride, dst, dstOffset, dstStride,
+                    width, height, blockSize, expand, first, end, bandBlockRows);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+
+// One frame as a FrameSource hands it over: a reusable descriptor pointing at the
+// source's own buffers, valid only for the duration of FrameSource.Sink.onFrame().
+// Only the fields for the format's encoding are meaningful.
+public final class RawFrame {
+    private FrameFormat format;
+    private long timestampNs;
+
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    private int[] argb;
+    private int argbOffset;
+    private int argbStride;
+
+    private ByteBuffer rgba;
+    private int rgbaRowStride;
+
+    public RawFrame setYuv(FrameFormat format, long timestampNs,
+                           ByteBuffer yPlane, int yRowStride,
+                           ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        checkEncoding(format, FrameFormat.Encoding.YUV_420);
+        this.format = format;
+        this.timestampNs = timestampNs;
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        return this;
+    }
+
+    // Row-major ARGB ints starting at offset, one row every stride ints
+    public RawFrame setArgb(FrameFormat format, long timestampNs, int[] argb, int offset, int stride) {
+        checkEncoding(format, FrameFormat.Encoding.ARGB);
+        this.format = format;
+        this.timestampNs = timestampNs;
+        this.argb = argb;
+        this.argbOffset = offset;
+        this.argbStride = stride;
+        return this;
+    }
+
+    // R, G, B, A bytes from the buffer's position, one row every rowStride bytes
+    public RawFrame setRgba(FrameFormat format, long timestampNs, ByteBuffer rgba, int rowStride) {
+        checkEncoding(format, FrameFormat.Encoding.RGBA);
+        this.format = format;
+        this.timestampNs = timestampNs;
+        this.rgba = rgba;
+        this.rgbaRowStride = rowStride;
+        return this;
+    }
+
+    private static void checkEncoding(FrameFormat format, FrameFormat.Encoding expected) {
+        if (format.getEncoding() != expected) {
+            throw new IllegalArgumentException("Format " + format + " is not " + expected);
+        }
+    }
+
+    public FrameFormat getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return format.getWidth();
+    }
+
+    public int getHeight() {
+        return format.getHeight();
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public ByteBuffer getYPlane() {
+        return yPlane;
+    }
+
+    public ByteBuffer getUPlane() {
+        return uPlane;
+    }
+
+    public ByteBuffer getVPlane() {
+        return vPlane;
+    }
+
+    public int getYRowStride() {
+        return yRowStride;
+    }
+
+    public int getUvRowStride() {
+        return uvRowStride;
+    }
+
+    public int getUvPixelStride() {
+        return uvPixelStride;
+    }
+
+    public int[] getArgb() {
+        return argb;
+    }
+
+    public int getArgbOffset() {
+        return argbOffset;
+    }
+
+    public int getArgbStride() {
+        return argbStride;
+    }
+
+    public ByteBuffer getRgba() {
+        return rgba;
+    }
+
+    public int getRgbaRowStride() {
+        return rgbaRowStride;
+    }
+}
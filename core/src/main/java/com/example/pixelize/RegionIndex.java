@@ -0,0 +1,111 @@
+package com.example.pixelize;
+
+import java.util.List;
+
+// Spatial index of regions over horizontal bands of the frame (a uniform grid of
+// one column): for each band of bandHeight rows it lists the regions whose bounding
+// box reaches into it, in one flat array. Looking up a band is two array reads, and a
+// region is only ever tested against the bands it overlaps, so building costs the
+// total height of the regions and lookups don't grow with the number of regions
+// elsewhere in the frame. Immutable.
+public final class RegionIndex {
+    private final List<PixelRegion> regions;
+    private final int height;
+    private final int bandHeight;
+    private final int[] bandStart; // Entries of band i are entries[bandStart[i] .. bandStart[i + 1])
+    private final int[] entries; // Region indices
+    private final int maxSpansPerRow; // Most spans any row can have, over all of its bands' regions
+    private final int maxVertices;
+
+    public RegionIndex(List<PixelRegion> regions, int height, int bandHeight) {
+        if (height <= 0 || bandHeight < 1) {
+            throw new IllegalArgumentException("Invalid index " + height + " rows in bands of " + bandHeight);
+        }
+        this.regions = regions;
+        this.height = height;
+        this.bandHeight = bandHeight;
+        int bands = PixelationEngine.gridSize(height, bandHeight);
+        // Counting pass, then a prefix sum and a filling pass
+        int[] start = new int[bands + 1];
+        int vertices = 0;
+        for (PixelRegion region : regions) {
+            int first = firstBand(region);
+            int end = endBand(region, bands);
+            for (int band = first; band < end; band++) {
+                start[band + 1]++;
+            }
+            vertices = Math.max(vertices, region.vertexCount());
+        }
+        int[] spans = new int[bands];
+        for (int band = 0; band < bands; band++) {
+            start[band + 1] += start[band];
+        }
+        int[] filled = new int[bands];
+        int[] all = new int[start[bands]];
+        for (int i = 0; i < regions.size(); i++) {
+            PixelRegion region = regions.get(i);
+            int first = firstBand(region);
+            int end = endBand(region, bands);
+            for (int band = first; band < end; band++) {
+                all[start[band] + filled[band]++] = i;
+                spans[band] += region.maxSpansPerRow();
+            }
+        }
+        int maxSpans = 0;
+        for (int band = 0; band < bands; band++) {
+            maxSpans = Math.max(maxSpans, spans[band]);
+        }
+        this.bandStart = start;
+        this.entries = all;
+        this.maxSpansPerRow = maxSpans;
+        this.maxVertices = vertices;
+    }
+
+    private int firstBand(PixelRegion region) {
+        return Math.max(0, region.getTop()) / bandHeight;
+    }
+
+    // Exclusive; a region entirely above, below or empty gets no bands
+    private int endBand(PixelRegion region, int bands) {
+        int bottom = Math.min(height, region.getBottom());
+        if (bottom <= Math.max(0, region.getTop()) || region.getRight() <= region.getLeft()) {
+            return 0;
+        }
+        return Math.min(bands, PixelationEngine.gridSize(bottom, bandHeight));
+    }
+
+    public List<PixelRegion> getRegions() {
+        return regions;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    public int getBandCount() {
+        return bandStart.length - 1;
+    }
+
+    // Number of regions overlapping band
+    public int countInBand(int band) {
+        return bandStart[band + 1] - bandStart[band];
+    }
+
+    // The i-th region overlapping band, in the order they were given
+    public PixelRegion regionInBand(int band, int i) {
+        return regions.get(entries[bandStart[band] + i]);
+    }
+
+    // Room a row's spans need in PixelRegion.appendSpans()
+    int getMaxSpansPerRow() {
+        return maxSpansPerRow;
+    }
+
+    int getMaxVertices() {
+        return maxVertices;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Pixelates only the parts of the frame covered by a set of regions (faces, plates,
+// screens); everything else passes through unchanged. Regions are kept in a
+// RegionIndex over block rows, so a block row without regions is a plain row copy
+// (nothing at all when pixelating in place) and within the others only the blocks the
+// regions' spans touch are averaged. Work therefore grows with the covered area, not
+// with frame area times region count. Covered pixels get the same rounded block mean
+// as PixelationEngine gives, averaged over the whole block, so a region's edge cuts
+// through blocks without changing their colour.
+public final class RegionPixelator {
+    // Bands smaller than this are not split further
+    private static final int MIN_BAND_PIXELS = 64 * 1024;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final ForkJoinPool pool;
+    private volatile List<PixelRegion> regions = Collections.emptyList();
+    private RegionIndex index; // For the regions, height and block size of the last call
+
+    public RegionPixelator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public RegionPixelator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Regions for the following frames; may be called from any thread. Regions may
+    // reach outside the frame and are clipped to it.
+    public void setRegions(List<PixelRegion> regions) {
+        this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+    }
+
+    public List<PixelRegion> getRegions() {
+        return regions;
+    }
+
+    // Calls must come from one thread at a time. src and dst may be the same array.
+    public void pixelate(int[] src, int[] dst, int width, int height, int blockSize) {
+        PixelationEngine.checkArguments(src, 0, width, dst, 0, width, width, height, blockSize);
+        RegionIndex current = index(height, blockSize);
+        int blockRows = current.getBandCount();
+        int minBlockRows = Math.max(1, MIN_BAND_PIXELS / (width * blockSize));
+        // Aim for a few bands per worker so uneven bands still balance out
+        int targetBands = Math.max(1, pool.getParallelism() * 4);
+        int bandBlockRows = Math.max(minBlockRows, (blockRows + targetBands - 1) / targetBands);
+
+        Band band = new Band(current, src, dst, width, height, 0, blockRows, bandBlockRows);
+        if (blockRows <= bandBlockRows || pool.getParallelism() == 1) {
+            band.compute(); // Not worth a hop onto the pool
+        } else {
+            pool.invoke(band);
+        }
+    }
+
+    // The index is rebuilt only when the regions or the block rows change
+    RegionIndex index(int height, int blockSize) {
+        List<PixelRegion> current = regions;
+        RegionIndex last = index;
+        if (last == null || last.getRegions() != current || last.getHeight() != height
+                || last.getBandHeight() != blockSize) {
+            last = new RegionIndex(current, height, blockSize);
+            index = last;
+        }
+        return last;
+    }
+
+    // Sequential kernel for block rows [firstBlockRow, endBlockRow)
+    private static void pixelateBlockRows(RegionIndex index, int[] src, int[] dst, int width, int height,
+                                          int firstBlockRow, int endBlockRow) {
+        int blockSize = index.getBandHeight();
+        int blocksX = PixelationEngine.gridSize(width, blockSize);
+        // Per row of the block row: its spans, as start/end pairs from rowSpans[row * stride]
+        int spanStride = 2 * index.getMaxSpansPerRow();
+        Scratch scratch = SCRATCH.get().ensure(blockSize, spanStride, index.getMaxVertices(), blocksX);
+        int[] rowSpans = scratch.rowSpans;
+        int[] spanCounts = scratch.spanCounts;
+        double[] crossings = scratch.crossings;
+        boolean[] touched = scratch.touched;
+        int[] means = scratch.means;
+        int[] spans = scratch.spans;
+
+        for (int blockRow = firstBlockRow; blockRow < endBlockRow; blockRow++) {
+            int y0 = blockRow * blockSize;
+            int y1 = Math.min(y0 + blockSize, height);
+            if (src != dst) {
+                // Uncovered pixels pass through; covered ones are overwritten below
+                System.arraycopy(src, y0 * width, dst, y0 * width, (y1 - y0) * width);
+            }
+            int regionCount = index.countInBand(blockRow);
+            if (regionCount == 0) {
+                continue;
+            }
+
+            // Spans of every row, and the blocks they reach into
+            boolean any = false;
+            for (int y = y0; y < y1; y++) {
+                int count = 0;
+                for (int i = 0; i < regionCount; i++) {
+                    count = index.regionInBand(blockRow, i).appendSpans(y, width, spans, count, crossings);
+                }
+                System.arraycopy(spans, 0, rowSpans, (y - y0) * spanStride, 2 * count);
+                spanCounts[y - y0] = count;
+                for (int s = 0; s < count; s++) {
+                    int last = (spans[2 * s + 1] - 1) / blockSize;
+                    for (int bx = spans[2 * s] / blockSize; bx <= last; bx++) {
+                        touched[bx] = true;
+                    }
+                    any = true;
+                }
+            }
+            if (!any) {
+                continue; // Only bounding boxes reached this block row
+            }
+
+            // Block means from src, which in place is still untouched in this block row
+            for (int bx = 0; bx < blocksX; bx++) {
+                if (touched[bx]) {
+                    int x0 = bx * blockSize;
+                    means[bx] = blockMean(src, width, x0, y0, Math.min(x0 + blockSize, width), y1);
+                }
+            }
+
+            // Fill the covered pixels of each row, a block at a time; overlapping
+            // regions only write the same colour twice
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                int offset = (y - y0) * spanStride;
+                for (int s = 0; s < spanCounts[y - y0]; s++) {
+                    int start = rowSpans[offset + 2 * s];
+                    int end = rowSpans[offset + 2 * s + 1];
+                    while (start < end) {
+                        int bx = start / blockSize;
+                        int blockEnd = Math.min(end, (bx + 1) * blockSize);
+                        Arrays.fill(dst, row + start, row + blockEnd, means[bx]);
+                        start = blockEnd;
+                    }
+                }
+            }
+            Arrays.fill(touched, 0, blocksX, false);
+        }
+    }
+
+    // Rounded per-channel mean of [x0, x1) x [y0, y1), as PixelationEngine computes it
+    private static int blockMean(int[] src, int width, int x0, int y0, int x1, int y1) {
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                int pixel = src[row + x];
+                a += pixel >>> 24;
+                r += (pixel >> 16) & 0xFF;
+                g += (pixel >> 8) & 0xFF;
+                b += pixel & 0xFF;
+            }
+        }
+        int count = (y1 - y0) * (x1 - x0);
+        int half = count >> 1;
+        return ((a + half) / count) << 24
+                | ((r + half) / count) << 16
+                | ((g + half) / count) << 8
+                | ((b + half) / count);
+    }
+
+    // Scratch for pixelateBlockRows(), grown to the largest block rows, region spans
+    // and grid the thread has seen. touched is all false between block rows.
+    private static final class Scratch {
+        int[] rowSpans = new int[0];
+        int[] spanCounts = new int[0];
+        int[] spans = new int[0];
+        double[] crossings = new double[0];
+        boolean[] touched = new boolean[0];
+        int[] means = new int[0];
+
+        Scratch ensure(int blockSize, int spanStride, int maxVertices, int blocksX) {
+            if (rowSpans.length < blockSize * spanStride) {
+                rowSpans = new int[blockSize * spanStride];
+            }
+            if (spanCounts.length < blockSize) {
+                spanCounts = new int[blockSize];
+            }
+            if (spans.length < spanStride) {
+                spans = new int[spanStride];
+            }
+            if (crossings.length < maxVertices) {
+                crossings = new double[maxVertices];
+            }
+            if (touched.length < blocksX) {
+                touched = new boolean[blocksX];
+                means = new int[blocksX];
+            }
+            return this;
+        }
+    }
+
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RegionIndex index;
+        private final int[] src;
+        private final int[] dst;
+        private final int width;
+        private final int height;
+        private final int firstBlockRow;
+        private final int endBlockRow;
+        private final int bandBlockRows;
+
+        Band(RegionIndex index, int[] src, int[] dst, int width, int height,
+             int firstBlockRow, int endBlockRow, int bandBlockRows) {
+            this.index = index;
+            this.src = src;
+            this.dst = dst;
+            this.width = width;
+            this.height = height;
+            this.firstBlockRow = firstBlockRow;
+            this.endBlockRow = endBlockRow;
+            this.bandBlockRows = bandBlockRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = endBlockRow - firstBlockRow;
+            if (rows <= bandBlockRows) {
+                pixelateBlockRows(index, src, dst, width, height, firstBlockRow, endBlockRow);
+                return;
+            }
+            int middle = firstBlockRow + rows / 2;
+            invokeAll(split(firstBlockRow, middle), split(middle, endBlockRow));
+        }
+
+        private Band split(int first, int end) {
+            return new Band(index, src, dst, width, height, first, end, bandBlockRows);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Carries regions from an occasional detector forward across frames, so faces or
+// plates stay pixelated without running the detector on every frame. Each frame is
+// reduced to a luma grid of cellSize blocks (the same averaging as pixelation), and
+// each region's cells in the frame it was detected in are matched against the new grid
+// by sum of absolute differences, searching searchRange cells around where its
+// velocity predicts it.
+//
+// Motion is found to the nearest cell. Matching against the detection frame rather
+// than the previous frame keeps that error under half a cell, however slowly a region
+// moves, instead of letting it accumulate between refreshes. The regions handed out
+// are padded by the motion uncertainty: a cell for the grid itself, plus the region's
+// speed. Once a match is lost (best score poor, or at the edge of the search) the
+// padding grows by a whole search range every frame, so a region that may have lost
+// its subject spreads out rather than drifting off it, until the next setRegions().
+//
+// Not thread-safe; call from the thread that sees the frames.
+public final class RegionTracker {
+    public static final int DEFAULT_CELL_SIZE = 8;
+    public static final int DEFAULT_SEARCH_RANGE = 4;
+    // Mean luma difference per cell above which a match counts as lost
+    private static final int MAX_MATCH_ERROR = 24;
+
+    private final int cellSize;
+    private final int searchRange;
+    private final PixelationEngine engine;
+    private final List<Track> tracks = new ArrayList<>();
+    private List<PixelRegion> regions = Collections.emptyList();
+    private int width;
+    private int height;
+    private int gridWidth;
+    private int gridHeight;
+    private int[] grid = new int[0]; // ARGB cell means of the latest frame
+    private int[] luma = new int[0]; // Luma of the latest frame's cells
+    private boolean hasFrame;
+    private long framesSinceRefresh;
+
+    public RegionTracker() {
+        this(DEFAULT_CELL_SIZE, DEFAULT_SEARCH_RANGE, new PixelationEngine());
+    }
+
+    public RegionTracker(int cellSize, int searchRange, PixelationEngine engine) {
+        if (cellSize < 1 || cellSize > PixelationEngine.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Cell size out of range: " + cellSize);
+        }
+        if (searchRange < 1) {
+            throw new IllegalArgumentException("Search range must be at least a cell: " + searchRange);
+        }
+        this.cellSize = cellSize;
+        this.searchRange = searchRange;
+        this.engine = engine;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getSearchRange() {
+        return searchRange;
+    }
+
+    // Regions found by a detector in the latest frame given to track(), or in the next
+    // one if none has been seen yet. They replace the tracked regions.
+    public void setRegions(List<PixelRegion> detected) {
+        tracks.clear();
+        for (PixelRegion region : detected) {
+            tracks.add(new Track(region));
+        }
+        framesSinceRefresh = 0;
+        if (hasFrame) {
+            anchorNewTracks();
+        }
+        regions = padded();
+    }
+
+    // Moves the regions onto this ARGB frame and returns them, padded; the list stays
+    // valid after later calls. While no region moves or changes its padding the same
+    // list is returned, so callers can tell a change by identity. A change of frame size
+    // scales the regions to the new size.
+    public List<PixelRegion> track(int[] argb, int width, int height) {
+        if (hasFrame && (width != this.width || height != this.height)) {
+            rescale(width, height);
+        }
+        this.width = width;
+        this.height = height;
+        gridWidth = PixelationEngine.gridSize(width, cellSize);
+        gridHeight = PixelationEngine.gridSize(height, cellSize);
+        int cells = gridWidth * gridHeight;
+        if (grid.length < cells) {
+            grid = new int[cells];
+            luma = new int[cells];
+        }
+        engine.downsample(argb, width, height, cellSize, grid);
+        for (int i = 0; i < cells; i++) {
+            int pixel = grid[i];
+            // BT.601 weights, as the luma plane of a camera frame would have
+            luma[i] = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+        }
+        hasFrame = true;
+        framesSinceRefresh++;
+        boolean changed = false;
+        for (Track track : tracks) {
+            if (track.template == null) {
+                track.anchor();
+                changed = true;
+            } else if (track.follow()) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            regions = padded();
+        }
+        return regions;
+    }
+
+    // The latest padded regions
+    public List<PixelRegion> getRegions() {
+        return regions;
+    }
+
+    // Frames tracked since the last setRegions(), for callers refreshing every N frames
+    public long getFramesSinceRefresh() {
+        return framesSinceRefresh;
+    }
+
+    // Horizontal and vertical padding of the i-th region, in pixels
+    public int getPaddingX(int i) {
+        return tracks.get(i).padX();
+    }
+
+    public int getPaddingY(int i) {
+        return tracks.get(i).padY();
+    }
+
+    private void anchorNewTracks() {
+        for (Track track : tracks) {
+            track.anchor();
+        }
+    }
+
+    private List<PixelRegion> padded() {
+        List<PixelRegion> result = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            result.add(track.current());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    // After a resolution change the templates no longer fit the grid: restart each
+    // track from its current, padded region scaled to the new size
+    private void rescale(int newWidth, int newHeight) {
+        List<PixelRegion> scaled = new ArrayList<>(tracks.size());
+        for (Track track : tracks) {
+            scaled.add(scale(track.current(), (double) newWidth / width, (double) newHeight / height));
+        }
+        tracks.clear();
+        for (PixelRegion region : scaled) {
+            tracks.add(new Track(region));
+        }
+    }
+
+    // Rounded outwards, so the scaled region still covers everything it did
+    private static PixelRegion scale(PixelRegion region, double sx, double sy) {
+        if (!region.isPolygon()) {
+            return PixelRegion.rect((int) Math.floor(region.getLeft() * sx), (int) Math.floor(region.getTop() * sy),
+                    (int) Math.ceil(region.getRight() * sx), (int) Math.ceil(region.getBottom() * sy));
+        }
+        int[] xs = region.getVertexXs();
+        int[] ys = region.getVertexYs();
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = (int) Math.round(xs[i] * sx);
+            ys[i] = (int) Math.round(ys[i] * sy);
+        }
+        return PixelRegion.polygon(xs, ys).pad((int) Math.ceil(sx), (int) Math.ceil(sy));
+    }
+
+    private final class Track {
+        private final PixelRegion detected;
+        private int[] template; // Luma cells under the region in the detection frame
+        private int cellX; // Template origin and size in cells
+        private int cellY;
+        private int cells;
+        private int cellsX;
+        private int cellsY;
+        private int dx; // Displacement since detection, in pixels
+        private int dy;
+        private int vx; // Displacement over the last frame
+        private int vy;
+        private int lostFrames;
+
+        Track(PixelRegion detected) {
+            this.detected = detected;
+        }
+
+        // Takes the template from the current grid: the cells inside the region's box,
+        // since cells on its edge are partly background that won't move with it, or all
+        // cells it touches when it is too small for that
+        void anchor() {
+            int x0 = clamp(Math.floorDiv(detected.getLeft() + cellSize - 1, cellSize), gridWidth);
+            int y0 = clamp(Math.floorDiv(detected.getTop() + cellSize - 1, cellSize), gridHeight);
+            int x1 = clamp(Math.floorDiv(detected.getRight(), cellSize), gridWidth);
+            int y1 = clamp(Math.floorDiv(detected.getBottom(), cellSize), gridHeight);
+            if (x1 <= x0 || y1 <= y0) {
+                x0 = clamp(Math.floorDiv(detected.getLeft(), cellSize), gridWidth);
+                y0 = clamp(Math.floorDiv(detected.getTop(), cellSize), gridHeight);
+                x1 = clamp(PixelationEngine.gridSize(Math.max(0, detected.getRight()), cellSize), gridWidth);
+                y1 = clamp(PixelationEngine.gridSize(Math.max(0, detected.getBottom()), cellSize), gridHeight);
+            }
+            cellX = x0;
+            cellY = y0;
+            cellsX = Math.max(0, x1 - x0);
+            cellsY = Math.max(0, y1 - y0);
+            cells = cellsX * cellsY;
+            template = new int[cells];
+            for (int y = 0; y < cellsY; y++) {
+                System.arraycopy(luma, (cellY + y) * gridWidth + cellX, template, y * cellsX, cellsX);
+            }
+            dx = 0;
+            dy = 0;
+            vx = 0;
+            vy = 0;
+            lostFrames = 0;
+        }
+
+        // Finds the template in the current grid near where the velocity predicts it.
+        // Returns whether current() changed.
+        boolean follow() {
+            int predictedX = dx + vx;
+            int predictedY = dy + vy;
+            if (cells == 0) {
+                // Off the frame when detected: nothing to match, keep moving as predicted
+                return move(predictedX, predictedY, true);
+            }
+            int centreX = Math.round((float) predictedX / cellSize);
+            int centreY = Math.round((float) predictedY / cellSize);
+            long best = Long.MAX_VALUE;
+            int bestX = 0;
+            int bestY = 0;
+            for (int sy = -searchRange; sy <= searchRange; sy++) {
+                for (int sx = -searchRange; sx <= searchRange; sx++) {
+                    long score = score(centreX + sx, centreY + sy);
+                    // Ties go to the candidate nearest the prediction, so flat areas hold still
+                    if (score < best || (score == best && Math.abs(sx) + Math.abs(sy) < Math.abs(bestX) + Math.abs(bestY))) {
+                        best = score;
+                        bestX = sx;
+                        bestY = sy;
+                    }
+                }
+            }
+            if (best == Long.MAX_VALUE) {
+                return move(predictedX, predictedY, true); // Moved off the grid
+            }
+            boolean lost = best > MAX_MATCH_ERROR * 256L
+                    || Math.abs(bestX) == searchRange || Math.abs(bestY) == searchRange;
+            return move((centreX + bestX) * cellSize, (centreY + bestY) * cellSize, lost);
+        }
+
+        private boolean move(int newX, int newY, boolean lost) {
+            int oldX = dx;
+            int oldY = dy;
+            int oldPadX = padX();
+            int oldPadY = padY();
+            vx = newX - dx;
+            vy = newY - dy;
+            dx = newX;
+            dy = newY;
+            // Once lost, a good match may just be the background: stay unsure until refreshed
+            lostFrames = lost || lostFrames > 0 ? lostFrames + 1 : 0;
+            return dx != oldX || dy != oldY || padX() != oldPadX || padY() != oldPadY;
+        }
+
+        // Mean absolute luma difference with the template shifted by (ox, oy) cells, times
+        // 256; MAX_VALUE when less than half the template would be on the grid
+        private long score(int ox, int oy) {
+            long sum = 0;
+            int overlap = 0;
+            for (int y = 0; y < cellsY; y++) {
+                int gy = cellY + y + oy;
+                if (gy < 0 || gy >= gridHeight) {
+                    continue;
+                }
+                int row = gy * gridWidth;
+                for (int x = 0; x < cellsX; x++) {
+                    int gx = cellX + x + ox;
+                    if (gx >= 0 && gx < gridWidth) {
+                        sum += Math.abs(template[y * cellsX + x] - luma[row + gx]);
+                        overlap++;
+                    }
+                }
+            }
+            if (2 * overlap < cells) {
+                return Long.MAX_VALUE;
+            }
+            return (sum << 8) / overlap;
+        }
+
+        int padX() {
+            return cellSize + Math.abs(vx) + lostFrames * searchRange * cellSize;
+        }
+
+        int padY() {
+            return cellSize + Math.abs(vy) + lostFrames * searchRange * cellSize;
+        }
+
+        PixelRegion current() {
+            if (template == null) {
+                return detected; // Not seen on a frame yet
+            }
+            return detected.translate(dx, dy).pad(padX(), padY());
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(value, size));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+// Plays a frame recording as a live source, at the recorded pace or as fast as the
+// sink takes frames. Frames point straight into the recording's memory mapping.
+public final class ReplayFrameSource implements FrameSource, Closeable {
+    private final FrameReplay replay;
+    private final boolean paced;
+    private final boolean loop;
+    private final FrameFormat format;
+    private final RawFrame frame = new RawFrame();
+    private volatile boolean running;
+    private Thread thread;
+
+    public ReplayFrameSource(File file, boolean paced, boolean loop) throws IOException {
+        this.replay = new FrameReplay(file);
+        this.paced = paced;
+        this.loop = loop;
+        FrameFormat.Encoding encoding = replay.getPixelFormat() == FrameRecording.PixelFormat.I420
+                ? FrameFormat.Encoding.YUV_420 : FrameFormat.Encoding.RGBA;
+        this.format = new FrameFormat(replay.getWidth(), replay.getHeight(), encoding);
+    }
+
+    @Override
+    public List<FrameFormat> getSupportedFormats() {
+        return Collections.singletonList(format);
+    }
+
+    @Override
+    public synchronized void start(FrameFormat requested, Sink sink) {
+        if (!format.equals(requested)) {
+            throw new IllegalArgumentException("Recording is " + format + ", not " + requested);
+        }
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+        running = true;
+        thread = new Thread(() -> {
+            FrameReplay.Sink adapter = (source, index) -> {
+                if (!running) {
+                    return false;
+                }
+                sink.onFrame(describe(index));
+                return running;
+            };
+            do {
+                replay.play(adapter, paced);
+            } while (loop && running && replay.getFrameCount() > 0);
+        }, "ReplayFrameSource");
+        thread.start();
+    }
+
+    private RawFrame describe(int index) {
+        long timestamp = replay.getTimestampNs(index);
+        if (format.getEncoding() == FrameFormat.Encoding.YUV_420) {
+            return frame.setYuv(format, timestamp, replay.getYPlane(index), format.getWidth(),
+                    replay.getUPlane(index), replay.getVPlane(index),
+                    FrameRecording.chromaWidth(format.getWidth()), 1);
+        }
+        return frame.setRgba(format, timestamp, replay.getFrameData(index), format.getWidth() * 4);
+    }
+
+    @Override
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            running = false;
+            worker = thread;
+            thread = null;
+        }
+        if (worker != null && worker != Thread.currentThread()) {
+            worker.interrupt(); // Wakes a paced replay
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        replay.close();
+    }
+}
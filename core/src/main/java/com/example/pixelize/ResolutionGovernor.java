@@ -0,0 +1,235 @@
+package com.example.pixelize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Chooses the capture resolution and frame rate from measured pipeline load. Fed one
+// sample per measurement window (typically a second), it walks a ladder of levels
+// ordered from most to least expensive: every resolution at the full frame rate, then
+// the smallest resolution at lower frame rates.
+//
+// Hysteresis: stepping down needs DEGRADE_AFTER consecutive overloaded windows,
+// stepping up needs a longer run of windows with clear headroom, and samples are
+// ignored for SETTLE_WINDOWS after every change while the pipeline adapts. An upgrade
+// that has to be undone soon after doubles the headroom run required next time, so a
+// level the device can't hold is not retried every few seconds.
+//
+// Pixelation hides detail, so the resolution is also capped by the pixel size: with
+// blocks of pixelSize reference pixels, any resolution that still gives every block
+// MIN_PIXELS_PER_BLOCK source pixels per side looks the same, and the smallest such
+// resolution is used even when the device could afford more.
+//
+// Pure state machine: no clocks or threads, so it can be driven by scripted traces.
+public final class ResolutionGovernor {
+
+    public enum State {
+        // Ignoring samples right after a level change
+        SETTLING,
+        // Within budget, no change pending
+        STEADY,
+        // Overloaded windows are accumulating towards a step down
+        STRAINED,
+        // Windows with headroom are accumulating towards a step up
+        RELAXED
+    }
+
+    // One rung of the ladder
+    public static final class Level {
+        private final FrameFormat format;
+        private final int fps;
+
+        Level(FrameFormat format, int fps) {
+            this.format = format;
+            this.fps = fps;
+        }
+
+        public FrameFormat getFormat() {
+            return format;
+        }
+
+        public int getFps() {
+            return fps;
+        }
+
+        @Override
+        public String toString() {
+            return format.getWidth() + "x" + format.getHeight() + "@" + fps;
+        }
+    }
+
+    static final int DEGRADE_AFTER = 2;
+    static final int UPGRADE_AFTER = 5;
+    static final int MAX_UPGRADE_AFTER = 40;
+    static final int SETTLE_WINDOWS = 2;
+    // An upgrade this many windows old is considered to have stuck
+    static final int STICKY_WINDOWS = 30;
+    static final double MAX_DROP_RATE = 0.10;
+    static final double HEADROOM_DROP_RATE = 0.02;
+    static final double HEADROOM_LATENCY = 0.6; // Fraction of the budget
+    static final int MIN_PIXELS_PER_BLOCK = 2;
+    // Stages that do work for every frame; SWAP is excluded
+    private static final PipelineMetrics.Stage[] WORK_STAGES = {PipelineMetrics.Stage.ACQUIRE,
+            PipelineMetrics.Stage.CONVERT, PipelineMetrics.Stage.UPLOAD, PipelineMetrics.Stage.DRAW};
+
+    private final List<Level> ladder;
+    private final int resolutionLevels; // Ladder entries at the full frame rate
+    private final long latencyBudgetNanos;
+    private int loadIndex;   // Level the load allows
+    private int detailIndex; // Cheapest level that still shows every block
+    private State state = State.SETTLING;
+    private int streak;
+    private int settleRemaining = SETTLE_WINDOWS;
+    private int upgradeAfter = UPGRADE_AFTER;
+    private int windowsSinceUpgrade = -1; // -1 when no upgrade is on probation
+
+    // formats are the candidate resolutions (any order, normally one aspect ratio);
+    // frame rates step down from maxFps to no lower than minFps
+    public ResolutionGovernor(List<FrameFormat> formats, int maxFps, int minFps, long latencyBudgetNanos) {
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("No formats");
+        }
+        if (minFps < 1 || maxFps < minFps) {
+            throw new IllegalArgumentException("Invalid frame rate range " + minFps + ".." + maxFps);
+        }
+        List<FrameFormat> sorted = new ArrayList<>(formats);
+        Collections.sort(sorted, (a, b) -> Long.compare(area(b), area(a)));
+        List<Level> levels = new ArrayList<>();
+        for (FrameFormat format : sorted) {
+            levels.add(new Level(format, maxFps));
+        }
+        FrameFormat smallest = sorted.get(sorted.size() - 1);
+        int[] fpsSteps = {maxFps * 2 / 3, maxFps / 2};
+        int previous = maxFps;
+        for (int fps : fpsSteps) {
+            fps = Math.max(fps, minFps);
+            if (fps < previous) {
+                levels.add(new Level(smallest, fps));
+                previous = fps;
+            }
+        }
+        this.ladder = Collections.unmodifiableList(levels);
+        this.resolutionLevels = sorted.size();
+        this.latencyBudgetNanos = latencyBudgetNanos;
+    }
+
+    private static long area(FrameFormat format) {
+        return (long) format.getWidth() * format.getHeight();
+    }
+
+    public List<Level> getLadder() {
+        return ladder;
+    }
+
+    public Level getLevel() {
+        return ladder.get(currentIndex());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Headroom windows currently needed before stepping up
+    public int getUpgradeAfter() {
+        return upgradeAfter;
+    }
+
+    private int currentIndex() {
+        return Math.max(loadIndex, detailIndex);
+    }
+
+    // pixelSize is the block size in pixels of the largest resolution (1 = no
+    // pixelation). Returns true if the level changed.
+    public boolean setPixelSize(float pixelSize) {
+        int before = currentIndex();
+        FrameFormat top = ladder.get(0).getFormat();
+        double scale = Math.max(1, pixelSize) / MIN_PIXELS_PER_BLOCK;
+        double minWidth = top.getWidth() / scale;
+        double minHeight = top.getHeight() / scale;
+        int index = 0;
+        for (int i = 0; i < resolutionLevels; i++) {
+            FrameFormat format = ladder.get(i).getFormat();
+            if (format.getWidth() >= minWidth && format.getHeight() >= minHeight) {
+                index = i; // Cheaper levels come later
+            }
+        }
+        detailIndex = index;
+        return changed(before);
+    }
+
+    // Feeds one measurement window: the per-frame processing latency and the fraction
+    // of frames dropped. Returns true if the level changed.
+    public boolean update(long latencyNanos, double dropRate) {
+        int before = currentIndex();
+        if (windowsSinceUpgrade >= 0 && ++windowsSinceUpgrade > STICKY_WINDOWS) {
+            windowsSinceUpgrade = -1;
+            upgradeAfter = UPGRADE_AFTER;
+        }
+        if (settleRemaining > 0) {
+            settleRemaining--;
+            state = State.SETTLING;
+            return false;
+        }
+
+        boolean overloaded = latencyNanos > latencyBudgetNanos || dropRate > MAX_DROP_RATE;
+        boolean headroom = latencyNanos < latencyBudgetNanos * HEADROOM_LATENCY
+                && dropRate <= HEADROOM_DROP_RATE;
+        if (overloaded) {
+            streak = state == State.STRAINED ? streak + 1 : 1;
+            state = State.STRAINED;
+            if (streak >= DEGRADE_AFTER && before < ladder.size() - 1) {
+                if (windowsSinceUpgrade >= 0) {
+                    // The last step up did not hold: be slower to try it again
+                    upgradeAfter = Math.min(upgradeAfter * 2, MAX_UPGRADE_AFTER);
+                    windowsSinceUpgrade = -1;
+                }
+                loadIndex = before + 1;
+            }
+        } else if (headroom && loadIndex > detailIndex) {
+            // Only load-limited levels can step up; the detail cap is not a load problem
+            streak = state == State.RELAXED ? streak + 1 : 1;
+            state = State.RELAXED;
+            if (streak >= upgradeAfter) {
+                loadIndex--;
+                windowsSinceUpgrade = 0;
+            }
+        } else {
+            streak = 0;
+            state = State.STEADY;
+        }
+        return changed(before);
+    }
+
+    // Convenience for live metrics: latency is the END_TO_END p95, a frame's arrival to
+    // its draw, and drops are counted against everything produced. The stages overlap
+    // on different threads and SWAP is mostly waiting for vsync, so summing them
+    // overstates latency several times over. Without END_TO_END samples the slowest
+    // work stage stands in, as it bounds the rate the pipeline sustains. Windows
+    // without frames are skipped.
+    public boolean update(MetricsSnapshot snapshot) {
+        long frames = snapshot.getProduced() + snapshot.getDropped();
+        if (frames == 0) {
+            return false;
+        }
+        long latency;
+        if (snapshot.getCount(PipelineMetrics.Stage.END_TO_END) > 0) {
+            latency = snapshot.getP95Nanos(PipelineMetrics.Stage.END_TO_END);
+        } else {
+            latency = 0;
+            for (PipelineMetrics.Stage stage : WORK_STAGES) {
+                latency = Math.max(latency, snapshot.getP95Nanos(stage));
+            }
+        }
+        return update(latency, (double) snapshot.getDropped() / frames);
+    }
+
+    private boolean changed(int before) {
+        if (currentIndex() == before) {
+            return false;
+        }
+        state = State.SETTLING;
+        streak = 0;
+        settleRemaining = SETTLE_WINDOWS;
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.pixelize;
+
+// The per-row inner loops of block averaging and YUV -> ARGB conversion. Both work
+// on plain arrays of whole rows so they can be vectorised: the Vector API version
+// (VectorRowKernels, compiled separately for Java 17+ desktop JVMs) is picked up at
+// runtime when the jdk.incubator.vector module is present, and the scalar version
+// below is used everywhere else, including Android. Everything is integer maths, so
+// both produce bit-identical results.
+//
+// Implementations are stateless and thread-safe.
+public abstract class RowKernels {
+    // System property forcing a kernel: "scalar" or "vector"; unset picks the fastest
+    public static final String PROPERTY = "pixelize.kernels";
+
+    private static final String VECTOR_CLASS = "com.example.pixelize.VectorRowKernels";
+
+    private static final RowKernels SCALAR = new Scalar();
+    private static final RowKernels VECTOR = loadVector();
+    private static final RowKernels DEFAULT = select(System.getProperty(PROPERTY));
+
+    public static RowKernels scalar() {
+        return SCALAR;
+    }
+
+    // The Vector API kernels, or null when this JVM can't run them
+    public static RowKernels vector() {
+        return VECTOR;
+    }
+
+    // The kernels engines use unless told otherwise
+    public static RowKernels getDefault() {
+        return DEFAULT;
+    }
+
+    public static RowKernels named(String name) {
+        if ("scalar".equals(name)) {
+            return SCALAR;
+        }
+        if ("vector".equals(name)) {
+            if (VECTOR == null) {
+                throw new IllegalStateException("Vector API kernels are not available on this JVM");
+            }
+            return VECTOR;
+        }
+        throw new IllegalArgumentException("Unknown kernels: " + name);
+    }
+
+    private static RowKernels select(String name) {
+        if (name != null) {
+            return named(name);
+        }
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    private static RowKernels loadVector() {
+        try {
+            return (RowKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+            // Not built in (Android, Java 11) or the module isn't enabled with --add-modules
+            return null;
+        }
+    }
+
+    public abstract String getName();
+
+    // Adds the alpha, red, green and blue of src[offset .. offset + width) to the
+    // column sums at [0, width) of the four arrays
+    public abstract void accumulateColumns(int[] src, int offset, int width,
+                                           int[] alpha, int[] red, int[] green, int[] blue);
+
+    // Converts one row of luma to ARGB into out[outIndex ..]. Chroma comes as
+    // per-pixel-pair terms: pixel x uses red[x >> 1], green[x >> 1] and blue[x >> 1],
+    // the fixed-point chroma contributions including the rounding term. The chroma
+    // arrays must be at least width long.
+    public abstract void convertRow(byte[] luma, int[] red, int[] green, int[] blue,
+                                    int yOffset, int yGain, int width, int[] out, int outIndex);
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    // Scalar loops, also used for the tails the vector kernels leave over
+    static void accumulateColumns(int[] src, int offset, int[] alpha, int[] red, int[] green, int[] blue,
+                                  int from, int to) {
+        for (int x = from, i = offset + from; x < to; x++, i++) {
+            int pixel = src[i];
+            alpha[x] += pixel >>> 24;
+            red[x] += (pixel >> 16) & 0xFF;
+            green[x] += (pixel >> 8) & 0xFF;
+            blue[x] += pixel & 0xFF;
+        }
+    }
+
+    static void convertRow(byte[] luma, int[] red, int[] green, int[] blue, int yOffset, int yGain,
+                           int[] out, int outIndex, int from, int to) {
+        for (int x = from; x < to; x++) {
+            int pair = x >> 1;
+            int y = ((luma[x] & 0xFF) - yOffset) * yGain;
+            out[outIndex + x] = pack(y + red[pair], y + green[pair], y + blue[pair]);
+        }
+    }
+
+    private static int pack(int r, int g, int b) {
+        return 0xFF000000 | (clamp(r >> 16) << 16) | (clamp(g >> 16) << 8) | clamp(b >> 16);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static final class Scalar extends RowKernels {
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void accumulateColumns(int[] src, int offset, int width,
+                                      int[] alpha, int[] red, int[] green, int[] blue) {
+            accumulateColumns(src, offset, alpha, red, green, blue, 0, width);
+        }
+
+        @Override
+        public void convertRow(byte[] luma, int[] red, int[] green, int[] blue,
+                               int yOffset, int yGain, int width, int[] out, int outIndex) {
+            convertRow(luma, red, green, blue, yOffset, yGain, out, outIndex, 0, width);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.pixelize;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// A fragment-shader effect drawn over the full-screen quad. Every effect gets the
+// same header (frame texture, frame size and block size uniforms plus blockColor()),
+// declares any extra float parameters it reads, and lists the variants it can be
+// compiled as. Sources are plain strings so they can be checked on the JVM.
+public final class ShaderEffect {
+
+    public enum Variant {
+        // The full-resolution frame texture; the effect does its own block lookup
+        FRAME,
+        // The one-pixel-per-block grid from PixelationEngine.downsample(); blockColor()
+        // reads the grid texel, u_TexScale maps frame UVs onto the grid
+        GRID
+    }
+
+    // A float uniform the effect reads, with the value used unless one is set
+    public static final class Parameter {
+        private final String name;
+        private final float defaultValue;
+
+        public Parameter(String name, float defaultValue) {
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public float getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    public static final String VERTEX_SOURCE =
+        "attribute vec4 a_Position;\n" +
+        "attribute vec2 a_TexCoord;\n" +
+        "varying vec2 v_TexCoord;\n" +
+        "void main() {\n" +
+        "    gl_Position = a_Position;\n" +
+        "    v_TexCoord = a_TexCoord;\n" +
+        "}\n";
+
+    // Uniforms every effect has; GRID variants also have u_TexScale
+    public static final String U_TEXTURE = "u_Texture";
+    public static final String U_TEX_SIZE = "u_TexSize";     // Frame size in pixels
+    public static final String U_PIXEL_SIZE = "u_PixelSize"; // Block size in frame pixels
+    public static final String U_TEX_SCALE = "u_TexScale";
+
+    // Pixel coordinates need more than mediump's 10-bit mantissa at 1080p and up.
+    // Frames are ARGB ints, which are BGRA in texture memory, hence the swizzles.
+    private static final String HEADER =
+        "#ifdef GL_FRAGMENT_PRECISION_HIGH\n" +
+        "precision highp float;\n" +
+        "#else\n" +
+        "precision mediump float;\n" +
+        "#endif\n" +
+        "uniform sampler2D u_Texture;\n" +
+        "uniform vec2 u_TexSize;\n" +
+        "uniform float u_PixelSize;\n" +
+        "varying vec2 v_TexCoord;\n" +
+        "vec4 frameColor(vec2 pixel) {\n" +
+        "    return texture2D(u_Texture, clamp(pixel, vec2(0.5), u_TexSize - 0.5) / u_TexSize).bgra;\n" +
+        "}\n" +
+        "#ifdef GRID\n" +
+        "uniform vec2 u_TexScale;\n" +
+        "vec4 blockColor(vec2 uv) {\n" +
+        "    return texture2D(u_Texture, uv * u_TexScale).bgra;\n" +
+        "}\n" +
+        "#else\n" +
+        "vec4 blockColor(vec2 uv) {\n" +
+        "    vec2 block = floor(uv * u_TexSize / u_PixelSize);\n" +
+        "    return frameColor((block + 0.5) * u_PixelSize);\n" +
+        "}\n" +
+        "#endif\n";
+
+    private final String id;
+    private final String body;
+    private final Set<Variant> variants;
+    private final List<Parameter> parameters;
+    private final boolean squareGrid;
+
+    // body must define main(); it can use blockColor(), frameColor() and the header uniforms
+    public ShaderEffect(String id, String body, Set<Variant> variants, Parameter... parameters) {
+        this(id, body, variants, false, parameters);
+    }
+
+    // squareGrid declares that the effect reads the frame only through blockColor(), so
+    // its output changes only where a u_PixelSize square block of the frame changes
+    public ShaderEffect(String id, String body, Set<Variant> variants, boolean squareGrid, Parameter... parameters) {
+        if (variants.isEmpty()) {
+            throw new IllegalArgumentException("Effect " + id + " has no variants");
+        }
+        this.id = id;
+        this.body = body;
+        this.variants = Collections.unmodifiableSet(EnumSet.copyOf(variants));
+        this.parameters = Collections.unmodifiableList(Arrays.asList(parameters.clone()));
+        this.squareGrid = squareGrid;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Set<Variant> getVariants() {
+        return variants;
+    }
+
+    public boolean supports(Variant variant) {
+        return variants.contains(variant);
+    }
+
+    public List<Parameter> getParameters() {
+        return parameters;
+    }
+
+    public boolean isSquareGrid() {
+        return squareGrid;
+    }
+
+    public String getFragmentSource(Variant variant) {
+        if (!supports(variant)) {
+            throw new IllegalArgumentException("Effect " + id + " has no " + variant + " variant");
+        }
+        return (variant == Variant.GRID ? "#define GRID\n" : "") + HEADER + body;
+    }
+
+    // Every uniform the variant's program is expected to have, in a fixed order
+    public String[] getUniformNames(Variant variant) {
+        int common = variant == Variant.GRID ? 4 : 3;
+        String[] names = new String[common + parameters.size()];
+        names[0] = U_TEXTURE;
+        names[1] = U_TEX_SIZE;
+        names[2] = U_PIXEL_SIZE;
+        if (variant == Variant.GRID) {
+            names[3] = U_TEX_SCALE;
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            names[common + i] = parameters.get(i).getName();
+        }
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.pixelize;
+
+// A linked effect program with its attribute and uniform locations looked up once,
+// at link time. Locations are -1 for names the driver optimised away; setting a
+// uniform at -1 is a no-op in GL, so callers need not check.
+public final class ShaderProgram {
+    private final ShaderEffect effect;
+    private final ShaderEffect.Variant variant;
+    private final int id;
+    private final int positionLocation;
+    private final int texCoordLocation;
+    private final String[] uniformNames;
+    private final int[] uniformLocations;
+
+    ShaderProgram(GlApi gl, ShaderEffect effect, ShaderEffect.Variant variant, int id) {
+        this.effect = effect;
+        this.variant = variant;
+        this.id = id;
+        this.positionLocation = gl.getAttribLocation(id, "a_Position");
+        this.texCoordLocation = gl.getAttribLocation(id, "a_TexCoord");
+        this.uniformNames = effect.getUniformNames(variant);
+        this.uniformLocations = new int[uniformNames.length];
+        for (int i = 0; i < uniformNames.length; i++) {
+            uniformLocations[i] = gl.getUniformLocation(id, uniformNames[i]);
+        }
+    }
+
+    public ShaderEffect getEffect() {
+        return effect;
+    }
+
+    public ShaderEffect.Variant getVariant() {
+        return variant;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getPositionLocation() {
+        return positionLocation;
+    }
+
+    public int getTexCoordLocation() {
+        return texCoordLocation;
+    }
+
+    // Cached location of a declared uniform, -1 for undeclared names. A linear scan
+    // over a handful of names, no GL call.
+    public int getUniformLocation(String name) {
+        for (int i = 0; i < uniformNames.length; i++) {
+            if (uniformNames[i].equals(name)) {
+                return uniformLocations[i];
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.pixelize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Linked effect programs for one EGL context, keyed by effect and variant. Each
+// program is compiled at most once per context, including failures, so switching
+// effects or variants never recompiles and a broken variant is not retried every
+// frame. The vertex shader is shared by all programs.
+//
+// Only use from the GL thread.
+public final class ShaderProgramCache {
+    private final GlApi gl;
+    private final Map<String, ShaderProgram> programs = new HashMap<>();
+    private int vertexShader;
+    private boolean vertexFailed;
+    private long compiles;
+
+    public ShaderProgramCache(GlApi gl) {
+        this.gl = gl;
+    }
+
+    // Compiles every variant of every registered effect up front, typically from
+    // onSurfaceCreated, so the first switch to an effect doesn't stall a frame.
+    // Returns the number of programs that failed to build.
+    public int precompile(EffectRegistry registry) {
+        int failed = 0;
+        for (ShaderEffect effect : registry.getEffects()) {
+            for (ShaderEffect.Variant variant : effect.getVariants()) {
+                if (get(effect, variant) == null) {
+                    failed++;
+                }
+            }
+        }
+        return failed;
+    }
+
+    // The program for an effect variant, compiling it on first use; null if it
+    // doesn't build on this device
+    public ShaderProgram get(ShaderEffect effect, ShaderEffect.Variant variant) {
+        String key = key(effect, variant);
+        if (programs.containsKey(key)) {
+            return programs.get(key);
+        }
+        ShaderProgram program = build(effect, variant);
+        programs.put(key, program);
+        return program;
+    }
+
+    private static String key(ShaderEffect effect, ShaderEffect.Variant variant) {
+        return effect.getId() + '/' + variant;
+    }
+
+    private ShaderProgram build(ShaderEffect effect, ShaderEffect.Variant variant) {
+        if (vertexShader == 0 && !vertexFailed) {
+            vertexShader = gl.compileShader(GlApi.GL_VERTEX_SHADER, ShaderEffect.VERTEX_SOURCE);
+            vertexFailed = vertexShader == 0;
+        }
+        if (vertexFailed) {
+            return null;
+        }
+        compiles++;
+        int fragmentShader = gl.compileShader(GlApi.GL_FRAGMENT_SHADER, effect.getFragmentSource(variant));
+        if (fragmentShader == 0) {
+            return null;
+        }
+        int program = gl.linkProgram(vertexShader, fragmentShader);
+        gl.deleteShader(fragmentShader); // Freed with the program
+        return program == 0 ? null : new ShaderProgram(gl, effect, variant, program);
+    }
+
+    // Fragment shaders compiled for the current context
+    public long getCompileCount() {
+        return compiles;
+    }
+
+    // Deletes every program and the shared vertex shader
+    public void release() {
+        for (ShaderProgram program : programs.values()) {
+            if (program != null) {
+                gl.deleteProgram(program.getId());
+            }
+        }
+        if (vertexShader != 0) {
+            gl.deleteShader(vertexShader);
+        }
+        reset();
+    }
+
+    // For a lost EGL context: the programs are already gone, so just drop the ids
+    public void invalidate() {
+        reset();
+    }
+
+    private void reset() {
+        programs.clear();
+        vertexShader = 0;
+        vertexFailed = false;
+        compiles = 0;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.pixelize;
+
+import java.util.Arrays;
+
+// Per-channel integral image of an ARGB frame. Once built, the mean colour of any
+// rectangle costs four lookups per channel, so pixelating at any block size, or
+// with blocks of different sizes in different regions, costs the same per frame.
+//
+// The tables are plain ints that are allowed to wrap: rectangle sums are taken
+// modulo 2^32 and read back as unsigned, which is exact for any rectangle of up
+// to MAX_RECT_AREA pixels.
+public final class SummedAreaTable {
+    public static final int MAX_RECT_AREA = (int) (0xFFFFFFFFL / 255);
+
+    private int width;
+    private int height;
+    private int tableStride; // width + 1; row and column 0 hold zeros
+    private int[] red = new int[0];
+    private int[] green = new int[0];
+    private int[] blue = new int[0];
+
+    public void build(int[] pixels, int width, int height) {
+        build(pixels, 0, width, width, height);
+    }
+
+    // Alpha is ignored; averages come back fully opaque
+    public void build(int[] pixels, int offset, int stride, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        if (stride < width || pixels.length < offset + (height - 1) * stride + width) {
+            throw new IllegalArgumentException("Buffer too small for " + width + "x" + height);
+        }
+        int size = (width + 1) * (height + 1);
+        if (red.length < size) {
+            red = new int[size];
+            green = new int[size];
+            blue = new int[size];
+        }
+        this.width = width;
+        this.height = height;
+        this.tableStride = width + 1;
+
+        int[] r = red;
+        int[] g = green;
+        int[] b = blue;
+        for (int x = 0; x <= width; x++) {
+            r[x] = 0;
+            g[x] = 0;
+            b[x] = 0;
+        }
+        for (int y = 0; y < height; y++) {
+            int src = offset + y * stride;
+            int above = y * tableStride;
+            int index = above + tableStride;
+            r[index] = 0;
+            g[index] = 0;
+            b[index] = 0;
+            int rowR = 0;
+            int rowG = 0;
+            int rowB = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[src + x];
+                rowR += (pixel >> 16) & 0xFF;
+                rowG += (pixel >> 8) & 0xFF;
+                rowB += pixel & 0xFF;
+                index++;
+                above++;
+                r[index] = r[above] + rowR;
+                g[index] = g[above] + rowG;
+                b[index] = b[above] + rowB;
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Rounded mean of the rectangle [x0, x1) x [y0, y1) as opaque ARGB
+    public int average(int x0, int y0, int x1, int y1) {
+        if (x0 < 0 || y0 < 0 || x1 > width || y1 > height || x0 >= x1 || y0 >= y1) {
+            throw new IllegalArgumentException("Rectangle outside " + width + "x" + height);
+        }
+        if ((long) (x1 - x0) * (y1 - y0) > MAX_RECT_AREA) {
+            throw new IllegalArgumentException("Rectangle too large to average exactly");
+        }
+        return averageUnchecked(x0, y0, x1, y1);
+    }
+
+    private int averageUnchecked(int x0, int y0, int x1, int y1) {
+        long area = (long) (x1 - x0) * (y1 - y0);
+        long half = area >> 1;
+        int topLeft = y0 * tableStride + x0;
+        int topRight = y0 * tableStride + x1;
+        int bottomLeft = y1 * tableStride + x0;
+        int bottomRight = y1 * tableStride + x1;
+        long r = (red[bottomRight] - red[topRight] - red[bottomLeft] + red[topLeft]) & 0xFFFFFFFFL;
+        long g = (green[bottomRight] - green[topRight] - green[bottomLeft] + green[topLeft]) & 0xFFFFFFFFL;
+        long b = (blue[bottomRight] - blue[topRight] - blue[bottomLeft] + blue[topLeft]) & 0xFFFFFFFFL;
+        return 0xFF000000
+                | (int) ((r + half) / area) << 16
+                | (int) ((g + half) / area) << 8
+                | (int) ((b + half) / area);
+    }
+
+    // Uniform grid over the whole image
+    public void pixelate(int[] dst, int blockSize) {
+        pixelateRegion(dst, 0, width, 0, 0, width, height, blockSize);
+    }
+
+    // Uniform grid of blockSize blocks anchored at (x0, y0), covering only that region.
+    // Calling this for several regions with different sizes gives a non-uniform grid,
+    // e.g. finer blocks over a region of interest.
+    public void pixelateRegion(int[] dst, int dstOffset, int dstStride,
+                               int x0, int y0, int x1, int y1, int blockSize) {
+        checkRegion(dst, dstOffset, dstStride, x0, y0, x1, y1);
+        checkBlockSize(blockSize);
+        for (int by = y0; by < y1; by += blockSize) {
+            int by1 = Math.min(by + blockSize, y1);
+            for (int bx = x0; bx < x1; bx += blockSize) {
+                int bx1 = Math.min(bx + blockSize, x1);
+                fill(dst, dstOffset, dstStride, bx, by, bx1, by1, averageUnchecked(bx, by, bx1, by1));
+            }
+        }
+    }
+
+    // Arbitrary grid: block boundaries at the given ascending edges, which must start
+    // at 0 and end at the image width/height
+    public void pixelate(int[] dst, int dstOffset, int dstStride, int[] xEdges, int[] yEdges) {
+        checkRegion(dst, dstOffset, dstStride, 0, 0, width, height);
+        int maxBlockWidth = checkEdges(xEdges, width);
+        int maxBlockHeight = checkEdges(yEdges, height);
+        if ((long) maxBlockWidth * maxBlockHeight > MAX_RECT_AREA) {
+            throw new IllegalArgumentException("Grid block too large");
+        }
+        for (int j = 0; j + 1 < yEdges.length; j++) {
+            for (int i = 0; i + 1 < xEdges.length; i++) {
+                int color = averageUnchecked(xEdges[i], yEdges[j], xEdges[i + 1], yEdges[j + 1]);
+                fill(dst, dstOffset, dstStride, xEdges[i], yEdges[j], xEdges[i + 1], yEdges[j + 1], color);
+            }
+        }
+    }
+
+    private static void fill(int[] dst, int dstOffset, int dstStride, int x0, int y0, int x1, int y1, int color) {
+        for (int y = y0; y < y1; y++) {
+            int row = dstOffset + y * dstStride;
+            Arrays.fill(dst, row + x0, row + x1, color);
+        }
+    }
+
+    private void checkRegion(int[] dst, int dstOffset, int dstStride, int x0, int y0, int x1, int y1) {
+        if (tableStride == 0) {
+            throw new IllegalStateException("Table has not been built");
+        }
+        if (x0 < 0 || y0 < 0 || x1 > width || y1 > height || x0 >= x1 || y0 >= y1) {
+            throw new IllegalArgumentException("Region outside " + width + "x" + height);
+        }
+        if (dstStride < width || dst.length < dstOffset + (height - 1) * dstStride + width) {
+            throw new IllegalArgumentException("Output too small for " + width + "x" + height);
+        }
+    }
+
+    private static void checkBlockSize(int blockSize) {
+        if (blockSize < 1 || (long) blockSize * blockSize > MAX_RECT_AREA) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+    }
+
+    // Returns the largest gap between edges
+    private static int checkEdges(int[] edges, int end) {
+        if (edges.length < 2 || edges[0] != 0 || edges[edges.length - 1] != end) {
+            throw new IllegalArgumentException("Grid edges must run from 0 to " + end);
+        }
+        int maxGap = 0;
+        for (int i = 1; i < edges.length; i++) {
+            if (edges[i] <= edges[i - 1]) {
+                throw new IllegalArgumentException("Grid edges must be ascending");
+            }
+            maxGap = Math.max(maxGap, edges[i] - edges[i - 1]);
+        }
+        return maxGap;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Generates frames at a fixed rate (or as fast as the sink takes them) on its own
+// thread: a moving gradient in any format and size, or a still image. Frames are
+// prepared once in start() and cycled, so delivery itself costs nothing and the
+// sink's throughput is what gets measured.
+public final class SyntheticFrameSource implements FrameSource {
+    private static final int PATTERN_FRAMES = 8;
+
+    private final List<FrameFormat> formats;
+    private final int fps;
+    private final int[] image; // Still image instead of the gradient, or null
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long delivered; // Written by the source thread only
+
+    // fps <= 0 delivers frames back to back
+    public SyntheticFrameSource(int fps, FrameFormat... formats) {
+        this(fps, null, Arrays.asList(formats));
+    }
+
+    private SyntheticFrameSource(int fps, int[] image, List<FrameFormat> formats) {
+        if (formats.isEmpty()) {
+            throw new IllegalArgumentException("No formats");
+        }
+        this.fps = fps;
+        this.image = image;
+        this.formats = Collections.unmodifiableList(formats);
+    }
+
+    // Repeats one ARGB image, e.g. the sample picture when no camera is available
+    public static SyntheticFrameSource ofImage(int[] argb, int width, int height, int fps) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Image smaller than " + width + "x" + height);
+        }
+        FrameFormat format = new FrameFormat(width, height, FrameFormat.Encoding.ARGB);
+        return new SyntheticFrameSource(fps, argb, Collections.singletonList(format));
+    }
+
+    @Override
+    public List<FrameFormat> getSupportedFormats() {
+        return formats;
+    }
+
+    // Frames delivered since the source was created
+    public long getDelivered() {
+        return delivered;
+    }
+
+    @Override
+    public synchronized void start(FrameFormat format, Sink sink) {
+        if (!formats.contains(format)) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+        RawFrame[] frames = image != null
+                ? new RawFrame[] {new RawFrame().setArgb(format, 0, image, 0, format.getWidth())}
+                : pattern(format);
+        running = true;
+        thread = new Thread(() -> run(frames, sink), "SyntheticFrameSource");
+        thread.start();
+    }
+
+    private void run(RawFrame[] frames, Sink sink) {
+        long interval = fps > 0 ? TimeUnit.SECONDS.toNanos(1) / fps : 0;
+        long due = System.nanoTime();
+        int index = 0;
+        while (running) {
+            if (interval > 0) {
+                long wait;
+                while (running && (wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(this, wait);
+                }
+                // Skip missed slots rather than bursting to catch up
+                due = Math.max(due + interval, System.nanoTime() - interval);
+            }
+            if (!running) {
+                break;
+            }
+            RawFrame frame = frames[index];
+            index = index + 1 == frames.length ? 0 : index + 1;
+            restamp(frame, System.nanoTime());
+            sink.onFrame(frame);
+            delivered++;
+        }
+    }
+
+    private static void restamp(RawFrame frame, long timestampNs) {
+        FrameFormat format = frame.getFormat();
+        switch (format.getEncoding()) {
+            case YUV_420:
+                frame.setYuv(format, timestampNs, frame.getYPlane(), frame.getYRowStride(),
+                        frame.getUPlane(), frame.getVPlane(), frame.getUvRowStride(), frame.getUvPixelStride());
+                break;
+            case ARGB:
+                frame.setArgb(format, timestampNs, frame.getArgb(), frame.getArgbOffset(), frame.getArgbStride());
+                break;
+            default:
+                frame.setRgba(format, timestampNs, frame.getRgba(), frame.getRgbaRowStride());
+                break;
+        }
+    }
+
+    @Override
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            running = false;
+            worker = thread;
+            thread = null;
+        }
+        if (worker != null && worker != Thread.currentThread()) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Diagonal gradient scrolling a few pixels per frame, so consecutive frames differ
+    private static RawFrame[] pattern(FrameFormat format) {
+        int width = format.getWidth();
+        int height = format.getHeight();
+        RawFrame[] frames = new RawFrame[PATTERN_FRAMES];
+        for (int f = 0; f < PATTERN_FRAMES; f++) {
+            int shift = f * 4;
+            switch (format.getEncoding()) {
+                case YUV_420: {
+                    // Padded rows and interleaved chroma, like a typical camera HAL
+                    int yRowStride = (width + 63) & ~63;
+                    int chromaRows = (height + 1) / 2;
+                    ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * height);
+                    ByteBuffer chroma = ByteBuffer.allocateDirect(yRowStride * chromaRows);
+                    for (int row = 0; row < height; row++) {
+                        for (int x = 0; x < width; x++) {
+                            y.put(row * yRowStride + x, (byte) (x + row + shift));
+                        }
+                    }
+                    for (int row = 0; row < chromaRows; row++) {
+                        for (int x = 0; x + 1 < yRowStride; x += 2) {
+                            chroma.put(row * yRowStride + x, (byte) (128 + ((x + shift) & 63) - 32));
+                            chroma.put(row * yRowStride + x + 1, (byte) (128 + ((row + shift) & 63) - 32));
+                        }
+                    }
+                    ByteBuffer u = chroma.duplicate();
+                    chroma.position(1);
+                    ByteBuffer v = chroma.slice();
+                    frames[f] = new RawFrame().setYuv(format, 0, y, yRowStride, u, v, yRowStride, 2);
+                    break;
+                }
+                case ARGB: {
+                    int[] pixels = new int[width * height];
+                    for (int row = 0; row < height; row++) {
+                        for (int x = 0; x < width; x++) {
+                            pixels[row * width + x] = gradient(x + shift, row, width, height);
+                        }
+                    }
+                    frames[f] = new RawFrame().setArgb(format, 0, pixels, 0, width);
+                    break;
+                }
+                default: {
+                    ByteBuffer rgba = ByteBuffer.allocateDirect(width * height * 4);
+                    for (int row = 0; row < height; row++) {
+                        for (int x = 0; x < width; x++) {
+                            int argb = gradient(x + shift, row, width, height);
+                            rgba.putInt((row * width + x) * 4, (argb << 8) | (argb >>> 24));
+                        }
+                    }
+                    frames[f] = new RawFrame().setRgba(format, 0, rgba, width * 4);
+                    break;
+                }
+            }
+        }
+        return frames;
+    }
+
+    private static int gradient(int x, int y, int width, int height) {
+        int r = (x * 255 / width) & 0xFF;
+        int g = (y * 255 / height) & 0xFF;
+        int b = ((x + y) * 127 / (width + height)) & 0xFF;
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.pixelize;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Streams frames into a small ring of persistent textures. Storage is allocated
+// once per frame size and then updated in place with texSubImage2D; rotating
+// through the ring means an upload never targets the texture the previous draw
+// is still reading from.
+//
+// uploadDirty() sends only the blocks that changed. Each ring texture keeps its own
+// pending bitmap, the union of the dirty blocks of every frame since it was last
+// written, so a texture coming round again catches up on everything it missed.
+public final class TextureStreamer {
+    public static final int DEFAULT_RING_SIZE = 3;
+
+    private final GlApi gl;
+    private final int[] textures;
+    private int width;
+    private int height;
+    private int filter = GlApi.GL_LINEAR;
+    private int next;
+    private int current;
+    private long allocations;
+    private long uploads;
+    private long uploadedPixels;
+    // uploadDirty() state: blocks each ring texture still lacks, and the block layout
+    // they refer to. A null entry means the texture needs a full upload.
+    private final long[][] pending;
+    private int pendingBlockSize;
+    private int pendingGridWidth;
+    private int pendingGridHeight;
+    private int[] staging = new int[0];
+    private IntBuffer stagingBuffer = IntBuffer.wrap(staging);
+
+    public TextureStreamer(GlApi gl) {
+        this(gl, DEFAULT_RING_SIZE);
+    }
+
+    public TextureStreamer(GlApi gl, int ringSize) {
+        if (ringSize < 1) {
+            throw new IllegalArgumentException("Ring size must be at least 1: " + ringSize);
+        }
+        this.gl = gl;
+        this.textures = new int[ringSize];
+        this.pending = new long[ringSize][];
+    }
+
+    // Uploads a full frame of RGBA pixels and returns the texture now holding it
+    public int upload(Buffer pixels, int width, int height) {
+        ensureSize(width, height);
+        int texture = textures[next];
+        next = (next + 1) % textures.length;
+        gl.bindTexture(texture);
+        gl.texSubImage2D(0, 0, width, height, pixels);
+        current = texture;
+        uploads++;
+        uploadedPixels += (long) width * height;
+        // A full upload outside uploadDirty() leaves the others' pending state unknown
+        Arrays.fill(pending, null);
+        return texture;
+    }
+
+    // Uploads a frame of which only the blocks marked in dirty's last update changed,
+    // as sub-rectangles: a run of dirty blocks spanning the full width goes straight
+    // from the frame, shorter runs are packed into a staging buffer first (ES 2.0 has
+    // no GL_UNPACK_ROW_LENGTH). pixels must be array-backed. Returns the texture now
+    // holding the frame.
+    public int uploadDirty(IntBuffer pixels, int width, int height, int blockSize, DirtyBlockTracker dirty) {
+        int gridWidth = PixelationEngine.gridSize(width, blockSize);
+        int gridHeight = PixelationEngine.gridSize(height, blockSize);
+        if (dirty.getGridWidth() != gridWidth || dirty.getGridHeight() != gridHeight) {
+            throw new IllegalArgumentException("Dirty grid " + dirty.getGridWidth() + "x" + dirty.getGridHeight()
+                    + " doesn't match " + width + "x" + height + " in blocks of " + blockSize);
+        }
+        ensureSize(width, height);
+        if (blockSize != pendingBlockSize || gridWidth != pendingGridWidth || gridHeight != pendingGridHeight) {
+            Arrays.fill(pending, null);
+            pendingBlockSize = blockSize;
+            pendingGridWidth = gridWidth;
+            pendingGridHeight = gridHeight;
+        }
+        long[] bits = dirty.getDirtyBits();
+        for (long[] slot : pending) {
+            if (slot != null) {
+                for (int i = 0; i < slot.length; i++) {
+                    slot[i] |= bits[i];
+                }
+            }
+        }
+
+        int slot = next;
+        int texture = textures[slot];
+        next = (next + 1) % textures.length;
+        gl.bindTexture(texture);
+        if (pending[slot] == null) {
+            gl.texSubImage2D(0, 0, width, height, pixels);
+            uploadedPixels += (long) width * height;
+            pending[slot] = new long[bits.length];
+        } else {
+            uploadBlocks(pixels, width, height, blockSize, pending[slot]);
+            Arrays.fill(pending[slot], 0);
+        }
+        current = texture;
+        uploads++;
+        return texture;
+    }
+
+    private void uploadBlocks(IntBuffer pixels, int width, int height, int blockSize, long[] bits) {
+        int[] array = pixels.array();
+        int base = pixels.arrayOffset();
+        for (int by = 0; by < pendingGridHeight; by++) {
+            int y = by * blockSize;
+            int rows = Math.min(blockSize, height - y);
+            int row = by * pendingGridWidth;
+            int bx = 0;
+            while (bx < pendingGridWidth) {
+                if (!isSet(bits, row + bx)) {
+                    bx++;
+                    continue;
+                }
+                int runStart = bx;
+                while (bx < pendingGridWidth && isSet(bits, row + bx)) {
+                    bx++;
+                }
+                int x = runStart * blockSize;
+                int runWidth = Math.min(bx * blockSize, width) - x;
+                if (runWidth == width) {
+                    pixels.position(y * width);
+                    gl.texSubImage2D(0, y, width, rows, pixels);
+                    pixels.position(0);
+                } else {
+                    int count = runWidth * rows;
+                    if (staging.length < count) {
+                        staging = new int[count];
+                        stagingBuffer = IntBuffer.wrap(staging);
+                    }
+                    for (int r = 0; r < rows; r++) {
+                        System.arraycopy(array, base + (y + r) * width + x, staging, r * runWidth, runWidth);
+                    }
+                    stagingBuffer.position(0);
+                    gl.texSubImage2D(x, y, runWidth, rows, stagingBuffer);
+                }
+                uploadedPixels += (long) runWidth * rows;
+            }
+        }
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // Magnification/minification filter applied to the ring textures
+    public void setFilter(int filter) {
+        if (this.filter == filter) {
+            return;
+        }
+        this.filter = filter;
+        for (int texture : textures) {
+            if (texture != 0) {
+                gl.bindTexture(texture);
+                gl.texParameteri(GlApi.GL_TEXTURE_MIN_FILTER, filter);
+                gl.texParameteri(GlApi.GL_TEXTURE_MAG_FILTER, filter);
+            }
+        }
+    }
+
+    private void ensureSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid texture size " + width + "x" + height);
+        }
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        release();
+        for (int i = 0; i < textures.length; i++) {
+            int texture = gl.genTexture();
+            gl.bindTexture(texture);
+            gl.texParameteri(GlApi.GL_TEXTURE_MIN_FILTER, filter);
+            gl.texParameteri(GlApi.GL_TEXTURE_MAG_FILTER, filter);
+            gl.texParameteri(GlApi.GL_TEXTURE_WRAP_S, GlApi.GL_CLAMP_TO_EDGE);
+            gl.texParameteri(GlApi.GL_TEXTURE_WRAP_T, GlApi.GL_CLAMP_TO_EDGE);
+            gl.texImage2D(width, height, null);
+            textures[i] = texture;
+        }
+        this.width = width;
+        this.height = height;
+        allocations++;
+    }
+
+    // The texture holding the most recent upload, or 0 before the first one
+    public int getCurrentTexture() {
+        return current;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Number of times the ring storage has been (re)allocated
+    public long getAllocations() {
+        return allocations;
+    }
+
+    public long getUploads() {
+        return uploads;
+    }
+
+    // Texels written by uploads, full and partial
+    public long getUploadedPixels() {
+        return uploadedPixels;
+    }
+
+    // Deletes the ring textures; the next upload allocates again
+    public void release() {
+        for (int i = 0; i < textures.length; i++) {
+            if (textures[i] != 0) {
+                gl.deleteTexture(textures[i]);
+                textures[i] = 0;
+            }
+        }
+        forgetTextures();
+    }
+
+    // For a lost EGL context: the textures are already gone, so just drop the ids
+    public void invalidate() {
+        Arrays.fill(textures, 0);
+        forgetTextures();
+    }
+
+    private void forgetTextures() {
+        width = 0;
+        height = 0;
+        next = 0;
+        current = 0;
+        Arrays.fill(pending, null);
+    }
+}
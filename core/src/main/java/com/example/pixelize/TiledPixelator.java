@@ -0,0 +1,124 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Pixelates images too large to hold in memory, a strip at a time. Strips span the
+// full width and are a whole number of block rows high, so no block straddles two
+// strips and the result is identical to pixelating the whole image at once.
+//
+// The source is read in row order on the calling thread. Each strip is pixelated
+// (and optionally quantised) on the pool while the following strips are read, and
+// finished strips go to the sink in row order as soon as every strip above them is
+// done. Only a small ring of strip buffers is allocated, so peak memory is a few
+// strips whatever the size of the image.
+public final class TiledPixelator {
+    // Pixels per strip aimed for; strips are never less than one block row high
+    public static final int DEFAULT_STRIP_PIXELS = 1 << 20;
+
+    public interface Source extends Closeable {
+        // Reads rows [firstRow, firstRow + rowCount) as ARGB into pixels (stride = width).
+        // Called in row order, each row once.
+        void readRows(int firstRow, int rowCount, int[] pixels) throws IOException;
+    }
+
+    public interface Sink extends Closeable {
+        // Takes rows [firstRow, firstRow + rowCount) of the result. Called in row order
+        // on the thread calling run(); pixels is reused once this returns.
+        void writeRows(int firstRow, int rowCount, int[] pixels) throws IOException;
+    }
+
+    private final ForkJoinPool pool;
+    private final PixelationEngine engine;
+    private final PaletteQuantizer quantizer;
+    private final int stripPixels;
+    private final int maxBuffers;
+
+    public TiledPixelator(ForkJoinPool pool) {
+        this(pool, DEFAULT_STRIP_PIXELS, pool.getParallelism() + 1);
+    }
+
+    // maxBuffers strips are in memory at most: one being read and the rest being
+    // pixelated or waiting to be written
+    public TiledPixelator(ForkJoinPool pool, int stripPixels, int maxBuffers) {
+        if (stripPixels < 1 || maxBuffers < 2) {
+            throw new IllegalArgumentException("Invalid strips " + stripPixels + " x " + maxBuffers);
+        }
+        this.pool = pool;
+        this.engine = new PixelationEngine(pool);
+        this.quantizer = new PaletteQuantizer(pool);
+        this.stripPixels = stripPixels;
+        this.maxBuffers = maxBuffers;
+    }
+
+    // Rows per strip: whole block rows, about stripPixels in all
+    public int getStripRows(int width, int height, int blockSize) {
+        long blockRows = Math.max(1, stripPixels / ((long) width * blockSize));
+        return (int) Math.min(height, blockRows * blockSize);
+    }
+
+    // Bytes of strip buffers run() allocates for an image
+    public long getBufferBytes(int width, int height, int blockSize) {
+        int rows = getStripRows(width, height, blockSize);
+        int strips = (height + rows - 1) / rows;
+        return 4L * width * rows * Math.min(maxBuffers, strips);
+    }
+
+    // Pixelates the image at blockSize (1 = as is), mapping it to lut's palette if
+    // lut isn't null. Doesn't close the source or the sink.
+    public void run(Source source, Sink sink, int width, int height, int blockSize, ColorLut lut)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        if (blockSize < 1 || blockSize > PixelationEngine.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+        int stripRows = getStripRows(width, height, blockSize);
+        int strips = (height + stripRows - 1) / stripRows;
+        int slots = Math.min(maxBuffers, strips);
+        int[][] buffers = new int[slots][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[slots];
+        int written = 0;
+        for (int strip = 0; strip < strips; strip++) {
+            int slot = strip % slots;
+            if (tasks[slot] != null) {
+                // The slot still holds the oldest strip not yet written
+                write(sink, tasks, buffers, written++, slots, stripRows, width, height);
+            }
+            if (buffers[slot] == null) {
+                buffers[slot] = new int[width * stripRows];
+            }
+            int[] pixels = buffers[slot];
+            int firstRow = strip * stripRows;
+            int rows = Math.min(stripRows, height - firstRow);
+            source.readRows(firstRow, rows, pixels);
+            tasks[slot] = pool.submit(() -> {
+                if (blockSize > 1) {
+                    engine.pixelate(pixels, pixels, width, rows, blockSize);
+                }
+                if (lut != null) {
+                    quantizer.quantize(pixels, width, rows, lut);
+                }
+            });
+            // Stream whatever is already finished, in order
+            while (written <= strip && tasks[written % slots].isDone()) {
+                write(sink, tasks, buffers, written++, slots, stripRows, width, height);
+            }
+        }
+        while (written < strips) {
+            write(sink, tasks, buffers, written++, slots, stripRows, width, height);
+        }
+    }
+
+    private static void write(Sink sink, ForkJoinTask<?>[] tasks, int[][] buffers, int strip, int slots,
+                              int stripRows, int width, int height) throws IOException {
+        int slot = strip % slots;
+        tasks[slot].join(); // Rethrows anything the strip's pixelation threw
+        tasks[slot] = null;
+        int firstRow = strip * stripRows;
+        sink.writeRows(firstRow, Math.min(stripRows, height - firstRow), buffers[slot]);
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Records the pixelated frame stream to a VideoSink. offer() hands the encoder thread
+// the pooled frame itself, not a copy: the frame is retained, queued and released once
+// encoded, and the queue is a preallocated array, so nothing is copied or allocated
+// per frame. The queue is bounded. When the encoder falls behind, offer() drops the
+// new frame (and counts it) instead of waiting, so the preview never stalls and the
+// frame pool can't be drained by a backlog; offline sources can use put() to wait for
+// room instead. Presentation times come from the frames' own timestamps, so a dropped
+// frame leaves a gap in the video rather than speeding it up.
+public final class VideoRecorder implements Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 3;
+    private static final long POLL_MILLIS = 50;
+
+    public interface Listener {
+        // Called on the encoder thread once the video is finished (error == null) or has failed
+        void onRecordingFinished(long framesWritten, long framesDropped, IOException error);
+    }
+
+    private final VideoSink sink;
+    private final int width;
+    private final int height;
+    private final PixelationEngine pixelationEngine;
+    private final Listener listener;
+    private final ArrayBlockingQueue<Frame> queue;
+    private final Thread encoder;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean accepting = true;
+    private volatile boolean stopped; // Encoder gone; queued frames are released by whoever sees this
+    private volatile int blockSize = 1;
+
+    // Encoder thread only
+    private Frame output; // Pixelation target, allocated on first use
+    private long firstTimestampNs;
+    private long lastPresentationUs = -1;
+
+    private final AtomicLong framesQueued = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+
+    // Starts the encoder thread, which starts the sink; frames must be width x height
+    public VideoRecorder(VideoSink sink, int width, int height, int queueCapacity,
+                         PixelationEngine pixelationEngine, Listener listener) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue needs room for a frame: " + queueCapacity);
+        }
+        this.sink = sink;
+        this.width = width;
+        this.height = height;
+        this.pixelationEngine = pixelationEngine;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.encoder = new Thread(this::encodeLoop, "VideoEncoder");
+        this.encoder.setPriority(Thread.NORM_PRIORITY - 1); // Stay out of the preview's way
+        this.encoder.start();
+    }
+
+    // Block size for frames encoded from now on (1 = as is)
+    public void setBlockSize(int blockSize) {
+        this.blockSize = Math.max(1, Math.min(blockSize, PixelationEngine.MAX_BLOCK_SIZE));
+    }
+
+    // Producer side: queues the frame for encoding without waiting. Returns false if the
+    // queue is full (the frame is then counted as dropped) or the recording is over.
+    // The caller keeps its own reference to the frame.
+    public boolean offer(Frame frame) {
+        if (!accepting) {
+            return false;
+        }
+        checkSize(frame);
+        if (!queue.offer(frame.retain())) {
+            frame.release();
+            framesDropped.incrementAndGet();
+            return false;
+        }
+        return queued();
+    }
+
+    // Like offer(), but waits up to timeoutMillis for room in the queue, so a source
+    // that isn't real time is slowed to the encoder's pace instead of losing frames
+    public boolean put(Frame frame, long timeoutMillis) throws InterruptedException {
+        if (!accepting) {
+            return false;
+        }
+        checkSize(frame);
+        if (!queue.offer(frame.retain(), timeoutMillis, TimeUnit.MILLISECONDS)) {
+            frame.release();
+            framesDropped.incrementAndGet();
+            return false;
+        }
+        return queued();
+    }
+
+    private boolean queued() {
+        framesQueued.incrementAndGet();
+        if (stopped) {
+            // The encoder quit while the frame was being queued and won't take it
+            releaseQueued();
+        }
+        return true;
+    }
+
+    private void checkSize(Frame frame) {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("Frame is " + frame.getWidth() + "x" + frame.getHeight()
+                    + ", recording is " + width + "x" + height);
+        }
+    }
+
+    private void encodeLoop() {
+        IOException error = null;
+        try {
+            sink.start(width, height);
+            while (true) {
+                Frame frame = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    if (!accepting) {
+                        break; // Closed and drained
+                    }
+                    continue;
+                }
+                try {
+                    encode(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException | InterruptedException e) {
+            error = new IOException("Encoder failed", e);
+        }
+        accepting = false;
+        stopped = true;
+        releaseQueued();
+        try {
+            sink.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        try {
+            if (listener != null) {
+                listener.onRecordingFinished(framesWritten.get(), framesDropped.get(), error);
+            }
+        } finally {
+            finished.countDown(); // After the listener, so awaitCompletion() covers it
+        }
+    }
+
+    private void encode(Frame frame) throws IOException {
+        long start = System.nanoTime();
+        long timestampNs = frame.getTimestampNs();
+        if (lastPresentationUs < 0) {
+            firstTimestampNs = timestampNs;
+        }
+        // Strictly increasing, whatever the source's clock does
+        long presentationUs = Math.max(lastPresentationUs + 1,
+                TimeUnit.NANOSECONDS.toMicros(timestampNs - firstTimestampNs));
+        Frame encoded = frame;
+        int size = blockSize;
+        if (size > 1) {
+            if (output == null) {
+                output = new Frame(width, height);
+            }
+            pixelationEngine.pixelate(frame.getPixels(), output.getPixels(), width, height, size);
+            output.setTimestampNs(timestampNs);
+            encoded = output;
+        }
+        sink.writeFrame(encoded, presentationUs);
+        lastPresentationUs = presentationUs;
+        framesWritten.incrementAndGet();
+        encodeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    // Releases frames nobody will encode; they count as dropped
+    private void releaseQueued() {
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            frame.release();
+            framesDropped.incrementAndGet();
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // True until the video is finished or has failed
+    public boolean isRecording() {
+        return finished.getCount() > 0;
+    }
+
+    public long getFramesQueued() {
+        return framesQueued.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    // Time spent pixelating and encoding, summed over the written frames
+    public long getEncodeNanos() {
+        return encodeNanos.get();
+    }
+
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Stops accepting frames; those already queued are still encoded and the video is
+    // finished in the background
+    @Override
+    public void close() {
+        accepting = false;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.pixelize;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Encodes the frames of a VideoRecorder into a video file. Every call comes from the
+// recorder's encoder thread, so implementations need not be thread-safe.
+public interface VideoSink extends Closeable {
+    // Called once, before the first frame
+    void start(int width, int height) throws IOException;
+
+    // Encodes an ARGB frame shown at presentationTimeUs, which starts at 0 and always
+    // increases. The frame is only valid until this returns.
+    void writeFrame(Frame frame, long presentationTimeUs) throws IOException;
+
+    // Finishes the file and releases the encoder, whether or not start() was called
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,110 @@
+package com.example.pixelize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Writes uncompressed YUV4MPEG2 (.y4m) video: a one-line header, then each frame as
+// "FRAME\n" and its I420 planes. Pure Java and readable by ffmpeg, mpv and VLC, so
+// recordings can be made and checked on any JVM. The format has a fixed frame rate
+// and no timestamps, so frames are placed by presentation time: a gap left by dropped
+// frames is filled by repeating the previous frame, and a frame arriving before its
+// slot is skipped.
+public final class Y4mVideoSink implements VideoSink {
+    public static final String FILE_EXTENSION = "y4m";
+    private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final int frameRate;
+    private int width;
+    private int height;
+    private byte[] frameBytes; // The last frame, reused for each frame and for repeats
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private long framesWritten;
+    private long slotShift; // Frame slots skipped over: the first frame's, and clock jumps
+    private long framesRepeated;
+    private long framesSkipped;
+
+    // Closes out when the video is finished
+    public Y4mVideoSink(OutputStream out, int frameRate) {
+        if (frameRate < 1) {
+            throw new IllegalArgumentException("Invalid frame rate " + frameRate);
+        }
+        this.out = out;
+        this.frameRate = frameRate;
+    }
+
+    @Override
+    public void start(int width, int height) throws IOException {
+        if (frameBytes != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.width = width;
+        this.height = height;
+        this.frameBytes = new byte[FrameRecording.PixelFormat.I420.frameBytes(width, height)];
+        int lumaSize = width * height;
+        int chromaSize = FrameRecording.chromaWidth(width) * FrameRecording.chromaHeight(height);
+        this.yPlane = ByteBuffer.wrap(frameBytes, 0, lumaSize).slice();
+        this.uPlane = ByteBuffer.wrap(frameBytes, lumaSize, chromaSize).slice();
+        this.vPlane = ByteBuffer.wrap(frameBytes, lumaSize + chromaSize, chromaSize).slice();
+        String header = "YUV4MPEG2 W" + width + " H" + height + " F" + frameRate + ":1 Ip A1:1 C420jpeg"
+                + " XCOLORRANGE=LIMITED\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeFrame(Frame frame, long presentationTimeUs) throws IOException {
+        if (frameBytes == null) {
+            throw new IllegalStateException("Not started");
+        }
+        long slot = (presentationTimeUs * frameRate + TimeUnit.SECONDS.toMicros(1) / 2)
+                / TimeUnit.SECONDS.toMicros(1) - slotShift;
+        if (framesWritten == 0 || slot - framesWritten > frameRate) {
+            // The first frame opens the video; a gap of over a second means the source's
+            // clock jumped, so carry on from here rather than fill it
+            slotShift += slot - framesWritten;
+            slot = framesWritten;
+        }
+        if (slot < framesWritten) {
+            framesSkipped++;
+            return;
+        }
+        while (framesWritten < slot) {
+            writeCurrent();
+            framesRepeated++;
+        }
+        ArgbToYuv.convert(frame.getPixels(), width, height, yPlane, width,
+                uPlane, vPlane, FrameRecording.chromaWidth(width), 1);
+        writeCurrent();
+    }
+
+    private void writeCurrent() throws IOException {
+        out.write(FRAME_HEADER);
+        out.write(frameBytes);
+        framesWritten++;
+    }
+
+    // Frames in the file, repeats included
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    // Copies of the previous frame written to fill gaps
+    public long getFramesRepeated() {
+        return framesRepeated;
+    }
+
+    // Frames that arrived before their slot and were left out
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
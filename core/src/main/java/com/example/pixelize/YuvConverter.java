@@ -0,0 +1,156 @@
+package com.example.pixelize;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+// Converts YUV_420_888 planes straight into packed ARGB ints (the layout
+// Bitmap.setPixels expects). Plain Java over ByteBuffers so it runs on the JVM.
+//
+// Chroma terms are computed once per chroma row, which serves two luma rows, and
+// each luma row is then converted by RowKernels, vectorised where the JVM allows.
+// Keeps per-row scratch, so one converter must not be used by two threads at once.
+public final class YuvConverter {
+
+    // Fixed-point conversion matrices, coefficients scaled by 2^16
+    public enum ColorMatrix {
+        // Full range (JFIF), what most Camera2 YUV_420_888 streams deliver
+        BT601_FULL(0, 65536, 91881, 22554, 46802, 116130),
+        BT601_LIMITED(16, 76309, 104597, 25675, 53279, 132201),
+        BT709_FULL(0, 65536, 103206, 12276, 30679, 121609),
+        BT709_LIMITED(16, 76309, 117489, 13975, 34925, 138438);
+
+        final int yOffset;
+        final int yGain;
+        final int rv;
+        final int gu;
+        final int gv;
+        final int bu;
+
+        ColorMatrix(int yOffset, int yGain, int rv, int gu, int gv, int bu) {
+            this.yOffset = yOffset;
+            this.yGain = yGain;
+            this.rv = rv;
+            this.gu = gu;
+            this.gv = gv;
+            this.bu = bu;
+        }
+    }
+
+    private static final int HALF = 1 << 15; // Rounding term for the >> 16
+
+    private final int width;
+    private final int height;
+    private final ColorMatrix matrix;
+    private final RowKernels kernels;
+    private final int[] rowPixels; // Scratch row for IntBuffer output
+    private final byte[] lumaRow;
+    // Chroma terms per pixel pair of the current chroma row; width long for the kernels
+    private final int[] redTerms;
+    private final int[] greenTerms;
+    private final int[] blueTerms;
+
+    public YuvConverter(int width, int height) {
+        this(width, height, ColorMatrix.BT601_FULL);
+    }
+
+    public YuvConverter(int width, int height, ColorMatrix matrix) {
+        this(width, height, matrix, RowKernels.getDefault());
+    }
+
+    public YuvConverter(int width, int height, ColorMatrix matrix, RowKernels kernels) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.matrix = matrix;
+        this.kernels = kernels;
+        this.rowPixels = new int[width];
+        this.lumaRow = new byte[width];
+        this.redTerms = new int[width];
+        this.greenTerms = new int[width];
+        this.blueTerms = new int[width];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Converts a full frame into out[outOffset ..], one row every outStride ints.
+    // uvPixelStride 1 means planar (I420), 2 means interleaved (NV12/NV21).
+    public void convert(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int[] out, int outOffset, int outStride) {
+        if (out.length < outOffset + (height - 1) * outStride + width) {
+            throw new IllegalArgumentException("Output buffer too small for " + width + "x" + height);
+        }
+        ByteBuffer luma = yPlane.duplicate();
+        for (int row = 0; row < height; row++) {
+            convertRow(row, yPlane, luma, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                    out, outOffset + row * outStride);
+        }
+    }
+
+    public void convert(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        int[] out) {
+        convert(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, out, 0, width);
+    }
+
+    // Converts into a (typically direct) IntBuffer starting at its current position,
+    // which is left unchanged
+    public void convert(ByteBuffer yPlane, int yRowStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                        IntBuffer out) {
+        if (out.remaining() < width * height) {
+            throw new IllegalArgumentException("Output buffer too small for " + width + "x" + height);
+        }
+        int base = out.position();
+        ByteBuffer luma = yPlane.duplicate();
+        for (int row = 0; row < height; row++) {
+            convertRow(row, yPlane, luma, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, rowPixels, 0);
+            out.position(base + row * width);
+            out.put(rowPixels, 0, width);
+        }
+        out.position(base);
+    }
+
+    // luma is a duplicate of yPlane, so reading rows through it leaves yPlane alone
+    private void convertRow(int row, ByteBuffer yPlane, ByteBuffer luma, int yRowStride,
+                            ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                            int[] out, int outIndex) {
+        if ((row & 1) == 0) {
+            // Odd rows share the chroma row of the even row above
+            chromaTerms(row >> 1, uPlane, vPlane, uvRowStride, uvPixelStride);
+        }
+        luma.position(yPlane.position() + row * yRowStride);
+        luma.get(lumaRow, 0, width);
+        kernels.convertRow(lumaRow, redTerms, greenTerms, blueTerms, matrix.yOffset, matrix.yGain,
+                width, out, outIndex);
+    }
+
+    private void chromaTerms(int chromaRow, ByteBuffer uPlane, ByteBuffer vPlane,
+                             int uvRowStride, int uvPixelStride) {
+        // Absolute gets, so the planes' positions are never touched
+        int uvRow = chromaRow * uvRowStride;
+        int uBase = uPlane.position() + uvRow;
+        int vBase = vPlane.position() + uvRow;
+        int rv = matrix.rv;
+        int gu = matrix.gu;
+        int gv = matrix.gv;
+        int bu = matrix.bu;
+
+        for (int pair = 0, pairs = (width + 1) >> 1; pair < pairs; pair++) {
+            int uvIndex = pair * uvPixelStride;
+            int u = (uPlane.get(uBase + uvIndex) & 0xFF) - 128;
+            int v = (vPlane.get(vBase + uvIndex) & 0xFF) - 128;
+            redTerms[pair] = rv * v + HALF;
+            greenTerms[pair] = HALF - gu * u - gv * v;
+            blueTerms[pair] = bu * u + HALF;
+        }
+    }
+}
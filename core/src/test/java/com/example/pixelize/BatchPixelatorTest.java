@@ -0,0 +1,321 @@
+package com.example.pixelize;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Directory processing, memory cap and failure handling of BatchPixelator, with
+ * a text "image" format so no image codecs are needed.
+ */
+public class BatchPixelatorTest {
+    private File input;
+    private File output;
+    private final List<IOException> failures = new CopyOnWriteArrayList<>();
+    private final BatchPixelator.Listener listener = (image, result, error) -> {
+        if (error != null) {
+            failures.add(error);
+        }
+    };
+
+    // Files hold "<width> <height> <seed>"; pixels are random from the seed.
+    // Tracks the bytes of frames between decode and encode. Streams rows if asked to.
+    static final class TextDecoder implements FrameDecoder {
+        final AtomicLong liveBytes = new AtomicLong();
+        final AtomicLong peakLiveBytes = new AtomicLong();
+        final AtomicLong rowsStreamed = new AtomicLong();
+        boolean streamsRows;
+
+        @Override
+        public boolean accepts(File file) {
+            return file.getName().endsWith(".txt");
+        }
+
+        @Override
+        public int[] readSize(File file) throws IOException {
+            String[] fields = read(file);
+            return new int[] {Integer.parseInt(fields[0]), Integer.parseInt(fields[1])};
+        }
+
+        @Override
+        public void decode(File file, Frame frame) throws IOException {
+            fill(frame.getPixels(), Long.parseLong(read(file)[2]));
+            long live = liveBytes.addAndGet(4L * frame.getPixels().length);
+            peakLiveBytes.accumulateAndGet(live, Math::max);
+        }
+
+        @Override
+        public TiledPixelator.Source openRows(File file) throws IOException {
+            if (!streamsRows) {
+                return null;
+            }
+            String[] fields = read(file);
+            int width = Integer.parseInt(fields[0]);
+            // Same pixels as fill(), drawn in row order
+            Random random = new Random(Long.parseLong(fields[2]));
+            return new TiledPixelator.Source() {
+                @Override
+                public void readRows(int firstRow, int rowCount, int[] pixels) {
+                    for (int i = 0; i < width * rowCount; i++) {
+                        pixels[i] = random.nextInt();
+                    }
+                    rowsStreamed.addAndGet(rowCount);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        private static String[] read(File file) throws IOException {
+            String[] fields = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).split(" ");
+            if (fields.length != 3) {
+                throw new IOException("Corrupt image " + file);
+            }
+            return fields;
+        }
+    }
+
+    // Raw big-endian ARGB ints
+    static final class RawEncoder implements FrameEncoder {
+        private final TextDecoder decoder;
+
+        RawEncoder(TextDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public String getFileExtension() {
+            return "raw";
+        }
+
+        @Override
+        public void encode(Frame frame, OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            for (int pixel : frame.getPixels()) {
+                data.writeInt(pixel);
+            }
+            data.flush();
+            decoder.liveBytes.addAndGet(-4L * frame.getPixels().length);
+        }
+
+        @Override
+        public TiledPixelator.Sink openRows(int width, int height, OutputStream out) {
+            if (!decoder.streamsRows) {
+                return null;
+            }
+            DataOutputStream data = new DataOutputStream(out);
+            return new TiledPixelator.Sink() {
+                @Override
+                public void writeRows(int firstRow, int rowCount, int[] pixels) throws IOException {
+                    for (int i = 0; i < width * rowCount; i++) {
+                        data.writeInt(pixels[i]);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    data.flush();
+                }
+            };
+        }
+    }
+
+    static void fill(int[] pixels, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        input = Files.createTempDirectory("batch-in").toFile();
+        output = Files.createTempDirectory("batch-out").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        delete(input);
+        delete(output);
+    }
+
+    private static void delete(File directory) throws IOException {
+        if (!directory.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static void writeImage(File file, int width, int height, long seed) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), (width + " " + height + " " + seed).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int[] readRaw(File file, int count) throws IOException {
+        int[] pixels = new int[count];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            for (int i = 0; i < count; i++) {
+                pixels[i] = in.readInt();
+            }
+            assertEquals(-1, in.read());
+        }
+        return pixels;
+    }
+
+    private static BatchPixelator batch(TextDecoder decoder, long budget, int cores) {
+        return new BatchPixelator(decoder, () -> new RawEncoder(decoder), budget, cores);
+    }
+
+    @Test
+    public void everyImage_isPixelatedIntoTheSameRelativePath() throws Exception {
+        writeImage(new File(input, "a.txt"), 40, 30, 1);
+        writeImage(new File(input, "trip/day1/b.txt"), 17, 9, 2);
+        Files.write(new File(input, "notes.md").toPath(), new byte[] {1});
+        TextDecoder decoder = new TextDecoder();
+        BatchPixelator batch = batch(decoder, 1 << 20, 4);
+        batch.setBlockSize(PixelationEngine.blockSize(4.4f));
+        batch.setPalette(Palette.ega16());
+
+        BatchPixelator.Report report = batch.run(input, output, listener);
+        assertEquals(2, report.getImages());
+        assertEquals(2, report.getWritten());
+        assertTrue(failures.isEmpty());
+
+        PixelationEngine engine = new PixelationEngine();
+        PaletteQuantizer quantizer = new PaletteQuantizer();
+        int[][] sizes = {{40, 30, 1}, {17, 9, 2}};
+        String[] names = {"a.raw", "trip/day1/b.raw"};
+        for (int i = 0; i < names.length; i++) {
+            int[] expected = new int[sizes[i][0] * sizes[i][1]];
+            fill(expected, sizes[i][2]);
+            engine.pixelate(expected, expected, sizes[i][0], sizes[i][1], 4);
+            quantizer.quantize(expected, sizes[i][0], sizes[i][1], quantizer.lutFor(Palette.ega16()));
+            assertArrayEquals(names[i], expected, readRaw(new File(output, names[i]), expected.length));
+        }
+        assertFalse(new File(output, "notes.raw").exists());
+    }
+
+    @Test
+    public void tenThousandImages_stayWithinTheMemoryBudget() throws Exception {
+        int width = 32;
+        int height = 24;
+        for (int i = 0; i < 10_000; i++) {
+            writeImage(new File(input, "roll" + i % 10 + "/img" + i + ".txt"), width, height, i);
+        }
+        TextDecoder decoder = new TextDecoder();
+        // Room for five images at a time across 12 workers
+        long budget = 5L * width * height * BatchPixelator.BYTES_PER_PIXEL;
+        BatchPixelator batch = batch(decoder, budget, 6);
+        batch.setBlockSize(8);
+
+        BatchPixelator.Report report = batch.run(input, output, listener);
+        assertEquals(10_000, report.getWritten());
+        assertEquals(0, report.getFailed());
+        assertTrue(report.getPeakMemoryBytes() <= budget);
+        // Frames held between decode and encode never exceed what was charged for them
+        assertTrue(decoder.peakLiveBytes.get() * BatchPixelator.BYTES_PER_PIXEL / 4 <= budget);
+        assertEquals(0, decoder.liveBytes.get());
+        assertTrue(report.getImagesPerSecond() > 0);
+        for (BatchPixelator.Stage stage : BatchPixelator.Stage.values()) {
+            double utilisation = report.getUtilisation(stage);
+            assertTrue(stage + " " + utilisation, utilisation > 0 && utilisation <= 1);
+        }
+        assertTrue(new File(output, "roll7/img9997.raw").isFile());
+    }
+
+    @Test
+    public void imageLargerThanTheBudget_stillRunsOnItsOwn() throws Exception {
+        writeImage(new File(input, "small.txt"), 8, 8, 1);
+        writeImage(new File(input, "huge.txt"), 300, 200, 2);
+        TextDecoder decoder = new TextDecoder();
+        long budget = 100L * 100 * BatchPixelator.BYTES_PER_PIXEL;
+
+        BatchPixelator.Report report = batch(decoder, budget, 2).run(input, output, listener);
+        assertEquals(2, report.getWritten());
+        assertEquals(budget, report.getPeakMemoryBytes());
+        assertTrue(new File(output, "huge.raw").isFile());
+    }
+
+    @Test
+    public void imageLargerThanTheBudget_isPixelatedInStrips() throws Exception {
+        int width = 1200;
+        int height = 900;
+        writeImage(new File(input, "panorama.txt"), width, height, 3);
+        writeImage(new File(input, "small.txt"), 8, 8, 1);
+        TextDecoder decoder = new TextDecoder();
+        decoder.streamsRows = true;
+        long budget = 100L * 100 * BatchPixelator.BYTES_PER_PIXEL;
+        BatchPixelator batch = batch(decoder, budget, 2);
+        batch.setBlockSize(12);
+        batch.setPalette(Palette.ega16());
+
+        BatchPixelator.Report report = batch.run(input, output, listener);
+        assertTrue(failures.isEmpty());
+        assertEquals(2, report.getWritten());
+        assertEquals(height, decoder.rowsStreamed.get()); // The small one was decoded whole
+        assertTrue(report.getPeakMemoryBytes() <= budget);
+        // Never decoded whole
+        assertEquals(8L * 8 * 4, decoder.peakLiveBytes.get());
+
+        int[] expected = new int[width * height];
+        fill(expected, 3);
+        new PixelationEngine().pixelate(expected, expected, width, height, 12);
+        PaletteQuantizer quantizer = new PaletteQuantizer();
+        quantizer.quantize(expected, width, height, quantizer.lutFor(Palette.ega16()));
+        assertArrayEquals(expected, readRaw(new File(output, "panorama.raw"), expected.length));
+    }
+
+    @Test
+    public void failedImages_areReported_andTheRestStillWritten() throws Exception {
+        writeImage(new File(input, "good.txt"), 8, 8, 1);
+        Files.write(new File(input, "bad.txt").toPath(), "corrupt".getBytes(StandardCharsets.US_ASCII));
+        writeImage(new File(input, "empty.txt"), 0, 5, 1);
+
+        BatchPixelator.Report report = batch(new TextDecoder(), 1 << 20, 2).run(input, output, listener);
+        assertEquals(3, report.getImages());
+        assertEquals(1, report.getWritten());
+        assertEquals(2, report.getFailed());
+        assertEquals(2, failures.size());
+        assertTrue(new File(output, "good.raw").isFile());
+        String[] left = output.list();
+        assertEquals(1, left.length); // No partial files
+    }
+
+    @Test
+    public void outputInsideTheInput_isNotProcessedAgain() throws Exception {
+        writeImage(new File(input, "a.txt"), 8, 8, 1);
+        File nested = new File(input, "pixelated");
+        writeImage(new File(nested, "stale.txt"), 8, 8, 2);
+
+        BatchPixelator.Report report = batch(new TextDecoder(), 1 << 20, 2).run(input, nested, listener);
+        assertEquals(1, report.getImages());
+        assertTrue(new File(nested, "a.raw").isFile());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stagesWithoutWorkers_areRejected() {
+        new BatchPixelator(new TextDecoder(), () -> null, 1 << 20, 1, 0, 1);
+    }
+}
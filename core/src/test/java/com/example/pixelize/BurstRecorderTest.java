@@ -0,0 +1,320 @@
+package com.example.pixelize;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ring accounting, output layout and sustained throughput of BurstRecorder.
+ */
+public class BurstRecorderTest {
+    private final PixelationEngine engine = new PixelationEngine(ForkJoinPool.commonPool());
+    private BurstRecorder recorder;
+    private File output;
+
+    @After
+    public void tearDown() {
+        if (recorder != null) {
+            recorder.close();
+        }
+        if (output != null) {
+            output.delete();
+        }
+    }
+
+    @Test
+    public void writesPixelatedRgbaFramesInOrder() throws Exception {
+        int width = 40;
+        int height = 30;
+        int frameCount = 7;
+        recorder = new BurstRecorder(width, height, width * height * 4L * 5, 3, engine);
+        assertEquals(4, recorder.getCapacityFrames());
+        output = File.createTempFile("burst", ".rgba");
+
+        Random random = new Random(10);
+        int[][] expected = new int[frameCount][];
+        Frame frame = new Frame(width, height);
+        recorder.start(open(output), frameCount, 4, null);
+        for (int i = 0; i < frameCount; i++) {
+            int[] pixels = PixelationEngineTest.randomPixels(random, width * height);
+            System.arraycopy(pixels, 0, frame.getPixels(), 0, pixels.length);
+            expected[i] = PixelationEngineTest.reference(pixels, width, height, 4);
+            while (!recorder.offer(frame)) {
+                Thread.sleep(1); // Ring full; wait for the writer to catch up
+            }
+        }
+        assertFalse(recorder.isCapturing());
+        assertTrue(recorder.awaitCompletion(5000));
+
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        assertEquals((long) frameCount * width * height * 4, bytes.length);
+        for (int i = 0; i < frameCount; i++) {
+            for (int p = 0; p < width * height; p++) {
+                int argb = expected[i][p];
+                int offset = (i * width * height + p) * 4;
+                assertEquals((byte) (argb >> 16), bytes[offset]);
+                assertEquals((byte) (argb >> 8), bytes[offset + 1]);
+                assertEquals((byte) argb, bytes[offset + 2]);
+                assertEquals((byte) (argb >>> 24), bytes[offset + 3]);
+            }
+        }
+        assertEquals(frameCount, recorder.getFramesWritten());
+        assertFalse(recorder.isBusy());
+    }
+
+    @Test
+    public void smallerBurstInLargerRing_writesOnlyItsOwnPixels() throws Exception {
+        int width = 12;
+        int height = 10;
+        recorder = new BurstRecorder(40, 30, 40 * 30 * 4L * 4, 2, engine);
+        assertTrue(recorder.fits(width, height));
+        assertFalse(recorder.fits(41, 30));
+        output = File.createTempFile("burst", ".rgba");
+
+        Random random = new Random(11);
+        int[] pixels = PixelationEngineTest.randomPixels(random, width * height);
+        Frame frame = new Frame(width, height);
+        System.arraycopy(pixels, 0, frame.getPixels(), 0, pixels.length);
+        int[] expected = PixelationEngineTest.reference(pixels, width, height, 4);
+        recorder.start(open(output), width, height, 3, 4, null);
+        while (recorder.isCapturing()) {
+            recorder.offer(frame);
+            Thread.sleep(1);
+        }
+        assertTrue(recorder.awaitCompletion(5000));
+
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        assertEquals(3L * width * height * 4, bytes.length);
+        for (int i = 0; i < 3; i++) {
+            for (int p = 0; p < width * height; p++) {
+                int offset = (i * width * height + p) * 4;
+                assertEquals((byte) (expected[p] >> 16), bytes[offset]);
+                assertEquals((byte) (expected[p] >>> 24), bytes[offset + 3]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBurstLargerThanSlots() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        recorder.start(new StallingChannel(new CountDownLatch(1)), 16, 8, 2, 1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFrameOfAnotherSizeThanTheBurst() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        recorder.start(new StallingChannel(new CountDownLatch(1)), 4, 4, 2, 1, null);
+        recorder.offer(new Frame(8, 8));
+    }
+
+    @Test
+    public void dropsFramesInsteadOfBlockingWhenWriterStalls() throws Exception {
+        int width = 16;
+        int height = 16;
+        recorder = new BurstRecorder(width, height, width * height * 4L * 3, 8, engine);
+        CountDownLatch unblock = new CountDownLatch(1);
+        StallingChannel channel = new StallingChannel(unblock);
+        AtomicInteger reportedDrops = new AtomicInteger(-1);
+        recorder.start(channel, 5, 1, (written, dropped, error) -> reportedDrops.set((int) dropped));
+
+        Frame frame = new Frame(width, height);
+        int accepted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (recorder.offer(frame)) {
+                accepted++;
+            }
+        }
+        // Two slots fit in the budget, and a slot stays taken until its write completes
+        assertEquals(2, accepted);
+        assertEquals(20 - accepted, recorder.getFramesDropped());
+        assertTrue(recorder.isCapturing());
+
+        unblock.countDown();
+        while (recorder.isCapturing()) {
+            recorder.offer(frame);
+            Thread.sleep(1);
+        }
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals(5, recorder.getFramesWritten());
+        assertEquals(recorder.getFramesDropped(), reportedDrops.get());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void reportsWriteFailureAndAcceptsNextBurst() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        StallingChannel broken = new StallingChannel(null);
+        AtomicInteger failures = new AtomicInteger();
+        recorder.start(broken, 3, 1, (written, dropped, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+            }
+        });
+        recorder.offer(new Frame(8, 8));
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals(1, failures.get());
+        assertFalse(recorder.isCapturing());
+
+        output = File.createTempFile("burst", ".rgba");
+        recorder.start(open(output), 2, 1, null);
+        recorder.offer(new Frame(8, 8));
+        recorder.offer(new Frame(8, 8));
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals(2 * 8 * 8 * 4, output.length());
+    }
+
+    @Test
+    public void closeMidBurst_failsTheBurstAndClosesItsChannel() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        output = File.createTempFile("burst", ".rgba");
+        FileChannel channel = open(output);
+        AtomicReference<IOException> reported = new AtomicReference<>();
+        recorder.start(channel, 5, 1, (written, dropped, error) -> reported.set(error));
+        recorder.offer(new Frame(8, 8));
+        recorder.offer(new Frame(8, 8));
+        while (recorder.getFramesWritten() < 2) {
+            Thread.sleep(1);
+        }
+        recorder.close();
+        assertNotNull(reported.get());
+        assertFalse(channel.isOpen());
+        assertFalse(recorder.isBusy());
+        assertTrue(recorder.awaitCompletion(0));
+    }
+
+    @Test
+    public void closeDuringAStalledWrite_stillEndsTheBurst() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        StallingChannel channel = new StallingChannel(new CountDownLatch(1)); // Never released
+        AtomicReference<IOException> reported = new AtomicReference<>();
+        recorder.start(channel, 5, 1, (written, dropped, error) -> reported.set(error));
+        recorder.offer(new Frame(8, 8));
+        long start = System.nanoTime();
+        recorder.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertNotNull(reported.get());
+        assertFalse(channel.isOpen());
+        assertFalse(recorder.isBusy());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBudgetBelowTwoFrames() {
+        new BurstRecorder(100, 100, 100 * 100 * 4L + 1, 4, engine);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsOverlappingBursts() throws Exception {
+        recorder = new BurstRecorder(8, 8, 8 * 8 * 4L * 4, 1, engine);
+        recorder.start(new StallingChannel(new CountDownLatch(1)), 2, 1, null);
+        recorder.start(new StallingChannel(new CountDownLatch(1)), 2, 1, null);
+    }
+
+    // Sustained 720p burst to disk: checks every frame lands and the producer stays
+    // allocation-free, which is what keeps the camera thread free of GC pauses.
+    // BurstRecorderBenchmark measures the frame rate.
+    @Test
+    public void sustainedBurstThroughput() throws Exception {
+        int width = 1280;
+        int height = 720;
+        int frameCount = 120;
+        recorder = new BurstRecorder(width, height, 64L << 20, 8, engine);
+        output = File.createTempFile("burst", ".rgba");
+        Frame frame = new Frame(width, height);
+        System.arraycopy(PixelationEngineTest.randomPixels(new Random(3), width * height),
+                0, frame.getPixels(), 0, width * height);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        recorder.start(open(output), frameCount, 16, null);
+        while (recorder.isCapturing()) {
+            if (!recorder.offer(frame)) {
+                Thread.onSpinWait();
+            }
+        }
+        long producerAllocated = allocatedBytes(threads) - allocatedBefore;
+        assertTrue(recorder.awaitCompletion(60_000));
+
+        assertEquals((long) frameCount * width * height * 4, output.length());
+        assertTrue(recorder.getMemoryFootprintBytes() <= 64L << 20);
+        if (producerAllocated >= 0) {
+            assertTrue("producer allocated " + producerAllocated + " bytes", producerAllocated < 64 * 1024);
+        }
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Blocks writes until released; fails every write when constructed without a latch
+    private static final class StallingChannel implements GatheringByteChannel {
+        private final CountDownLatch release;
+        private volatile boolean open = true;
+
+        StallingChannel(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            if (release == null) {
+                throw new IOException("Disk full");
+            }
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                written += sources[i].remaining();
+                sources[i].position(sources[i].limit());
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources) throws IOException {
+            return write(sources, 0, sources.length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return (int) write(new ByteBuffer[] {source});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.pixelize;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Background saving, unique naming and back-pressure of CapturePipeline.
+ */
+public class CapturePipelineTest {
+    private File directory;
+    private final List<File> savedFiles = new CopyOnWriteArrayList<>();
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+    private int rejectedCallbacks;
+
+    private final CapturePipeline.Listener listener = new CapturePipeline.Listener() {
+        @Override
+        public void onCaptureSaved(File file) {
+            savedFiles.add(file);
+        }
+
+        @Override
+        public void onCaptureFailed(Throwable error) {
+            failures.add(error);
+        }
+
+        @Override
+        public void onCaptureRejected() {
+            rejectedCallbacks++;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("captures").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void burstOfCaptures_getUniqueFilesWithPixelatedContent() throws Exception {
+        FramePool pool = new FramePool(8, 4, 2);
+        try (CapturePipeline pipeline = new CapturePipeline(directory, "shot", new RawEncoder(),
+                new PixelationEngine(), 8, listener)) {
+            for (int i = 0; i < 5; i++) {
+                Frame frame = pool.acquire();
+                for (int p = 0; p < frame.getPixels().length; p++) {
+                    frame.getPixels()[p] = 0xFF000000 | (p % 2 == 0 ? 0 : 0x00202020);
+                }
+                assertTrue(pipeline.submit(frame, 2));
+                assertTrue(pipeline.awaitIdle(5000)); // Pool only holds two frames
+            }
+            assertTrue(pipeline.awaitIdle(5000));
+            assertEquals(5, pipeline.getSaved());
+        }
+
+        assertTrue(failures.isEmpty());
+        Set<String> names = new HashSet<>();
+        for (File file : savedFiles) {
+            assertTrue(file.getName(), file.getName().startsWith("shot_") && file.getName().endsWith(".raw"));
+            names.add(file.getName());
+            int[] pixels = RawEncoder.read(file);
+            // 2x2 blocks of alternating 0x00 / 0x20 average to 0x10
+            for (int pixel : pixels) {
+                assertEquals(0xFF101010, pixel);
+            }
+        }
+        assertEquals(5, names.size());
+        assertEquals(2, pool.getAvailable()); // Every captured frame went back to the pool
+        assertEquals(0, directory.list((dir, name) -> name.endsWith(".part")).length);
+    }
+
+    @Test
+    public void fullQueue_rejectsAndReleasesInsteadOfBlocking() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingEncoder encoder = new BlockingEncoder(release);
+        FramePool pool = new FramePool(4, 4, 8);
+        CapturePipeline pipeline = new CapturePipeline(directory, "shot", encoder,
+                new PixelationEngine(), 2, listener);
+        try {
+            assertTrue(pipeline.submit(pool.acquire(), 1));
+            assertTrue(encoder.started.await(5, TimeUnit.SECONDS)); // Worker busy with the first
+            assertTrue(pipeline.submit(pool.acquire(), 1));
+            assertTrue(pipeline.submit(pool.acquire(), 1));
+
+            long start = System.nanoTime();
+            assertFalse(pipeline.submit(pool.acquire(), 1));
+            assertFalse(pipeline.submit(pool.acquire(), 1));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+            assertEquals(2, pipeline.getRejected());
+            assertEquals(2, rejectedCallbacks);
+            assertEquals(2, pipeline.getQueueDepth());
+            // Rejected frames were released; the queue capacity plus the one saving are held
+            assertEquals(8 - (2 + 1), pool.getAvailable());
+
+            release.countDown();
+            assertTrue(pipeline.awaitIdle(5000));
+            assertEquals(3, pipeline.getSaved());
+            assertEquals(8, pool.getAvailable());
+        } finally {
+            release.countDown();
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void encoderFailure_isReportedAndLeavesNoPartialFile() throws Exception {
+        FrameEncoder failing = new FrameEncoder() {
+            @Override
+            public String getFileExtension() {
+                return "bad";
+            }
+
+            @Override
+            public void encode(Frame frame, OutputStream out) throws IOException {
+                out.write(new byte[100]);
+                throw new IOException("disk full");
+            }
+        };
+        FramePool pool = new FramePool(4, 4, 1);
+        try (CapturePipeline pipeline = new CapturePipeline(directory, "shot", failing,
+                new PixelationEngine(), 2, listener)) {
+            pipeline.submit(pool.acquire(), 1);
+            assertTrue(pipeline.awaitIdle(5000));
+            assertEquals(1, pipeline.getFailed());
+        }
+        assertEquals(1, failures.size());
+        assertEquals(0, directory.list().length);
+        assertEquals(1, pool.getAvailable());
+    }
+
+    // Writes width, height and raw ARGB ints
+    static class RawEncoder implements FrameEncoder {
+        @Override
+        public String getFileExtension() {
+            return "raw";
+        }
+
+        @Override
+        public void encode(Frame frame, OutputStream out) throws IOException {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(frame.getWidth());
+            data.writeInt(frame.getHeight());
+            for (int pixel : frame.getPixels()) {
+                data.writeInt(pixel);
+            }
+            data.flush();
+        }
+
+        static int[] read(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                int[] pixels = new int[in.readInt() * in.readInt()];
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = in.readInt();
+                }
+                return pixels;
+            }
+        }
+    }
+
+    private static class BlockingEncoder extends RawEncoder {
+        final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        BlockingEncoder(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void encode(Frame frame, OutputStream out) throws IOException {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            super.encode(frame, out);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Dirty-block detection and incremental texture uploads over synthetic static and
+ * moving sequences. Textures are simulated in PixelGl, so what the GPU would show
+ * can be compared with the frame that was submitted.
+ */
+public class DirtyBlockTrackerTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int BLOCK = 16;
+
+    // RecordingGl that keeps texture contents, for checking what partial uploads produce
+    static final class PixelGl extends RecordingGl {
+        final Map<Integer, int[]> textures = new HashMap<>();
+        private final Map<Integer, Integer> widths = new HashMap<>();
+        private int bound;
+
+        @Override
+        public void bindTexture(int texture) {
+            super.bindTexture(texture);
+            bound = texture;
+        }
+
+        @Override
+        public void texImage2D(int width, int height, Buffer pixels) {
+            super.texImage2D(width, height, pixels);
+            textures.put(bound, new int[width * height]);
+            widths.put(bound, width);
+        }
+
+        @Override
+        public void texSubImage2D(int x, int y, int width, int height, Buffer pixels) {
+            super.texSubImage2D(x, y, width, height, pixels);
+            IntBuffer source = (IntBuffer) pixels;
+            int[] texture = textures.get(bound);
+            int stride = widths.get(bound);
+            int start = source.position();
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    texture[(y + row) * stride + x + column] = source.get(start + row * width + column);
+                }
+            }
+        }
+    }
+
+    private static int[] background(Random random) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    private static int[] grid(PixelationEngine engine, int[] frame) {
+        int[] grid = new int[PixelationEngine.gridSize(WIDTH, BLOCK) * PixelationEngine.gridSize(HEIGHT, BLOCK)];
+        engine.downsample(frame, WIDTH, HEIGHT, BLOCK, grid);
+        return grid;
+    }
+
+    @Test
+    public void firstFrame_isAllDirty_thenStaticFramesSkipEverything() {
+        int[] frame = background(new Random(1));
+        PixelationEngine engine = new PixelationEngine();
+        DirtyBlockTracker tracker = new DirtyBlockTracker(2);
+        int gridWidth = PixelationEngine.gridSize(WIDTH, BLOCK);
+        int gridHeight = PixelationEngine.gridSize(HEIGHT, BLOCK);
+        assertEquals(gridWidth * gridHeight, tracker.update(grid(engine, frame), 0, gridWidth, gridWidth, gridHeight));
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, tracker.update(grid(engine, frame), 0, gridWidth, gridWidth, gridHeight));
+        }
+        assertEquals(0.9, tracker.getSkippedFraction(), 1e-9);
+    }
+
+    @Test
+    public void sensorNoise_withinTolerance_staysClean() {
+        Random random = new Random(2);
+        int[] base = background(random);
+        PixelationEngine engine = new PixelationEngine();
+        DirtyBlockTracker tracker = new DirtyBlockTracker(2);
+        int gridWidth = PixelationEngine.gridSize(WIDTH, BLOCK);
+        int gridHeight = PixelationEngine.gridSize(HEIGHT, BLOCK);
+        tracker.update(grid(engine, base), gridWidth, gridHeight);
+        int[] noisy = new int[base.length];
+        for (int frame = 0; frame < 5; frame++) {
+            for (int i = 0; i < base.length; i++) {
+                // +-8 per channel on single pixels averages out over a 16x16 block
+                int delta = random.nextInt(17) - 8;
+                int b = Math.max(0, Math.min(255, (base[i] & 0xFF) + delta));
+                noisy[i] = (base[i] & 0xFFFFFF00) | b;
+            }
+            assertEquals(0, tracker.update(grid(engine, noisy), gridWidth, gridHeight));
+        }
+    }
+
+    @Test
+    public void slowDrift_accumulatesUntilItCrossesTheTolerance() {
+        DirtyBlockTracker tracker = new DirtyBlockTracker(2);
+        int[] grid = {0xFF101010, 0xFF808080};
+        tracker.update(grid, 2, 1);
+        grid[0] = 0xFF111010;
+        assertEquals(0, tracker.update(grid, 2, 1));
+        grid[0] = 0xFF121010;
+        assertEquals(0, tracker.update(grid, 2, 1));
+        grid[0] = 0xFF131010; // Three steps from the accepted colour
+        assertEquals(1, tracker.update(grid, 2, 1));
+        assertTrue(tracker.isDirty(0, 0));
+        assertFalse(tracker.isDirty(1, 0));
+        assertEquals(0, tracker.update(grid, 2, 1));
+    }
+
+    @Test
+    public void gridSizeChange_marksEverythingDirty() {
+        DirtyBlockTracker tracker = new DirtyBlockTracker(0);
+        tracker.update(new int[6], 3, 2);
+        assertEquals(0, tracker.update(new int[6], 3, 2));
+        assertEquals(70, tracker.update(new int[70], 10, 7));
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertTrue(tracker.isDirty(x, y));
+            }
+        }
+        assertEquals(70 + 6 + 6, tracker.getBlocksCompared());
+        assertEquals(6, tracker.getBlocksSkipped());
+    }
+
+    @Test
+    public void movingSquare_uploadsOnlyItsFootprint_andTexturesMatchTheFrames() {
+        int[] background = background(new Random(3));
+        int[] frame = new int[background.length];
+        PixelationEngine engine = new PixelationEngine();
+        DirtyBlockTracker tracker = new DirtyBlockTracker(0);
+        PixelGl gl = new PixelGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 3);
+        IntBuffer buffer = IntBuffer.wrap(frame);
+        int gridWidth = PixelationEngine.gridSize(WIDTH, BLOCK);
+        int gridHeight = PixelationEngine.gridSize(HEIGHT, BLOCK);
+        int size = 100;
+        long fullFramePixels = 0;
+
+        for (int step = 0; step < 40; step++) {
+            System.arraycopy(background, 0, frame, 0, frame.length);
+            int left = 50 + step * 13;
+            int top = 40 + step * 7;
+            for (int y = top; y < top + size; y++) {
+                for (int x = left; x < left + size; x++) {
+                    frame[y * WIDTH + x] = 0xFFFF00FF;
+                }
+            }
+            int dirty = tracker.update(grid(engine, frame), gridWidth, gridHeight);
+            if (step > 0) {
+                // The square covers at most 8x8 blocks before and after the move
+                assertTrue("step " + step + ": " + dirty, dirty <= 2 * 8 * 8);
+            }
+            int texture = streamer.uploadDirty(buffer, WIDTH, HEIGHT, BLOCK, tracker);
+            assertArrayEquals("step " + step, frame, gl.textures.get(texture));
+            fullFramePixels += (long) WIDTH * HEIGHT;
+        }
+        double skipped = tracker.getSkippedFraction();
+        double uploaded = (double) streamer.getUploadedPixels() / fullFramePixels;
+        assertTrue("skipped " + skipped, skipped > 0.9);
+        // Every ring texture starts with one full upload, after that only the footprint
+        assertTrue("uploaded " + uploaded, uploaded < 0.15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uploadDirty_rejectsMismatchedGrid() {
+        DirtyBlockTracker tracker = new DirtyBlockTracker(0);
+        tracker.update(new int[4], 2, 2);
+        new TextureStreamer(new RecordingGl()).uploadDirty(IntBuffer.allocate(64), 8, 8, 2, tracker);
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * DropOldestQueue on its own and under contention, and FramePipeline with synthetic
+ * timed stages and with the real convert, pixelate, upload and encode code.
+ */
+public class FramePipelineTest {
+    @Test
+    public void queue_isFifo_andRoundsItsCapacityUp() {
+        DropOldestQueue<Integer> queue = new DropOldestQueue<>(3);
+        assertEquals(4, queue.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void queue_putEvictsTheOldest() {
+        DropOldestQueue<Integer> queue = new DropOldestQueue<>(2);
+        List<Integer> evicted = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queue.put(i, evicted::add);
+        }
+        assertEquals(List.of(0, 1, 2), evicted);
+        assertEquals(3, queue.getEvicted());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertEquals(Integer.valueOf(4), queue.poll());
+    }
+
+    @Test
+    public void queue_underContention_handsEachItemOutExactlyOnce() throws InterruptedException {
+        int producers = 3;
+        int perProducer = 20_000;
+        DropOldestQueue<Integer> queue = new DropOldestQueue<>(8);
+        AtomicIntegerArray seen = new AtomicIntegerArray(producers * perProducer);
+        AtomicInteger producing = new AtomicInteger(producers);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    queue.put(i, item -> seen.incrementAndGet(item));
+                }
+                producing.decrementAndGet();
+            }));
+        }
+        for (int c = 0; c < 2; c++) {
+            threads.add(new Thread(() -> {
+                while (producing.get() > 0 || !queue.isEmpty()) {
+                    Integer item = queue.poll();
+                    if (item != null) {
+                        seen.incrementAndGet(item);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < seen.length(); i++) {
+            assertEquals("item " + i, 1, seen.get(i));
+        }
+    }
+
+    @Test
+    public void stagesOverlap_soThroughputIsSetByTheSlowestStage() throws InterruptedException {
+        // Service times in ms; in sequence a frame would take 11 ms
+        int[] serviceMillis = {2, 3, 4, 2};
+        AtomicLong recycled = new AtomicLong();
+        FramePipeline<long[]> pipeline = new FramePipeline<>(item -> recycled.incrementAndGet());
+        String[] names = {"convert", "pixelate", "upload", "encode"};
+        for (int i = 0; i < names.length; i++) {
+            int millis = serviceMillis[i];
+            pipeline.addStage(names[i], 1, 2, item -> {
+                Thread.sleep(millis); // Waiting on a GPU or codec, say
+                return item;
+            });
+        }
+        pipeline.start();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(1500);
+        int maxDepth = 0;
+        while (System.nanoTime() < end) {
+            pipeline.submit(new long[] {System.nanoTime()});
+            for (int i = 0; i < pipeline.getStageCount(); i++) {
+                maxDepth = Math.max(maxDepth, pipeline.getQueueDepth(i));
+            }
+            Thread.sleep(1); // A camera faster than the slowest stage
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long completed = pipeline.getCompleted();
+        pipeline.close();
+
+        double fps = completed / seconds;
+        double sequentialFps = 1000.0 / (2 + 3 + 4 + 2);
+        StringBuilder report = new StringBuilder(String.format("pipeline: %.0f fps (sequential %.0f)", fps, sequentialFps));
+        for (int i = 0; i < pipeline.getStageCount(); i++) {
+            report.append(String.format("; %s p50 %.1f ms, %d dropped", pipeline.getStageName(i),
+                    pipeline.getServiceTime(i).valueAtPercentile(50) / 1e6, pipeline.getDropped(i)));
+        }
+        assertTrue(report.toString(), fps > 1.5 * sequentialFps);
+        assertTrue(maxDepth <= 2);
+        // The slow stage's backlog was dropped in front of it
+        assertTrue(pipeline.getDropped(0) + pipeline.getDropped(1) + pipeline.getDropped(2) > 0);
+        assertTrue(pipeline.getServiceTime(2).valueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(4));
+        // Every item came back exactly once, however it left
+        assertEquals(pipeline.getSubmitted(), recycled.get());
+    }
+
+    @Test
+    public void slowStage_dropsTheOldestAndKeepsTheNewest() throws InterruptedException {
+        ConcurrentLinkedQueue<Integer> finished = new ConcurrentLinkedQueue<>();
+        AtomicLong recycled = new AtomicLong();
+        FramePipeline<Integer> pipeline = new FramePipeline<>(item -> recycled.incrementAndGet());
+        pipeline.addStage("slow", 1, 2, item -> {
+            Thread.sleep(20);
+            return item;
+        });
+        pipeline.addStage("collect", 1, 2, item -> {
+            finished.add(item);
+            return item;
+        });
+        pipeline.start();
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(i);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!finished.contains(49) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        pipeline.close();
+        assertTrue("the newest frame got through: " + finished, finished.contains(49));
+        assertTrue(pipeline.getDropped(0) >= 45);
+        assertEquals(50, recycled.get());
+        // Single workers keep order
+        int last = -1;
+        for (int item : finished) {
+            assertTrue(item > last);
+            last = item;
+        }
+    }
+
+    @Test
+    public void failingStage_dropsOnlyTheItemsItFailsOn() throws InterruptedException {
+        AtomicLong recycled = new AtomicLong();
+        FramePipeline<Integer> pipeline = new FramePipeline<>(item -> recycled.incrementAndGet());
+        pipeline.addStage("picky", 2, 64, item -> {
+            if (item % 3 == 0) {
+                throw new IllegalStateException("bad frame " + item);
+            }
+            return item;
+        });
+        pipeline.start();
+        for (int i = 0; i < 30; i++) {
+            pipeline.submit(i);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getProcessed(0) + pipeline.getFailed(0) < 30 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        pipeline.close();
+        assertEquals(10, pipeline.getFailed(0));
+        assertEquals(20, pipeline.getCompleted());
+        assertEquals(30, recycled.get());
+        assertFalse(pipeline.submit(99)); // Closed: handed straight back
+        assertEquals(31, recycled.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addingAStageAfterStart_isRejected() {
+        FramePipeline<Integer> pipeline = new FramePipeline<>(item -> { });
+        pipeline.addStage("only", 1, 1, item -> item);
+        pipeline.start();
+        try {
+            pipeline.addStage("late", 1, 1, item -> item);
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void endToEnd_withRealStages() throws Exception {
+        int width = 640;
+        int height = 480;
+        int poolSize = 8;
+        ConcurrentLinkedQueue<Job> free = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < poolSize; i++) {
+            free.add(new Job(width, height));
+        }
+        AtomicLong acquireMisses = new AtomicLong();
+        AtomicLong encodedBytes = new AtomicLong();
+        ThreadLocal<YuvConverter> converters = ThreadLocal.withInitial(() -> new YuvConverter(width, height));
+        ForkJoinPool pixelationPool = new ForkJoinPool(1);
+        PixelationEngine engine = new PixelationEngine(pixelationPool);
+        TextureStreamer streamer = new TextureStreamer(new RecordingGl());
+        Y4mVideoSink sink = new Y4mVideoSink(new OutputStream() {
+            @Override
+            public void write(int b) {
+                encodedBytes.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                encodedBytes.addAndGet(len);
+            }
+        }, 30);
+        sink.start(width, height);
+
+        FramePipeline<Job> pipeline = new FramePipeline<>(free::add);
+        pipeline.addStage("convert", 2, 2, job -> {
+            converters.get().convert(job.y, width, job.u, job.v, width / 2, 1, job.frame.getPixels());
+            return job;
+        });
+        pipeline.addStage("pixelate", 1, 2, job -> {
+            engine.pixelate(job.frame.getPixels(), job.frame.getPixels(), width, height, 16);
+            return job;
+        });
+        pipeline.addStage("upload", 1, 2, job -> {
+            streamer.upload(job.frame.getBuffer(), width, height);
+            return job;
+        });
+        pipeline.addStage("encode", 1, 2, job -> {
+            sink.writeFrame(job.frame, TimeUnit.NANOSECONDS.toMicros(job.timestampNs));
+            return job;
+        });
+        pipeline.start();
+
+        // Acquire: the source thread copies each camera buffer into a pooled job, since
+        // the buffer is only valid during the callback, and moves on
+        FrameFormat format = new FrameFormat(width, height, FrameFormat.Encoding.YUV_420);
+        SyntheticFrameSource source = new SyntheticFrameSource(120, format);
+        long start = System.nanoTime();
+        source.start(format, raw -> {
+            Job job = free.poll();
+            if (job == null) {
+                acquireMisses.incrementAndGet();
+                return;
+            }
+            job.copyFrom(raw);
+            pipeline.submit(job);
+        });
+        Thread.sleep(1500);
+        source.stop();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pipeline.close();
+        sink.close();
+        pixelationPool.shutdown();
+
+        long completed = pipeline.getCompleted();
+        StringBuilder report = new StringBuilder(String.format("end to end %dx%d: %.0f fps, %d acquire misses",
+                width, height, completed / seconds, acquireMisses.get()));
+        for (int i = 0; i < pipeline.getStageCount(); i++) {
+            report.append(String.format("; %s %.2f ms, %d dropped", pipeline.getStageName(i),
+                    pipeline.getServiceTime(i).valueAtPercentile(50) / 1e6, pipeline.getDropped(i)));
+        }
+        assertTrue(report.toString(), completed > 0);
+        // Every completed frame reached the encoder, which places it by timestamp
+        assertEquals(completed, sink.getFramesWritten() - sink.getFramesRepeated() + sink.getFramesSkipped());
+        assertTrue(encodedBytes.get() > 0);
+        // Every job went back to the pool
+        assertEquals(poolSize, free.size());
+    }
+
+    // A pooled unit of work: the copied camera planes and the frame they become
+    private static final class Job {
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+        final Frame frame;
+        long timestampNs;
+
+        Job(int width, int height) {
+            y = ByteBuffer.allocate(width * height);
+            u = ByteBuffer.allocate(width * height / 4);
+            v = ByteBuffer.allocate(width * height / 4);
+            frame = new Frame(width, height);
+        }
+
+        void copyFrom(RawFrame raw) {
+            int width = raw.getWidth();
+            int height = raw.getHeight();
+            copyPlane(raw.getYPlane(), raw.getYRowStride(), 1, y, width, height);
+            copyPlane(raw.getUPlane(), raw.getUvRowStride(), raw.getUvPixelStride(), u, width / 2, height / 2);
+            copyPlane(raw.getVPlane(), raw.getUvRowStride(), raw.getUvPixelStride(), v, width / 2, height / 2);
+            timestampNs = raw.getTimestampNs();
+        }
+
+        private static void copyPlane(ByteBuffer src, int rowStride, int pixelStride, ByteBuffer dst,
+                                      int width, int height) {
+            for (int row = 0; row < height; row++) {
+                int in = src.position() + row * rowStride;
+                for (int x = 0; x < width; x++) {
+                    dst.put(row * width + x, src.get(in + x * pixelStride));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lifecycle and counter checks for FramePool and Frame reference counting.
+ */
+public class FramePoolTest {
+
+    @Test
+    public void steadyState_reusesPreallocatedFrames() {
+        FramePool pool = new FramePool(64, 32, 3);
+        for (int i = 0; i < 100; i++) {
+            Frame frame = pool.acquire();
+            assertNotNull(frame);
+            assertEquals(64 * 32, frame.getPixels().length);
+            frame.release();
+        }
+        assertEquals(100, pool.getHits());
+        assertEquals(0, pool.getMisses());
+        assertEquals(0, pool.getExhausted());
+        assertEquals(3, pool.getAllocated());
+        assertEquals(3, pool.getAvailable());
+    }
+
+    @Test
+    public void exhaustedPool_returnsNullAndCounts() {
+        FramePool pool = new FramePool(8, 8, 2);
+        Frame first = pool.acquire();
+        Frame second = pool.acquire();
+        assertNotSame(first, second);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getExhausted());
+
+        second.release();
+        assertSame(second, pool.acquire());
+    }
+
+    @Test
+    public void lazyPool_growsUpToCapacityOnMiss() {
+        FramePool pool = new FramePool(8, 8, 1, 2);
+        Frame first = pool.acquire();
+        Frame second = pool.acquire();
+        assertNotNull(second);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getExhausted());
+
+        first.release();
+        second.release();
+        pool.acquire().release();
+        assertEquals(2, pool.getAllocated());
+        assertEquals(2, pool.getHits());
+    }
+
+    @Test
+    public void sharedFrame_returnsToPoolAfterLastRelease() {
+        FramePool pool = new FramePool(8, 8, 1);
+        Frame frame = pool.acquire();
+        frame.setTimestampNs(42);
+        frame.setArrivalNanos(43);
+        frame.retain(); // e.g. a capture holding the preview frame
+
+        frame.release();
+        assertEquals(1, frame.getRefCount());
+        assertEquals(0, pool.getAvailable());
+
+        frame.release();
+        assertEquals(1, pool.getAvailable());
+
+        Frame reused = pool.acquire();
+        assertSame(frame, reused);
+        assertEquals(1, reused.getRefCount());
+        assertEquals(0, reused.getTimestampNs());
+        assertEquals(0, reused.getArrivalNanos());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleRelease_isRejected() {
+        Frame frame = new FramePool(8, 8, 1).acquire();
+        frame.release();
+        frame.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainAfterRelease_isRejected() {
+        Frame frame = new FramePool(8, 8, 1).acquire();
+        frame.release();
+        frame.retain();
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.pixelize;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips through FrameRecordingWriter and FrameReplay, and replay pacing.
+ */
+public class FrameReplayTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", "." + FrameRecording.FILE_EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void rgbaFramesRoundTrip() throws IOException {
+        int width = 13;
+        int height = 7;
+        Random random = new Random(11);
+        int[][] written = new int[4][];
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.RGBA, width, height)) {
+            Frame frame = new Frame(width, height);
+            for (int i = 0; i < written.length; i++) {
+                written[i] = PixelationEngineTest.randomPixels(random, width * height);
+                System.arraycopy(written[i], 0, frame.getPixels(), 0, written[i].length);
+                frame.setTimestampNs(1000L * i);
+                writer.append(frame);
+            }
+            assertEquals(4, writer.getFrameCount());
+        }
+        assertEquals(FrameRecording.HEADER_SIZE + 4L * FrameRecording.recordSize(
+                FrameRecording.PixelFormat.RGBA, width, height), file.length());
+
+        try (FrameReplay replay = new FrameReplay(file)) {
+            assertEquals(FrameRecording.PixelFormat.RGBA, replay.getPixelFormat());
+            assertEquals(width, replay.getWidth());
+            assertEquals(height, replay.getHeight());
+            assertEquals(4, replay.getFrameCount());
+            Frame frame = new Frame(width, height);
+            for (int i = 0; i < written.length; i++) {
+                replay.readInto(i, frame, null);
+                assertArrayEquals(written[i], frame.getPixels());
+                assertEquals(1000L * i, frame.getTimestampNs());
+                // Stored as R, G, B, A bytes
+                int argb = written[i][0];
+                assertEquals((byte) (argb >> 16), replay.getFrameData(i).get(0));
+                assertEquals((byte) (argb >>> 24), replay.getFrameData(i).get(3));
+            }
+        }
+    }
+
+    @Test
+    public void interleavedYuvReplaysLikeTheCamera() throws IOException {
+        int width = 10;
+        int height = 6;
+        int yRowStride = 16;
+        int uvRowStride = 16;
+        Random random = new Random(5);
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * height);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) random.nextInt(256));
+        }
+        for (int i = 0; i < chroma.capacity(); i++) {
+            chroma.put(i, (byte) random.nextInt(256));
+        }
+        ByteBuffer u = chroma.duplicate();
+        chroma.position(1);
+        ByteBuffer v = chroma.slice();
+
+        YuvConverter converter = new YuvConverter(width, height);
+        int[] expected = new int[width * height];
+        converter.convert(y, yRowStride, u, v, uvRowStride, 2, expected);
+
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.I420, width, height)) {
+            writer.appendYuv(42, y, yRowStride, u, v, uvRowStride, 2);
+            writer.appendYuv(43, y, yRowStride, u, v, uvRowStride, 2);
+        }
+        assertEquals(0, y.position()); // Source planes left untouched
+
+        try (FrameReplay replay = new FrameReplay(file)) {
+            assertEquals(2, replay.getFrameCount());
+            assertEquals(width * height, replay.getYPlane(1).capacity());
+            assertEquals(y.get(yRowStride + 3), replay.getYPlane(0).get(width + 3));
+            assertEquals(v.get(uvRowStride + 2 * 2), replay.getVPlane(0).get(width / 2 + 2));
+            Frame frame = new Frame(width, height);
+            replay.readInto(1, frame, converter);
+            assertArrayEquals(expected, frame.getPixels());
+            assertEquals(43, frame.getTimestampNs());
+        }
+    }
+
+    @Test
+    public void recordingSpansSeveralWriterWindows() throws IOException {
+        // 1920x1080 RGBA records are ~8MB, so 10 frames cross the 32MB mapping window
+        int width = 1920;
+        int height = 1080;
+        Frame frame = new Frame(width, height);
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.RGBA, width, height)) {
+            for (int i = 0; i < 10; i++) {
+                frame.getPixels()[i] = 0xFF000000 | i;
+                frame.setTimestampNs(i);
+                writer.append(frame);
+            }
+        }
+        try (FrameReplay replay = new FrameReplay(file)) {
+            assertEquals(10, replay.getFrameCount());
+            Frame out = new Frame(width, height);
+            replay.readInto(9, out, null);
+            assertArrayEquals(frame.getPixels(), out.getPixels());
+            replay.readInto(4, out, null);
+            assertEquals(0xFF000004, out.getPixels()[4]);
+            assertEquals(0, out.getPixels()[5]);
+        }
+    }
+
+    @Test
+    public void pacedReplayKeepsRecordedSpacing() throws IOException {
+        long spacing = 20_000_000L;
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.RGBA, 2, 2)) {
+            Frame frame = new Frame(2, 2);
+            for (int i = 0; i < 5; i++) {
+                frame.setTimestampNs(5_000_000_000L + i * spacing);
+                writer.append(frame);
+            }
+        }
+        try (FrameReplay replay = new FrameReplay(file)) {
+            long start = System.nanoTime();
+            long[] arrivals = new long[5];
+            int played = replay.play((source, index) -> {
+                arrivals[index] = System.nanoTime() - start;
+                return true;
+            }, true);
+            assertEquals(5, played);
+            for (int i = 1; i < 5; i++) {
+                assertTrue("frame " + i + " at " + arrivals[i], arrivals[i] >= i * spacing);
+            }
+
+            int[] seen = new int[1];
+            assertEquals(3, replay.play((source, index) -> ++seen[0] < 3, false));
+            assertEquals(3, seen[0]);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFile() throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.write(new byte[FrameRecording.HEADER_SIZE]);
+        }
+        new FrameReplay(file).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedRecording() throws IOException {
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.RGBA, 4, 4)) {
+            writer.append(new Frame(4, 4));
+            writer.append(new Frame(4, 4));
+        }
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 1);
+        }
+        new FrameReplay(file).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsFormatMismatch() throws IOException {
+        try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.I420, 4, 4)) {
+            writer.append(new Frame(4, 4));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Format negotiation, FrameProcessor conversion and the JVM frame sources.
+ */
+public class FrameSourceTest {
+    private static final FrameFormat.Encoding YUV = FrameFormat.Encoding.YUV_420;
+
+    @Test
+    public void negotiatesSmallestCoveringFormat() {
+        List<FrameFormat> formats = Arrays.asList(
+                new FrameFormat(4032, 3024, YUV),
+                new FrameFormat(1920, 1080, YUV),
+                new FrameFormat(1280, 960, YUV),
+                new FrameFormat(1280, 720, YUV),
+                new FrameFormat(640, 480, YUV));
+        assertEquals(new FrameFormat(1280, 720, YUV), FrameFormat.negotiate(formats, 1280, 720));
+        assertEquals(new FrameFormat(1920, 1080, YUV), FrameFormat.negotiate(formats, 1300, 1000));
+        assertEquals(new FrameFormat(640, 480, YUV), FrameFormat.negotiate(formats, 320, 240));
+        // Nothing covers it: take the largest
+        assertEquals(new FrameFormat(4032, 3024, YUV), FrameFormat.negotiate(formats, 8000, 6000));
+    }
+
+    @Test
+    public void processorConvertsEveryEncodingToArgb() {
+        int width = 6;
+        int height = 4;
+        int[] argb = PixelationEngineTest.randomPixels(new Random(2), width * height);
+        CollectingListener listener = new CollectingListener();
+        FrameProcessor processor = new FrameProcessor(2, new PipelineMetrics(), listener);
+
+        // ARGB with a row stride wider than the frame
+        int[] padded = new int[(width + 3) * height];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(argb, row * width, padded, row * (width + 3), width);
+        }
+        processor.onFrame(new RawFrame().setArgb(new FrameFormat(width, height, FrameFormat.Encoding.ARGB),
+                7, padded, 0, width + 3));
+        assertArrayEquals(argb, listener.last.getPixels());
+        assertEquals(7, listener.last.getTimestampNs());
+        assertTrue(listener.last.getArrivalNanos() != 0);
+        listener.last.release();
+
+        // Little-endian RGBA must read the same as big-endian
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer rgba = ByteBuffer.allocate(width * height * 4).order(order);
+            for (int i = 0; i < argb.length; i++) {
+                rgba.put(i * 4, (byte) (argb[i] >> 16));
+                rgba.put(i * 4 + 1, (byte) (argb[i] >> 8));
+                rgba.put(i * 4 + 2, (byte) argb[i]);
+                rgba.put(i * 4 + 3, (byte) (argb[i] >>> 24));
+            }
+            processor.onFrame(new RawFrame().setRgba(new FrameFormat(width, height, FrameFormat.Encoding.RGBA),
+                    8, rgba, width * 4));
+            assertArrayEquals(argb, listener.last.getPixels());
+            listener.last.release();
+        }
+
+        // YUV goes through YuvConverter unchanged
+        ByteBuffer y = ByteBuffer.allocateDirect(width * height);
+        ByteBuffer u = ByteBuffer.allocateDirect(width * height / 4);
+        ByteBuffer v = ByteBuffer.allocateDirect(width * height / 4);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) (i * 9));
+        }
+        for (int i = 0; i < u.capacity(); i++) {
+            u.put(i, (byte) (100 + i * 5));
+            v.put(i, (byte) (150 - i * 7));
+        }
+        int[] expected = new int[width * height];
+        new YuvConverter(width, height).convert(y, width, u, v, width / 2, 1, expected);
+        processor.onFrame(new RawFrame().setYuv(new FrameFormat(width, height, YUV), 9, y, width, u, v, width / 2, 1));
+        assertArrayEquals(expected, listener.last.getPixels());
+        listener.last.release();
+    }
+
+    @Test
+    public void processorDropsFramesWhenPoolIsExhausted() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        CollectingListener listener = new CollectingListener(); // Never releases
+        FrameProcessor processor = new FrameProcessor(2, metrics, listener);
+        FrameFormat format = new FrameFormat(2, 2, FrameFormat.Encoding.ARGB);
+        RawFrame raw = new RawFrame().setArgb(format, 0, new int[4], 0, 2);
+        for (int i = 0; i < 5; i++) {
+            processor.onFrame(raw);
+        }
+        assertEquals(2, listener.count.get());
+        assertEquals(2, metrics.getProduced());
+        assertEquals(3, metrics.getDropped());
+
+        // A new size gets a new pool
+        processor.onFrame(new RawFrame().setArgb(new FrameFormat(3, 1, FrameFormat.Encoding.ARGB), 0, new int[3], 0, 3));
+        assertEquals(3, listener.count.get());
+        assertEquals(3, processor.getFramePool().getWidth());
+    }
+
+    @Test
+    public void processorCapsFrameRateBySkipping() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        CollectingListener listener = new CollectingListener();
+        FrameProcessor processor = new FrameProcessor(2, metrics, frame -> {
+            listener.onFrame(frame);
+            frame.release();
+        });
+        processor.setMaxFrameRate(15);
+        FrameFormat format = new FrameFormat(2, 2, FrameFormat.Encoding.ARGB);
+        RawFrame raw = new RawFrame();
+        int[] pixels = new int[4];
+        for (int i = 0; i < 30; i++) {
+            // A 30 fps source with a little jitter
+            long timestamp = i * 33_333_333L + (i % 3) * 1_000_000L;
+            processor.onFrame(raw.setArgb(format, timestamp, pixels, 0, 2));
+        }
+        assertEquals(15, listener.count.get());
+        assertEquals(15, processor.getSkipped());
+        assertEquals(0, metrics.getDropped());
+
+        processor.setMaxFrameRate(0);
+        for (int i = 30; i < 40; i++) {
+            processor.onFrame(raw.setArgb(format, i * 33_333_333L, pixels, 0, 2));
+        }
+        assertEquals(25, listener.count.get());
+    }
+
+    @Test
+    public void syntheticSourceHoldsItsFrameRate() throws Exception {
+        FrameFormat format = new FrameFormat(64, 48, FrameFormat.Encoding.ARGB);
+        SyntheticFrameSource source = new SyntheticFrameSource(100, format);
+        AtomicInteger frames = new AtomicInteger();
+        long start = System.nanoTime();
+        source.start(format, raw -> frames.incrementAndGet());
+        Thread.sleep(500);
+        source.stop();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int delivered = frames.get();
+        assertTrue("delivered " + delivered + " in " + seconds + "s", delivered <= 100 * seconds + 2);
+        assertTrue("delivered " + delivered + " in " + seconds + "s", delivered >= 25);
+        Thread.sleep(50);
+        assertEquals(delivered, frames.get()); // Nothing after stop()
+        assertEquals(delivered, source.getDelivered());
+    }
+
+    @Test
+    public void syntheticFramesChangeOverTime() throws Exception {
+        FrameFormat format = new FrameFormat(32, 16, YUV);
+        SyntheticFrameSource source = new SyntheticFrameSource(0, format);
+        CollectingListener listener = new CollectingListener();
+        FrameProcessor processor = new FrameProcessor(4, new PipelineMetrics(), frame -> {
+            listener.onFrame(frame);
+            frame.release();
+        });
+        int[][] first = new int[2][];
+        CountDownLatch twoFrames = new CountDownLatch(2);
+        source.start(format, raw -> {
+            processor.onFrame(raw);
+            long remaining = twoFrames.getCount();
+            if (remaining > 0) {
+                first[2 - (int) remaining] = listener.last.getPixels().clone();
+                twoFrames.countDown();
+            }
+        });
+        assertTrue(twoFrames.await(5, TimeUnit.SECONDS));
+        source.stop();
+        assertFalse(Arrays.equals(first[0], first[1]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sourceRejectsUnsupportedFormat() {
+        SyntheticFrameSource source = new SyntheticFrameSource(30, new FrameFormat(64, 48, YUV));
+        source.start(new FrameFormat(128, 96, YUV), raw -> { });
+    }
+
+    @Test
+    public void replaySourceDeliversRecordingInOrder() throws Exception {
+        File file = File.createTempFile("source", "." + FrameRecording.FILE_EXTENSION);
+        try {
+            try (FrameRecordingWriter writer = new FrameRecordingWriter(file, FrameRecording.PixelFormat.RGBA, 4, 2)) {
+                Frame frame = new Frame(4, 2);
+                for (int i = 0; i < 6; i++) {
+                    Arrays.fill(frame.getPixels(), 0xFF000000 | i);
+                    frame.setTimestampNs(i * 1000L);
+                    writer.append(frame);
+                }
+            }
+            try (ReplayFrameSource source = new ReplayFrameSource(file, false, false)) {
+                List<FrameFormat> formats = source.getSupportedFormats();
+                assertEquals(Arrays.asList(new FrameFormat(4, 2, FrameFormat.Encoding.RGBA)), formats);
+                int[] seen = new int[6];
+                AtomicInteger count = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(6);
+                FrameProcessor processor = new FrameProcessor(2, new PipelineMetrics(), frame -> {
+                    seen[count.getAndIncrement()] = frame.getPixels()[7];
+                    frame.release();
+                    done.countDown();
+                });
+                source.start(formats.get(0), processor);
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+                source.stop();
+                for (int i = 0; i < 6; i++) {
+                    assertEquals(0xFF000000 | i, seen[i]);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    // Unthrottled 1080p camera-format frames through conversion: the off-device load test
+    @Test
+    public void unthrottledSyntheticLoad() throws Exception {
+        FrameFormat format = new FrameFormat(1920, 1080, YUV);
+        SyntheticFrameSource source = new SyntheticFrameSource(0, format);
+        PipelineMetrics metrics = new PipelineMetrics();
+        FrameProcessor processor = new FrameProcessor(2, metrics, Frame::release);
+        source.start(format, processor);
+        Thread.sleep(1000);
+        source.stop();
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.snapshot(snapshot, System.nanoTime());
+        assertTrue(metrics.getProduced() > 0);
+        assertTrue(snapshot.getCount(PipelineMetrics.Stage.CONVERT) > 0);
+        assertEquals(0, metrics.getDropped());
+    }
+
+    private static final class CollectingListener implements FrameProcessor.Listener {
+        final AtomicInteger count = new AtomicInteger();
+        volatile Frame last;
+
+        @Override
+        public void onFrame(Frame frame) {
+            last = frame;
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bucketing precision, percentiles and concurrent recording of LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBounds_stayWithinThreePercent() {
+        long[] values = {0, 1, 31, 32, 33, 1000, 4_096_123, 16_666_667, 1_000_000_000L, 60_000_000_000L};
+        for (long value : values) {
+            long upper = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+            assertTrue(value + " -> " + upper, upper >= value);
+            assertTrue(value + " -> " + upper, upper - value <= Math.max(0, value / 32));
+        }
+    }
+
+    @Test
+    public void bucketIndex_isMonotonic() {
+        int previous = -1;
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index >= previous);
+            previous = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_ofUniformMillis() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(100_000_000L, histogram.getMaxNanos());
+        assertEquals(50e6, histogram.valueAtPercentile(50), 50e6 * 0.04);
+        assertEquals(95e6, histogram.valueAtPercentile(95), 95e6 * 0.04);
+        assertEquals(99e6, histogram.valueAtPercentile(99), 99e6 * 0.04);
+    }
+
+    @Test
+    public void emptyHistogram_reportsZero() {
+        assertEquals(0, new LatencyHistogram().valueAtPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecording_losesNothing() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int perThread = 250_000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record((i * 31L + seed) % 5_000_000);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        assertEquals(threads * perThread, histogram.copyCounts(counts));
+        assertEquals(threads * perThread, histogram.getTotalCount());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Palette LUT accuracy against the brute-force search, LUT caching, parallel
+ * quantisation and the adaptive median-cut palette.
+ */
+public class PaletteQuantizerTest {
+
+    @Test
+    public void namedPalettes_haveTheAdvertisedSizes() {
+        assertEquals(16, Palette.named("ega16").size());
+        assertEquals(64, Palette.named("rgb64").size());
+        assertEquals(256, Palette.named("rgb332").size());
+        assertEquals(0xFFFFFF, Palette.uniform(4, 4, 4).getColor(63));
+    }
+
+    @Test
+    public void lut_matchesBruteForceAtCellCentres() {
+        for (String name : new String[] {"ega16", "rgb64", "rgb332"}) {
+            Palette palette = Palette.named(name);
+            ColorLut lut = ColorLut.build(palette, new ForkJoinPool(3));
+            for (int r = 4; r < 256; r += 8) {
+                for (int g = 4; g < 256; g += 8) {
+                    for (int b = 4; b < 256; b += 8) {
+                        int rgb = r << 16 | g << 8 | b;
+                        assertEquals(name + " " + Integer.toHexString(rgb),
+                                palette.getColor(palette.nearest(rgb)), lut.map(rgb) & 0xFFFFFF);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lut_isCloseToBruteForceEverywhere() {
+        Palette palette = Palette.named("rgb64");
+        ColorLut lut = ColorLut.build(palette, ForkJoinPool.commonPool());
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            int rgb = random.nextInt() & 0xFFFFFF;
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            int exact = Palette.distance(palette.getColor(palette.nearest(rgb)), r, g, b);
+            int viaLut = Palette.distance(lut.map(rgb), r, g, b);
+            // Within a cell the error is bounded by the cell size (8 per channel)
+            assertTrue(Integer.toHexString(rgb), Math.sqrt(viaLut) - Math.sqrt(exact) <= Math.sqrt(9 * 64));
+        }
+    }
+
+    @Test
+    public void paletteColours_mapToThemselves_keepingAlpha() {
+        Palette palette = Palette.ega16();
+        ColorLut lut = ColorLut.build(palette, ForkJoinPool.commonPool());
+        for (int i = 0; i < palette.size(); i++) {
+            assertEquals(0x80000000 | palette.getColor(i), lut.map(0x80000000 | palette.getColor(i)));
+        }
+    }
+
+    @Test
+    public void luts_areBuiltOncePerPalette() {
+        PaletteQuantizer quantizer = new PaletteQuantizer();
+        ColorLut first = quantizer.lutFor(Palette.named("ega16"));
+        assertSame(first, quantizer.lutFor(Palette.ega16()));
+        assertEquals(1, quantizer.getLutBuilds());
+
+        for (int levels = 2; levels < 2 + PaletteQuantizer.MAX_CACHED_LUTS; levels++) {
+            quantizer.lutFor(Palette.uniform(levels, levels, levels));
+        }
+        // The least recently used LUT was evicted
+        assertNotSame(first, quantizer.lutFor(Palette.ega16()));
+        assertEquals(2 + PaletteQuantizer.MAX_CACHED_LUTS, quantizer.getLutBuilds());
+    }
+
+    @Test
+    public void parallelQuantize_matchesPerPixelMapping() {
+        int width = 1920;
+        int height = 1080;
+        int[] pixels = PixelationEngineTest.randomPixels(new Random(2), width * height);
+        int[] expected = pixels.clone();
+        PaletteQuantizer quantizer = new PaletteQuantizer(new ForkJoinPool(4));
+        ColorLut lut = quantizer.lutFor(Palette.named("rgb332"));
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = lut.map(expected[i]);
+        }
+        quantizer.quantize(pixels, width, height, lut);
+        assertArrayEquals(expected, pixels);
+    }
+
+    @Test
+    public void stridedQuantize_leavesPaddingUntouched() {
+        int[] pixels = new int[4 * 3];
+        Arrays.fill(pixels, 0xFF123456);
+        PaletteQuantizer quantizer = new PaletteQuantizer();
+        quantizer.quantize(pixels, 1, 4, 2, 3, quantizer.lutFor(Palette.uniform(2, 2, 2)));
+        for (int i = 0; i < pixels.length; i++) {
+            int x = (i - 1) % 4;
+            boolean inside = i >= 1 && x < 2 && (i - 1) / 4 < 3;
+            assertEquals(inside ? 0xFF000000 : 0xFF123456, pixels[i]);
+        }
+    }
+
+    @Test
+    public void adaptivePalette_recoversTheSceneColours() {
+        int[] colours = {0x102030, 0xE0C040, 0x20F080, 0x806080};
+        int[] grid = new int[40 * 23];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = 0xFF000000 | colours[i % colours.length];
+        }
+        AdaptivePalette adaptive = new AdaptivePalette(4);
+        assertTrue(adaptive.update(grid, 40, 23));
+        Set<Integer> found = new HashSet<>();
+        for (int i = 0; i < adaptive.getPalette().size(); i++) {
+            found.add(adaptive.getPalette().getColor(i));
+        }
+        Set<Integer> expected = new HashSet<>();
+        for (int colour : colours) {
+            expected.add(colour);
+        }
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void adaptivePalette_changesOnlyAtRebuilds_andFollowsTheScene() {
+        int[] red = new int[32 * 32];
+        int[] blue = new int[32 * 32];
+        Random random = new Random(3);
+        for (int i = 0; i < red.length; i++) {
+            red[i] = 0xFF000000 | (200 + random.nextInt(56)) << 16 | random.nextInt(40) << 8;
+            blue[i] = 0xFF000000 | random.nextInt(40) << 8 | (200 + random.nextInt(56));
+        }
+        AdaptivePalette adaptive = new AdaptivePalette(8, 256, 5);
+        assertTrue(adaptive.update(red, 32, 32));
+        for (int frame = 1; frame < 4; frame++) {
+            assertFalse(adaptive.update(blue, 32, 32));
+        }
+        assertTrue(isRedDominated(adaptive.getPalette()));
+        for (int frame = 4; frame < 60; frame++) {
+            adaptive.update(blue, 32, 32);
+        }
+        assertFalse(isRedDominated(adaptive.getPalette()));
+        assertTrue(adaptive.getPalette().size() <= 8);
+    }
+
+    private static boolean isRedDominated(Palette palette) {
+        int redder = 0;
+        for (int i = 0; i < palette.size(); i++) {
+            int color = palette.getColor(i);
+            if (((color >> 16) & 0xFF) > (color & 0xFF)) {
+                redder++;
+            }
+        }
+        return redder * 2 > palette.size();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPalette_isRejected() {
+        Palette.named("gameboy");
+    }
+}
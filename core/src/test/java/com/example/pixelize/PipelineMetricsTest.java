@@ -0,0 +1,61 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Interval snapshots and text export of PipelineMetrics.
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void snapshot_reportsOnlyTheLastInterval() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.snapshot(snapshot, 0);
+
+        for (int i = 0; i < 30; i++) {
+            metrics.record(PipelineMetrics.Stage.CONVERT, 4_000_000);
+            metrics.frameProduced();
+            metrics.frameRendered();
+        }
+        metrics.frameDropped();
+        metrics.snapshot(snapshot, 1_000_000_000L);
+
+        assertEquals(30, snapshot.getCount(PipelineMetrics.Stage.CONVERT));
+        assertEquals(4e6, snapshot.getP50Nanos(PipelineMetrics.Stage.CONVERT), 4e6 * 0.04);
+        assertEquals(30.0, snapshot.getProducedFps(), 1e-9);
+        assertEquals(30.0, snapshot.getRenderedFps(), 1e-9);
+        assertEquals(1, snapshot.getDropped());
+
+        // A slower second interval must not be averaged with the first
+        for (int i = 0; i < 10; i++) {
+            metrics.record(PipelineMetrics.Stage.CONVERT, 20_000_000);
+            metrics.frameRendered();
+        }
+        metrics.snapshot(snapshot, 1_500_000_000L);
+        assertEquals(10, snapshot.getCount(PipelineMetrics.Stage.CONVERT));
+        assertEquals(20e6, snapshot.getP50Nanos(PipelineMetrics.Stage.CONVERT), 20e6 * 0.04);
+        assertEquals(20.0, snapshot.getRenderedFps(), 1e-9);
+        assertEquals(0, snapshot.getProduced());
+        assertEquals(0, snapshot.getCount(PipelineMetrics.Stage.UPLOAD));
+    }
+
+    @Test
+    public void appendTo_listsEveryStage() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.snapshot(snapshot, 0);
+        metrics.record(PipelineMetrics.Stage.UPLOAD, 2_000_000);
+        metrics.frameRendered();
+        metrics.snapshot(snapshot, 500_000_000L);
+
+        String text = snapshot.appendTo(new StringBuilder()).toString();
+        assertTrue(text, text.startsWith("fps in 0.0 out 2.0 drop 0"));
+        for (PipelineMetrics.Stage stage : PipelineMetrics.Stage.values()) {
+            assertTrue(text, text.contains(stage.name() + " p50 "));
+        }
+        assertTrue(text, text.contains("UPLOAD p50 2.0"));
+    }
+}
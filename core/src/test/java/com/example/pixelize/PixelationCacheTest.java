@@ -0,0 +1,319 @@
+package com.example.pixelize;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * PixelationCache and its MappedResultStore disk tier, driven by a simulated slider
+ * scrub over a still image the way the renderer pixelates one.
+ */
+public class PixelationCacheTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME_BYTES = 4L * WIDTH * HEIGHT + PixelationCache.ENTRY_OVERHEAD;
+
+    private final PixelationEngine engine = new PixelationEngine();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pixelation-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void sliderScrub_hitsEverySizeItHasShownBefore() {
+        int[] image = image(1);
+        // The seek bar's 0..39 mapped to pixel sizes as MainActivity does, dragged
+        // across and back three times, stepping through every position
+        int[] trace = scrubTrace(40, 3);
+        PixelationCache cache = new PixelationCache(64 * FRAME_BYTES);
+        int[] output = new int[WIDTH * HEIGHT];
+        int[] expected = new int[WIDTH * HEIGHT];
+        Set<Integer> shown = new HashSet<>();
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        for (int progress : trace) {
+            int blockSize = PixelationEngine.blockSize((progress + 1) / 2.0f);
+            if (!render(cache, hash, image, blockSize, output)) {
+                assertTrue("missed " + blockSize + " after showing it", shown.add(blockSize));
+            }
+            engine.pixelate(image, expected, WIDTH, HEIGHT, blockSize);
+            assertArrayEquals("block size " + blockSize, expected, output);
+        }
+        // One miss per distinct size, everything else from memory
+        assertEquals(shown.size(), cache.getMisses());
+        assertEquals(trace.length - shown.size(), cache.getHits());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void byteBudget_evictsTheLeastRecentlyUsed() {
+        int[] image = image(2);
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        PixelationCache cache = new PixelationCache(3 * FRAME_BYTES);
+        int[] output = new int[WIDTH * HEIGHT];
+        render(cache, hash, image, 2, output);
+        render(cache, hash, image, 3, output);
+        render(cache, hash, image, 4, output);
+        assertEquals(3 * FRAME_BYTES, cache.getBytes());
+        render(cache, hash, image, 2, output); // Now the most recent
+        render(cache, hash, image, 5, output); // Pushes out 3
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getEntryCount());
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+        assertTrue(render(cache, hash, image, 2, output));
+        assertFalse(render(cache, hash, image, 3, output));
+
+        // Small results are held on the same budget: one frame's worth makes room for many
+        int[] grid = new int[16];
+        for (int i = 0; i < 100; i++) {
+            cache.put(new PixelationCache.Key(i, 4, 4, 1, "grid"), grid, grid.length);
+        }
+        assertEquals(2 + 100, cache.getEntryCount());
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void resultLargerThanTheBudget_isNotKept() {
+        PixelationCache cache = new PixelationCache(FRAME_BYTES - 1);
+        int[] image = image(3);
+        PixelationCache.Key key = new PixelationCache.Key(1, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE);
+        cache.put(key, image, image.length);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getBytes());
+        assertFalse(cache.get(key, new int[image.length]));
+    }
+
+    @Test
+    public void keys_separateContentSizeAndEffect() {
+        int[] image = image(4);
+        PixelationCache cache = new PixelationCache(16 * FRAME_BYTES);
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        int[] output = new int[WIDTH * HEIGHT];
+        cache.put(new PixelationCache.Key(hash, WIDTH, HEIGHT, 8, EffectRegistry.PIXELATE), image, image.length);
+        assertFalse(cache.get(new PixelationCache.Key(hash, WIDTH, HEIGHT, 8, EffectRegistry.MOSAIC), output));
+        assertFalse(cache.get(new PixelationCache.Key(hash, WIDTH, HEIGHT, 9, EffectRegistry.PIXELATE), output));
+        assertFalse(cache.get(new PixelationCache.Key(hash + 1, WIDTH, HEIGHT, 8, EffectRegistry.PIXELATE), output));
+        assertTrue(cache.get(new PixelationCache.Key(hash, WIDTH, HEIGHT, 8, EffectRegistry.PIXELATE), output));
+    }
+
+    @Test
+    public void contentHash_changesWithAnyPixelOrTheShape() {
+        int[] image = image(5);
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        assertEquals(hash, PixelationCache.contentHash(image.clone(), WIDTH, HEIGHT));
+        // The same pixels read as a different shape
+        assertNotEquals(hash, PixelationCache.contentHash(image, HEIGHT, WIDTH));
+        Set<Long> hashes = new HashSet<>();
+        hashes.add(hash);
+        Random random = new Random(5);
+        int[] changed = image.clone();
+        // Every lane and the tail, with one-bit changes in high and low bits
+        for (int trial = 0; trial < 200; trial++) {
+            int index = trial < 8 ? trial : trial < 16 ? image.length - 1 - (trial - 8) : random.nextInt(image.length);
+            int bit = 1 << random.nextInt(32);
+            changed[index] ^= bit;
+            assertTrue("pixel " + index, hashes.add(PixelationCache.contentHash(changed, WIDTH, HEIGHT)));
+            changed[index] ^= bit;
+        }
+        // Images shorter than one round of lanes
+        int[] tiny = {1, 2, 3};
+        assertNotEquals(PixelationCache.contentHash(tiny, 3, 1), PixelationCache.contentHash(new int[] {1, 2, 4}, 3, 1));
+    }
+
+    @Test
+    public void diskTier_survivesARestart() throws Exception {
+        int[] image = image(6);
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        int[] output = new int[WIDTH * HEIGHT];
+        try (PixelationCache first = new PixelationCache(64 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES))) {
+            for (int blockSize = 2; blockSize <= 6; blockSize++) {
+                render(first, hash, image, blockSize, output);
+            }
+            assertTrue(first.awaitDisk(10_000));
+            assertEquals(5, first.getDisk().getFileCount());
+        }
+
+        // A new process: empty memory, same directory
+        try (PixelationCache second = new PixelationCache(64 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES))) {
+            // Lookups never wait on the disk: nothing is there until the image is warmed
+            assertFalse(second.get(new PixelationCache.Key(hash, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE), output));
+            second.warm(hash);
+            assertTrue(second.awaitDisk(10_000));
+            assertEquals(5, second.getDiskHits());
+            int[] expected = new int[WIDTH * HEIGHT];
+            for (int blockSize = 2; blockSize <= 6; blockSize++) {
+                assertTrue(render(second, hash, image, blockSize, output));
+                engine.pixelate(image, expected, WIDTH, HEIGHT, blockSize);
+                assertArrayEquals(expected, output);
+            }
+            assertEquals(5, second.getHits());
+            assertEquals(1, second.getMisses());
+            assertEquals(0, second.getDiskErrors());
+        }
+    }
+
+    @Test
+    public void warm_fillsOnlyFreeMemory() throws Exception {
+        int[] image = image(8);
+        long hash = PixelationCache.contentHash(image, WIDTH, HEIGHT);
+        int[] output = new int[WIDTH * HEIGHT];
+        try (PixelationCache first = new PixelationCache(64 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES))) {
+            for (int blockSize = 2; blockSize <= 6; blockSize++) {
+                render(first, hash, image, blockSize, output);
+            }
+            render(first, hash + 1, image, 2, output); // Another image's result
+            assertTrue(first.awaitDisk(10_000));
+            assertEquals(5, first.getDisk().keys(hash).size());
+        }
+
+        try (PixelationCache second = new PixelationCache(3 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES))) {
+            render(second, hash, image, 7, output); // Used more recently than anything on disk
+            second.warm(hash);
+            assertTrue(second.awaitDisk(10_000));
+            assertEquals(2, second.getDiskHits());
+            assertEquals(0, second.getEvictions());
+            assertEquals(3, second.getEntryCount());
+            assertTrue(render(second, hash, image, 7, output));
+
+            // Once per image until memory is cleared
+            second.warm(hash);
+            second.clear();
+            second.warm(hash);
+            assertTrue(second.awaitDisk(10_000));
+            assertEquals(2 + 3, second.getDiskHits());
+            assertEquals(3, second.getEntryCount());
+        }
+    }
+
+    @Test
+    public void queuedDiskWrites_keepToTheirByteBudget() throws Exception {
+        int[] image = image(9);
+        long resultBytes = 4L * WIDTH * HEIGHT;
+        try (PixelationCache cache = new PixelationCache(64 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES), 2 * resultBytes)) {
+            // Holding the cache's lock keeps the disk thread from settling its writes,
+            // so the first two stay charged while the rest arrive
+            synchronized (cache) {
+                for (int i = 0; i < 5; i++) {
+                    cache.put(new PixelationCache.Key(i, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE), image, image.length);
+                    assertTrue(cache.getPendingDiskBytes() <= 2 * resultBytes);
+                }
+                assertEquals(3, cache.getDiskWritesSkipped());
+            }
+            assertTrue(cache.awaitDisk(10_000));
+            assertEquals(0, cache.getPendingDiskBytes());
+            assertEquals(2, cache.getDisk().getFileCount());
+            assertEquals(5, cache.getEntryCount()); // Memory keeps them all
+        }
+    }
+
+    @Test
+    public void fullDiskQueue_skipsTheWrite() throws Exception {
+        int[] image = image(10);
+        try (PixelationCache cache = new PixelationCache(64 * FRAME_BYTES,
+                new MappedResultStore(directory, 64 * FRAME_BYTES))) {
+            int grid = 16;
+            // One write on the disk thread, stuck on the lock, and a full queue behind it
+            synchronized (cache) {
+                for (int i = 0; i < PixelationCache.DISK_QUEUE_CAPACITY + 3; i++) {
+                    cache.put(new PixelationCache.Key(i, 4, 4, 1, "grid"), image, grid);
+                }
+                assertEquals(2, cache.getDiskWritesSkipped());
+                assertEquals(4L * grid * (PixelationCache.DISK_QUEUE_CAPACITY + 1), cache.getPendingDiskBytes());
+            }
+            assertTrue(cache.awaitDisk(10_000));
+            assertEquals(0, cache.getPendingDiskBytes());
+            assertEquals(PixelationCache.DISK_QUEUE_CAPACITY + 1, cache.getDisk().getFileCount());
+        }
+    }
+
+    @Test
+    public void diskTier_keepsToItsBudgetAndDropsDamagedFiles() throws IOException {
+        long fileBytes = MappedResultStore.HEADER_SIZE + 4L * WIDTH * HEIGHT;
+        MappedResultStore store = new MappedResultStore(directory, 3 * fileBytes);
+        int[] image = image(7);
+        for (int i = 0; i < 5; i++) {
+            store.write(new PixelationCache.Key(i, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE), image, image.length);
+        }
+        assertEquals(3, store.getFileCount());
+        assertEquals(3 * fileBytes, store.getBytes());
+        assertEquals(2, store.getEvictions());
+        int[] output = new int[image.length];
+        assertEquals(-1, store.read(new PixelationCache.Key(0, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE), output));
+        PixelationCache.Key kept = new PixelationCache.Key(4, WIDTH, HEIGHT, 4, EffectRegistry.PIXELATE);
+        assertEquals(image.length, store.read(kept, output));
+        assertArrayEquals(image, output);
+
+        // Truncate one result, as a crash or a full disk might
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(String.format("%016x", 4)));
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.setLength(fileBytes / 2);
+        }
+        assertEquals(-1, new MappedResultStore(directory, 3 * fileBytes).read(kept, output));
+        assertFalse(files[0].exists());
+    }
+
+    // What the renderer does for a still image: the cache, or pixelate and remember.
+    // Returns whether the cache had it.
+    private boolean render(PixelationCache cache, long hash, int[] image, int blockSize, int[] output) {
+        PixelationCache.Key key = new PixelationCache.Key(hash, WIDTH, HEIGHT, blockSize, EffectRegistry.PIXELATE);
+        if (cache.get(key, output)) {
+            return true;
+        }
+        engine.pixelate(image, output, WIDTH, HEIGHT, blockSize);
+        cache.put(key, output, WIDTH * HEIGHT);
+        return false;
+    }
+
+    // Seek bar positions of a drag from one end to the other and back, passes times
+    private static int[] scrubTrace(int positions, int passes) {
+        int[] trace = new int[passes * 2 * positions];
+        int n = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            for (int p = 0; p < positions; p++) {
+                trace[n++] = p;
+            }
+            for (int p = positions - 1; p >= 0; p--) {
+                trace[n++] = p;
+            }
+        }
+        return Arrays.copyOf(trace, n);
+    }
+
+    private static int[] image(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
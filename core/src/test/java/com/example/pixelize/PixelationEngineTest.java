@@ -0,0 +1,234 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Correctness of PixelationEngine against a naive reference, across 1, 2, 4 and 8
+ * workers, plus a single-worker throughput floor. Scaling with workers is measured by
+ * PixelationBenchmark.
+ */
+public class PixelationEngineTest {
+    // Conservative floor for a 1080p frame at block size 8 on a single worker;
+    // typical desktop JVMs are well above this
+    private static final double MIN_SINGLE_CORE_MEGAPIXELS_PER_SECOND = 20.0;
+
+    @Test
+    public void uniformBlock_averagesAndRoundsEachChannel() {
+        int[] src = {0xFF000000, 0xFF010203, 0xFF000001, 0xFF020304};
+        int[] dst = new int[4];
+        new PixelationEngine().pixelate(src, dst, 2, 2, 2);
+        // r: 3/4 -> 1, g: 5/4 -> 1, b: 8/4 -> 2
+        for (int pixel : dst) {
+            assertEquals(0xFF010102, pixel);
+        }
+    }
+
+    @Test
+    public void matchesReference_forOddSizesAndPartialEdgeBlocks() {
+        Random random = new Random(1);
+        int[][] sizes = {{1, 1}, {7, 5}, {33, 17}, {640, 3}, {257, 129}};
+        for (int[] size : sizes) {
+            int[] src = randomPixels(random, size[0] * size[1]);
+            for (int blockSize : new int[] {1, 2, 3, 8, 64}) {
+                int[] expected = reference(src, size[0], size[1], blockSize);
+                int[] actual = new int[src.length];
+                new PixelationEngine(new ForkJoinPool(3)).pixelate(src, actual, size[0], size[1], blockSize);
+                assertArrayEquals(size[0] + "x" + size[1] + " @" + blockSize, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void reusedColumnSums_carryNothingBetweenImagesOfDifferentWidths() {
+        // One worker runs every band on this thread, so all calls share its scratch
+        PixelationEngine engine = new PixelationEngine(new ForkJoinPool(1));
+        Random random = new Random(2);
+        for (int width : new int[] {300, 13, 300, 64}) {
+            int[] src = randomPixels(random, width * 9);
+            int[] actual = new int[src.length];
+            engine.pixelate(src, actual, width, 9, 4);
+            assertArrayEquals("width " + width, reference(src, width, 9, 4), actual);
+        }
+    }
+
+    @Test
+    public void stridedRegion_leavesOtherPixelsUntouched() {
+        int width = 10;
+        int height = 6;
+        int stride = 16;
+        int[] src = randomPixels(new Random(2), stride * height + 3);
+        int[] dst = new int[src.length];
+        Arrays.fill(dst, 0x12345678);
+        new PixelationEngine().pixelate(src, 3, stride, dst, 3, stride, width, height, 4);
+
+        int[] packed = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src, 3 + y * stride, packed, y * width, width);
+        }
+        int[] expected = reference(packed, width, height, 4);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < stride; x++) {
+                int index = 3 + y * stride + x;
+                if (x < width) {
+                    assertEquals(expected[y * width + x], dst[index]);
+                } else if (index < dst.length) {
+                    assertEquals(0x12345678, dst[index]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void inPlace_matchesSeparateOutput() {
+        int[] src = randomPixels(new Random(3), 320 * 240);
+        int[] expected = new int[src.length];
+        PixelationEngine engine = new PixelationEngine();
+        engine.pixelate(src, expected, 320, 240, 7);
+        engine.pixelate(src, src, 320, 240, 7);
+        assertArrayEquals(expected, src);
+    }
+
+    @Test
+    public void downsample_matchesBlockColoursOfPixelate() {
+        Random random = new Random(5);
+        int[][] sizes = {{1, 1}, {7, 5}, {257, 129}, {1280, 720}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            int[] src = randomPixels(random, width * height);
+            for (int blockSize : new int[] {1, 3, 8, 32}) {
+                int[] expected = reference(src, width, height, blockSize);
+                int gridWidth = PixelationEngine.gridSize(width, blockSize);
+                int gridHeight = PixelationEngine.gridSize(height, blockSize);
+                int[] grid = new int[gridWidth * gridHeight];
+                new PixelationEngine(new ForkJoinPool(3)).downsample(src, width, height, blockSize, grid);
+                for (int gy = 0; gy < gridHeight; gy++) {
+                    for (int gx = 0; gx < gridWidth; gx++) {
+                        assertEquals(width + "x" + height + " @" + blockSize + " block " + gx + "," + gy,
+                                expected[gy * blockSize * width + gx * blockSize], grid[gy * gridWidth + gx]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void downsample_writesOnlyTheGridRegion() {
+        int[] src = randomPixels(new Random(6), 10 * 6);
+        int[] grid = new int[3 * 8 + 1];
+        Arrays.fill(grid, 0x12345678);
+        new PixelationEngine().downsample(src, 0, 10, 10, 6, 4, grid, 1, 8);
+        int[] expected = reference(src, 10, 6, 4);
+        for (int i = 0; i < grid.length; i++) {
+            int x = (i - 1) % 8;
+            int y = (i - 1) / 8;
+            if (i >= 1 && x < 3 && y < 2) {
+                assertEquals(expected[y * 4 * 10 + x * 4], grid[i]);
+            } else {
+                assertEquals(0x12345678, grid[i]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downsample_rejectsSmallGrid() {
+        new PixelationEngine().downsample(new int[64], 8, 8, 3, new int[8]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroBlockSize_isRejected() {
+        new PixelationEngine().pixelate(new int[4], new int[4], 2, 2, 0);
+    }
+
+    @Test
+    public void sameResult_acrossWorkerCounts() {
+        int width = 1920;
+        int height = 1080;
+        int[] src = randomPixels(new Random(4), width * height);
+        int[] baseline = null;
+        for (int workers : new int[] {1, 2, 4, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                int[] dst = new int[src.length];
+                new PixelationEngine(pool).pixelate(src, dst, width, height, 8);
+                if (baseline == null) {
+                    baseline = dst;
+                } else {
+                    assertArrayEquals(workers + " workers", baseline, dst);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void throughput_singleWorkerFloor() {
+        int width = 1920;
+        int height = 1080;
+        int[] src = randomPixels(new Random(4), width * height);
+        int[] dst = new int[src.length];
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            PixelationEngine engine = new PixelationEngine(pool);
+            for (int i = 0; i < 5; i++) {
+                engine.pixelate(src, dst, width, height, 8); // Warm up
+            }
+            int iterations = 20;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                engine.pixelate(src, dst, width, height, 8);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double megapixelsPerSecond = iterations * (width * (double) height) / 1e6 / seconds;
+            assertTrue("Single worker throughput " + megapixelsPerSecond + " MP/s",
+                    megapixelsPerSecond >= MIN_SINGLE_CORE_MEGAPIXELS_PER_SECOND);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static int[] randomPixels(Random random, int count) {
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    // Straightforward per-block mean, rounded half up
+    static int[] reference(int[] src, int width, int height, int blockSize) {
+        int[] out = new int[src.length];
+        for (int by = 0; by < height; by += blockSize) {
+            for (int bx = 0; bx < width; bx += blockSize) {
+                long[] sums = new long[4];
+                int count = 0;
+                for (int y = by; y < Math.min(by + blockSize, height); y++) {
+                    for (int x = bx; x < Math.min(bx + blockSize, width); x++) {
+                        int pixel = src[y * width + x];
+                        for (int c = 0; c < 4; c++) {
+                            sums[c] += (pixel >>> (24 - 8 * c)) & 0xFF;
+                        }
+                        count++;
+                    }
+                }
+                int color = 0;
+                for (int c = 0; c < 4; c++) {
+                    color |= (int) ((sums[c] + count / 2) / count) << (24 - 8 * c);
+                }
+                for (int y = by; y < Math.min(by + blockSize, height); y++) {
+                    for (int x = bx; x < Math.min(bx + blockSize, width); x++) {
+                        out[y * width + x] = color;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.pixelize;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fake GlApi that hands out sequential ids and records every call as a string.
+ * Shaders whose source contains one of failingSources fail to compile; uniform and
+ * attribute locations are sequential per program.
+ */
+public class RecordingGl implements GlApi {
+    public final List<String> calls = new ArrayList<>();
+    public final Set<String> failingSources = new HashSet<>();
+    private int nextId = 1;
+    private int nextLocation;
+
+    public int count(String prefix) {
+        int count = 0;
+        for (String call : calls) {
+            if (call.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int genTexture() {
+        int id = nextId++;
+        calls.add("genTexture " + id);
+        return id;
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+        calls.add("deleteTexture " + texture);
+    }
+
+    @Override
+    public void bindTexture(int texture) {
+        calls.add("bindTexture " + texture);
+    }
+
+    @Override
+    public void texParameteri(int name, int value) {
+        calls.add("texParameteri " + Integer.toHexString(name) + " " + Integer.toHexString(value));
+    }
+
+    @Override
+    public void texImage2D(int width, int height, Buffer pixels) {
+        calls.add("texImage2D " + width + "x" + height + (pixels == null ? " null" : ""));
+    }
+
+    @Override
+    public void texSubImage2D(int x, int y, int width, int height, Buffer pixels) {
+        calls.add("texSubImage2D " + x + "," + y + " " + width + "x" + height);
+    }
+
+    @Override
+    public int compileShader(int type, String source) {
+        for (String failing : failingSources) {
+            if (source.contains(failing)) {
+                calls.add("compileShader " + Integer.toHexString(type) + " failed");
+                return 0;
+            }
+        }
+        int id = nextId++;
+        calls.add("compileShader " + Integer.toHexString(type) + " " + id);
+        return id;
+    }
+
+    @Override
+    public int linkProgram(int vertexShader, int fragmentShader) {
+        int id = nextId++;
+        calls.add("linkProgram " + vertexShader + "," + fragmentShader + " " + id);
+        return id;
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        calls.add("deleteShader " + shader);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        calls.add("deleteProgram " + program);
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        calls.add("getUniformLocation " + program + " " + name);
+        return nextLocation++;
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        calls.add("getAttribLocation " + program + " " + name);
+        return nextLocation++;
+    }
+}
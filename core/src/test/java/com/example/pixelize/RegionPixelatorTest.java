@@ -0,0 +1,256 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * RegionPixelator against full-frame pixelation and a per-pixel coverage reference,
+ * plus the region index and polygon rasterisation rules.
+ */
+public class RegionPixelatorTest {
+    @Test
+    public void regionCoveringTheFrame_matchesFullFramePixelation() {
+        Random random = new Random(3);
+        int width = 97;
+        int height = 61;
+        int[] src = PixelationEngineTest.randomPixels(random, width * height);
+        RegionPixelator pixelator = new RegionPixelator(new ForkJoinPool(3));
+        pixelator.setRegions(Collections.singletonList(PixelRegion.rect(-5, -5, width + 5, height + 5)));
+        for (int blockSize : new int[] {1, 2, 7, 16, 128}) {
+            int[] actual = new int[src.length];
+            pixelator.pixelate(src, actual, width, height, blockSize);
+            assertArrayEquals("block size " + blockSize,
+                    PixelationEngineTest.reference(src, width, height, blockSize), actual);
+        }
+    }
+
+    @Test
+    public void coveredPixelsGetTheirBlockMean_andTheRestPassThrough() {
+        Random random = new Random(4);
+        int width = 200;
+        int height = 150;
+        int[] src = PixelationEngineTest.randomPixels(random, width * height);
+        List<PixelRegion> regions = randomRegions(random, width, height, 12);
+        RegionPixelator pixelator = new RegionPixelator(new ForkJoinPool(4));
+        pixelator.setRegions(regions);
+        for (int blockSize : new int[] {1, 5, 8, 33}) {
+            int[] actual = new int[src.length];
+            pixelator.pixelate(src, actual, width, height, blockSize);
+            assertArrayEquals("block size " + blockSize, reference(src, width, height, blockSize, regions), actual);
+        }
+    }
+
+    @Test
+    public void scratchReusedAcrossShrinkingFrames_staysCorrect() {
+        // One worker, so every call reuses the same thread's grown scratch
+        Random random = new Random(7);
+        RegionPixelator pixelator = new RegionPixelator(new ForkJoinPool(1));
+        int[][] sizes = {{300, 200, 40}, {120, 90, 3}, {64, 48, 16}, {31, 17, 1}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            int[] src = PixelationEngineTest.randomPixels(random, width * height);
+            List<PixelRegion> regions = randomRegions(random, width, height, 20 / size[2] + 2);
+            pixelator.setRegions(regions);
+            int[] actual = new int[src.length];
+            pixelator.pixelate(src, actual, width, height, size[2]);
+            assertArrayEquals(width + "x" + height, reference(src, width, height, size[2], regions), actual);
+        }
+    }
+
+    @Test
+    public void inPlace_matchesSeparateOutput() {
+        Random random = new Random(5);
+        int width = 640;
+        int height = 360;
+        int[] src = PixelationEngineTest.randomPixels(random, width * height);
+        RegionPixelator pixelator = new RegionPixelator(new ForkJoinPool(4));
+        pixelator.setRegions(randomRegions(random, width, height, 30));
+        int[] separate = new int[src.length];
+        pixelator.pixelate(src, separate, width, height, 9);
+        int[] inPlace = src.clone();
+        pixelator.pixelate(inPlace, inPlace, width, height, 9);
+        assertArrayEquals(separate, inPlace);
+    }
+
+    @Test
+    public void noRegions_copiesTheFrame() {
+        int[] src = PixelationEngineTest.randomPixels(new Random(6), 50 * 40);
+        int[] dst = new int[src.length];
+        RegionPixelator pixelator = new RegionPixelator();
+        pixelator.pixelate(src, dst, 50, 40, 8);
+        assertArrayEquals(src, dst);
+
+        // Regions entirely outside the frame are no different
+        pixelator.setRegions(Arrays.asList(PixelRegion.rect(-20, 0, 0, 40), PixelRegion.rect(0, 40, 50, 90)));
+        Arrays.fill(dst, 0);
+        pixelator.pixelate(src, dst, 50, 40, 8);
+        assertArrayEquals(src, dst);
+    }
+
+    @Test
+    public void polygonCoversPixelsWhoseCentreIsInside() {
+        // A triangle and a concave "U", whose middle row has two spans
+        PixelRegion triangle = PixelRegion.polygon(new int[] {2, 18, 2}, new int[] {1, 9, 17});
+        PixelRegion cup = PixelRegion.polygon(new int[] {0, 4, 4, 8, 8, 12, 12, 0}, new int[] {0, 0, 6, 6, 0, 0, 10, 10});
+        for (PixelRegion region : new PixelRegion[] {triangle, cup}) {
+            int[] spans = new int[2 * region.maxSpansPerRow()];
+            double[] crossings = new double[8];
+            for (int y = -1; y < 20; y++) {
+                boolean[] covered = new boolean[20];
+                int count = region.appendSpans(y, covered.length, spans, 0, crossings);
+                for (int s = 0; s < count; s++) {
+                    Arrays.fill(covered, spans[2 * s], spans[2 * s + 1], true);
+                }
+                for (int x = 0; x < covered.length; x++) {
+                    assertEquals(region + " at " + x + "," + y, insidePolygon(region, x + 0.5, y + 0.5), covered[x]);
+                }
+            }
+        }
+        // The cup's gap: rows above y = 6 have two spans
+        int[] spans = new int[8];
+        assertEquals(2, cup.appendSpans(3, 20, spans, 0, new double[8]));
+        assertArrayEquals(new int[] {0, 4, 8, 12}, Arrays.copyOf(spans, 4));
+    }
+
+    @Test
+    public void rectangleAndMatchingPolygon_coverTheSamePixels() {
+        PixelRegion rect = PixelRegion.rect(3, 2, 11, 7);
+        PixelRegion polygon = PixelRegion.polygon(new int[] {3, 11, 11, 3}, new int[] {2, 2, 7, 7});
+        int[] src = PixelationEngineTest.randomPixels(new Random(7), 16 * 10);
+        RegionPixelator pixelator = new RegionPixelator();
+        pixelator.setRegions(Collections.singletonList(rect));
+        int[] fromRect = new int[src.length];
+        pixelator.pixelate(src, fromRect, 16, 10, 4);
+        pixelator.setRegions(Collections.singletonList(polygon));
+        int[] fromPolygon = new int[src.length];
+        pixelator.pixelate(src, fromPolygon, 16, 10, 4);
+        assertArrayEquals(fromRect, fromPolygon);
+    }
+
+    @Test
+    public void index_listsOnlyTheRegionsOverlappingEachBand() {
+        PixelRegion top = PixelRegion.rect(0, 0, 10, 8);
+        PixelRegion middle = PixelRegion.polygon(new int[] {5, 20, 5}, new int[] {12, 20, 27});
+        PixelRegion clipped = PixelRegion.rect(0, 90, 10, 200);
+        PixelRegion empty = PixelRegion.rect(4, 40, 4, 60);
+        RegionIndex index = new RegionIndex(Arrays.asList(top, middle, clipped, empty), 100, 8);
+        assertEquals(13, index.getBandCount());
+        assertEquals(Collections.singletonList(top), inBand(index, 0));
+        assertEquals(Collections.singletonList(middle), inBand(index, 1));
+        assertEquals(Collections.singletonList(middle), inBand(index, 3));
+        assertEquals(Collections.emptyList(), inBand(index, 4));
+        assertEquals(Collections.emptyList(), inBand(index, 6));
+        assertEquals(Collections.singletonList(clipped), inBand(index, 11));
+        assertEquals(Collections.singletonList(clipped), inBand(index, 12));
+    }
+
+    @Test
+    public void index_isReusedUntilTheRegionsOrBlockSizeChange() {
+        RegionPixelator pixelator = new RegionPixelator();
+        pixelator.setRegions(Collections.singletonList(PixelRegion.rect(0, 0, 4, 4)));
+        RegionIndex first = pixelator.index(64, 8);
+        assertSame(first, pixelator.index(64, 8));
+        assertNotSame(first, pixelator.index(64, 4));
+        RegionIndex second = pixelator.index(64, 4);
+        pixelator.setRegions(pixelator.getRegions());
+        assertNotSame(second, pixelator.index(64, 4));
+    }
+
+    @Test
+    public void parseRects_readsSemicolonSeparatedRectangles() {
+        List<PixelRegion> regions = PixelRegion.parseRects("0,0,320,240; 400, 100, 600, 300;");
+        assertEquals(2, regions.size());
+        assertEquals(400, regions.get(1).getLeft());
+        assertEquals(300, regions.get(1).getBottom());
+        try {
+            PixelRegion.parseRects("1,2,3");
+            fail("Accepted a rectangle with three numbers");
+        } catch (IllegalArgumentException expected) {
+            // Reported to the caller like a bad palette name
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void polygonWithTooFewVertices_isRejected() {
+        PixelRegion.polygon(new int[] {0, 1}, new int[] {0, 1});
+    }
+
+    private static List<PixelRegion> inBand(RegionIndex index, int band) {
+        List<PixelRegion> regions = new ArrayList<>();
+        for (int i = 0; i < index.countInBand(band); i++) {
+            regions.add(index.regionInBand(band, i));
+        }
+        return regions;
+    }
+
+    // Overlapping rectangles and polygons, some hanging off the frame's edges
+    static List<PixelRegion> randomRegions(Random random, int width, int height, int count) {
+        List<PixelRegion> regions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(width + 20) - 10;
+            int y = random.nextInt(height + 20) - 10;
+            int w = 1 + random.nextInt(width / 3);
+            int h = 1 + random.nextInt(height / 3);
+            if (i % 2 == 0) {
+                regions.add(PixelRegion.rect(x, y, x + w, y + h));
+            } else {
+                int vertices = 3 + random.nextInt(5);
+                int[] xs = new int[vertices];
+                int[] ys = new int[vertices];
+                for (int v = 0; v < vertices; v++) {
+                    xs[v] = x + random.nextInt(w + 1);
+                    ys[v] = y + random.nextInt(h + 1);
+                }
+                regions.add(PixelRegion.polygon(xs, ys));
+            }
+        }
+        return regions;
+    }
+
+    // Per pixel: the full-frame pixelation where any region covers it, the source elsewhere
+    private static int[] reference(int[] src, int width, int height, int blockSize, List<PixelRegion> regions) {
+        int[] pixelated = PixelationEngineTest.reference(src, width, height, blockSize);
+        int[] expected = src.clone();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (PixelRegion region : regions) {
+                    if (covers(region, x, y)) {
+                        expected[y * width + x] = pixelated[y * width + x];
+                        break;
+                    }
+                }
+            }
+        }
+        return expected;
+    }
+
+    private static boolean covers(PixelRegion region, int x, int y) {
+        if (!region.isPolygon()) {
+            return x >= region.getLeft() && x < region.getRight() && y >= region.getTop() && y < region.getBottom();
+        }
+        return insidePolygon(region, x + 0.5, y + 0.5);
+    }
+
+    // Even-odd ray casting, one vertex pair at a time
+    private static boolean insidePolygon(PixelRegion region, double px, double py) {
+        int[] xs = region.getVertexXs();
+        int[] ys = region.getVertexYs();
+        boolean inside = false;
+        for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+            if ((ys[i] > py) != (ys[j] > py)
+                    && px < xs[j] + (py - ys[j]) * (xs[i] - xs[j]) / (double) (ys[i] - ys[j])) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
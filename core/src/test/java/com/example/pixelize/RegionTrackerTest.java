@@ -0,0 +1,254 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RegionTracker on synthetic sequences of a textured rectangle moving over a textured
+ * background, with the "detector" only run on the first frame.
+ */
+public class RegionTrackerTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int SIZE = 48;
+
+    @Test
+    public void steadyMotion_staysCoveredAndCentred() {
+        for (int[] velocity : new int[][] {{3, 0}, {0, -2}, {5, 3}, {-7, 4}}) {
+            // Starting from the side that keeps it in the frame throughout
+            Scene scene = new Scene(velocity[0] < 0 ? 250 : 20, velocity[1] < 0 ? 170 : 20);
+            RegionTracker tracker = new RegionTracker(8, 4, new PixelationEngine());
+            tracker.track(scene.render(), WIDTH, HEIGHT);
+            tracker.setRegions(Collections.singletonList(scene.truth()));
+            for (int frame = 1; frame <= 25; frame++) {
+                scene.move(velocity[0], velocity[1]);
+                PixelRegion region = tracker.track(scene.render(), WIDTH, HEIGHT).get(0);
+                String at = Arrays.toString(velocity) + " frame " + frame;
+                assertCovers(at, region, scene.truth());
+                // Centred on the object to within a cell, and not padded out of all proportion
+                assertEquals(at, scene.x + SIZE / 2.0, (region.getLeft() + region.getRight()) / 2.0, 8);
+                assertEquals(at, scene.y + SIZE / 2.0, (region.getTop() + region.getBottom()) / 2.0, 8);
+                int speed = Math.max(Math.abs(velocity[0]), Math.abs(velocity[1]));
+                // Motion is measured in whole cells, so the speed is too
+                assertTrue(at + ": " + region, region.getRight() - region.getLeft() <= SIZE + 2 * (2 * 8 + speed));
+            }
+        }
+    }
+
+    @Test
+    public void fastMotion_withinTheSearchRange_staysCovered() {
+        // 20 pixels a frame, well past a cell; the velocity prediction keeps it in range
+        Scene scene = new Scene(10, 100);
+        RegionTracker tracker = new RegionTracker(8, 4, new PixelationEngine());
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        tracker.setRegions(Collections.singletonList(scene.truth()));
+        for (int frame = 1; frame <= 12; frame++) {
+            scene.move(20, frame % 2 == 0 ? 6 : -6);
+            PixelRegion region = tracker.track(scene.render(), WIDTH, HEIGHT).get(0);
+            assertCovers("frame " + frame, region, scene.truth());
+            // Padding follows the speed
+            assertTrue(tracker.getPaddingX(0) >= 20);
+        }
+    }
+
+    @Test
+    public void staticScene_keepsTheRegionWithACellOfPadding() {
+        Scene scene = new Scene(100, 60);
+        RegionTracker tracker = new RegionTracker();
+        tracker.setRegions(Collections.singletonList(scene.truth())); // Before any frame
+        for (int frame = 0; frame < 10; frame++) {
+            tracker.track(scene.render(), WIDTH, HEIGHT);
+        }
+        assertEquals(10, tracker.getFramesSinceRefresh());
+        // Nothing moved: the same list, so the renderer keeps its region index
+        List<PixelRegion> still = tracker.getRegions();
+        assertSame(still, tracker.track(scene.render(), WIDTH, HEIGHT));
+        PixelRegion region = tracker.getRegions().get(0);
+        int cell = RegionTracker.DEFAULT_CELL_SIZE;
+        assertEquals(scene.x - cell, region.getLeft());
+        assertEquals(scene.y - cell, region.getTop());
+        assertEquals(scene.x + SIZE + cell, region.getRight());
+        assertEquals(scene.y + SIZE + cell, region.getBottom());
+    }
+
+    @Test
+    public void lostMatch_growsThePaddingUntilTheNextRefresh() {
+        Scene scene = new Scene(60, 60);
+        RegionTracker tracker = new RegionTracker(8, 2, new PixelationEngine());
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        tracker.setRegions(Collections.singletonList(scene.truth()));
+        // Jumps much further than the search range can follow
+        scene.move(150, 100);
+        int before = tracker.getPaddingX(0);
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        int once = tracker.getPaddingX(0);
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        int twice = tracker.getPaddingX(0);
+        assertTrue(before + " < " + once + " < " + twice, before < once && once < twice);
+
+        // The detector finds it again
+        tracker.setRegions(Collections.singletonList(scene.truth()));
+        assertEquals(0, tracker.getFramesSinceRefresh());
+        scene.move(4, 0);
+        PixelRegion region = tracker.track(scene.render(), WIDTH, HEIGHT).get(0);
+        assertCovers("after refresh", region, scene.truth());
+        // Back to a cell plus the speed
+        assertTrue(tracker.getPaddingX(0) <= 8 + 8);
+    }
+
+    @Test
+    public void polygonRegion_isCarriedAndPaddedAsAPolygon() {
+        Scene scene = new Scene(100, 80);
+        RegionTracker tracker = new RegionTracker(8, 4, new PixelationEngine());
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        // A diamond inside the object
+        int cx = scene.x + SIZE / 2;
+        int cy = scene.y + SIZE / 2;
+        PixelRegion diamond = PixelRegion.polygon(
+                new int[] {cx, cx + SIZE / 2, cx, cx - SIZE / 2}, new int[] {cy - SIZE / 2, cy, cy + SIZE / 2, cy});
+        tracker.setRegions(Collections.singletonList(diamond));
+        for (int frame = 1; frame <= 10; frame++) {
+            scene.move(-4, 3);
+            tracker.track(scene.render(), WIDTH, HEIGHT);
+        }
+        PixelRegion tracked = tracker.getRegions().get(0);
+        assertTrue(tracked.isPolygon());
+        // The moved diamond is covered, wherever its pixels landed
+        assertCovers("diamond", tracked, diamond.translate(-40, 30));
+    }
+
+    @Test
+    public void resolutionChange_scalesTheRegionsAndKeepsTracking() {
+        Scene scene = new Scene(120, 100);
+        RegionTracker tracker = new RegionTracker(4, 4, new PixelationEngine());
+        tracker.track(scene.render(), WIDTH, HEIGHT);
+        tracker.setRegions(Collections.singletonList(scene.truth()));
+        int[] half = halve(scene.render());
+        PixelRegion region = tracker.track(half, WIDTH / 2, HEIGHT / 2).get(0);
+        PixelRegion truth = PixelRegion.rect(scene.x / 2, scene.y / 2, (scene.x + SIZE) / 2, (scene.y + SIZE) / 2);
+        assertCovers("halved", region, truth);
+        assertTrue(region.getRight() <= WIDTH / 2);
+    }
+
+    @Test
+    public void pad_coversEveryPixelWithinThePadding() {
+        PixelRegion triangle = PixelRegion.polygon(new int[] {10, 30, 14}, new int[] {5, 12, 28});
+        PixelRegion padded = triangle.pad(3, 2);
+        boolean[] inside = coverage(triangle, 50, 40);
+        boolean[] paddedInside = coverage(padded, 50, 40);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 50; x++) {
+                if (!inside[y * 50 + x]) {
+                    continue;
+                }
+                for (int oy = -2; oy <= 2; oy++) {
+                    for (int ox = -3; ox <= 3; ox++) {
+                        assertTrue((x + ox) + "," + (y + oy), paddedInside[(y + oy) * 50 + x + ox]);
+                    }
+                }
+            }
+        }
+        // Rectangles just grow
+        PixelRegion rect = PixelRegion.rect(1, 2, 3, 4).pad(5, 6);
+        assertEquals(-4, rect.getLeft());
+        assertEquals(-4, rect.getTop());
+        assertEquals(8, rect.getRight());
+        assertEquals(10, rect.getBottom());
+    }
+
+    private static void assertCovers(String message, PixelRegion region, PixelRegion truth) {
+        boolean[] covered = coverage(region, WIDTH, HEIGHT);
+        boolean[] wanted = coverage(truth, WIDTH, HEIGHT);
+        for (int i = 0; i < wanted.length; i++) {
+            if (wanted[i] && !covered[i]) {
+                fail(message + ": " + region + " misses " + (i % WIDTH) + "," + (i / WIDTH) + " of " + truth);
+            }
+        }
+    }
+
+    private static boolean[] coverage(PixelRegion region, int width, int height) {
+        boolean[] covered = new boolean[width * height];
+        int[] spans = new int[2 * region.maxSpansPerRow()];
+        double[] crossings = new double[region.vertexCount()];
+        for (int y = 0; y < height; y++) {
+            int count = region.appendSpans(y, width, spans, 0, crossings);
+            for (int s = 0; s < count; s++) {
+                Arrays.fill(covered, y * width + spans[2 * s], y * width + spans[2 * s + 1], true);
+            }
+        }
+        return covered;
+    }
+
+    private static int[] halve(int[] pixels) {
+        int[] half = new int[(WIDTH / 2) * (HEIGHT / 2)];
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                half[y * (WIDTH / 2) + x] = pixels[2 * y * WIDTH + 2 * x];
+            }
+        }
+        return half;
+    }
+
+    // A SIZE x SIZE patch of coarse random texture over a smooth, differently textured
+    // background; coarse so it survives averaging into cells
+    private static final class Scene {
+        private final int[] background = new int[WIDTH * HEIGHT];
+        private final int[] patch = new int[SIZE * SIZE];
+        int x;
+        int y;
+
+        Scene(int x, int y) {
+            this.x = x;
+            this.y = y;
+            Random random = new Random(11);
+            for (int py = 0; py < HEIGHT; py++) {
+                for (int px = 0; px < WIDTH; px++) {
+                    int level = 60 + (int) (40 * Math.sin(px / 23.0) * Math.cos(py / 17.0)) + random.nextInt(6);
+                    background[py * WIDTH + px] = 0xFF000000 | level << 16 | level << 8 | level;
+                }
+            }
+            int[] coarse = new int[(SIZE / 6) * (SIZE / 6)];
+            for (int i = 0; i < coarse.length; i++) {
+                coarse[i] = 120 + random.nextInt(136);
+            }
+            for (int py = 0; py < SIZE; py++) {
+                for (int px = 0; px < SIZE; px++) {
+                    int level = coarse[(py / 6) * (SIZE / 6) + px / 6];
+                    patch[py * SIZE + px] = 0xFF000000 | level << 16 | (255 - level) << 8 | level / 2;
+                }
+            }
+        }
+
+        void move(int dx, int dy) {
+            x += dx;
+            y += dy;
+        }
+
+        PixelRegion truth() {
+            return PixelRegion.rect(x, y, x + SIZE, y + SIZE);
+        }
+
+        int[] render() {
+            int[] frame = background.clone();
+            for (int py = 0; py < SIZE; py++) {
+                int fy = y + py;
+                if (fy < 0 || fy >= HEIGHT) {
+                    continue;
+                }
+                for (int px = 0; px < SIZE; px++) {
+                    int fx = x + px;
+                    if (fx >= 0 && fx < WIDTH) {
+                        frame[fy * WIDTH + fx] = patch[py * SIZE + px];
+                    }
+                }
+            }
+            return frame;
+        }
+    }
+}
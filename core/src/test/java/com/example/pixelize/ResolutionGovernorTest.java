@@ -0,0 +1,253 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scripted latency traces through ResolutionGovernor.
+ */
+public class ResolutionGovernorTest {
+    private static final long BUDGET = 33_000_000L;
+    private static final long OK = 25_000_000L;       // Within budget, no headroom
+    private static final long IDLE = 10_000_000L;     // Clear headroom
+    private static final long SLOW = 45_000_000L;     // Over budget
+
+    private static final List<FrameFormat> FORMATS = Arrays.asList(
+            format(640, 360), format(1920, 1080), format(1280, 720));
+
+    private static FrameFormat format(int width, int height) {
+        return new FrameFormat(width, height, FrameFormat.Encoding.YUV_420);
+    }
+
+    private static ResolutionGovernor governor() {
+        return new ResolutionGovernor(FORMATS, 30, 15, BUDGET);
+    }
+
+    // Feeds the same sample n times, returning how many of them changed the level
+    private static int feed(ResolutionGovernor governor, int n, long latency, double dropRate) {
+        int changes = 0;
+        for (int i = 0; i < n; i++) {
+            if (governor.update(latency, dropRate)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void ladderStepsResolutionThenFrameRate() {
+        assertEquals("[1920x1080@30, 1280x720@30, 640x360@30, 640x360@20, 640x360@15]",
+                governor().getLadder().toString());
+        assertEquals("[1280x720@30, 1280x720@20]",
+                new ResolutionGovernor(Arrays.asList(format(1280, 720)), 30, 20, BUDGET).getLadder().toString());
+    }
+
+    @Test
+    public void sustainedOverloadStepsDownOneLevelAtATime() {
+        ResolutionGovernor governor = governor();
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, SLOW, 0);
+        assertEquals(ResolutionGovernor.State.SETTLING, governor.getState());
+
+        assertFalse(governor.update(SLOW, 0));
+        assertEquals(ResolutionGovernor.State.STRAINED, governor.getState());
+        assertTrue(governor.update(SLOW, 0));
+        assertEquals("1280x720@30", governor.getLevel().toString());
+
+        // Samples taken while the pipeline adapts are ignored
+        assertEquals(0, feed(governor, ResolutionGovernor.SETTLE_WINDOWS, SLOW, 0));
+        // Keeps going down, resolution first and then frame rate, and stops at the bottom
+        assertEquals(3, feed(governor, 100, SLOW, 0));
+        assertEquals("640x360@15", governor.getLevel().toString());
+    }
+
+    @Test
+    public void dropsAloneCountAsOverload() {
+        ResolutionGovernor governor = governor();
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, IDLE, 0);
+        assertEquals(1, feed(governor, ResolutionGovernor.DEGRADE_AFTER, IDLE, 0.25));
+        assertEquals("1280x720@30", governor.getLevel().toString());
+    }
+
+    @Test
+    public void isolatedSpikesAreIgnored() {
+        ResolutionGovernor governor = governor();
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, OK, 0);
+        for (int i = 0; i < 50; i++) {
+            assertFalse(governor.update(SLOW, 0));
+            assertFalse(governor.update(OK, 0));
+        }
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+        assertEquals(ResolutionGovernor.State.STEADY, governor.getState());
+    }
+
+    @Test
+    public void headroomStepsBackUpAfterLongerRun() {
+        ResolutionGovernor governor = governor();
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, SLOW, 0);
+        feed(governor, ResolutionGovernor.DEGRADE_AFTER, SLOW, 0);
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, IDLE, 0);
+        assertEquals("1280x720@30", governor.getLevel().toString());
+
+        // Headroom must last UPGRADE_AFTER windows; within-budget windows reset the run
+        assertEquals(0, feed(governor, ResolutionGovernor.UPGRADE_AFTER - 1, IDLE, 0));
+        assertEquals(ResolutionGovernor.State.RELAXED, governor.getState());
+        assertFalse(governor.update(OK, 0));
+        assertEquals(0, feed(governor, ResolutionGovernor.UPGRADE_AFTER - 1, IDLE, 0));
+        assertTrue(governor.update(IDLE, 0));
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+
+        // Already at the top: headroom changes nothing
+        assertEquals(0, feed(governor, 50, IDLE, 0));
+    }
+
+    // The device holds 720p but not 1080p: without backoff the governor would bounce
+    // between them every few windows
+    @Test
+    public void failedUpgradesBackOffInsteadOfOscillating() {
+        ResolutionGovernor governor = governor();
+        int changes = 0;
+        int upgradesTo1080 = 0;
+        for (int window = 0; window < 300; window++) {
+            boolean at1080 = governor.getLevel().getFormat().getWidth() == 1920;
+            if (governor.update(at1080 ? SLOW : IDLE, 0)) {
+                changes++;
+                if (governor.getLevel().getFormat().getWidth() == 1920) {
+                    upgradesTo1080++;
+                }
+            }
+        }
+        // Backoff doubles the headroom run after every failed upgrade: 5, 10, 20, 40, 40, ...
+        assertTrue("upgrades " + upgradesTo1080, upgradesTo1080 <= 8);
+        assertTrue("changes " + changes, changes <= 17);
+        assertEquals(ResolutionGovernor.MAX_UPGRADE_AFTER, governor.getUpgradeAfter());
+    }
+
+    @Test
+    public void upgradeThatHoldsResetsBackoff() {
+        ResolutionGovernor governor = governor();
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, SLOW, 0);
+        feed(governor, ResolutionGovernor.DEGRADE_AFTER, SLOW, 0);            // 720p
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS + ResolutionGovernor.UPGRADE_AFTER, IDLE, 0); // 1080p
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS + ResolutionGovernor.DEGRADE_AFTER, SLOW, 0); // 720p again
+        assertEquals("1280x720@30", governor.getLevel().toString());
+        assertEquals(2 * ResolutionGovernor.UPGRADE_AFTER, governor.getUpgradeAfter());
+
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS + 2 * ResolutionGovernor.UPGRADE_AFTER, IDLE, 0);
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+        feed(governor, ResolutionGovernor.STICKY_WINDOWS + 1, OK, 0);
+        assertEquals(ResolutionGovernor.UPGRADE_AFTER, governor.getUpgradeAfter());
+    }
+
+    @Test
+    public void pixelSizeCapsResolutionWithoutLoad() {
+        ResolutionGovernor governor = governor();
+        // 8px blocks at 1080p are 240x135 blocks; 640x360 still gives each block 2+ pixels
+        assertTrue(governor.setPixelSize(8));
+        assertEquals("640x360@30", governor.getLevel().toString());
+        // Headroom doesn't lift the detail cap
+        assertEquals(0, feed(governor, 50, IDLE, 0));
+
+        // 3px blocks need at least 1280x720
+        assertTrue(governor.setPixelSize(3));
+        assertEquals("1280x720@30", governor.getLevel().toString());
+        assertFalse(governor.setPixelSize(3.5f));
+
+        // Pixelation off: back to full resolution, the load never limited it
+        assertTrue(governor.setPixelSize(1));
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+    }
+
+    @Test
+    public void overloadBelowDetailCapStillStepsDown() {
+        ResolutionGovernor governor = governor();
+        governor.setPixelSize(8); // 640x360@30
+        feed(governor, ResolutionGovernor.SETTLE_WINDOWS, SLOW, 0);
+        assertEquals(1, feed(governor, ResolutionGovernor.DEGRADE_AFTER, SLOW, 0));
+        assertEquals("640x360@20", governor.getLevel().toString());
+
+        // Smaller blocks ask for more detail, but the load limit found at 640x360 stays
+        governor.setPixelSize(1);
+        assertEquals("640x360@20", governor.getLevel().toString());
+    }
+
+    @Test
+    public void snapshotWithoutFramesIsSkipped() {
+        ResolutionGovernor governor = governor();
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.snapshot(snapshot, 0);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(governor.update(snapshot));
+        }
+        assertEquals(ResolutionGovernor.State.SETTLING, governor.getState());
+
+        // Live metrics without END_TO_END samples: the 40ms convert alone is over budget
+        for (int i = 0; i < 20; i++) {
+            for (int f = 0; f < 30; f++) {
+                metrics.record(PipelineMetrics.Stage.CONVERT, 40_000_000L);
+                metrics.record(PipelineMetrics.Stage.DRAW, 10_000_000L);
+                metrics.frameProduced();
+            }
+            metrics.snapshot(snapshot, (i + 1) * 1_000_000_000L);
+            governor.update(snapshot);
+        }
+        assertEquals("640x360@15", governor.getLevel().toString());
+    }
+
+    @Test
+    public void liveMetrics_judgeArrivalToDrawAndIgnoreVsyncWaits() {
+        ResolutionGovernor governor = governor();
+        PipelineMetrics metrics = new PipelineMetrics();
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.snapshot(snapshot, 0);
+        long now = 0;
+
+        // A healthy 1080p30 phone: each stage fits easily and SWAP is a 60 Hz vsync wait.
+        // Their sum, 36ms, is over budget, yet frames reach the screen in 24ms.
+        for (int i = 0; i < 20; i++) {
+            now = window(metrics, snapshot, now, 3_000_000L, 11_000_000L, 4_000_000L, 2_000_000L,
+                    16_000_000L, 24_000_000L);
+            assertFalse(governor.update(snapshot));
+        }
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+
+        // Conversion falls behind and frames queue: arrival to draw goes over budget
+        for (int i = 0; i < 10; i++) {
+            now = window(metrics, snapshot, now, 3_000_000L, 30_000_000L, 4_000_000L, 2_000_000L,
+                    16_000_000L, 48_000_000L);
+            governor.update(snapshot);
+        }
+        assertNotEquals("1920x1080@30", governor.getLevel().toString());
+
+        // Load goes away: clear headroom steps back up to the top
+        for (int i = 0; i < 200 && governor.getLevel() != governor.getLadder().get(0); i++) {
+            now = window(metrics, snapshot, now, 1_000_000L, 4_000_000L, 2_000_000L, 1_000_000L,
+                    16_000_000L, 9_000_000L);
+            governor.update(snapshot);
+        }
+        assertEquals("1920x1080@30", governor.getLevel().toString());
+    }
+
+    // Records a second of 30 frames with the given per-stage times and snapshots it
+    private static long window(PipelineMetrics metrics, MetricsSnapshot snapshot, long now, long acquire,
+            long convert, long upload, long draw, long swap, long endToEnd) {
+        for (int f = 0; f < 30; f++) {
+            metrics.record(PipelineMetrics.Stage.ACQUIRE, acquire);
+            metrics.record(PipelineMetrics.Stage.CONVERT, convert);
+            metrics.record(PipelineMetrics.Stage.UPLOAD, upload);
+            metrics.record(PipelineMetrics.Stage.DRAW, draw);
+            metrics.record(PipelineMetrics.Stage.SWAP, swap);
+            metrics.record(PipelineMetrics.Stage.END_TO_END, endToEnd);
+            metrics.frameProduced();
+            metrics.frameRendered();
+        }
+        now += 1_000_000_000L;
+        metrics.snapshot(snapshot, now);
+        return now;
+    }
+}
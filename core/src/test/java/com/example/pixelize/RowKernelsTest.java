@@ -0,0 +1,170 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Property checks that the Vector API kernels match the scalar ones bit for bit on
+ * random frames, sizes, offsets and strides. Skipped when the JVM can't run the
+ * vector kernels (run with --add-modules jdk.incubator.vector on Java 17+).
+ */
+public class RowKernelsTest {
+    private static final int CASES = 200;
+
+    private static RowKernels vector() {
+        RowKernels vector = RowKernels.vector();
+        assumeNotNull(vector);
+        return vector;
+    }
+
+    @Test
+    public void accumulateColumns_matchesScalar() {
+        RowKernels vector = vector();
+        Random random = new Random(1);
+        for (int c = 0; c < CASES; c++) {
+            int width = 1 + random.nextInt(300);
+            int offset = random.nextInt(50);
+            int[] src = PixelationEngineTest.randomPixels(random, offset + width + random.nextInt(50));
+            int[][] expected = randomSums(random, width);
+            int[][] actual = copy(expected);
+            RowKernels.scalar().accumulateColumns(src, offset, width, expected[0], expected[1], expected[2], expected[3]);
+            vector.accumulateColumns(src, offset, width, actual[0], actual[1], actual[2], actual[3]);
+            for (int channel = 0; channel < 4; channel++) {
+                assertArrayEquals("case " + c + " width " + width, expected[channel], actual[channel]);
+            }
+        }
+    }
+
+    @Test
+    public void convertRow_matchesScalar_includingClampedExtremes() {
+        RowKernels vector = vector();
+        Random random = new Random(2);
+        YuvConverter.ColorMatrix[] matrices = YuvConverter.ColorMatrix.values();
+        for (int c = 0; c < CASES; c++) {
+            int width = 1 + random.nextInt(300);
+            YuvConverter.ColorMatrix matrix = matrices[random.nextInt(matrices.length)];
+            byte[] luma = new byte[width];
+            random.nextBytes(luma);
+            int[][] terms = new int[3][width];
+            for (int pair = 0; pair < (width + 1) / 2; pair++) {
+                int u = random.nextInt(256) - 128;
+                int v = random.nextInt(256) - 128;
+                terms[0][pair] = matrix.rv * v + (1 << 15);
+                terms[1][pair] = (1 << 15) - matrix.gu * u - matrix.gv * v;
+                terms[2][pair] = matrix.bu * u + (1 << 15);
+            }
+            int outIndex = random.nextInt(20);
+            int[] expected = new int[outIndex + width + random.nextInt(20)];
+            int[] actual = expected.clone();
+            RowKernels.scalar().convertRow(luma, terms[0], terms[1], terms[2], matrix.yOffset, matrix.yGain,
+                    width, expected, outIndex);
+            vector.convertRow(luma, terms[0], terms[1], terms[2], matrix.yOffset, matrix.yGain,
+                    width, actual, outIndex);
+            assertArrayEquals("case " + c + " width " + width, expected, actual);
+        }
+    }
+
+    @Test
+    public void pixelationEngine_matchesScalar_onRandomFramesAndStrides() {
+        RowKernels vector = vector();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        PixelationEngine scalarEngine = new PixelationEngine(pool, RowKernels.scalar());
+        PixelationEngine vectorEngine = new PixelationEngine(pool, vector);
+        Random random = new Random(3);
+        for (int c = 0; c < 50; c++) {
+            int width = 1 + random.nextInt(400);
+            int height = 1 + random.nextInt(200);
+            int stride = width + random.nextInt(40);
+            int offset = random.nextInt(100);
+            int blockSize = 1 + random.nextInt(40);
+            int[] src = PixelationEngineTest.randomPixels(random, offset + height * stride);
+
+            int[] expected = new int[src.length];
+            int[] actual = new int[src.length];
+            scalarEngine.pixelate(src, offset, stride, expected, offset, stride, width, height, blockSize);
+            vectorEngine.pixelate(src, offset, stride, actual, offset, stride, width, height, blockSize);
+            assertArrayEquals("pixelate case " + c, expected, actual);
+
+            int gridWidth = PixelationEngine.gridSize(width, blockSize);
+            int gridHeight = PixelationEngine.gridSize(height, blockSize);
+            int[] expectedGrid = new int[gridWidth * gridHeight];
+            int[] actualGrid = new int[gridWidth * gridHeight];
+            scalarEngine.downsample(src, offset, stride, width, height, blockSize, expectedGrid, 0, gridWidth);
+            vectorEngine.downsample(src, offset, stride, width, height, blockSize, actualGrid, 0, gridWidth);
+            assertArrayEquals("downsample case " + c, expectedGrid, actualGrid);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void yuvConverter_matchesScalar_onRandomPlanesAndStrides() {
+        RowKernels vector = vector();
+        Random random = new Random(4);
+        YuvConverter.ColorMatrix[] matrices = YuvConverter.ColorMatrix.values();
+        for (int c = 0; c < 50; c++) {
+            int width = 1 + random.nextInt(300);
+            int height = 1 + random.nextInt(60);
+            int pixelStride = 1 + random.nextInt(2);
+            int yRowStride = width + random.nextInt(32);
+            int chromaWidth = (width + 1) / 2;
+            int uvRowStride = chromaWidth * pixelStride + random.nextInt(32);
+            int chromaRows = (height + 1) / 2;
+            ByteBuffer y = randomPlane(random, yRowStride * height);
+            ByteBuffer u = randomPlane(random, uvRowStride * chromaRows);
+            ByteBuffer v = randomPlane(random, uvRowStride * chromaRows);
+            YuvConverter.ColorMatrix matrix = matrices[random.nextInt(matrices.length)];
+
+            int[] expected = new int[width * height];
+            int[] actual = new int[width * height];
+            new YuvConverter(width, height, matrix, RowKernels.scalar())
+                    .convert(y, yRowStride, u, v, uvRowStride, pixelStride, expected);
+            new YuvConverter(width, height, matrix, vector)
+                    .convert(y, yRowStride, u, v, uvRowStride, pixelStride, actual);
+            assertArrayEquals("case " + c + " " + width + "x" + height, expected, actual);
+        }
+    }
+
+    @Test
+    public void named_selectsKernels() {
+        assertSame(RowKernels.scalar(), RowKernels.named("scalar"));
+        assertEquals("scalar", RowKernels.scalar().getName());
+        assertNotNull(RowKernels.getDefault());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void named_rejectsUnknownKernels() {
+        RowKernels.named("neon");
+    }
+
+    private static ByteBuffer randomPlane(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer plane = ByteBuffer.allocateDirect(size);
+        plane.put(bytes).flip();
+        return plane;
+    }
+
+    private static int[][] randomSums(Random random, int width) {
+        int[][] sums = new int[4][width];
+        for (int[] channel : sums) {
+            for (int x = 0; x < width; x++) {
+                channel[x] = random.nextInt(1 << 20);
+            }
+        }
+        return sums;
+    }
+
+    private static int[][] copy(int[][] sums) {
+        int[][] copy = new int[sums.length][];
+        for (int i = 0; i < sums.length; i++) {
+            copy[i] = sums[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Effect registry contents and the compile-once, cached-location policy of
+ * ShaderProgramCache, checked against RecordingGl.
+ */
+public class ShaderProgramCacheTest {
+
+    private static int variantCount(EffectRegistry registry) {
+        int count = 0;
+        for (ShaderEffect effect : registry.getEffects()) {
+            count += effect.getVariants().size();
+        }
+        return count;
+    }
+
+    @Test
+    public void precompile_buildsEveryVariantOnce() {
+        RecordingGl gl = new RecordingGl();
+        EffectRegistry registry = EffectRegistry.createDefault();
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+
+        assertEquals(0, cache.precompile(registry));
+        int variants = variantCount(registry);
+        assertEquals(variants, cache.getCompileCount());
+        assertEquals(variants + 1, gl.count("compileShader")); // Plus the shared vertex shader
+        assertEquals(1, gl.count("compileShader 8b31"));
+        assertEquals(variants, gl.count("linkProgram"));
+
+        assertEquals(0, cache.precompile(registry));
+        assertEquals(variants + 1, gl.count("compileShader"));
+    }
+
+    @Test
+    public void switchingEffects_neverRecompilesOrQueriesLocations() {
+        RecordingGl gl = new RecordingGl();
+        EffectRegistry registry = EffectRegistry.createDefault();
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+        cache.precompile(registry);
+        int callsAfterPrecompile = gl.calls.size();
+
+        ShaderProgram first = cache.get(registry.get(EffectRegistry.PIXELATE), ShaderEffect.Variant.GRID);
+        for (int frame = 0; frame < 100; frame++) {
+            for (ShaderEffect effect : registry.getEffects()) {
+                for (ShaderEffect.Variant variant : effect.getVariants()) {
+                    ShaderProgram program = cache.get(effect, variant);
+                    assertSame(effect, program.getEffect());
+                    assertSame(variant, program.getVariant());
+                    program.getUniformLocation(ShaderEffect.U_PIXEL_SIZE);
+                }
+            }
+        }
+        assertSame(first, cache.get(registry.get(EffectRegistry.PIXELATE), ShaderEffect.Variant.GRID));
+        assertEquals(callsAfterPrecompile, gl.calls.size());
+    }
+
+    @Test
+    public void uniformLocations_coverDeclaredUniformsOnly() {
+        RecordingGl gl = new RecordingGl();
+        EffectRegistry registry = EffectRegistry.createDefault();
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+        ShaderProgram grid = cache.get(registry.get(EffectRegistry.POSTERIZE), ShaderEffect.Variant.GRID);
+        ShaderProgram frame = cache.get(registry.get(EffectRegistry.POSTERIZE), ShaderEffect.Variant.FRAME);
+
+        assertNotEquals(-1, grid.getUniformLocation("u_Levels"));
+        assertNotEquals(-1, grid.getUniformLocation(ShaderEffect.U_TEX_SCALE));
+        assertEquals(-1, frame.getUniformLocation(ShaderEffect.U_TEX_SCALE));
+        assertEquals(-1, frame.getUniformLocation("u_Unknown"));
+        assertNotEquals(grid.getPositionLocation(), grid.getTexCoordLocation());
+        assertEquals(1, gl.count("getUniformLocation " + grid.getId() + " u_Levels"));
+    }
+
+    @Test
+    public void failedVariant_isCachedAndNotRetried() {
+        RecordingGl gl = new RecordingGl();
+        gl.failingSources.add("#define GRID");
+        EffectRegistry registry = EffectRegistry.createDefault();
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+
+        int gridVariants = 0;
+        for (ShaderEffect effect : registry.getEffects()) {
+            if (effect.supports(ShaderEffect.Variant.GRID)) {
+                gridVariants++;
+            }
+        }
+        assertEquals(gridVariants, cache.precompile(registry));
+        ShaderEffect pixelate = registry.get(EffectRegistry.PIXELATE);
+        assertNull(cache.get(pixelate, ShaderEffect.Variant.GRID));
+        assertNotNull(cache.get(pixelate, ShaderEffect.Variant.FRAME));
+        assertEquals(gridVariants, gl.count("compileShader 8b30 failed"));
+    }
+
+    @Test
+    public void failedVertexShader_failsEveryProgramOnce() {
+        RecordingGl gl = new RecordingGl();
+        gl.failingSources.add("attribute vec4 a_Position");
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+        EffectRegistry registry = EffectRegistry.createDefault();
+        assertEquals(variantCount(registry), cache.precompile(registry));
+        assertEquals(1, gl.count("compileShader"));
+    }
+
+    @Test
+    public void newContext_recompiles_andReleaseDeletesEverything() {
+        RecordingGl gl = new RecordingGl();
+        EffectRegistry registry = EffectRegistry.createDefault();
+        ShaderProgramCache cache = new ShaderProgramCache(gl);
+        cache.precompile(registry);
+        cache.invalidate();
+        assertEquals(0, gl.count("deleteProgram"));
+
+        cache.precompile(registry);
+        int variants = variantCount(registry);
+        assertEquals(2 * (variants + 1), gl.count("compileShader"));
+
+        cache.release();
+        assertEquals(variants, gl.count("deleteProgram"));
+        // Fragment shaders are freed after each link, the shared vertex shader on release
+        assertEquals(2 * variants + 1, gl.count("deleteShader"));
+    }
+
+    @Test
+    public void registry_keepsOrderAndRejectsDuplicates() {
+        EffectRegistry registry = EffectRegistry.createDefault();
+        assertEquals(EffectRegistry.NONE, registry.getEffects().get(0).getId());
+        assertTrue(registry.contains(EffectRegistry.HEXAGON));
+        assertFalse(registry.get(EffectRegistry.HEXAGON).supports(ShaderEffect.Variant.GRID));
+        try {
+            registry.register(new ShaderEffect(EffectRegistry.PIXELATE, "void main() {}\n",
+                    EnumSet.of(ShaderEffect.Variant.FRAME)));
+            fail("Duplicate id accepted");
+        } catch (IllegalArgumentException expected) {
+            // Ids are unique
+        }
+        try {
+            registry.get("sepia");
+            fail("Unknown id accepted");
+        } catch (IllegalArgumentException expected) {
+            // Lookups of unregistered ids fail loudly
+        }
+    }
+
+    @Test
+    public void squareGrid_onlyForEffectsReadingBlockColours() {
+        EffectRegistry registry = EffectRegistry.createDefault();
+        for (String id : new String[] {EffectRegistry.PIXELATE, EffectRegistry.POSTERIZE, EffectRegistry.MOSAIC}) {
+            assertTrue(id, registry.get(id).isSquareGrid());
+        }
+        // Hexagons sample the frame off the square grid; unpixelated frames have no grid
+        assertFalse(registry.get(EffectRegistry.HEXAGON).isSquareGrid());
+        assertFalse(registry.get(EffectRegistry.NONE).isSquareGrid());
+        assertFalse(new ShaderEffect("custom", "void main() {}\n", EnumSet.of(ShaderEffect.Variant.FRAME)).isSquareGrid());
+    }
+
+    @Test
+    public void gridSource_definesGridBeforeTheHeader() {
+        ShaderEffect pixelate = EffectRegistry.createDefault().get(EffectRegistry.PIXELATE);
+        String grid = pixelate.getFragmentSource(ShaderEffect.Variant.GRID);
+        String frame = pixelate.getFragmentSource(ShaderEffect.Variant.FRAME);
+        assertTrue(grid.startsWith("#define GRID\n"));
+        assertFalse(frame.contains("#define GRID"));
+        assertTrue(frame.contains("uniform float u_PixelSize;"));
+        assertArrayEquals(new String[] {"u_Texture", "u_TexSize", "u_PixelSize", "u_TexScale"},
+                pixelate.getUniformNames(ShaderEffect.Variant.GRID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedVariant_isRejected() {
+        EffectRegistry.createDefault().get(EffectRegistry.HEXAGON).getFragmentSource(ShaderEffect.Variant.GRID);
+    }
+}
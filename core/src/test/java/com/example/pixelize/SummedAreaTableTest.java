@@ -0,0 +1,132 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * SummedAreaTable averages checked against PixelationEngine and brute-force sums.
+ */
+public class SummedAreaTableTest {
+
+    @Test
+    public void uniformGrid_matchesPixelationEngine() {
+        Random random = new Random(5);
+        int width = 101;
+        int height = 67;
+        int[] src = opaque(PixelationEngineTest.randomPixels(random, width * height));
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(src, width, height);
+
+        for (int blockSize = 1; blockSize <= 70; blockSize += 3) {
+            int[] expected = new int[src.length];
+            int[] actual = new int[src.length];
+            new PixelationEngine().pixelate(src, expected, width, height, blockSize);
+            table.pixelate(actual, blockSize);
+            assertArrayEquals("block " + blockSize, expected, actual);
+        }
+    }
+
+    @Test
+    public void average_matchesBruteForce() {
+        Random random = new Random(6);
+        int width = 40;
+        int height = 30;
+        int[] src = PixelationEngineTest.randomPixels(random, width * height);
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(src, width, height);
+        for (int i = 0; i < 200; i++) {
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int x1 = x0 + 1 + random.nextInt(width - x0);
+            int y1 = y0 + 1 + random.nextInt(height - y0);
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    int pixel = src[y * width + x];
+                    r += (pixel >> 16) & 0xFF;
+                    g += (pixel >> 8) & 0xFF;
+                    b += pixel & 0xFF;
+                }
+            }
+            long area = (long) (x1 - x0) * (y1 - y0);
+            int expected = 0xFF000000 | (int) ((r + area / 2) / area) << 16
+                    | (int) ((g + area / 2) / area) << 8 | (int) ((b + area / 2) / area);
+            assertEquals(expected, table.average(x0, y0, x1, y1));
+        }
+    }
+
+    @Test
+    public void wrappingTables_stayExactForLargeFrames() {
+        // 4K of white overflows a signed int running sum several times over
+        int width = 3840;
+        int height = 2160;
+        int[] src = new int[width * height];
+        Arrays.fill(src, 0xFFFFFFFF);
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(src, width, height);
+        assertEquals(0xFFFFFFFF, table.average(0, 0, width, height));
+        assertEquals(0xFFFFFFFF, table.average(1000, 1000, 3840, 2160));
+    }
+
+    @Test
+    public void finerRegion_overCoarseGrid() {
+        int width = 64;
+        int height = 48;
+        int[] src = opaque(PixelationEngineTest.randomPixels(new Random(7), width * height));
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(src, width, height);
+
+        int[] dst = new int[src.length];
+        table.pixelate(dst, 16);
+        table.pixelateRegion(dst, 0, width, 16, 16, 48, 32, 4);
+
+        assertEquals(table.average(0, 0, 16, 16), dst[0]);
+        assertEquals(table.average(16, 16, 20, 20), dst[16 * width + 16]);
+        assertEquals(table.average(44, 28, 48, 32), dst[31 * width + 47]);
+        assertEquals(table.average(48, 32, 64, 48), dst[47 * width + 63]);
+    }
+
+    @Test
+    public void explicitEdges_defineNonUniformBlocks() {
+        int width = 10;
+        int height = 4;
+        int[] src = opaque(PixelationEngineTest.randomPixels(new Random(8), width * height));
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(src, width, height);
+
+        int[] dst = new int[src.length];
+        table.pixelate(dst, 0, width, new int[] {0, 1, 4, 10}, new int[] {0, 3, 4});
+        assertEquals(table.average(0, 0, 1, 3), dst[2 * width]);
+        assertEquals(table.average(1, 0, 4, 3), dst[3]);
+        assertEquals(table.average(4, 3, 10, 4), dst[3 * width + 9]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void edgesNotCoveringImage_areRejected() {
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(new int[16], 4, 4);
+        table.pixelate(new int[16], 0, 4, new int[] {0, 2}, new int[] {0, 4});
+    }
+
+    @Test
+    public void rebuild_reusesTablesForSmallerFrames() {
+        SummedAreaTable table = new SummedAreaTable();
+        table.build(new int[64 * 64], 64, 64);
+        int[] small = {0xFF102030, 0xFF302010};
+        table.build(small, 2, 1);
+        assertEquals(0xFF202020, table.average(0, 0, 2, 1));
+    }
+
+    private static int[] opaque(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xFF000000;
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Allocation, rotation and resize policy of TextureStreamer, checked against RecordingGl.
+ */
+public class TextureStreamerTest {
+    private final IntBuffer pixels = IntBuffer.allocate(16 * 8);
+
+    @Test
+    public void storageIsAllocatedOnce_thenUpdatedInPlace() {
+        RecordingGl gl = new RecordingGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 3);
+        for (int i = 0; i < 30; i++) {
+            streamer.upload(pixels, 16, 8);
+        }
+        assertEquals(3, gl.count("genTexture"));
+        assertEquals(3, gl.count("texImage2D 16x8 null"));
+        assertEquals(30, gl.count("texSubImage2D 0,0 16x8"));
+        assertEquals(0, gl.count("deleteTexture"));
+        assertEquals(1, streamer.getAllocations());
+        assertEquals(30, streamer.getUploads());
+    }
+
+    @Test
+    public void uploadsRotateThroughTheRing() {
+        RecordingGl gl = new RecordingGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 2);
+        int first = streamer.upload(pixels, 16, 8);
+        int second = streamer.upload(pixels, 16, 8);
+        int third = streamer.upload(pixels, 16, 8);
+        assertNotEquals(first, second);
+        assertEquals(first, third);
+        assertEquals(third, streamer.getCurrentTexture());
+    }
+
+    @Test
+    public void sizeChange_deletesAndReallocates() {
+        RecordingGl gl = new RecordingGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 2);
+        streamer.upload(pixels, 16, 8);
+        streamer.upload(pixels, 8, 8);
+        assertTrue(gl.calls.contains("deleteTexture 1"));
+        assertTrue(gl.calls.contains("deleteTexture 2"));
+        assertEquals(2, gl.count("texImage2D 8x8 null"));
+        assertEquals(2, streamer.getAllocations());
+        assertEquals(8, streamer.getWidth());
+    }
+
+    @Test
+    public void invalidate_forgetsTexturesWithoutDeleting() {
+        RecordingGl gl = new RecordingGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 2);
+        streamer.upload(pixels, 16, 8);
+        streamer.invalidate();
+        assertEquals(0, streamer.getCurrentTexture());
+        streamer.upload(pixels, 16, 8);
+        assertEquals(0, gl.count("deleteTexture"));
+        assertEquals(4, gl.count("genTexture"));
+    }
+
+    @Test
+    public void release_deletesEveryTexture() {
+        RecordingGl gl = new RecordingGl();
+        TextureStreamer streamer = new TextureStreamer(gl, 3);
+        streamer.upload(pixels, 16, 8);
+        streamer.release();
+        assertEquals(3, gl.count("deleteTexture"));
+        assertEquals(0, streamer.getCurrentTexture());
+    }
+}
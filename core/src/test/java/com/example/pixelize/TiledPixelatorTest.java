@@ -0,0 +1,219 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Strip-by-strip pixelation against whole-image pixelation, strip ordering and
+ * alignment, and a 100-megapixel image run through a few megabytes of strips.
+ */
+public class TiledPixelatorTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(3);
+
+    // Serves rows of a whole image held in memory, checking they're asked for in order
+    private static final class ArraySource implements TiledPixelator.Source {
+        private final int[] image;
+        private final int width;
+        private int nextRow;
+
+        ArraySource(int[] image, int width) {
+            this.image = image;
+            this.width = width;
+        }
+
+        @Override
+        public void readRows(int firstRow, int rowCount, int[] pixels) {
+            assertEquals(nextRow, firstRow);
+            System.arraycopy(image, firstRow * width, pixels, 0, rowCount * width);
+            nextRow += rowCount;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Collects the result, recording the strips it arrived in
+    private static class ArraySink implements TiledPixelator.Sink {
+        final int[] image;
+        final int width;
+        final List<int[]> strips = new ArrayList<>();
+
+        ArraySink(int width, int height) {
+            this.image = new int[width * height];
+            this.width = width;
+        }
+
+        @Override
+        public void writeRows(int firstRow, int rowCount, int[] pixels) throws IOException {
+            strips.add(new int[] {firstRow, rowCount});
+            System.arraycopy(pixels, 0, image, firstRow * width, rowCount * width);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // A synthetic image that never exists in memory: pixels are a function of (x, y)
+    private static final class PatternSource implements TiledPixelator.Source {
+        private final int width;
+
+        PatternSource(int width) {
+            this.width = width;
+        }
+
+        @Override
+        public void readRows(int firstRow, int rowCount, int[] pixels) {
+            for (int y = 0; y < rowCount; y++) {
+                int row = firstRow + y;
+                for (int x = 0; x < width; x++) {
+                    pixels[y * width + x] = 0xFF000000 | (x * 7 + row) << 16 | (x ^ row) << 8 | (x * row) & 0xFF;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ChecksumSink implements TiledPixelator.Sink {
+        final CRC32 crc = new CRC32();
+        final byte[] row;
+        final int width;
+        int rows;
+
+        ChecksumSink(int width) {
+            this.width = width;
+            this.row = new byte[4 * width];
+        }
+
+        @Override
+        public void writeRows(int firstRow, int rowCount, int[] pixels) {
+            assertEquals(rows, firstRow);
+            for (int y = 0; y < rowCount; y++) {
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[y * width + x];
+                    row[4 * x] = (byte) (pixel >> 24);
+                    row[4 * x + 1] = (byte) (pixel >> 16);
+                    row[4 * x + 2] = (byte) (pixel >> 8);
+                    row[4 * x + 3] = (byte) pixel;
+                }
+                crc.update(row);
+            }
+            rows += rowCount;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void tiledResult_matchesWholeImage() throws IOException {
+        Random random = new Random(5);
+        PixelationEngine engine = new PixelationEngine(POOL);
+        PaletteQuantizer quantizer = new PaletteQuantizer(POOL);
+        ColorLut lut = quantizer.lutFor(Palette.named("rgb64"));
+        for (int trial = 0; trial < 60; trial++) {
+            int width = 1 + random.nextInt(300);
+            int height = 1 + random.nextInt(300);
+            int blockSize = 1 + random.nextInt(40);
+            int stripPixels = 1 + random.nextInt(20_000);
+            int buffers = 2 + random.nextInt(4);
+            boolean quantise = random.nextBoolean();
+            int[] image = new int[width * height];
+            for (int i = 0; i < image.length; i++) {
+                image[i] = random.nextInt();
+            }
+
+            ArraySink sink = new ArraySink(width, height);
+            new TiledPixelator(POOL, stripPixels, buffers)
+                    .run(new ArraySource(image, width), sink, width, height, blockSize, quantise ? lut : null);
+
+            engine.pixelate(image, image, width, height, blockSize);
+            if (quantise) {
+                quantizer.quantize(image, width, height, lut);
+            }
+            assertArrayEquals(width + "x" + height + " block " + blockSize + " strip " + stripPixels,
+                    image, sink.image);
+        }
+    }
+
+    @Test
+    public void strips_arriveInOrder_onBlockBoundaries() throws IOException {
+        int width = 100;
+        int height = 257;
+        int blockSize = 8;
+        TiledPixelator tiler = new TiledPixelator(POOL, 3000, 3);
+        assertEquals(24, tiler.getStripRows(width, height, blockSize));
+        ArraySink sink = new ArraySink(width, height);
+        tiler.run(new ArraySource(new int[width * height], width), sink, width, height, blockSize, null);
+
+        int nextRow = 0;
+        for (int[] strip : sink.strips) {
+            assertEquals(nextRow, strip[0]);
+            assertEquals(0, strip[0] % blockSize);
+            nextRow += strip[1];
+        }
+        assertEquals(height, nextRow);
+        assertEquals(11, sink.strips.size());
+        assertEquals(17, sink.strips.get(10)[1]);
+        // One block row per strip when a block row alone exceeds the target
+        assertEquals(blockSize, new TiledPixelator(POOL, 10, 2).getStripRows(width, height, blockSize));
+    }
+
+    @Test
+    public void hundredMegapixelImage_isProcessedInBoundedMemory() throws IOException {
+        int width = 10_000;
+        int height = 10_000;
+        int blockSize = 16;
+        ColorLut lut = new PaletteQuantizer(POOL).lutFor(Palette.ega16());
+        TiledPixelator coarse = new TiledPixelator(POOL);
+        TiledPixelator fine = new TiledPixelator(POOL, 1, 2);
+        // A few strips' worth, against 400 MB for the image itself
+        long imageBytes = 4L * width * height;
+        assertTrue(coarse.getBufferBytes(width, height, blockSize) < imageBytes / 20);
+        assertEquals(2L * 4 * width * blockSize, fine.getBufferBytes(width, height, blockSize));
+
+        ChecksumSink first = new ChecksumSink(width);
+        coarse.run(new PatternSource(width), first, width, height, blockSize, lut);
+        ChecksumSink second = new ChecksumSink(width);
+        fine.run(new PatternSource(width), second, width, height, blockSize, lut);
+
+        assertEquals(height, first.rows);
+        assertEquals(height, second.rows);
+        assertEquals(first.crc.getValue(), second.crc.getValue());
+    }
+
+    @Test
+    public void sinkFailures_surfaceFromRun() throws IOException {
+        TiledPixelator.Sink failing = new ArraySink(20, 20) {
+            @Override
+            public void writeRows(int firstRow, int rowCount, int[] pixels) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        try {
+            new TiledPixelator(POOL, 100, 2).run(new ArraySource(new int[400], 20), failing, 20, 20, 2, null);
+            fail();
+        } catch (IOException expected) {
+            assertEquals("disk full", expected.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedBlocks_areRejected() throws IOException {
+        new TiledPixelator(POOL).run(new ArraySource(new int[1], 1), new ArraySink(1, 1), 1, 1,
+                PixelationEngine.MAX_BLOCK_SIZE + 1, null);
+    }
+}
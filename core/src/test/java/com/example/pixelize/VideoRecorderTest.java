@@ -0,0 +1,315 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame handoff, timestamps, back-pressure and drops of VideoRecorder, the Y4M
+ * sink and ARGB to YUV conversion.
+ */
+public class VideoRecorderTest {
+    private final PixelationEngine engine = new PixelationEngine(ForkJoinPool.commonPool());
+
+    // Keeps copies of what it was given; can stall on a latch or fail on a given frame
+    private static class CollectingSink implements VideoSink {
+        final List<int[]> frames = new ArrayList<>();
+        final List<Long> presentationTimes = new ArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release;
+        int failAt = -1;
+        long delayMillis;
+        volatile boolean started;
+        volatile boolean closed;
+
+        @Override
+        public void start(int width, int height) {
+            started = true;
+        }
+
+        @Override
+        public void writeFrame(Frame frame, long presentationTimeUs) throws IOException {
+            entered.countDown();
+            try {
+                if (release != null) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (frames.size() == failAt) {
+                throw new IOException("Encoder lost");
+            }
+            frames.add(frame.getPixels().clone());
+            presentationTimes.add(presentationTimeUs);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static Frame frame(FramePool pool, Random random, long timestampNs) {
+        Frame frame = pool.acquire();
+        int[] pixels = PixelationEngineTest.randomPixels(random, pool.getWidth() * pool.getHeight());
+        System.arraycopy(pixels, 0, frame.getPixels(), 0, pixels.length);
+        frame.setTimestampNs(timestampNs);
+        return frame;
+    }
+
+    @Test
+    public void encodesPixelatedFrames_timedByTheirTimestamps() throws Exception {
+        int width = 24;
+        int height = 16;
+        FramePool pool = new FramePool(width, height, 4);
+        CollectingSink sink = new CollectingSink();
+        AtomicReference<IOException> error = new AtomicReference<>();
+        AtomicLong reported = new AtomicLong(-1);
+        VideoRecorder recorder = new VideoRecorder(sink, width, height, 2, engine, (written, dropped, failure) -> {
+            reported.set(written);
+            error.set(failure);
+        });
+        recorder.setBlockSize(4);
+
+        Random random = new Random(4);
+        List<int[]> expected = new ArrayList<>();
+        long base = 5_000_000_000L;
+        long[] timestamps = {base, base + 33_333_333, base + 66_700_000, base + 133_000_000};
+        for (long timestamp : timestamps) {
+            Frame frame = frame(pool, random, timestamp);
+            expected.add(PixelationEngineTest.reference(frame.getPixels(), width, height, 4));
+            assertTrue(recorder.put(frame, 5000));
+            frame.release(); // The recorder holds its own reference
+        }
+        recorder.close();
+        assertTrue(recorder.awaitCompletion(5000));
+
+        assertNull(error.get());
+        assertEquals(4, reported.get());
+        assertTrue(sink.started);
+        assertTrue(sink.closed);
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("frame " + i, expected.get(i), sink.frames.get(i));
+        }
+        assertEquals(Arrays.asList(0L, 33_333L, 66_700L, 133_000L), sink.presentationTimes);
+        assertEquals(4, pool.getAvailable()); // Every frame went back to the pool
+        assertFalse(recorder.offer(pool.acquire()));
+    }
+
+    @Test
+    public void framesBeyondTheQueue_areDroppedWhileTheEncoderIsBusy() throws Exception {
+        FramePool pool = new FramePool(8, 8, 8);
+        CollectingSink sink = new CollectingSink();
+        sink.release = new CountDownLatch(1);
+        AtomicLong reportedDrops = new AtomicLong(-1);
+        VideoRecorder recorder = new VideoRecorder(sink, 8, 8, 3, engine,
+                (written, dropped, error) -> reportedDrops.set(dropped));
+
+        Random random = new Random(5);
+        Frame first = frame(pool, random, 0);
+        assertTrue(recorder.offer(first));
+        first.release();
+        assertTrue(sink.entered.await(5, TimeUnit.SECONDS)); // The encoder holds it
+
+        int accepted = 0;
+        for (int i = 1; i <= 10; i++) {
+            Frame frame = frame(pool, random, i * 33_000_000L);
+            if (recorder.offer(frame)) {
+                accepted++;
+            }
+            frame.release();
+        }
+        // Exactly the queue's worth gets in, the rest are turned away at once
+        assertEquals(3, accepted);
+        assertEquals(7, recorder.getFramesDropped());
+        assertEquals(3, recorder.getQueueDepth());
+        // One frame encoding and three queued: the pool is never drained by the backlog
+        assertEquals(8 - 4, pool.getAvailable());
+
+        sink.release.countDown();
+        recorder.close();
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals(4, recorder.getFramesWritten());
+        assertEquals(7, reportedDrops.get());
+        assertEquals(8, pool.getAvailable());
+    }
+
+    @Test
+    public void put_waitsForTheEncoder_soNothingIsDropped() throws Exception {
+        FramePool pool = new FramePool(8, 8, 3);
+        CollectingSink sink = new CollectingSink();
+        sink.delayMillis = 2;
+        VideoRecorder recorder = new VideoRecorder(sink, 8, 8, 1, engine, null);
+        Random random = new Random(6);
+        for (int i = 0; i < 30; i++) {
+            Frame frame = frame(pool, random, i * 10_000_000L);
+            assertTrue(recorder.put(frame, 5000));
+            frame.release();
+        }
+        recorder.close();
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals(30, recorder.getFramesWritten());
+        assertEquals(0, recorder.getFramesDropped());
+    }
+
+    @Test
+    public void encoderFailure_endsTheRecording_andReleasesItsFrames() throws Exception {
+        FramePool pool = new FramePool(8, 8, 4);
+        CollectingSink sink = new CollectingSink();
+        sink.failAt = 1;
+        AtomicReference<IOException> error = new AtomicReference<>();
+        VideoRecorder recorder = new VideoRecorder(sink, 8, 8, 2, engine,
+                (written, dropped, failure) -> error.set(failure));
+        Random random = new Random(7);
+        for (int i = 0; i < 3; i++) {
+            Frame frame = frame(pool, random, i);
+            recorder.put(frame, 5000);
+            frame.release();
+        }
+        assertTrue(recorder.awaitCompletion(5000));
+        assertEquals("Encoder lost", error.get().getMessage());
+        assertTrue(sink.closed);
+        assertEquals(1, recorder.getFramesWritten());
+        assertFalse(recorder.isRecording());
+        Frame late = pool.acquire();
+        assertFalse(recorder.offer(late));
+        late.release();
+        assertEquals(4, pool.getAvailable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void framesOfAnotherSize_areRejected() {
+        VideoRecorder recorder = new VideoRecorder(new CollectingSink(), 8, 8, 1, engine, null);
+        try {
+            recorder.offer(new Frame(8, 6));
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void argbToYuv_usesLimitedRange_andHonoursStrides() {
+        int width = 5;
+        int height = 3;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, 0xFFFFFFFF);
+        for (int x = 0; x < width; x++) {
+            argb[2 * width + x] = 0xFF000000; // Last row black
+        }
+        int chromaWidth = 3;
+        // I420: tight planes
+        ByteBuffer y = ByteBuffer.allocate(width * height);
+        ByteBuffer u = ByteBuffer.allocate(chromaWidth * 2);
+        ByteBuffer v = ByteBuffer.allocate(chromaWidth * 2);
+        ArgbToYuv.convert(argb, width, height, y, width, u, v, chromaWidth, 1);
+        assertEquals(235, y.get(0) & 0xFF);
+        assertEquals(16, y.get(2 * width) & 0xFF);
+        for (int i = 0; i < u.capacity(); i++) {
+            assertEquals(128, u.get(i) & 0xFF);
+            assertEquals(128, v.get(i) & 0xFF);
+        }
+
+        // NV12-style interleaved chroma with padded rows, written from an offset
+        Random random = new Random(8);
+        argb = PixelationEngineTest.randomPixels(random, width * height);
+        ArgbToYuv.convert(argb, width, height, y, width, u, v, chromaWidth, 1);
+        int rowStride = 8;
+        ByteBuffer y2 = ByteBuffer.allocate(2 + rowStride * height);
+        y2.position(2);
+        ByteBuffer uv = ByteBuffer.allocate(rowStride * 2 + 1);
+        ByteBuffer vu = uv.duplicate();
+        vu.position(1);
+        ArgbToYuv.convert(argb, width, height, y2, rowStride, uv, vu, rowStride, 2);
+        assertEquals(2, y2.position());
+        for (int row = 0; row < height; row++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(y.get(row * width + x), y2.get(2 + row * rowStride + x));
+            }
+        }
+        for (int row = 0; row < 2; row++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                assertEquals(u.get(row * chromaWidth + x), uv.get(row * rowStride + 2 * x));
+                assertEquals(v.get(row * chromaWidth + x), uv.get(row * rowStride + 2 * x + 1));
+            }
+        }
+    }
+
+    @Test
+    public void y4mSink_fillsGapsWithThePreviousFrame() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Y4mVideoSink sink = new Y4mVideoSink(out, 30);
+        sink.start(4, 2);
+        Frame frame = new Frame(4, 2);
+        sink.writeFrame(frame, 0);
+        sink.writeFrame(frame, 33_333);
+        sink.writeFrame(frame, 100_000); // Slot 3: slot 2 is filled with a repeat
+        sink.writeFrame(frame, 110_000); // Still slot 3: skipped
+        sink.writeFrame(frame, 5_000_000); // A jump of seconds isn't filled
+        sink.close();
+
+        assertEquals(5, sink.getFramesWritten());
+        assertEquals(1, sink.getFramesRepeated());
+        assertEquals(1, sink.getFramesSkipped());
+        String header = "YUV4MPEG2 W4 H2 F30:1 Ip A1:1 C420jpeg XCOLORRANGE=LIMITED\n";
+        byte[] bytes = out.toByteArray();
+        assertEquals(header, new String(bytes, 0, header.length(), StandardCharsets.US_ASCII));
+        int frameSize = "FRAME\n".length() + 4 * 2 + 2 * 2;
+        assertEquals(header.length() + 5 * frameSize, bytes.length);
+        assertEquals("FRAME\n", new String(bytes, header.length() + 4 * frameSize, 6, StandardCharsets.US_ASCII));
+    }
+
+    // Camera-like 720p30 stream recorded to a Y4M file: every frame offered is either
+    // written whole or counted as dropped
+    @Test
+    public void sustainedRecordingFromALiveSource() throws Exception {
+        FrameFormat format = new FrameFormat(1280, 720, FrameFormat.Encoding.YUV_420);
+        File file = File.createTempFile("video", "." + Y4mVideoSink.FILE_EXTENSION);
+        try {
+            Y4mVideoSink sink = new Y4mVideoSink(new BufferedOutputStream(new FileOutputStream(file), 1 << 20), 30);
+            VideoRecorder recorder = new VideoRecorder(sink, format.getWidth(), format.getHeight(),
+                    VideoRecorder.DEFAULT_QUEUE_CAPACITY, engine, null);
+            recorder.setBlockSize(16);
+            PipelineMetrics metrics = new PipelineMetrics();
+            FrameProcessor processor = new FrameProcessor(4 + VideoRecorder.DEFAULT_QUEUE_CAPACITY + 1, metrics,
+                    frame -> {
+                        recorder.offer(frame);
+                        frame.release();
+                    });
+            SyntheticFrameSource source = new SyntheticFrameSource(30, format);
+            source.start(format, processor);
+            Thread.sleep(2000);
+            source.stop();
+            recorder.close();
+            assertTrue(recorder.awaitCompletion(30_000));
+
+            long offered = recorder.getFramesQueued() + recorder.getFramesDropped();
+            assertEquals(metrics.getProduced(), offered);
+            assertEquals(recorder.getFramesQueued(), recorder.getFramesWritten());
+            assertTrue(recorder.getFramesWritten() > 0);
+            long frameBytes = "FRAME\n".length() + FrameRecording.PixelFormat.I420.frameBytes(1280, 720);
+            assertEquals(0, (file.length() - "YUV4MPEG2 W1280 H720 F30:1 Ip A1:1 C420jpeg XCOLORRANGE=LIMITED\n".length())
+                    % frameBytes);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.pixelize;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks YuvConverter against synthetic YUV_420_888 planes with padded strides.
+ */
+public class YuvConverterTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void greyLumaWithNeutralChroma_isGrey() {
+        int[] out = convertUniform(128, 128, 128, 1, YuvConverter.ColorMatrix.BT601_FULL);
+        for (int pixel : out) {
+            assertEquals(0xFF808080, pixel);
+        }
+    }
+
+    @Test
+    public void primaryColours_convertWithBt601FullRange() {
+        // Full-range BT.601 YUV for pure red, green and blue
+        assertEquals(0xFFFE0000, convertUniform(76, 85, 255, 1, YuvConverter.ColorMatrix.BT601_FULL)[0]);
+        assertEquals(0xFF00FF01, convertUniform(150, 44, 21, 1, YuvConverter.ColorMatrix.BT601_FULL)[0]);
+        assertEquals(0xFF0000FE, convertUniform(29, 255, 107, 1, YuvConverter.ColorMatrix.BT601_FULL)[0]);
+    }
+
+    @Test
+    public void limitedRange_mapsBlackAndWhiteToExtremes() {
+        assertEquals(0xFF000000, convertUniform(16, 128, 128, 1, YuvConverter.ColorMatrix.BT709_LIMITED)[0]);
+        assertEquals(0xFFFFFFFF, convertUniform(235, 128, 128, 1, YuvConverter.ColorMatrix.BT709_LIMITED)[0]);
+    }
+
+    @Test
+    public void planarAndInterleavedChroma_produceSameOutput() {
+        int[] planar = convertGradient(1);
+        int[] interleaved = convertGradient(2);
+        assertArrayEquals(planar, interleaved);
+    }
+
+    @Test
+    public void intBufferOutput_matchesArrayOutput() {
+        Planes planes = gradientPlanes(2);
+        YuvConverter converter = new YuvConverter(WIDTH, HEIGHT);
+        int[] expected = new int[WIDTH * HEIGHT];
+        converter.convert(planes.y, planes.yRowStride, planes.u, planes.v, planes.uvRowStride, 2, expected);
+
+        IntBuffer direct = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 4).asIntBuffer();
+        converter.convert(planes.y, planes.yRowStride, planes.u, planes.v, planes.uvRowStride, 2, direct);
+        int[] actual = new int[WIDTH * HEIGHT];
+        direct.get(actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(0, planes.y.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undersizedOutput_isRejected() {
+        Planes planes = gradientPlanes(1);
+        new YuvConverter(WIDTH, HEIGHT).convert(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, 1, new int[WIDTH]);
+    }
+
+    private static int[] convertUniform(int y, int u, int v, int pixelStride, YuvConverter.ColorMatrix matrix) {
+        Planes planes = new Planes(pixelStride);
+        for (int i = 0; i < planes.y.capacity(); i++) planes.y.put(i, (byte) y);
+        for (int i = 0; i < planes.u.capacity(); i++) planes.u.put(i, (byte) u);
+        for (int i = 0; i < planes.v.capacity(); i++) planes.v.put(i, (byte) v);
+        int[] out = new int[WIDTH * HEIGHT];
+        new YuvConverter(WIDTH, HEIGHT, matrix).convert(planes.y, planes.yRowStride,
+                planes.u, planes.v, planes.uvRowStride, pixelStride, out);
+        return out;
+    }
+
+    private static int[] convertGradient(int pixelStride) {
+        Planes planes = gradientPlanes(pixelStride);
+        int[] out = new int[WIDTH * HEIGHT];
+        new YuvConverter(WIDTH, HEIGHT).convert(planes.y, planes.yRowStride,
+                planes.u, planes.v, planes.uvRowStride, pixelStride, out);
+        return out;
+    }
+
+    private static Planes gradientPlanes(int pixelStride) {
+        Planes planes = new Planes(pixelStride);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                planes.y.put(row * planes.yRowStride + x, (byte) (row * 40 + x * 20));
+            }
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                int index = row * planes.uvRowStride + x * pixelStride;
+                planes.u.put(index, (byte) (60 + row * 50 + x * 30));
+                planes.v.put(index, (byte) (200 - row * 40 - x * 25));
+            }
+        }
+        return planes;
+    }
+
+    // Plane layout with padded row strides, as camera HALs commonly deliver
+    private static class Planes {
+        final int yRowStride = WIDTH + 10;
+        final int uvRowStride;
+        final ByteBuffer y;
+        final ByteBuffer u;
+        final ByteBuffer v;
+
+        Planes(int pixelStride) {
+            uvRowStride = (WIDTH / 2) * pixelStride + 6;
+            y = ByteBuffer.allocateDirect(yRowStride * HEIGHT);
+            if (pixelStride == 2) {
+                // Interleaved chroma: U and V are views into the same memory, offset by one
+                ByteBuffer chroma = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2 + 1);
+                chroma.position(0);
+                u = chroma.slice();
+                chroma.position(1);
+                v = chroma.slice();
+            } else {
+                u = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+                v = ByteBuffer.allocateDirect(uvRowStride * HEIGHT / 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.pixelize;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+// RowKernels on the Vector API, using the widest int vectors the CPU prefers.
+// Loaded reflectively by RowKernels; only compiled into the Java 17 part of the
+// core jar. Lanes hold the same integer maths as the scalar loops, which also
+// handle the tails.
+final class VectorRowKernels extends RowKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Luma bytes are loaded in vectors of at least 64 bits and widened in parts
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.length() * 8)));
+    private static final int PARTS = BYTES.length() / INTS.length();
+    // Lane i takes chroma pair i / 2
+    private static final VectorShuffle<Integer> PAIRS = VectorShuffle.fromOp(INTS, i -> i >> 1);
+
+    VectorRowKernels() {
+        if (INTS.length() < 4) {
+            // No real SIMD behind it; the scalar loops are faster
+            throw new UnsupportedOperationException("Preferred vectors too narrow: " + INTS);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector" + INTS.vectorBitSize();
+    }
+
+    @Override
+    public void accumulateColumns(int[] src, int offset, int width,
+                                  int[] alpha, int[] red, int[] green, int[] blue) {
+        int x = 0;
+        for (int bound = INTS.loopBound(width); x < bound; x += INTS.length()) {
+            IntVector pixels = IntVector.fromArray(INTS, src, offset + x);
+            pixels.lanewise(VectorOperators.LSHR, 24)
+                    .add(IntVector.fromArray(INTS, alpha, x)).intoArray(alpha, x);
+            pixels.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                    .add(IntVector.fromArray(INTS, red, x)).intoArray(red, x);
+            pixels.lanewise(VectorOperators.LSHR, 8).and(0xFF)
+                    .add(IntVector.fromArray(INTS, green, x)).intoArray(green, x);
+            pixels.and(0xFF)
+                    .add(IntVector.fromArray(INTS, blue, x)).intoArray(blue, x);
+        }
+        accumulateColumns(src, offset, alpha, red, green, blue, x, width);
+    }
+
+    @Override
+    public void convertRow(byte[] luma, int[] red, int[] green, int[] blue,
+                           int yOffset, int yGain, int width, int[] out, int outIndex) {
+        int x = 0;
+        for (int bound = BYTES.loopBound(width); x < bound; x += BYTES.length()) {
+            ByteVector bytes = ByteVector.fromArray(BYTES, luma, x);
+            for (int part = 0, lane = x; part < PARTS; part++, lane += INTS.length()) {
+                IntVector y = ((IntVector) bytes.convertShape(VectorOperators.B2I, INTS, part))
+                        .and(0xFF).sub(yOffset).mul(yGain);
+                // lane is even, so the pairs for these lanes start at lane / 2; the
+                // chroma arrays are width long, so the load stays inside them
+                int pair = lane >> 1;
+                IntVector r = channel(y, IntVector.fromArray(INTS, red, pair));
+                IntVector g = channel(y, IntVector.fromArray(INTS, green, pair));
+                IntVector b = channel(y, IntVector.fromArray(INTS, blue, pair));
+                r.lanewise(VectorOperators.LSHL, 16)
+                        .or(g.lanewise(VectorOperators.LSHL, 8))
+                        .or(b)
+                        .or(0xFF000000)
+                        .intoArray(out, outIndex + lane);
+            }
+        }
+        convertRow(luma, red, green, blue, yOffset, yGain, out, outIndex, x, width);
+    }
+
+    // clamp((y + chroma) >> 16) with the chroma pairs spread over two lanes each
+    private static IntVector channel(IntVector y, IntVector pairs) {
+        return y.add(pairs.rearrange(PAIRS)).lanewise(VectorOperators.ASHR, 16).max(0).min(255);
+    }
+}
@@ -21,3 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Pixelize"
 include(":app")
+include(":core")
+include(":benchmark")
+include(":cli")